@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.riot.lang;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Generator of RDF/POST-encoded form bodies used as benchmark input.
+ * Each subject is described by five triples: a URI object, a language-tagged literal, a typed literal,
+ * a blank node object, and a plain literal attached to that blank node.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class RDFPostPayload
+{
+
+    public static final int TRIPLES_PER_SUBJECT = 5;
+    
+    private static final String NS = "http://example.org/";
+    private static final String XSD_INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+    private static final String[] LANGS = { "en", "da", "lt", "de" };
+    
+    /**
+     * Generates RDF/POST body with (at least) the given number of triples.
+     * 
+     * @param tripleCount number of triples
+     * @return URL-encoded form body
+     */
+    public static String generate(int tripleCount)
+    {
+        int subjects = (tripleCount + TRIPLES_PER_SUBJECT - 1) / TRIPLES_PER_SUBJECT;
+        StringBuilder sb = new StringBuilder(subjects * 512);
+        sb.append("rdf=");
+
+        for (int i = 0; i < subjects; i++)
+        {
+            String bnode = "b" + i;
+            param(sb, TokenizerRDFPost.URI_SUBJ, NS + "resource/" + i + "#this");
+            param(sb, TokenizerRDFPost.URI_PRED, NS + "ns#seeAlso");
+            param(sb, TokenizerRDFPost.URI_OBJ, NS + "resource/" + (i + 1) + "?page=" + (i % 10) + "&lang=" + LANGS[i % LANGS.length]);
+            param(sb, TokenizerRDFPost.URI_PRED, NS + "ns#title");
+            param(sb, TokenizerRDFPost.LITERAL_OBJ, "Title of resource #" + i + " – æøå ąčę");
+            param(sb, TokenizerRDFPost.LANG, LANGS[i % LANGS.length]);
+            param(sb, TokenizerRDFPost.URI_PRED, NS + "ns#count");
+            param(sb, TokenizerRDFPost.LITERAL_OBJ, Integer.toString(i));
+            param(sb, TokenizerRDFPost.TYPE, XSD_INTEGER);
+            param(sb, TokenizerRDFPost.URI_PRED, NS + "ns#hasPart");
+            param(sb, TokenizerRDFPost.BLANK_OBJ, bnode);
+            param(sb, TokenizerRDFPost.BLANK_SUBJ, bnode);
+            param(sb, TokenizerRDFPost.URI_PRED, NS + "ns#description");
+            param(sb, TokenizerRDFPost.LITERAL_OBJ, "Part of resource " + i + ", with spaces & punctuation = 100%");
+        }
+        
+        return sb.toString();
+    }
+
+    private static void param(StringBuilder sb, String key, String value)
+    {
+        try
+        {
+            sb.append('&').append(key).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        }
+        catch (UnsupportedEncodingException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+}
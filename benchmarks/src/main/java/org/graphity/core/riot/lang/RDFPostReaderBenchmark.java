@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.graphity.core.riot.RDFLanguages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streaming RDF/POST reader with the legacy string-based parser.
+ * Run with the GC profiler (<code>-prof gc</code>) to get allocation rates.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.RDFPostReader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class RDFPostReaderBenchmark
+{
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int triples;
+    
+    private String body;
+    private byte[] bytes;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        body = RDFPostPayload.generate(triples);
+        bytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Streaming path: tokenizes the body and emits triples without materializing them.
+     * 
+     * @return number of parsed triples
+     */
+    @Benchmark
+    public long read()
+    {
+        StreamRDFCounting counter = StreamRDFLib.count();
+        new RDFPostReader().read(new ByteArrayInputStream(bytes), null, RDFLanguages.RDFPOST, counter, null);
+        return counter.countTriples();
+    }
+
+    /**
+     * Streaming path into a model, comparable with the result of the legacy path.
+     * 
+     * @return parsed model
+     */
+    @Benchmark
+    public Model readModel()
+    {
+        Model model = ModelFactory.createDefaultModel();
+        new RDFPostReader().read(new ByteArrayInputStream(bytes), null, RDFLanguages.RDFPOST, StreamRDFLib.graph(model.getGraph()), null);
+        return model;
+    }
+    
+    /**
+     * Legacy path: splits and decodes the whole body as a string.
+     * 
+     * @return parsed model
+     * @throws URISyntaxException if the body contains invalid URIs
+     */
+    @Benchmark
+    public Model parse() throws URISyntaxException
+    {
+        return new RDFPostReader().parse(body, "UTF-8");
+    }
+    
+}
@@ -16,7 +16,10 @@
  */
 package org.graphity.core;
 
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
 import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.tdb.TDBFactory;
 import org.graphity.core.provider.ResultSetProvider;
 import org.graphity.core.provider.DataManagerProvider;
 import org.graphity.core.provider.ModelProvider;
@@ -25,23 +28,69 @@ import org.graphity.core.provider.SPARQLEndpointOriginProvider;
 import org.graphity.core.provider.UpdateRequestReader;
 import org.graphity.core.provider.GraphStoreOriginProvider;
 import org.graphity.core.provider.SPARQLEndpointProvider;
+import org.graphity.core.provider.VariantRegistryProvider;
+import org.graphity.core.provider.WriteBehindBufferProvider;
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.core.Context;
 import org.apache.jena.riot.IO_Jena;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFParserRegistry;
+import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.riot.WriterDatasetRIOTFactory;
+import org.apache.jena.riot.WriterGraphRIOTFactory;
 import org.graphity.core.mapper.ClientExceptionMapper;
+import org.graphity.core.mapper.ClientHandlerExceptionMapper;
+import org.graphity.core.mapper.ModelTooLargeExceptionMapper;
 import org.graphity.core.mapper.NotFoundExceptionMapper;
+import org.graphity.core.model.impl.GraphStoreLocalBase;
 import org.graphity.core.model.impl.GraphStoreProxyBase;
 import org.graphity.core.model.impl.QueriedResourceBase;
+import org.graphity.core.metrics.MetricRegistry;
+import org.graphity.core.metrics.MetricsResource;
+import org.graphity.core.model.impl.SPARQLEndpointLocalBase;
 import org.graphity.core.model.impl.SPARQLEndpointProxyBase;
+import org.graphity.core.provider.AdmissionControllerProvider;
 import org.graphity.core.provider.ClientProvider;
 import org.graphity.core.provider.DatasetProvider;
+import org.graphity.core.provider.EntityTagCacheProvider;
+import org.graphity.core.provider.LocalDatasetProvider;
 import org.graphity.core.provider.MediaTypesProvider;
+import org.graphity.core.provider.MetricRegistryProvider;
+import org.graphity.core.provider.ModelBudgetProvider;
+import org.graphity.core.provider.QueryCacheProvider;
+import org.graphity.core.provider.QueryCoalescerProvider;
+import org.graphity.core.provider.QueryResultCacheProvider;
+import org.graphity.core.provider.RDFInputProvider;
+import org.graphity.core.provider.RepresentationCacheProvider;
 import org.graphity.core.riot.RDFLanguages;
+import org.graphity.core.riot.lang.RDFBinaryReaderAdapter;
+import org.graphity.core.riot.lang.RDFBinaryReaderFactory;
+import org.graphity.core.riot.lang.RDFBinaryWriter;
+import org.graphity.core.riot.lang.RDFBinaryWriterAdapter;
 import org.graphity.core.riot.lang.RDFPostReaderAdapter;
 import org.graphity.core.riot.lang.RDFPostReaderFactory;
+import org.graphity.core.riot.writer.BufferedNTriplesWriter;
+import org.graphity.core.util.AdmissionController;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.LocalDataset;
+import org.graphity.core.util.ModelBudget;
+import org.graphity.core.util.QueryCache;
+import org.graphity.core.util.QueryCoalescer;
+import org.graphity.core.util.QueryResultCache;
+import org.graphity.core.util.RepresentationCache;
+import org.graphity.core.util.VariantRegistry;
+import org.graphity.core.util.WriteBehindBuffer;
+import org.graphity.core.vocabulary.G;
+import org.graphity.core.vocabulary.SD;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,23 +128,85 @@ public class Application extends javax.ws.rs.core.Application
         RDFParserRegistry.registerLangTriples(RDFLanguages.RDFPOST, new RDFPostReaderFactory());
         IO_Jena.registerForModelRead(RDFLanguages.strLangRDFPOST, RDFPostReaderAdapter.class);
 
+        // add RDF/Binary serialization
+        RDFLanguages.register(RDFLanguages.RDFBINARY);
+        RDFParserRegistry.registerLangQuads(RDFLanguages.RDFBINARY, new RDFBinaryReaderFactory());
+        RDFWriterRegistry.register(RDFLanguages.RDFBINARY, RDFBinaryWriter.FORMAT);
+        RDFWriterRegistry.register(RDFBinaryWriter.FORMAT, (WriterGraphRIOTFactory)new RDFBinaryWriter.Factory());
+        RDFWriterRegistry.register(RDFBinaryWriter.FORMAT, (WriterDatasetRIOTFactory)new RDFBinaryWriter.Factory());
+        IO_Jena.registerForModelRead(RDFLanguages.strLangRDFBINARY, RDFBinaryReaderAdapter.class);
+        IO_Jena.registerForModelWrite(RDFLanguages.strLangRDFBINARY, RDFBinaryWriterAdapter.class);
+
 	classes.add(QueriedResourceBase.class); // handles all
-	classes.add(SPARQLEndpointProxyBase.class); // handles /sparql queries
-	classes.add(GraphStoreProxyBase.class); // handles /service requests
+        LocalDataset localDataset = getLocalDataset(servletConfig);
+        if (localDataset != null)
+        {
+            classes.add(SPARQLEndpointLocalBase.class); // handles /sparql queries on the local dataset
+            classes.add(GraphStoreLocalBase.class); // handles /service requests on the local dataset
+            singletons.add(new LocalDatasetProvider(localDataset));
+        }
+        else
+        {
+            classes.add(SPARQLEndpointProxyBase.class); // handles /sparql queries
+            classes.add(GraphStoreProxyBase.class); // handles /service requests
+        }
 
-	singletons.add(new ModelProvider());
-	singletons.add(new DatasetProvider());
+	singletons.add(new ModelProvider(getIntParam(servletConfig, G.writeBufferSize, BufferedNTriplesWriter.DEFAULT_BUFFER_SIZE),
+                getLongParam(servletConfig, G.maxPrettyWriteSize, 0)));
+	singletons.add(new DatasetProvider(getIntParam(servletConfig, G.writeBufferSize, BufferedNTriplesWriter.DEFAULT_BUFFER_SIZE),
+                getLongParam(servletConfig, G.maxPrettyWriteSize, 0)));
         singletons.add(new ResultSetProvider());
+        singletons.add(new RDFInputProvider());
 	singletons.add(new QueryParamProvider());
 	singletons.add(new UpdateRequestReader());
-        singletons.add(new DataManagerProvider());
+        // configuration is read and validated once, shared objects are created on first use
+        singletons.add(new DataManagerProvider(getBooleanParam(servletConfig, G.cacheModelLoads),
+                getBooleanParam(servletConfig, G.preemptiveAuth)));
         singletons.add(new ClientProvider());        
-        singletons.add(new SPARQLEndpointOriginProvider());
-        singletons.add(new GraphStoreOriginProvider());
+        singletons.add(new SPARQLEndpointOriginProvider(getURIParam(servletConfig, SD.endpoint)));
+        singletons.add(new GraphStoreOriginProvider(getURIParam(servletConfig, G.graphStore)));
         singletons.add(new SPARQLEndpointProvider());
-        singletons.add(new MediaTypesProvider());
+        MediaTypes mediaTypes = new MediaTypes(); // after custom languages are registered
+        singletons.add(new MediaTypesProvider(mediaTypes));
+        singletons.add(new VariantRegistryProvider(new VariantRegistry(mediaTypes, Collections.<Locale>emptyList(),
+                ContentCoding.getEncodings(servletConfig), getIntParam(servletConfig, G.variantCacheSize, 1000))));
         singletons.add(new ClientExceptionMapper());        
+        singletons.add(new ClientHandlerExceptionMapper());
         singletons.add(new NotFoundExceptionMapper());
+        singletons.add(new ModelTooLargeExceptionMapper());
+
+        if (getBooleanParam(servletConfig, G.weakEntityTags) || getBooleanParam(servletConfig, G.cacheEntityTags))
+            singletons.add(new EntityTagCacheProvider(new EntityTagCache(getIntParam(servletConfig, G.entityTagCacheSize, 10000),
+                    getLongParam(servletConfig, G.entityTagCacheTTL, 60000), getIntParam(servletConfig, G.maxTaggedEntitySize, 1048576))));
+        if (getIntParam(servletConfig, G.representationCacheSize, 0) > 0)
+            singletons.add(new RepresentationCacheProvider(new RepresentationCache(getIntParam(servletConfig, G.representationCacheSize, 0),
+                    getIntParam(servletConfig, G.maxRepresentationSize, 1048576))));
+        MetricRegistry metricRegistry = null;
+        if (getBooleanParam(servletConfig, G.metrics))
+        {
+            metricRegistry = new MetricRegistry("org.graphity.core:type=Metrics,app=" + ObjectName.quote(servletConfig.getServletName()));
+            singletons.add(new MetricRegistryProvider(metricRegistry));
+            classes.add(MetricsResource.class); // handles /metrics
+        }
+        if (getIntParam(servletConfig, G.queryCacheSize, 1000) > 0)
+            singletons.add(new QueryCacheProvider(new QueryCache(getIntParam(servletConfig, G.queryCacheSize, 1000), metricRegistry)));
+        if (getBooleanParam(servletConfig, G.cacheQueryResults))
+            singletons.add(new QueryResultCacheProvider(new QueryResultCache(getIntParam(servletConfig, G.queryResultCacheSize, 1000),
+                    getLongParam(servletConfig, G.queryResultCacheTriples, 1000000), getLongParam(servletConfig, G.queryResultCacheTTL, 60000))));
+        if (getBooleanParam(servletConfig, G.coalesceQueries))
+            singletons.add(new QueryCoalescerProvider(new QueryCoalescer()));
+        if (getLongParam(servletConfig, G.maxModelTriples, 0) > 0 || getLongParam(servletConfig, G.maxModelBytes, 0) > 0)
+            singletons.add(new ModelBudgetProvider(new ModelBudget(getLongParam(servletConfig, G.maxModelTriples, 0),
+                    getLongParam(servletConfig, G.maxModelBytes, 0), getBooleanParam(servletConfig, G.spillResults),
+                    servletConfig.getInitParameter(G.spillDirectory.getURI()) != null ? new File(servletConfig.getInitParameter(G.spillDirectory.getURI())) : null)));
+        if (getBooleanParam(servletConfig, G.writeBehind))
+            singletons.add(new WriteBehindBufferProvider(new WriteBehindBuffer(getLongParam(servletConfig, G.writeBehindBatchSize, 10000),
+                    getLongParam(servletConfig, G.writeBehindDelay, 1000), getBooleanParam(servletConfig, G.writeBehindSync), metricRegistry)));
+        if (getBooleanParam(servletConfig, G.admissionControl))
+            singletons.add(new AdmissionControllerProvider(new AdmissionController(getIntParam(servletConfig, G.interactiveConcurrency, 16),
+                    getLongParam(servletConfig, G.interactiveQueueTimeout, 1000), getIntParam(servletConfig, G.analyticConcurrency, 2),
+                    getLongParam(servletConfig, G.analyticQueueTimeout, 10000), getLongParam(servletConfig, G.analyticQueryCost, 50),
+                    getLongParam(servletConfig, G.maxQueryCost, 0), metricRegistry)));
     }
     
     /**
@@ -134,6 +245,82 @@ public class Application extends javax.ws.rs.core.Application
 	return servletConfig;
     }
 
+    /**
+     * Returns registered singleton of the given class.
+     * 
+     * @param <T> singleton type
+     * @param type singleton class
+     * @return singleton or null, if none is registered
+     */
+    public <T> T getSingleton(Class<T> type)
+    {
+	if (type == null) throw new IllegalArgumentException("Class cannot be null");
+
+        for (Object singleton : getSingletons())
+            if (type.isInstance(singleton)) return type.cast(singleton);
+        
+        return null;
+    }
+    
+    /**
+     * Releases application-wide resources when the application is destroyed.
+     * Jersey does not destroy singletons created by the application, so they are destroyed here, in dependency order:
+     * pending write-behind appends are flushed before the HTTP client that sends them is shut down.
+     */
+    @PreDestroy
+    public void destroy()
+    {
+        WriteBehindBufferProvider writeBehindBufferProvider = getSingleton(WriteBehindBufferProvider.class);
+        if (writeBehindBufferProvider != null) writeBehindBufferProvider.destroy();
+        
+        ClientProvider clientProvider = getSingleton(ClientProvider.class);
+        if (clientProvider != null) clientProvider.destroy();
+        
+        LocalDatasetProvider localDatasetProvider = getSingleton(LocalDatasetProvider.class);
+        if (localDatasetProvider != null) localDatasetProvider.destroy();
+        
+        MetricRegistryProvider metricRegistryProvider = getSingleton(MetricRegistryProvider.class);
+        if (metricRegistryProvider != null) metricRegistryProvider.destroy();
+    }
+
+    /**
+     * Returns local dataset, if one is configured.
+     * TDB dataset is opened if <code>g:datasetLocation</code> is set. Otherwise, if <code>g:datasetFile</code> is set,
+     * the file is loaded into an in-memory (transactional) TDB dataset.
+     * 
+     * @param servletConfig servlet config
+     * @return dataset or null, if requests are forwarded to the origins
+     */
+    public LocalDataset getLocalDataset(ServletConfig servletConfig)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+
+        Dataset dataset;
+        if (servletConfig.getInitParameter(G.datasetLocation.getURI()) != null)
+        {
+            if (log.isDebugEnabled()) log.debug("Opening TDB Dataset at location: {}", servletConfig.getInitParameter(G.datasetLocation.getURI()));
+            dataset = TDBFactory.createDataset(servletConfig.getInitParameter(G.datasetLocation.getURI()));
+        }
+        else if (servletConfig.getInitParameter(G.datasetFile.getURI()) != null)
+        {
+            if (log.isDebugEnabled()) log.debug("Loading in-memory Dataset from file: {}", servletConfig.getInitParameter(G.datasetFile.getURI()));
+            dataset = TDBFactory.createDataset();
+            dataset.begin(ReadWrite.WRITE);
+            try
+            {
+                RDFDataMgr.read(dataset, servletConfig.getInitParameter(G.datasetFile.getURI()));
+                dataset.commit();
+            }
+            finally
+            {
+                dataset.end();
+            }
+        }
+        else return null;
+        
+        return new LocalDataset(dataset, getLongParam(servletConfig, G.queryTimeout, 0));
+    }
+
     public boolean getBooleanParam(ServletConfig servletConfig, Property property)
     {
 	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
@@ -145,4 +332,44 @@ public class Application extends javax.ws.rs.core.Application
         return value;
     }
 
+    public int getIntParam(ServletConfig servletConfig, Property property, int defaultValue)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (servletConfig.getInitParameter(property.getURI()) != null)
+            return Integer.parseInt(servletConfig.getInitParameter(property.getURI()).toString());
+        return defaultValue;
+    }
+
+    /**
+     * Returns absolute URI parameter value.
+     * Invalid values fail application startup, instead of failing every request.
+     * 
+     * @param servletConfig servlet config
+     * @param property parameter property
+     * @return URI or null, if parameter is not set
+     */
+    public URI getURIParam(ServletConfig servletConfig, Property property)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (servletConfig.getInitParameter(property.getURI()) == null) return null;
+        
+        URI uri = URI.create(servletConfig.getInitParameter(property.getURI()).toString());
+        if (!uri.isAbsolute()) throw new IllegalArgumentException("Parameter <" + property.getURI() + "> value must be an absolute URI");
+        return uri;
+    }
+
+    public long getLongParam(ServletConfig servletConfig, Property property, long defaultValue)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (servletConfig.getInitParameter(property.getURI()) != null)
+            return Long.parseLong(servletConfig.getInitParameter(property.getURI()).toString());
+        return defaultValue;
+    }
+
 }
\ No newline at end of file
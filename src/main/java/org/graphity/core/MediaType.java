@@ -83,6 +83,11 @@ public class MediaType extends javax.ws.rs.core.MediaType
     /** "application/rdf+x-www-form-urlencoded" */
     public final static MediaType APPLICATION_RDF_URLENCODED_TYPE = new MediaType("application","application/rdf+x-www-form-urlencoded");
 
+    /** "application/vnd.graphity.rdf-binary" */
+    public final static String APPLICATION_RDF_BINARY = "application/vnd.graphity.rdf-binary";
+    /** "application/vnd.graphity.rdf-binary" */
+    public final static MediaType APPLICATION_RDF_BINARY_TYPE = new MediaType("application","vnd.graphity.rdf-binary");
+
     public MediaType(Lang lang)
     {
         this(lang.getContentType());
@@ -143,6 +143,32 @@ public class MediaTypes
         return mediaTypes;
     }
 
+    /**
+     * Returns media types with the preferred one first and the rest with lower quality, e.g. to be used as
+     * <code>Accept</code> header values.
+     * 
+     * @param preferred preferred media type
+     * @param mediaTypes other acceptable media types
+     * @return array of media types
+     */
+    public static javax.ws.rs.core.MediaType[] prefer(javax.ws.rs.core.MediaType preferred, javax.ws.rs.core.MediaType[] mediaTypes)
+    {
+	if (preferred == null) throw new IllegalArgumentException("MediaType cannot be null");
+	if (mediaTypes == null) throw new IllegalArgumentException("MediaType[] cannot be null");
+
+        List<javax.ws.rs.core.MediaType> list = new ArrayList<>();
+        list.add(preferred);
+        for (javax.ws.rs.core.MediaType mediaType : mediaTypes)
+            if (!(mediaType.getType().equals(preferred.getType()) && mediaType.getSubtype().equals(preferred.getSubtype())))
+            {
+                Map<String, String> parameters = new HashMap<>(mediaType.getParameters());
+                parameters.put("q", "0.9");
+                list.add(new javax.ws.rs.core.MediaType(mediaType.getType(), mediaType.getSubtype(), parameters));
+            }
+
+        return list.toArray(new javax.ws.rs.core.MediaType[list.size()]);
+    }
+
     /**
      * Returns Java class to JAX-RS media type map.
      * 
@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.graphity.core.util.Deadline;
+
+/**
+ * Client filter that attaches the abortable origin request recorded by {@link AbortableRequestInterceptor} to its
+ * response, and forgets it on the current thread whether or not the request succeeded.
+ * Callers get the request from the response instead of the thread, so that no request outlives its call.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.provider.ClientProvider
+ */
+public class AbortableRequestFilter extends ClientFilter
+{
+
+    public static final String PROPERTY = AbortableRequestFilter.class.getName() + ".abortable";
+    
+    @Override
+    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException
+    {
+        try
+        {
+            ClientResponse response = getNext().handle(cr);
+            Deadline.Abortable abortable = AbortableRequestInterceptor.remove();
+            if (abortable != null) response.getProperties().put(PROPERTY, abortable);
+            return response;
+        }
+        finally
+        {
+            AbortableRequestInterceptor.clear();
+        }
+    }
+
+    /**
+     * Returns abortable origin request of a response.
+     * 
+     * @param cr origin response
+     * @return abortable request, or null if the response was not received through this filter
+     */
+    public static Deadline.Abortable getAbortable(ClientResponse cr)
+    {
+	if (cr == null) throw new IllegalArgumentException("ClientResponse cannot be null");
+
+        return (Deadline.Abortable)cr.getProperties().get(PROPERTY);
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.graphity.core.client;
+
+import java.io.IOException;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.graphity.core.util.Deadline;
+
+/**
+ * HTTP client interceptor that records the origin request sent from the current thread, so that reading its
+ * response can be stopped early.
+ * Closing a response stream makes the client consume the rest of the response, in order to reuse the connection.
+ * Aborting the request instead closes the connection without reading any further.
+ * The request is handed over to the response by {@link AbortableRequestFilter}, which has to be added to the client.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.LimitedResultSet
+ * @see org.graphity.core.util.RDFInput#abort()
+ */
+public class AbortableRequestInterceptor implements HttpRequestInterceptor
+{
+
+    private static final ThreadLocal<AbortableHttpRequest> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Returns and forgets the last origin request sent from the current thread.
+     * Has to be called right after the request has been executed.
+     * 
+     * @return abortable request or null
+     * @see AbortableRequestFilter
+     */
+    public static Deadline.Abortable remove()
+    {
+        final AbortableHttpRequest request = CURRENT.get();
+        if (request == null) return null;
+        
+        CURRENT.remove();
+        return new Deadline.Abortable()
+        {
+            @Override
+            public void abort()
+            {
+                request.abort(); // no-op if the connection has already been released
+            }
+        };
+    }
+    
+    /**
+     * Forgets the last origin request sent from the current thread.
+     */
+    public static void clear()
+    {
+        CURRENT.remove();
+    }
+    
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException
+    {
+        HttpRequest original = request;
+        if (request instanceof RequestWrapper) original = ((RequestWrapper)request).getOriginal();
+        if (original instanceof AbortableHttpRequest) CURRENT.set((AbortableHttpRequest)original);
+        else CURRENT.remove();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.graphity.core.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.graphity.core.util.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP client interceptor that propagates the deadline of the current request to origin requests.
+ * The socket timeout of the origin connection is lowered to the time remaining until the deadline, and the origin
+ * request is registered with the deadline, so that it is aborted (its connection shut down, including the response
+ * entity stream) when the deadline expires or the client disconnects. Requests are not sent if the deadline has
+ * already passed.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.Deadline
+ * @see org.graphity.core.provider.ClientProvider
+ */
+public class DeadlineInterceptor implements HttpRequestInterceptor
+{
+    private static final Logger log = LoggerFactory.getLogger(DeadlineInterceptor.class);
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException
+    {
+        Deadline deadline = Deadline.get();
+        if (deadline == null) return;
+        
+        if (deadline.isExpired())
+        {
+            if (log.isDebugEnabled()) log.debug("Deadline has passed, not sending request: {}", request.getRequestLine());
+            throw new InterruptedIOException("Request deadline of " + deadline.getTimeout() + " ms exceeded");
+        }
+        
+        HttpConnection connection = (HttpConnection)context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+        if (connection != null)
+        {
+            int remaining = (int)Math.min(Integer.MAX_VALUE, Math.max(1, deadline.getRemaining()));
+            if (connection.getSocketTimeout() == 0 || connection.getSocketTimeout() > remaining)
+                connection.setSocketTimeout(remaining); // reset by the client when the connection is reused
+        }
+        
+        HttpRequest original = request;
+        if (request instanceof RequestWrapper) original = ((RequestWrapper)request).getOriginal();
+        if (original instanceof AbortableHttpRequest)
+        {
+            final AbortableHttpRequest abortable = (AbortableHttpRequest)original;
+            deadline.register(new Deadline.Abortable()
+            {
+                @Override
+                public void abort()
+                {
+                    abortable.abort(); // no-op if the connection has already been released
+                }
+            });
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ package org.graphity.core.client;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import javax.ws.rs.core.StreamingOutput;
 import org.graphity.core.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -139,4 +140,50 @@ public class GraphStoreClient
             post(ClientResponse.class, model);
     }
     
-}
+    public ClientResponse putModel(MediaType contentType, StreamingOutput output)
+    {
+        if (contentType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (output == null) throw new IllegalArgumentException("StreamingOutput cannot be null");
+        
+	if (log.isDebugEnabled()) log.debug("PUT streamed Model to Graph Store {} default graph", getWebResource().getURI());
+	return getWebResource().queryParam("default", "").
+            type(contentType).
+            put(ClientResponse.class, output);
+    }
+
+    public ClientResponse putModel(MediaType contentType, String graphURI, StreamingOutput output)
+    {
+        if (contentType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (graphURI == null) throw new IllegalArgumentException("String cannot be null");
+        if (output == null) throw new IllegalArgumentException("StreamingOutput cannot be null");
+        
+	if (log.isDebugEnabled()) log.debug("PUT streamed Model to Graph Store {} with named graph URI {}", getWebResource().getURI(), graphURI);
+	return getWebResource().queryParam("graph", graphURI).
+            type(contentType).
+            put(ClientResponse.class, output);
+    }
+
+    public ClientResponse add(MediaType contentType, StreamingOutput output)
+    {
+        if (contentType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (output == null) throw new IllegalArgumentException("StreamingOutput cannot be null");
+        
+	if (log.isDebugEnabled()) log.debug("POST streamed Model to Graph Store {} default graph", getWebResource().getURI());
+	return getWebResource().queryParam("default", "").
+            type(contentType).
+            post(ClientResponse.class, output);
+    }
+
+    public ClientResponse add(MediaType contentType, String graphURI, StreamingOutput output)
+    {
+        if (contentType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (graphURI == null) throw new IllegalArgumentException("String cannot be null");
+        if (output == null) throw new IllegalArgumentException("StreamingOutput cannot be null");
+
+	if (log.isDebugEnabled()) log.debug("POST streamed Model to Graph Store {} with named graph URI: {}", getWebResource().getURI(), graphURI);
+	return getWebResource().queryParam("graph", graphURI).
+            type(contentType).
+            post(ClientResponse.class, output);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client filter that limits the number of concurrent requests to each origin (scheme, host and port).
+ * A request waits for a free slot for a limited time, and is rejected with <code>503 Service Unavailable</code>
+ * if the origin is still saturated. The slot is held until the response entity stream is closed, so that
+ * streamed responses are counted until they are fully consumed.
+ * Configured using <code>g:maxConcurrentOriginRequests</code> and <code>g:originWaitTimeout</code> parameters in web.xml.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.provider.ClientProvider
+ */
+public class OriginConcurrencyFilter extends ClientFilter
+{
+    private static final Logger log = LoggerFactory.getLogger(OriginConcurrencyFilter.class);
+
+    private final int limit;
+    private final long waitTimeout;
+    private final ConcurrentMap<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs filter.
+     * 
+     * @param limit maximum number of concurrent requests per origin
+     * @param waitTimeout time to wait for a free slot in milliseconds
+     */
+    public OriginConcurrencyFilter(int limit, long waitTimeout)
+    {
+        if (limit <= 0) throw new IllegalArgumentException("Concurrency limit must be positive");
+        this.limit = limit;
+        this.waitTimeout = waitTimeout;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException
+    {
+        String origin = getOrigin(cr.getURI());
+        Semaphore semaphore = getSemaphore(origin);
+        
+        try
+        {
+            if (!semaphore.tryAcquire(getWaitTimeout(), TimeUnit.MILLISECONDS))
+            {
+                if (log.isWarnEnabled()) log.warn("Concurrency limit of {} requests reached for origin: {}", getLimit(), origin);
+                throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE).
+                        header("Retry-After", Math.max(1, getWaitTimeout() / 1000)).
+                        build());
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new ClientHandlerException(ex);
+        }
+        
+        Permit permit = new Permit(semaphore);
+        try
+        {
+            ClientResponse response = getNext().handle(cr);
+            if (response.hasEntity()) response.setEntityInputStream(new PermitInputStream(response.getEntityInputStream(), permit));
+            else permit.release();
+            return response;
+        }
+        catch (RuntimeException ex)
+        {
+            permit.release();
+            throw ex;
+        }
+    }
+
+    public Semaphore getSemaphore(String origin)
+    {
+        Semaphore semaphore = semaphores.get(origin);
+        if (semaphore == null)
+        {
+            semaphore = new Semaphore(getLimit(), true);
+            Semaphore existing = semaphores.putIfAbsent(origin, semaphore);
+            if (existing != null) semaphore = existing;
+        }
+        return semaphore;
+    }
+
+    public String getOrigin(URI uri)
+    {
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+    
+    /**
+     * Returns the number of requests currently in flight to the given origin.
+     * 
+     * @param origin origin (scheme and authority)
+     * @return number of active requests
+     */
+    public int getActiveCount(String origin)
+    {
+        Semaphore semaphore = semaphores.get(origin);
+        if (semaphore == null) return 0;
+        return getLimit() - semaphore.availablePermits();
+    }
+    
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public long getWaitTimeout()
+    {
+        return waitTimeout;
+    }
+
+    /**
+     * Concurrency slot that is released exactly once.
+     */
+    public static class Permit
+    {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public Permit(Semaphore semaphore)
+        {
+            this.semaphore = semaphore;
+        }
+        
+        public void release()
+        {
+            if (released.compareAndSet(false, true)) semaphore.release();
+        }
+        
+    }
+    
+    /**
+     * Entity stream that releases the concurrency slot when it is closed.
+     */
+    public static class PermitInputStream extends FilterInputStream
+    {
+        private final Permit permit;
+        
+        public PermitInputStream(InputStream in, Permit permit)
+        {
+            super(in);
+            this.permit = permit;
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                permit.release();
+            }
+        }
+        
+    }
+    
+}
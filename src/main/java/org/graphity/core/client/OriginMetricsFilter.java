@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.graphity.core.metrics.MetricRegistry;
+
+/**
+ * Client filter that records origin round-trip time (until response headers are received) as <code>origin.rtt</code>,
+ * and the size and total transfer time of origin responses (recorded when the entity stream is closed)
+ * as <code>origin.response.size</code> and <code>origin.transfer</code>.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.metrics.MetricRegistry
+ * @see org.graphity.core.provider.ClientProvider
+ */
+public class OriginMetricsFilter extends ClientFilter
+{
+
+    private final MetricRegistry metricRegistry;
+
+    public OriginMetricsFilter(MetricRegistry metricRegistry)
+    {
+	if (metricRegistry == null) throw new IllegalArgumentException("MetricRegistry cannot be null");
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest cr) throws ClientHandlerException
+    {
+        long start = System.nanoTime();
+        ClientResponse response = getNext().handle(cr);
+        getMetricRegistry().recordSince("origin.rtt", start);
+        
+        if (response.hasEntity()) response.setEntityInputStream(new MeteredInputStream(response.getEntityInputStream(), getMetricRegistry(), start));
+        else getMetricRegistry().summary("origin.response.size").record(0);
+        
+        return response;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+    
+    /**
+     * Entity stream that counts the bytes read and records the metrics when it is closed.
+     */
+    public static class MeteredInputStream extends FilterInputStream
+    {
+        private final MetricRegistry metricRegistry;
+        private final long start;
+        private long count = 0;
+        private boolean closed = false;
+        
+        public MeteredInputStream(InputStream in, MetricRegistry metricRegistry, long start)
+        {
+            super(in);
+            this.metricRegistry = metricRegistry;
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                if (!closed)
+                {
+                    closed = true;
+                    metricRegistry.recordSince("origin.transfer", start);
+                    metricRegistry.summary("origin.response.size").record(count);
+                }
+            }
+        }
+
+    }
+    
+}
@@ -170,6 +170,38 @@ public class SPARQLClient
             post(ClientResponse.class, formData);
     }
     
+    /**
+     * Executes update request on a remote SPARQL endpoint using direct <code>POST</code>.
+     * The update is streamed as <code>application/sparql-update</code> request body instead of being URL-encoded as
+     * a form parameter. Request parameters (e.g. <code>using-graph-uri</code>) are sent in the query string.
+     * 
+     * @param updateRequest update request
+     * @param params name/value pairs of request parameters or null, if none
+     * @return client response
+     * @see <a href="http://www.w3.org/TR/sparql11-protocol/#update-via-post-direct">update via POST directly</a>
+     */
+    public ClientResponse updateDirect(UpdateRequest updateRequest, MultivaluedMap<String, String> params)
+    {
+	if (log.isDebugEnabled()) log.debug("Remote service {} direct UpdateRequest with {} operations", getWebResource().getURI(), updateRequest == null ? 0 : updateRequest.getOperations().size());
+	if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest must be not null");
+
+        WebResource updateResource = getWebResource();
+        if (params != null)
+        {
+            MultivaluedMap<String, String> encodedParams = new MultivaluedMapImpl();
+            for (Map.Entry<String, List<String>> entry : params.entrySet())
+                for (String value : entry.getValue())
+                    encodedParams.add(UriComponent.encode(entry.getKey(), UriComponent.Type.UNRESERVED),
+                        UriComponent.encode(value, UriComponent.Type.UNRESERVED));
+
+            updateResource = updateResource.queryParams(encodedParams);
+        }
+        
+	return updateResource.
+            type(MediaType.APPLICATION_SPARQL_UPDATE_TYPE).
+            post(ClientResponse.class, updateRequest);
+    }
+    
     public int getMaxGetRequestSize()
     {
         return maxGetRequestSize;
@@ -28,6 +28,7 @@ public class ClientException extends RuntimeException
     public ClientException(ClientResponse clientResponse)
     {
         super(clientResponse.getStatusInfo().getReasonPhrase());
+        clientResponse.close(); // the entity will not be read, release the origin connection
     }
     
 }
\ No newline at end of file
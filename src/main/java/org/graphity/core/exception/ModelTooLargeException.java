@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.exception;
+
+import org.graphity.core.util.RDFInput;
+
+/**
+ * Thrown when RDF does not fit into the per-request memory budget.
+ * If spilling is enabled, the complete RDF has been written to a temporary file, which can be streamed to the
+ * response instead of a model. Otherwise parsing was aborted as soon as the budget was exceeded.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.ModelBudget
+ * @see org.graphity.core.mapper.ModelTooLargeExceptionMapper
+ */
+public class ModelTooLargeException extends RuntimeException
+{
+    
+    private final long tripleCount, byteCount;
+    private final RDFInput spill;
+
+    public ModelTooLargeException(String message, long tripleCount, long byteCount, RDFInput spill)
+    {
+        super(message);
+        this.tripleCount = tripleCount;
+        this.byteCount = byteCount;
+        this.spill = spill;
+    }
+
+    public ModelTooLargeException(String message, long tripleCount, long byteCount)
+    {
+        this(message, tripleCount, byteCount, null);
+    }
+
+    /**
+     * Returns number of triples read before the budget was exceeded, or all triples if RDF was spilled.
+     * 
+     * @return triple count
+     */
+    public long getTripleCount()
+    {
+        return tripleCount;
+    }
+
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Returns spilled RDF, which has to be closed if it is not written.
+     * 
+     * @return N-Triples input or null, if RDF was not spilled
+     */
+    public RDFInput getSpill()
+    {
+        return spill;
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.filter;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.zip.DeflaterOutputStream;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.RepresentationCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jersey response filter that compresses response bodies using the content coding of the selected variant.
+ * Resources negotiate the coding as part of the response variant (see <code>g:contentEncodings</code>), which sets
+ * the <code>Content-Encoding</code> header; this filter applies it while the body is being written.
+ * <code>identity</code> coding is removed from the response headers.
+ * 
+ * If the representation cache is enabled (<code>g:representationCacheSize</code>), compressed bodies of
+ * <code>200 OK</code> responses with strong entity tags are cached, and later responses with the same tag are
+ * served from the cache without serializing or compressing the entity.
+ * 
+ * Needs to be registered in web.xml as <code>com.sun.jersey.spi.container.ContainerResponseFilters</code>
+ * init parameter, before <code>EntityTagFilter</code>.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.ContentCoding
+ * @see org.graphity.core.util.RepresentationCache
+ */
+public class CompressionFilter implements ContainerResponseFilter
+{
+    private static final Logger log = LoggerFactory.getLogger(CompressionFilter.class);
+
+    @Context Providers providers;
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response)
+    {
+        Object value = response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (value == null) return response;
+        
+        String coding = value.toString();
+        if (ContentCoding.isIdentity(coding))
+        {
+            response.getHttpHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            return response;
+        }
+        if (!ContentCoding.isSupported(coding) || response.getEntity() == null ||
+                request.getMethod().equals(HttpMethod.HEAD))
+            return response;
+        
+        RepresentationCache cache = getRepresentationCache();
+        EntityTag entityTag = getEntityTag(response);
+        if (cache == null || entityTag == null || entityTag.isWeak() || response.getMediaType() == null ||
+                !request.getMethod().equals(HttpMethod.GET) || response.getStatus() != Response.Status.OK.getStatusCode())
+        {
+            response.setContainerResponseWriter(new CompressingWriter(response.getContainerResponseWriter(), coding));
+            return response;
+        }
+
+        URI requestUri = request.getRequestUri();
+        MediaType mediaType = response.getMediaType();
+        byte[] bytes = cache.get(requestUri, mediaType, coding, entityTag);
+        if (bytes != null)
+        {
+            if (log.isTraceEnabled()) log.trace("Serving cached {} representation with EntityTag {}", coding, entityTag);
+            close(response.getEntity());
+            response.setEntity(bytes);
+            return response;
+        }
+        
+        response.setContainerResponseWriter(new CachingWriter(response.getContainerResponseWriter(), coding,
+                cache, requestUri, mediaType, entityTag));
+        return response;
+    }
+
+    public EntityTag getEntityTag(ContainerResponse response)
+    {
+        Object value = response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+        if (value == null) return null;
+        if (value instanceof EntityTag) return (EntityTag)value;
+        
+        return EntityTag.valueOf(value.toString());
+    }
+
+    /**
+     * Releases resources held by an entity that will not be written.
+     *
+     * @param entity response entity
+     */
+    public void close(Object entity)
+    {
+        if (entity instanceof Closeable)
+            try
+            {
+                ((Closeable)entity).close();
+            }
+            catch (IOException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not close Response entity", ex);
+            }
+    }
+
+    public RepresentationCache getRepresentationCache()
+    {
+        return SingletonContextProvider.getContext(getProviders(), RepresentationCache.class);
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
+    /**
+     * Response writer that compresses the body. The length of the compressed body is not known in advance.
+     */
+    public static class CompressingWriter implements ContainerResponseWriter
+    {
+        private final ContainerResponseWriter writer;
+        private final String coding;
+        private DeflaterOutputStream out;
+
+        public CompressingWriter(ContainerResponseWriter writer, String coding)
+        {
+            this.writer = writer;
+            this.coding = coding;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException
+        {
+            out = ContentCoding.compress(coding, getOutputStream(writer.writeStatusAndHeaders(-1, response)));
+            return out;
+        }
+
+        /**
+         * Returns stream that the compressed bytes are written to.
+         * 
+         * @param out container stream
+         * @return output stream
+         */
+        public OutputStream getOutputStream(OutputStream out)
+        {
+            return out;
+        }
+        
+        @Override
+        public void finish() throws IOException
+        {
+            if (out != null) out.finish();
+            writer.finish();
+        }
+
+    }
+
+    /**
+     * Response writer that compresses the body and caches the compressed bytes when the response is finished.
+     */
+    public static class CachingWriter extends CompressingWriter
+    {
+        private final RepresentationCache cache;
+        private final URI requestUri;
+        private final MediaType mediaType;
+        private final String coding;
+        private final EntityTag entityTag;
+        private CapturingOutputStream capture;
+
+        public CachingWriter(ContainerResponseWriter writer, String coding, RepresentationCache cache, URI requestUri, MediaType mediaType, EntityTag entityTag)
+        {
+            super(writer, coding);
+            this.cache = cache;
+            this.requestUri = requestUri;
+            this.mediaType = mediaType;
+            this.coding = coding;
+            this.entityTag = entityTag;
+        }
+
+        @Override
+        public OutputStream getOutputStream(OutputStream out)
+        {
+            capture = new CapturingOutputStream(out, cache.getMaxEntrySize());
+            return capture;
+        }
+
+        @Override
+        public void finish() throws IOException
+        {
+            super.finish();
+
+            if (capture != null && capture.getBytes() != null)
+                cache.put(requestUri, mediaType, coding, entityTag, capture.getBytes());
+        }
+
+    }
+
+    /**
+     * Output stream that keeps a copy of the bytes written through it, up to a maximum size.
+     */
+    public static class CapturingOutputStream extends FilterOutputStream
+    {
+        private final int maxSize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private boolean failed = false;
+
+        public CapturingOutputStream(OutputStream out, int maxSize)
+        {
+            super(out);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{ (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                out.write(b, off, len);
+            }
+            catch (IOException ex)
+            {
+                failed = true;
+                throw ex;
+            }
+
+            if (copy != null)
+            {
+                if (copy.size() + len > maxSize) copy = null; // too large to be cached
+                else copy.write(b, off, len);
+            }
+        }
+
+        /**
+         * Returns written bytes, or null if they exceeded the maximum size or writing failed.
+         * 
+         * @return byte array or null
+         */
+        public byte[] getBytes()
+        {
+            if (failed || copy == null) return null;
+            
+            return copy.toByteArray();
+        }
+
+    }
+    
+}
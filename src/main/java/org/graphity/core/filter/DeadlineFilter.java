@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.filter;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import org.graphity.core.util.Deadline;
+import org.graphity.core.vocabulary.G;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jersey request and response filter that sets a deadline for each request.
+ * The timeout is configured using <code>g:queryTimeout</code> parameter in web.xml, and can be lowered per request
+ * using the <code>timeout</code> query parameter (in milliseconds). Origin requests and local query executions
+ * made on behalf of the request are aborted when the deadline expires, and the request is answered with
+ * <code>503 Service Unavailable</code>. They are also aborted if writing the response fails because the client has
+ * disconnected. The deadline lasts until the response body has been completely written.
+ * 
+ * Needs to be registered in web.xml as both <code>com.sun.jersey.spi.container.ContainerRequestFilters</code> and
+ * <code>com.sun.jersey.spi.container.ContainerResponseFilters</code> init parameter.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.Deadline
+ */
+public class DeadlineFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+    private static final Logger log = LoggerFactory.getLogger(DeadlineFilter.class);
+
+    public static final String DEADLINE = Deadline.class.getName();
+    public static final String TIMEOUT_PARAM = "timeout";
+    
+    @Context ServletConfig servletConfig;
+    @Context HttpServletRequest httpServletRequest;
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request)
+    {
+        Deadline previous = Deadline.get();
+        if (previous != null) // left behind by a request that failed before its response was written
+        {
+            previous.close();
+            Deadline.remove();
+        }
+
+        long timeout = getTimeout(request);
+        if (timeout > 0)
+        {
+            Deadline deadline = new Deadline(timeout);
+            Deadline.set(deadline);
+            request.getProperties().put(DEADLINE, deadline);
+            if (getHttpServletRequest() != null) getHttpServletRequest().setAttribute(DEADLINE, deadline); // for async timeouts
+        }
+        
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response)
+    {
+        Deadline deadline = (Deadline)request.getProperties().get(DEADLINE);
+        if (deadline == null) return response;
+        
+        response.setContainerResponseWriter(new DeadlineWriter(response.getContainerResponseWriter(), deadline));
+        return response;
+    }
+
+    /**
+     * Returns request timeout: the configured timeout, or the timeout requested by the client if it is shorter.
+     * 
+     * @param request current request
+     * @return timeout in milliseconds, or zero if there is none
+     */
+    public long getTimeout(ContainerRequest request)
+    {
+        long timeout = 0;
+        if (getServletConfig() != null && getServletConfig().getInitParameter(G.queryTimeout.getURI()) != null)
+            timeout = Long.parseLong(getServletConfig().getInitParameter(G.queryTimeout.getURI()));
+
+        String requested = request.getQueryParameters().getFirst(TIMEOUT_PARAM);
+        if (requested != null)
+        {
+            long requestedTimeout;
+            try
+            {
+                requestedTimeout = Long.parseLong(requested);
+            }
+            catch (NumberFormatException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Invalid timeout parameter value: {}", requested);
+                throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
+            }
+            if (requestedTimeout <= 0) throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            
+            if (timeout == 0 || requestedTimeout < timeout) timeout = requestedTimeout;
+        }
+        
+        return timeout;
+    }
+
+    public ServletConfig getServletConfig()
+    {
+        return servletConfig;
+    }
+
+    public HttpServletRequest getHttpServletRequest()
+    {
+        return httpServletRequest;
+    }
+
+    /**
+     * Response writer that aborts the deadline's work if the client disconnects, and ends the deadline when the
+     * response is finished.
+     */
+    public static class DeadlineWriter implements ContainerResponseWriter
+    {
+        private final ContainerResponseWriter writer;
+        private final Deadline deadline;
+
+        public DeadlineWriter(ContainerResponseWriter writer, Deadline deadline)
+        {
+            this.writer = writer;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException
+        {
+            return new AbortingOutputStream(writer.writeStatusAndHeaders(contentLength, response), deadline);
+        }
+
+        @Override
+        public void finish() throws IOException
+        {
+            try
+            {
+                writer.finish();
+            }
+            finally
+            {
+                deadline.close();
+                if (Deadline.get() == deadline) Deadline.remove();
+            }
+        }
+
+    }
+
+    /**
+     * Output stream that aborts the deadline's work when writing fails, i.e. the client is gone and the rest of
+     * the origin response would be read for nothing.
+     */
+    public static class AbortingOutputStream extends FilterOutputStream
+    {
+        private final Deadline deadline;
+
+        public AbortingOutputStream(OutputStream out, Deadline deadline)
+        {
+            super(out);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            try
+            {
+                out.write(b);
+            }
+            catch (IOException ex)
+            {
+                abort(ex);
+                throw ex;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                out.write(b, off, len);
+            }
+            catch (IOException ex)
+            {
+                abort(ex);
+                throw ex;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            try
+            {
+                out.flush();
+            }
+            catch (IOException ex)
+            {
+                abort(ex);
+                throw ex;
+            }
+        }
+
+        public void abort(IOException ex)
+        {
+            if (log.isDebugEnabled()) log.debug("Writing response failed (client disconnected?), aborting origin requests", ex);
+            deadline.abort();
+        }
+
+    }
+
+}
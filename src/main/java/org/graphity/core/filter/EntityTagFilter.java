@@ -0,0 +1,326 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.filter;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.zip.CRC32;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.EntityTagCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jersey response filter that implements weak validation of <code>GET</code> responses in a single pass.
+ * The entity tag is computed from the response body bytes while they are being serialized into a buffer, sent with
+ * the body, and stored in the entity tag cache. Bodies larger than the buffer (<code>g:maxTaggedEntitySize</code>)
+ * are streamed without a tag. Conditional requests to the same URI with the same media type and content coding that
+ * match a cached tag are answered with <code>304 Not Modified</code>, but a cached tag is never sent with a body
+ * other than the one it has been computed from.
+ * Responses that already have an <code>ETag</code> (i.e. strong tags computed by resources) are not hashed, but
+ * their tags are cached as well. Resources consult the cache before loading their entities, so that matching
+ * conditional requests do not reach the origin.
+ * Tags of compressed responses are suffixed with their content coding, as their bodies are hashed before compression.
+ * Successful modifying requests clear the cache.
+ *
+ * Needs to be registered in web.xml as <code>com.sun.jersey.spi.container.ContainerResponseFilters</code>
+ * init parameter, and requires <code>g:weakEntityTags</code> or <code>g:cacheEntityTags</code> to be enabled.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.EntityTagCache
+ */
+public class EntityTagFilter implements ContainerResponseFilter
+{
+    private static final Logger log = LoggerFactory.getLogger(EntityTagFilter.class);
+
+    @Context Providers providers;
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response)
+    {
+        EntityTagCache cache = getEntityTagCache();
+        if (cache == null) return response;
+        
+        if (isModifying(request, response))
+        {
+            cache.clear(); // data might have changed, cached tags cannot be trusted anymore
+            return response;
+        }
+        
+        if (!request.getMethod().equals(HttpMethod.GET)) return response;
+        if (response.getStatus() != Response.Status.OK.getStatusCode() || response.getEntity() == null ||
+                response.getMediaType() == null)
+            return response;
+
+        URI requestUri = request.getRequestUri();
+        MediaType mediaType = response.getMediaType();
+        String coding = getContentCoding(response);
+        if (response.getHttpHeaders().containsKey(HttpHeaders.ETAG))
+        {
+            // strong tag computed by the resource: index it, so that the next conditional request can skip the origin
+            Object value = response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+            if (value instanceof EntityTag) cache.put(requestUri, mediaType, coding, (EntityTag)value);
+            else cache.put(requestUri, mediaType, coding, EntityTag.valueOf(value.toString()));
+            return response;
+        }
+
+        EntityTag entityTag = cache.get(requestUri, mediaType, coding);
+        if (entityTag != null)
+        {
+            ResponseBuilder rb = request.evaluatePreconditions(entityTag);
+            if (rb != null)
+            {
+                if (log.isTraceEnabled()) log.trace("Cached EntityTag {} matches request preconditions, skipping Response entity", entityTag);
+                close(response.getEntity());
+
+                Response notModified = rb.build();
+                if (response.getHttpHeaders().containsKey(HttpHeaders.CACHE_CONTROL))
+                    notModified.getMetadata().put(HttpHeaders.CACHE_CONTROL, response.getHttpHeaders().get(HttpHeaders.CACHE_CONTROL));
+                response.setResponse(notModified);
+                return response;
+            }
+        }
+
+        response.setContainerResponseWriter(new EntityTagWriter(response.getContainerResponseWriter(),
+                cache, requestUri, mediaType, coding));
+        return response;
+    }
+
+    /**
+     * Returns true if the request has successfully modified data, e.g. a Graph Store write or SPARQL update.
+     * Direct <code>POST</code> of SPARQL queries is not considered modifying.
+     *
+     * @param request current request
+     * @param response current response
+     * @return true if request modified data
+     */
+    public boolean isModifying(ContainerRequest request, ContainerResponse response)
+    {
+        if (request.getMethod().equals(HttpMethod.GET) || request.getMethod().equals(HttpMethod.HEAD) ||
+                request.getMethod().equals(HttpMethod.OPTIONS))
+            return false;
+        if (request.getMediaType() != null &&
+                request.getMediaType().isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_QUERY_TYPE))
+            return false;
+
+        return response.getStatusType().getFamily().equals(Response.Status.Family.SUCCESSFUL);
+    }
+
+    /**
+     * Returns content coding of the response, if any.
+     *
+     * @param response current response
+     * @return <code>Content-Encoding</code> header value or null
+     */
+    public String getContentCoding(ContainerResponse response)
+    {
+        Object value = response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (value == null) return null;
+
+        return value.toString();
+    }
+
+    /**
+     * Releases resources held by an entity that will not be written, e.g. streaming result set.
+     *
+     * @param entity response entity
+     */
+    public void close(Object entity)
+    {
+        if (entity instanceof Closeable)
+            try
+            {
+                ((Closeable)entity).close();
+            }
+            catch (IOException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not close Response entity", ex);
+            }
+    }
+
+    public EntityTagCache getEntityTagCache()
+    {
+        return SingletonContextProvider.getContext(getProviders(), EntityTagCache.class);
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
+    /**
+     * Response writer that buffers the body, computes its weak entity tag, and sends the tag with the body.
+     * If the body exceeds the maximum size of the cache, it is streamed without a tag.
+     */
+    public static class EntityTagWriter implements ContainerResponseWriter
+    {
+        private final ContainerResponseWriter writer;
+        private final EntityTagCache cache;
+        private final URI requestUri;
+        private final MediaType mediaType;
+        private final String coding;
+        private ContainerResponse response;
+        private long contentLength;
+        private HashingOutputStream out;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        public EntityTagWriter(ContainerResponseWriter writer, EntityTagCache cache, URI requestUri, MediaType mediaType, String coding)
+        {
+            this.writer = writer;
+            this.cache = cache;
+            this.requestUri = requestUri;
+            this.mediaType = mediaType;
+            this.coding = coding;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException
+        {
+            this.response = response;
+            this.contentLength = contentLength;
+            out = new HashingOutputStream(new OutputStream()
+            {
+                @Override
+                public void write(int b) throws IOException
+                {
+                    write(new byte[]{ (byte)b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException
+                {
+                    getOutputStream(len).write(b, off, len);
+                }
+            });
+            return out;
+        }
+
+        /**
+         * Returns stream that the next bytes of the body are written to: the buffer, as long as the body fits into it,
+         * the container stream otherwise. Status and headers are written when the body stops fitting into the buffer.
+         * 
+         * @param len number of bytes to be written
+         * @return output stream
+         * @throws IOException container error
+         */
+        public OutputStream getOutputStream(int len) throws IOException
+        {
+            if (buffer == null) return out.getTarget();
+            if (buffer.size() + len <= cache.getMaxEntitySize()) return buffer;
+
+            if (log.isTraceEnabled()) log.trace("Response body exceeds {} bytes, writing it without EntityTag", cache.getMaxEntitySize());
+            out.setTarget(writer.writeStatusAndHeaders(contentLength, response));
+            buffer.writeTo(out.getTarget());
+            buffer = null;
+            return out.getTarget();
+        }
+        
+        @Override
+        public void finish() throws IOException
+        {
+            if (out != null && buffer != null)
+            {
+                EntityTag entityTag = out.getEntityTag(coding);
+                response.getHttpHeaders().putSingle(HttpHeaders.ETAG, entityTag);
+                buffer.writeTo(writer.writeStatusAndHeaders(buffer.size(), response));
+                cache.put(requestUri, mediaType, coding, entityTag);
+            }
+            
+            writer.finish();
+        }
+
+    }
+
+    /**
+     * Output stream that calculates CRC32 checksum and length of the bytes written through it.
+     * The stream the bytes are written to can be replaced, e.g. once the body has been buffered.
+     */
+    public static class HashingOutputStream extends FilterOutputStream
+    {
+        private final CRC32 checksum = new CRC32();
+        private long length = 0;
+
+        public HashingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            checksum.update(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            checksum.update(b, off, len);
+            length += len;
+        }
+
+        public OutputStream getTarget()
+        {
+            return out;
+        }
+
+        public void setTarget(OutputStream out)
+        {
+            this.out = out;
+        }
+        
+        public EntityTag getEntityTag()
+        {
+            return getEntityTag(null);
+        }
+
+        /**
+         * Returns weak entity tag of the written bytes, suffixed with content coding unless it is identity.
+         *
+         * @param coding content coding or null
+         * @return weak entity tag
+         */
+        public EntityTag getEntityTag(String coding)
+        {
+            String value = Long.toHexString(checksum.getValue()) + "-" + Long.toHexString(length);
+            if (!ContentCoding.isIdentity(coding)) value += "-" + coding;
+            return new EntityTag(value, true);
+        }
+
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.filter;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.metrics.MetricRegistry;
+import org.graphity.core.provider.SingletonContextProvider;
+
+/**
+ * Jersey request and response filter that records request latency and response size, in total and per operation,
+ * as well as the ratio of conditional requests answered with <code>304 Not Modified</code>.
+ * Latency is measured until the response body has been completely written.
+ * Operations (e.g. <code>sparql.select</code>, <code>gsp.get</code>) are set by resources using
+ * {@link #setOperation(javax.ws.rs.core.Request, java.lang.String)}.
+ * 
+ * Needs to be registered in web.xml as both <code>com.sun.jersey.spi.container.ContainerRequestFilters</code> and
+ * <code>com.sun.jersey.spi.container.ContainerResponseFilters</code> init parameter, and requires <code>g:metrics</code> to be enabled.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.metrics.MetricRegistry
+ */
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+
+    public static final String START = MetricsFilter.class.getName() + ".start";
+    public static final String OPERATION = MetricsFilter.class.getName() + ".operation";
+    
+    @Context Providers providers;
+
+    /**
+     * Sets metric name of the operation performed by the current request.
+     * Has no effect unless the request is the per-request <code>ContainerRequest</code> instance (i.e. not a singleton proxy).
+     * 
+     * @param request current request
+     * @param operation operation name
+     */
+    public static void setOperation(Request request, String operation)
+    {
+        if (request instanceof ContainerRequest)
+            ((ContainerRequest)request).getProperties().put(OPERATION, operation);
+    }
+    
+    @Override
+    public ContainerRequest filter(ContainerRequest request)
+    {
+        if (getMetricRegistry() != null) request.getProperties().put(START, System.nanoTime());
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response)
+    {
+        MetricRegistry metricRegistry = getMetricRegistry();
+        if (metricRegistry == null || !request.getProperties().containsKey(START)) return response;
+
+        if (request.getRequestHeaders().containsKey(HttpHeaders.IF_NONE_MATCH))
+        {
+            metricRegistry.counter("http.conditional").increment();
+            if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode())
+                metricRegistry.counter("http.notModified").increment();
+        }
+
+        response.setContainerResponseWriter(new MetricsWriter(response.getContainerResponseWriter(), metricRegistry,
+                (Long)request.getProperties().get(START), (String)request.getProperties().get(OPERATION)));
+        return response;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return SingletonContextProvider.getContext(getProviders(), MetricRegistry.class);
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
+    /**
+     * Response writer that counts written bytes and records the metrics when the response is finished.
+     */
+    public static class MetricsWriter implements ContainerResponseWriter
+    {
+        private final ContainerResponseWriter writer;
+        private final MetricRegistry metricRegistry;
+        private final long start;
+        private final String operation;
+        private CountingOutputStream out;
+
+        public MetricsWriter(ContainerResponseWriter writer, MetricRegistry metricRegistry, long start, String operation)
+        {
+            this.writer = writer;
+            this.metricRegistry = metricRegistry;
+            this.start = start;
+            this.operation = operation;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException
+        {
+            out = new CountingOutputStream(writer.writeStatusAndHeaders(contentLength, response));
+            return out;
+        }
+
+        @Override
+        public void finish() throws IOException
+        {
+            writer.finish();
+
+            long length = out != null ? out.getCount() : 0;
+            metricRegistry.recordSince("http.requests", start);
+            metricRegistry.summary("http.response.size").record(length);
+            if (operation != null)
+            {
+                metricRegistry.recordSince(operation, start);
+                metricRegistry.summary(operation + ".size").record(length);
+            }
+        }
+
+    }
+
+    /**
+     * Output stream that counts the bytes written through it.
+     */
+    public static class CountingOutputStream extends FilterOutputStream
+    {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+    }
+
+}
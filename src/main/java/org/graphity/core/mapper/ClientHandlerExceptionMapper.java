@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.graphity.core.mapper;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import javax.ws.rs.core.Response;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import javax.ws.rs.ext.ExceptionMapper;
+import org.graphity.core.util.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps failed origin requests to <code>503 Service Unavailable</code> if they have been aborted because the
+ * request deadline has expired or no pooled origin connection became available in time, and to
+ * <code>500 Internal Server Error</code> otherwise.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.Deadline
+ */
+public class ClientHandlerExceptionMapper implements ExceptionMapper<ClientHandlerException>
+{
+    private static final Logger log = LoggerFactory.getLogger(ClientHandlerExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ClientHandlerException ex)
+    {
+        Deadline deadline = Deadline.get();
+        if (deadline != null && deadline.isExpired())
+        {
+            if (log.isWarnEnabled()) log.warn("Origin request aborted after deadline of {} ms", deadline.getTimeout());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        if (ex.getCause() instanceof ConnectionPoolTimeoutException)
+        {
+            if (log.isWarnEnabled()) log.warn("Origin request timed out waiting for a pooled connection");
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        if (log.isErrorEnabled()) log.error("Origin request failed", ex);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+    }
+    
+}
@@ -0,0 +1,58 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.mapper;
+
+import java.io.IOException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps RDF exceeding the memory budget to <code>503 Service Unavailable</code>.
+ * Spilled RDF, if any, is discarded.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.ModelBudget
+ */
+public class ModelTooLargeExceptionMapper implements ExceptionMapper<ModelTooLargeException>
+{
+    private static final Logger log = LoggerFactory.getLogger(ModelTooLargeExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ModelTooLargeException ex)
+    {
+        if (log.isWarnEnabled()) log.warn("RDF exceeds memory budget after {} triples and {} bytes", ex.getTripleCount(), ex.getByteCount());
+
+        if (ex.getSpill() != null)
+            try
+            {
+                ex.getSpill().close();
+            }
+            catch (IOException ioe)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not close spilled RDF", ioe);
+            }
+
+        return Response.status(Status.SERVICE_UNAVAILABLE).build();
+    }
+    
+}
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing counter.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class Counter implements CounterMBean
+{
+    
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+
+    public Counter(String name)
+    {
+	if (name == null) throw new IllegalArgumentException("Name cannot be null");
+        this.name = name;
+    }
+    
+    public void increment()
+    {
+        count.incrementAndGet();
+    }
+    
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.get();
+    }
+    
+}
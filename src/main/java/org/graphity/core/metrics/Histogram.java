@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with fixed bucket bounds, used for latencies and sizes.
+ * Percentiles are estimated as the upper bound of the bucket that contains them.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class Histogram implements HistogramMBean
+{
+
+    private final String name, unit;
+    private final long[] bounds;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+    /**
+     * Constructs histogram.
+     * 
+     * @param name metric name
+     * @param unit unit of recorded values
+     * @param bounds ascending (inclusive) upper bounds of buckets. Values above the last bound are counted in an overflow bucket.
+     */
+    public Histogram(String name, String unit, long[] bounds)
+    {
+	if (name == null) throw new IllegalArgumentException("Name cannot be null");
+	if (unit == null) throw new IllegalArgumentException("Unit cannot be null");
+	if (bounds == null) throw new IllegalArgumentException("Bounds cannot be null");
+        this.name = name;
+        this.unit = unit;
+        this.bounds = bounds;
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+    
+    public void record(long value)
+    {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) i++;
+        buckets.incrementAndGet(i);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    /**
+     * Returns cumulative count of values less than or equal to the bound with the given index.
+     * Index equal to the number of bounds returns the total count.
+     * 
+     * @param index bound index
+     * @return cumulative count
+     */
+    public long getCumulativeCount(int index)
+    {
+        long cumulative = 0;
+        for (int i = 0; i <= index; i++) cumulative += buckets.get(i);
+        return cumulative;
+    }
+    
+    public long getPercentile(double quantile)
+    {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) total += buckets.get(i);
+        if (total == 0) return 0;
+        
+        long rank = (long)Math.ceil(quantile * total), cumulative = 0;
+        for (int i = 0; i < bounds.length; i++)
+        {
+            cumulative += buckets.get(i);
+            if (cumulative >= rank) return bounds[i];
+        }
+        return getMax();
+    }
+    
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    public long[] getBounds()
+    {
+        return bounds;
+    }
+    
+    @Override
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    @Override
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    @Override
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    @Override
+    public double getMean()
+    {
+        long n = getCount();
+        if (n == 0) return 0;
+        return (double)getSum() / n;
+    }
+
+    @Override
+    public long get50thPercentile()
+    {
+        return getPercentile(0.5);
+    }
+
+    @Override
+    public long get95thPercentile()
+    {
+        return getPercentile(0.95);
+    }
+
+    @Override
+    public long get99thPercentile()
+    {
+        return getPercentile(0.99);
+    }
+    
+}
@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application-wide registry of metrics: latency histograms (in microseconds), size histograms (in bytes) and counters.
+ * Metrics are created on first use, registered as MBeans in the platform MBean server (if a JMX object name prefix is given),
+ * and can be written in the Prometheus text exposition format. Histogram maximums are written as separate gauges.
+ * 
+ * Metric names used by Graphity Core:
+ * <ul>
+ * <li><code>sparql.select</code>, <code>sparql.construct</code>, <code>sparql.describe</code>, <code>sparql.update</code>,
+ * <code>gsp.get</code>, <code>gsp.put</code>, <code>gsp.post</code>, <code>gsp.delete</code> - request latency per operation, with <code>.size</code> response sizes</li>
+ * <li><code>http.requests</code>, <code>http.response.size</code> - all requests</li>
+ * <li><code>http.conditional</code>, <code>http.notModified</code> - conditional requests and <code>304 Not Modified</code> (entity tag hit) responses</li>
+ * <li><code>origin.rtt</code>, <code>origin.response.size</code> - origin round-trip time to response headers, and origin response sizes</li>
+ * <li><code>model.parse</code>, <code>model.serialize</code>, <code>resultset.parse</code>, <code>resultset.serialize</code> - parsing and serialization time</li>
+ * <li><code>gsp.writeBehind.flush</code>, <code>gsp.writeBehind.appends</code>, <code>gsp.writeBehind.failures</code> - time from the first
+ * buffered append until its batch is accepted by the origin, buffered appends, and failed flushes</li>
+ * <li><code>admission.interactive.admitted</code>, <code>admission.interactive.rejected</code>, <code>admission.analytic.admitted</code>,
+ * <code>admission.analytic.rejected</code> - queries admitted into and rejected from admission control lanes</li>
+ * <li><code>querycache.hits</code>, <code>querycache.misses</code> - parsed query cache lookups</li>
+ * </ul>
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.filter.MetricsFilter
+ * @see org.graphity.core.client.OriginMetricsFilter
+ */
+public class MetricRegistry implements Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(MetricRegistry.class);
+
+    public static final String UNIT_MICROSECONDS = "us";
+    public static final String UNIT_BYTES = "bytes";
+    
+    public static final long[] LATENCY_BOUNDS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+        1000000, 2500000, 5000000, 10000000, 30000000, 60000000 };
+    public static final long[] SIZE_BOUNDS = { 256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216, 67108864, 268435456 };
+    
+    private final String objectNamePrefix;
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+    private final Set<ObjectName> objectNames = new CopyOnWriteArraySet<>();
+
+    /**
+     * Constructs registry that does not register MBeans.
+     */
+    public MetricRegistry()
+    {
+        this(null);
+    }
+
+    /**
+     * Constructs registry.
+     * 
+     * @param objectNamePrefix JMX object name of metric MBeans without the <code>name</code> key, e.g. <code>org.graphity.core:type=Metrics</code> (null if metrics should not be registered in JMX)
+     */
+    public MetricRegistry(String objectNamePrefix)
+    {
+        this.objectNamePrefix = objectNamePrefix;
+    }
+
+    /**
+     * Returns latency histogram with the given name. Values are recorded in microseconds.
+     * 
+     * @param name metric name
+     * @return histogram
+     */
+    public Histogram timer(String name)
+    {
+        Histogram histogram = (Histogram)metrics.get(name);
+        if (histogram == null) histogram = register(name, new Histogram(name, UNIT_MICROSECONDS, LATENCY_BOUNDS));
+        return histogram;
+    }
+
+    /**
+     * Returns size histogram with the given name. Values are recorded in bytes.
+     * 
+     * @param name metric name
+     * @return histogram
+     */
+    public Histogram summary(String name)
+    {
+        Histogram histogram = (Histogram)metrics.get(name);
+        if (histogram == null) histogram = register(name, new Histogram(name, UNIT_BYTES, SIZE_BOUNDS));
+        return histogram;
+    }
+
+    public Counter counter(String name)
+    {
+        Counter counter = (Counter)metrics.get(name);
+        if (counter == null) counter = register(name, new Counter(name));
+        return counter;
+    }
+    
+    /**
+     * Records time elapsed since the given start.
+     * 
+     * @param name timer name
+     * @param startNanos start time from <code>System.nanoTime()</code>
+     */
+    public void recordSince(String name, long startNanos)
+    {
+        timer(name).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+    
+    @SuppressWarnings("unchecked")
+    protected <T> T register(String name, T metric)
+    {
+        Object existing = metrics.putIfAbsent(name, metric);
+        if (existing != null) return (T)existing;
+        
+        if (getObjectNamePrefix() != null)
+            try
+            {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName(getObjectNamePrefix() + ",name=" + ObjectName.quote(name));
+                if (server.isRegistered(objectName)) server.unregisterMBean(objectName); // left over from a previous deployment
+                server.registerMBean(metric, objectName);
+                objectNames.add(objectName);
+            }
+            catch (JMException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not register metric '{}' in JMX", name, ex);
+            }
+        
+        return metric;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     * 
+     * @param writer output
+     * @throws IOException 
+     */
+    public void write(Writer writer) throws IOException
+    {
+        Map<String, Object> sorted = new TreeMap<>(metrics);
+        for (Object metric : sorted.values())
+        {
+            if (metric instanceof Histogram)
+            {
+                Histogram histogram = (Histogram)metric;
+                String name = getExpositionName(histogram.getName()) + "_" + histogram.getUnit();
+                writer.write("# TYPE " + name + " histogram\n");
+                long[] bounds = histogram.getBounds();
+                for (int i = 0; i < bounds.length; i++)
+                    writer.write(name + "_bucket{le=\"" + bounds[i] + "\"} " + histogram.getCumulativeCount(i) + "\n");
+                writer.write(name + "_bucket{le=\"+Inf\"} " + histogram.getCumulativeCount(bounds.length) + "\n");
+                writer.write(name + "_sum " + histogram.getSum() + "\n");
+                writer.write(name + "_count " + histogram.getCount() + "\n");
+                writer.write("# TYPE " + name + "_max gauge\n"); // not part of the histogram family
+                writer.write(name + "_max " + histogram.getMax() + "\n");
+            }
+            if (metric instanceof Counter)
+            {
+                Counter counter = (Counter)metric;
+                String name = getExpositionName(counter.getName()) + "_total";
+                writer.write("# TYPE " + name + " counter\n");
+                writer.write(name + " " + counter.getCount() + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    public String getExpositionName(String name)
+    {
+        return "graphity_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+    
+    public Object get(String name)
+    {
+        return metrics.get(name);
+    }
+    
+    /**
+     * Unregisters metric MBeans.
+     */
+    @Override
+    public void close()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : objectNames)
+            try
+            {
+                if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            }
+            catch (JMException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not unregister MBean '{}'", objectName, ex);
+            }
+        objectNames.clear();
+    }
+    
+    public String getObjectNamePrefix()
+    {
+        return objectNamePrefix;
+    }
+    
+}
@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.provider.SingletonContextProvider;
+
+/**
+ * Text endpoint that exposes application metrics in the Prometheus text exposition format.
+ * Registered in the application when <code>g:metrics</code> is enabled.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.metrics.MetricRegistry
+ */
+@Path("metrics")
+public class MetricsResource
+{
+
+    private final MetricRegistry metricRegistry;
+    
+    public MetricsResource(@Context Providers providers)
+    {
+        this.metricRegistry = SingletonContextProvider.getContext(providers, MetricRegistry.class);
+        if (metricRegistry == null) throw new WebApplicationException(Response.Status.NOT_FOUND);
+    }
+    
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=UTF-8")
+    public Response get()
+    {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        
+        return Response.ok(new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream output) throws IOException
+            {
+                getMetricRegistry().write(new OutputStreamWriter(output, "UTF-8"));
+            }
+        }).cacheControl(cacheControl).build();
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+    
+}
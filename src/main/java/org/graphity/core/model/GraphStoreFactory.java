@@ -18,9 +18,12 @@
 package org.graphity.core.model;
 
 import javax.servlet.ServletConfig;
+import org.graphity.core.model.impl.GraphStoreLocalBase;
 import org.graphity.core.model.impl.GraphStoreProxyBase;
 import javax.ws.rs.core.Request;
+import javax.ws.rs.ext.Providers;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.util.LocalDataset;
 
 /**
  * A factory class for creating new SPARQL Graph Store proxies.
@@ -45,4 +48,34 @@ public class GraphStoreFactory
 	return new GraphStoreProxyBase(request, servletConfig, mediaTypes, origin);
     }
 
+    /**
+     * Creates new GraphStore from request metadata and providers.
+     * 
+     * @param request current request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param origin remote graph store origin
+     * @param providers JAX-RS providers
+     * @return graph store instance
+     */
+    public static GraphStore createProxy(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, GraphStoreOrigin origin, Providers providers)
+    {
+	return new GraphStoreProxyBase(request, servletConfig, mediaTypes, origin, providers);
+    }
+
+    /**
+     * Creates new GraphStore that reads and writes graphs of a local dataset.
+     * 
+     * @param request current request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param dataset local dataset
+     * @param providers JAX-RS providers
+     * @return graph store instance
+     */
+    public static GraphStore createLocal(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, LocalDataset dataset, Providers providers)
+    {
+	return new GraphStoreLocalBase(request, servletConfig, mediaTypes, dataset, providers);
+    }
+
 }
@@ -17,9 +17,12 @@
 package org.graphity.core.model;
 
 import javax.servlet.ServletConfig;
+import org.graphity.core.model.impl.SPARQLEndpointLocalBase;
 import org.graphity.core.model.impl.SPARQLEndpointProxyBase;
 import javax.ws.rs.core.Request;
+import javax.ws.rs.ext.Providers;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.util.LocalDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,4 +50,34 @@ public class SPARQLEndpointFactory
 	return new SPARQLEndpointProxyBase(request, servletConfig, mediaTypes, origin);
     }
 
+    /**
+     * Creates new SPARQL endpoint from request metadata and providers.
+     * 
+     * @param request request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param origin proxy origin
+     * @param providers JAX-RS providers
+     * @return a new endpoint
+     */
+    public static SPARQLEndpoint createProxy(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, SPARQLEndpointOrigin origin, Providers providers)
+    {
+	return new SPARQLEndpointProxyBase(request, servletConfig, mediaTypes, origin, providers);
+    }
+
+    /**
+     * Creates new SPARQL endpoint that executes queries on a local dataset.
+     * 
+     * @param request request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param dataset local dataset
+     * @param providers JAX-RS providers
+     * @return a new endpoint
+     */
+    public static SPARQLEndpoint createLocal(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, LocalDataset dataset, Providers providers)
+    {
+	return new SPARQLEndpointLocalBase(request, servletConfig, mediaTypes, dataset, providers);
+    }
+
 }
\ No newline at end of file
@@ -21,14 +21,24 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.graphity.core.filter.MetricsFilter;
 import org.graphity.core.model.GraphStore;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.RDFInput;
+import org.graphity.core.util.VariantRegistry;
+import org.graphity.core.util.WriteBehindBuffer;
+import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +74,8 @@ public abstract class GraphStoreBase implements GraphStore
 	this.request = request;
         this.servletConfig = servletConfig;
         this.mediaTypes = mediaTypes;
-        this.response = org.graphity.core.model.impl.Response.fromRequest(request);        
+        this.response = org.graphity.core.model.impl.Response.fromRequest(request,
+                !Boolean.parseBoolean(servletConfig.getInitParameter(G.weakEntityTags.getURI())));        
     }
     
     /**
@@ -86,7 +97,7 @@ public abstract class GraphStoreBase implements GraphStore
      */
     public ResponseBuilder getResponseBuilder(Model model)
     {
-        return org.graphity.core.model.impl.Response.fromRequest(getRequest()).
+        return getResponse().
                 getResponseBuilder(model, getVariants(getMediaTypes().getWritable(Model.class)));
     }
     
@@ -98,8 +109,67 @@ public abstract class GraphStoreBase implements GraphStore
      */
     public List<Variant> getVariants(List<MediaType> mediaTypes)
     {
+        if (getVariantRegistry() != null) return getVariantRegistry().getVariants(mediaTypes, getLanguages(), getEncodings());
+        
         return getResponse().getVariantListBuilder(mediaTypes, getLanguages(), getEncodings()).add().build();
     }
+
+    /**
+     * Returns registry of precomputed response variants.
+     * This implementation returns null, i.e. variants are built and selected on every request.
+     * 
+     * @return variant registry or null
+     */
+    public VariantRegistry getVariantRegistry()
+    {
+        return null;
+    }
+
+    /**
+     * Returns write-behind buffer of appends.
+     * This implementation returns null, i.e. appends are written through.
+     * 
+     * @return write-behind buffer or null
+     */
+    public WriteBehindBuffer getWriteBehindBuffer()
+    {
+        return null;
+    }
+
+    /**
+     * Returns destination of buffered appends. Has to be implemented if write-behind buffer is provided.
+     * 
+     * @return sink or null
+     */
+    public WriteBehindBuffer.Sink getWriteBehindSink()
+    {
+        return null;
+    }
+
+    /**
+     * Returns key that identifies graph in the write-behind buffer.
+     * 
+     * @param graphUri named graph URI, or null for the default graph
+     * @return buffer key
+     */
+    public String getWriteBehindKey(String graphUri)
+    {
+        if (graphUri == null) return "";
+        return graphUri;
+    }
+
+    /**
+     * Flushes pending buffered appends to a graph, if there are any, so that they are not applied after the
+     * operation that follows.
+     * 
+     * @param defaultGraph true if default graph is requested
+     * @param graphUri named graph URI
+     */
+    public void flushWriteBehind(Boolean defaultGraph, URI graphUri)
+    {
+        if (getWriteBehindBuffer() != null)
+            getWriteBehindBuffer().flush(getWriteBehindKey(defaultGraph ? null : graphUri.toString()));
+    }
         
     /**
      * Returns a list of supported languages.
@@ -114,16 +184,58 @@ public abstract class GraphStoreBase implements GraphStore
     /**
      * Returns a list of supported HTTP encodings.
      * Note: this is different from content encodings such as UTF-8.
+     * Content codings are configured using <code>g:contentEncodings</code> parameter value from web.xml, and
+     * taken from the variant registry, if it is provided.
      * 
      * @return list of encodings
      */
     public List<String> getEncodings()
     {
-        return new ArrayList<>();
+        if (getVariantRegistry() != null) return getVariantRegistry().getEncodings(); // parsed once by the application
+        return ContentCoding.getEncodings(getServletConfig());
     }
     
+    /**
+     * Returns unparsed default graph, which can be relayed to the response.
+     * This implementation returns null, i.e. the graph is loaded using <code>getModel()</code>.
+     * 
+     * @param mediaType preferred media type
+     * @return RDF input or null
+     */
+    public RDFInput getModelInput(MediaType mediaType)
+    {
+        return null;
+    }
+
+    /**
+     * Returns unparsed named graph, which can be relayed to the response.
+     * This implementation returns null, i.e. the graph is loaded using <code>getModel(String)</code>.
+     * 
+     * @param uri named graph URI
+     * @param mediaType preferred media type
+     * @return RDF input or null
+     */
+    public RDFInput getModelInput(String uri, MediaType mediaType)
+    {
+        return null;
+    }
+
+    /**
+     * Returns true if RDF graphs should be relayed without parsing.
+     * Uses <code>g:passThrough</code> parameter value from web.xml.
+     * 
+     * @return true if pass-through is enabled
+     */
+    public boolean isPassThrough()
+    {
+        Object passThrough = getServletConfig().getInitParameter(G.passThrough.getURI());
+        return passThrough != null && Boolean.parseBoolean(passThrough.toString());
+    }
+
     /**
      * Implements GET method of SPARQL Graph Store Protocol.
+     * If <code>g:passThrough</code> is enabled, graphs are relayed without being parsed into a model.
+     * Graphs exceeding the memory budget are streamed from disk, if they have been spilled.
      * 
      * @param defaultGraph true if default graph is requested
      * @param graphUri named graph URI
@@ -133,32 +245,54 @@ public abstract class GraphStoreBase implements GraphStore
     @Override
     public Response get(@QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
+        MetricsFilter.setOperation(getRequest(), "gsp.get");
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
 
-	if (defaultGraph)
-	{
-	    Model model = getModel();
-            if (log.isDebugEnabled()) log.debug("GET Graph Store default graph, returning Model of size(): {}", model.size());
-	    return getResponse(model);
-	}
-	else
-	{
-	    Model model = getModel(graphUri.toString());
-	    if (model == null)
-	    {
-		if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} not found", graphUri);
-		return Response.status(Status.NOT_FOUND).build();
-	    }
-	    else
-	    {
-		if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} found, returning Model of size(): {}", graphUri, model.size());
-		return getResponse(model);
-	    }
-	}
+        if (isPassThrough())
+        {
+            List<Variant> variants = getVariants(getMediaTypes().getWritable(Model.class));
+            Variant variant = getResponse().selectVariant(variants);
+            if (variant == null) return Response.notAcceptable(variants).build();
+
+            RDFInput input;
+            if (defaultGraph) input = getModelInput(variant.getMediaType());
+            else input = getModelInput(graphUri.toString(), variant.getMediaType());
+            if (input != null) return getResponse().getResponseBuilder(input, variant).build();
+        }
+
+        try
+        {
+            if (defaultGraph)
+            {
+                Model model = getModel();
+                if (log.isDebugEnabled()) log.debug("GET Graph Store default graph, returning Model of size(): {}", model.size());
+                return getResponse(model);
+            }
+            else
+            {
+                Model model = getModel(graphUri.toString());
+                if (model == null)
+                {
+                    if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} not found", graphUri);
+                    return Response.status(Status.NOT_FOUND).build();
+                }
+                else
+                {
+                    if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} found, returning Model of size(): {}", graphUri, model.size());
+                    return getResponse(model);
+                }
+            }
+        }
+        catch (ModelTooLargeException ex)
+        {
+            return getResponse().getResponseBuilder(ex, getVariants(getMediaTypes().getWritable(Model.class))).build();
+        }
     }
 
     /**
      * Implements POST method of SPARQL Graph Store Protocol.
+     * If write-behind buffer is provided, the model is buffered and <code>202 Accepted</code> is returned, or
+     * <code>200 OK</code> once it has been flushed if the buffer is synchronous. Graph existence is not checked in that case.
      * 
      * @param model RDF request body
      * @param defaultGraph true if default graph is requested
@@ -169,11 +303,22 @@ public abstract class GraphStoreBase implements GraphStore
     @Override
     public Response post(Model model, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
+        MetricsFilter.setOperation(getRequest(), "gsp.post");
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
 	if (log.isDebugEnabled()) log.debug("POST Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
 	
 	if (model.isEmpty()) return Response.noContent().build();
 	
+        if (getWriteBehindBuffer() != null)
+        {
+            String graph = defaultGraph ? null : graphUri.toString();
+            Future<Long> flush = getWriteBehindBuffer().append(getWriteBehindKey(graph), graph, model, getWriteBehindSink());
+            if (!getWriteBehindBuffer().isSync()) return Response.status(Status.ACCEPTED).build();
+            
+            getWriteBehindBuffer().get(flush);
+            return Response.ok().build();
+        }
+        
 	if (defaultGraph)
 	{
 	    if (log.isDebugEnabled()) log.debug("POST Model to default graph");
@@ -193,6 +338,41 @@ public abstract class GraphStoreBase implements GraphStore
 	}
     }
 
+    /**
+     * Implements POST method of SPARQL Graph Store Protocol for RDF syntaxes that can be parsed incrementally.
+     * If <code>g:streamUploads</code> is enabled, the request body is passed on without being parsed into a model.
+     * Otherwise, or if appends are buffered, it is parsed and handled by <code>post(Model, Boolean, URI)</code>.
+     * 
+     * @param input unparsed RDF request body
+     * @param defaultGraph true if default graph is requested
+     * @param graphUri named graph URI
+     * @return response
+     */
+    @POST
+    @Consumes({"text/turtle", "application/n-triples", "application/rdf+xml"})
+    public Response post(RDFInput input, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
+    {
+        MetricsFilter.setOperation(getRequest(), "gsp.post");
+        if (!isStreamUploads() || getWriteBehindBuffer() != null) return post(readModel(input), defaultGraph, graphUri);
+        
+	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
+	if (log.isDebugEnabled()) log.debug("POST Graph Store request with streamed RDF payload of MediaType: {}", input.getMediaType());
+	
+	if (defaultGraph)
+	{
+	    add(input);
+	    return Response.ok().build();
+	}
+	else
+	{
+	    boolean existingGraph = containsModel(graphUri.toString());
+	    add(graphUri.toString(), input);
+	    
+	    if (existingGraph) return Response.ok().build();
+	    else return Response.created(graphUri).build();
+	}
+    }
+
     /**
      * Implements PUT method of SPARQL Graph Store Protocol.
      * 
@@ -205,8 +385,10 @@ public abstract class GraphStoreBase implements GraphStore
     @Override
     public Response put(Model model, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
+        MetricsFilter.setOperation(getRequest(), "gsp.put");
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
 	if (log.isDebugEnabled()) log.debug("PUT Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
+        flushWriteBehind(defaultGraph, graphUri);
 	
 	if (defaultGraph)
 	{
@@ -226,6 +408,117 @@ public abstract class GraphStoreBase implements GraphStore
 	}	
     }
 
+    /**
+     * Implements PUT method of SPARQL Graph Store Protocol for RDF syntaxes that can be parsed incrementally.
+     * If <code>g:streamUploads</code> is enabled, the request body is passed on without being parsed into a model.
+     * Otherwise it is parsed and handled by <code>put(Model, Boolean, URI)</code>.
+     * 
+     * @param input unparsed RDF request body
+     * @param defaultGraph true if default graph is requested
+     * @param graphUri named graph URI
+     * @return response
+     */
+    @PUT
+    @Consumes({"text/turtle", "application/n-triples", "application/rdf+xml"})
+    public Response put(RDFInput input, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
+    {
+        MetricsFilter.setOperation(getRequest(), "gsp.put");
+        if (!isStreamUploads()) return put(readModel(input), defaultGraph, graphUri);
+
+	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
+	if (log.isDebugEnabled()) log.debug("PUT Graph Store request with streamed RDF payload of MediaType: {}", input.getMediaType());
+        flushWriteBehind(defaultGraph, graphUri);
+	
+	if (defaultGraph)
+	{
+	    putModel(input);
+	    return Response.ok().build();
+	}
+	else
+	{
+	    boolean existingGraph = containsModel(graphUri.toString());
+	    putModel(graphUri.toString(), input);
+	    
+	    if (existingGraph) return Response.ok().build();
+	    else return Response.created(graphUri).build();
+	}	
+    }
+
+    /**
+     * Adds streamed RDF to the default graph.
+     * This implementation parses it into a model and calls <code>add(Model)</code>.
+     * 
+     * @param input unparsed RDF
+     */
+    public void add(RDFInput input)
+    {
+        add(readModel(input));
+    }
+
+    /**
+     * Adds streamed RDF to a named graph.
+     * This implementation parses it into a model and calls <code>add(String, Model)</code>.
+     * 
+     * @param uri named graph URI
+     * @param input unparsed RDF
+     */
+    public void add(String uri, RDFInput input)
+    {
+        add(uri, readModel(input));
+    }
+
+    /**
+     * Replaces the default graph with streamed RDF.
+     * This implementation parses it into a model and calls <code>putModel(Model)</code>.
+     * 
+     * @param input unparsed RDF
+     */
+    public void putModel(RDFInput input)
+    {
+        putModel(readModel(input));
+    }
+
+    /**
+     * Replaces a named graph with streamed RDF.
+     * This implementation parses it into a model and calls <code>putModel(String, Model)</code>.
+     * 
+     * @param uri named graph URI
+     * @param input unparsed RDF
+     */
+    public void putModel(String uri, RDFInput input)
+    {
+        putModel(uri, readModel(input));
+    }
+
+    /**
+     * Parses RDF input into a model.
+     * 
+     * @param input unparsed RDF
+     * @return RDF model
+     */
+    public Model readModel(RDFInput input)
+    {
+	if (input == null) throw new IllegalArgumentException("RDFInput cannot be null");
+
+        MediaType formatType = new MediaType(input.getMediaType().getType(), input.getMediaType().getSubtype()); // discard charset param
+        Lang lang = RDFLanguages.contentTypeToLang(formatType.toString());
+        if (lang == null) throw new WebApplicationException(Status.UNSUPPORTED_MEDIA_TYPE);
+
+        return ModelFactory.createDefaultModel().read(input.getInputStream(), input.getBase(), lang.getName());
+    }
+
+    /**
+     * Returns true if RDF uploads should be passed on without parsing them into models.
+     * Uses <code>g:streamUploads</code> parameter value from web.xml.
+     * 
+     * @return true if streaming uploads are enabled
+     */
+    public boolean isStreamUploads()
+    {
+        Object streamUploads = getServletConfig().getInitParameter(G.streamUploads.getURI());
+        return streamUploads != null && Boolean.parseBoolean(streamUploads.toString());
+    }
+
     /**
      * Implements DELETE method of SPARQL Graph Store Protocol.
      * 
@@ -237,7 +530,9 @@ public abstract class GraphStoreBase implements GraphStore
     @Override
     public Response delete(@QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
+        MetricsFilter.setOperation(getRequest(), "gsp.delete");
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
+        flushWriteBehind(defaultGraph, graphUri);
 	
 	if (defaultGraph)
 	{
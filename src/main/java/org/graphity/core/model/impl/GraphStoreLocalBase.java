@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.model.impl;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import javax.servlet.ServletConfig;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.MediaTypes;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.LocalDataset;
+import org.graphity.core.util.VariantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local implementation of Graph Store.
+ * This class reads and writes graphs of a local dataset (e.g. TDB) in-process, instead of forwarding requests
+ * to a remote origin.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.LocalDataset
+ */
+@Path("/service") // not standard
+public class GraphStoreLocalBase extends GraphStoreBase
+{
+    private static final Logger log = LoggerFactory.getLogger(GraphStoreLocalBase.class);
+
+    private final LocalDataset dataset;
+    private final VariantRegistry variantRegistry;
+
+    /**
+     * Constructs local Graph Store from request metadata, dataset, and providers.
+     * 
+     * @param request request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param dataset local dataset
+     * @param providers JAX-RS providers (can be null)
+     */
+    public GraphStoreLocalBase(@Context Request request, @Context ServletConfig servletConfig, @Context MediaTypes mediaTypes,
+            @Context LocalDataset dataset, @Context Providers providers)
+    {
+        super(request, servletConfig, mediaTypes);
+        if (dataset == null) throw new IllegalArgumentException("LocalDataset cannot be null");
+        this.dataset = dataset;
+        this.variantRegistry = SingletonContextProvider.getContext(providers, VariantRegistry.class);
+    }
+
+    public LocalDataset getDataset()
+    {
+        return dataset;
+    }
+
+    @Override
+    public VariantRegistry getVariantRegistry()
+    {
+        return variantRegistry;
+    }
+
+    @Override
+    public Model getModel()
+    {
+	if (log.isDebugEnabled()) log.debug("GET default graph from local Dataset");
+        return getDataset().getModel();
+    }
+
+    @Override
+    public Model getModel(String uri)
+    {
+	if (log.isDebugEnabled()) log.debug("GET named graph <{}> from local Dataset", uri);
+        return getDataset().getModel(uri);
+    }
+
+    @Override
+    public boolean containsModel(String uri)
+    {
+        return getDataset().containsModel(uri);
+    }
+
+    @Override
+    public void putModel(Model model)
+    {
+	if (log.isDebugEnabled()) log.debug("PUT default graph to local Dataset");
+        getDataset().putModel(model);
+    }
+
+    @Override
+    public void putModel(String uri, Model model)
+    {
+	if (log.isDebugEnabled()) log.debug("PUT named graph <{}> to local Dataset", uri);
+        getDataset().putModel(uri, model);
+    }
+
+    @Override
+    public void deleteDefault()
+    {
+	if (log.isDebugEnabled()) log.debug("DELETE default graph from local Dataset");
+        getDataset().deleteDefault();
+    }
+
+    @Override
+    public void deleteModel(String uri)
+    {
+	if (log.isDebugEnabled()) log.debug("DELETE named graph <{}> from local Dataset", uri);
+        getDataset().deleteModel(uri);
+    }
+
+    @Override
+    public void add(Model model)
+    {
+	if (log.isDebugEnabled()) log.debug("POST default graph to local Dataset");
+        getDataset().add(model);
+    }
+
+    @Override
+    public void add(String uri, Model model)
+    {
+	if (log.isDebugEnabled()) log.debug("POST named graph <{}> to local Dataset", uri);
+        getDataset().add(uri, model);
+    }
+
+}
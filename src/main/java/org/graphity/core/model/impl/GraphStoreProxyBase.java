@@ -18,25 +18,42 @@
 package org.graphity.core.model.impl;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
 import java.util.List;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response.Status.Family;
+import javax.ws.rs.ext.Providers;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
 import org.graphity.core.MediaType;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.client.AbortableRequestFilter;
 import org.graphity.core.client.GraphStoreClient;
 import org.graphity.core.exception.ClientException;
 import org.graphity.core.model.GraphStoreOrigin;
 import org.graphity.core.model.GraphStoreProxy;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.ModelBudget;
+import org.graphity.core.util.QueryResultCache;
+import org.graphity.core.util.RDFInput;
+import org.graphity.core.util.RDFStreamingOutput;
+import org.graphity.core.util.VariantRegistry;
+import org.graphity.core.util.WriteBehindBuffer;
+import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Proxy implementation of Graph Store.
  * This class forwards requests to a remote origin.
+ * RDF is sent to the origin as N-Triples, unless another media type (e.g. the compact RDF/Binary) is configured
+ * using <code>g:originMediaType</code>; the configured media type is also preferred when RDF is requested from the origin.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
  */
@@ -48,6 +65,12 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
     private final GraphStoreOrigin origin;
     private final GraphStoreClient client;
     private final javax.ws.rs.core.MediaType[] readableMediaTypes;
+    private final MediaType originMediaType;
+    private final QueryResultCache queryResultCache;
+    private final VariantRegistry variantRegistry;
+    private final ModelBudget modelBudget;
+    private final WriteBehindBuffer writeBehindBuffer;
+    private final EntityTagCache entityTagCache;
     
     /**
      * Constructs Graph Store proxy from request metadata and origin.
@@ -57,14 +80,40 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
      * @param mediaTypes supported media types
      * @param origin graph store origin
      */
+    public GraphStoreProxyBase(Request request, ServletConfig servletConfig, MediaTypes mediaTypes,
+            GraphStoreOrigin origin)
+    {
+        this(request, servletConfig, mediaTypes, origin, null);
+    }
+
+    /**
+     * Constructs Graph Store proxy from request metadata, origin, and providers.
+     * Successful writes invalidate query result cache, if it is provided.
+     * Graphs are read within the memory budget, if it is provided. Appends are buffered, if write-behind buffer is provided.
+     * 
+     * @param request request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param origin graph store origin
+     * @param providers JAX-RS providers (can be null)
+     * @see org.graphity.core.util.QueryResultCache
+     */
     public GraphStoreProxyBase(@Context Request request, @Context ServletConfig servletConfig, @Context MediaTypes mediaTypes,
-            @Context GraphStoreOrigin origin)
+            @Context GraphStoreOrigin origin, @Context Providers providers)
     {
         super(request, servletConfig, mediaTypes);
         if (origin == null) throw new IllegalArgumentException("GraphStoreOrigin cannot be null");
         this.origin = origin;
+        this.queryResultCache = SingletonContextProvider.getContext(providers, QueryResultCache.class);
+        this.variantRegistry = SingletonContextProvider.getContext(providers, VariantRegistry.class);
+        this.modelBudget = SingletonContextProvider.getContext(providers, ModelBudget.class);
+        this.writeBehindBuffer = SingletonContextProvider.getContext(providers, WriteBehindBuffer.class);
+        this.entityTagCache = SingletonContextProvider.getContext(providers, EntityTagCache.class);
+        this.originMediaType = getOriginMediaType(servletConfig);
         List<javax.ws.rs.core.MediaType> modelTypeList = mediaTypes.getReadable(Model.class);
-        readableMediaTypes = modelTypeList.toArray(new javax.ws.rs.core.MediaType[modelTypeList.size()]);        
+        javax.ws.rs.core.MediaType[] modelTypes = modelTypeList.toArray(new javax.ws.rs.core.MediaType[modelTypeList.size()]);
+        if (servletConfig.getInitParameter(G.originMediaType.getURI()) != null) readableMediaTypes = MediaTypes.prefer(originMediaType, modelTypes);
+        else readableMediaTypes = modelTypes;
         client = GraphStoreClient.create(origin.getWebResource());
     }
 
@@ -91,6 +140,104 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
     {
         return readableMediaTypes;
     }
+
+    /**
+     * Returns media type of RDF sent to the origin, configured using <code>g:originMediaType</code>.
+     * 
+     * @param servletConfig servlet config
+     * @return configured media type, or N-Triples if none is configured
+     */
+    public final MediaType getOriginMediaType(ServletConfig servletConfig)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+
+        Object originMediaType = servletConfig.getInitParameter(G.originMediaType.getURI());
+        if (originMediaType == null) return MediaType.TEXT_NTRIPLES_TYPE;
+        
+        javax.ws.rs.core.MediaType mediaType = javax.ws.rs.core.MediaType.valueOf(originMediaType.toString());
+        if (RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype()) == null)
+            throw new IllegalArgumentException("Origin MediaType " + mediaType + " is not an RDF syntax");
+        return new MediaType(mediaType.getType(), mediaType.getSubtype(), mediaType.getParameters());
+    }
+
+    public MediaType getOriginMediaType()
+    {
+        return originMediaType;
+    }
+
+    /**
+     * Returns syntax of RDF streamed to the origin: the origin media type if it can be written in a streaming fashion,
+     * N-Triples otherwise.
+     * 
+     * @return streamable syntax
+     */
+    public Lang getStreamingLang()
+    {
+        Lang lang = RDFLanguages.contentTypeToLang(getOriginMediaType().getType() + "/" + getOriginMediaType().getSubtype());
+        if (RDFStreamingOutput.isStreamable(lang)) return lang;
+        return Lang.NTRIPLES;
+    }
+    
+    public QueryResultCache getQueryResultCache()
+    {
+        return queryResultCache;
+    }
+
+    @Override
+    public VariantRegistry getVariantRegistry()
+    {
+        return variantRegistry;
+    }
+
+    public ModelBudget getModelBudget()
+    {
+        return modelBudget;
+    }
+
+    @Override
+    public WriteBehindBuffer getWriteBehindBuffer()
+    {
+        return writeBehindBuffer;
+    }
+
+    /**
+     * Returns cache of entity tags, if it is provided.
+     * Tags are invalidated by the request filter, except after buffered appends, which reach the origin later.
+     * 
+     * @return entity tag cache or null
+     */
+    public EntityTagCache getEntityTagCache()
+    {
+        return entityTagCache;
+    }
+
+    @Override
+    public WriteBehindBuffer.Sink getWriteBehindSink()
+    {
+        return new OriginSink(getClient(), getOriginMediaType(), getQueryResultCache(), getEntityTagCache());
+    }
+
+    @Override
+    public String getWriteBehindKey(String graphUri)
+    {
+        return getOrigin().getWebResource().getURI().toString() + " " + super.getWriteBehindKey(graphUri);
+    }
+
+    /**
+     * Reads graph from successful origin response, within memory budget if it is provided.
+     * 
+     * @param cr origin response
+     * @return graph model
+     * @throws org.graphity.core.exception.ModelTooLargeException if the graph exceeds memory budget
+     */
+    public Model readModel(ClientResponse cr)
+    {
+        if (cr == null) throw new IllegalArgumentException("ClientResponse cannot be null");
+
+        if (getModelBudget() != null) return getModelBudget().read(new RDFInput(cr.getEntityInputStream(), cr.getType(),
+                null, AbortableRequestFilter.getAbortable(cr)));
+        return cr.getEntity(Model.class);
+    }
     
     @Override
     public Model getModel()
@@ -100,10 +247,11 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
         
-        return cr.getEntity(Model.class);
+        return readModel(cr);
     }
 
     @Override
@@ -114,48 +262,109 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
         
-        return cr.getEntity(Model.class);
+        return readModel(cr);
     }
 
+    /**
+     * Returns unparsed default graph from the origin.
+     * 
+     * @param mediaType preferred media type
+     * @return origin response body
+     */
     @Override
-    public boolean containsModel(String uri)
+    public RDFInput getModelInput(javax.ws.rs.core.MediaType mediaType)
     {
-	if (log.isDebugEnabled()) log.debug("Checking if Graph Store {} contains GRAPH with URI {}", getOrigin().getWebResource().getURI(), uri);
-	ClientResponse cr = getClient().headNamed(uri);
+	if (log.isDebugEnabled()) log.debug("Relaying Model from Graph Store {} default graph", getOrigin().getWebResource().getURI());
+	ClientResponse cr = getClient().getModel(MediaTypes.prefer(mediaType, getReadableMediaTypes()));
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
-
-        return true;
+        
+        return new RDFInput(cr.getEntityInputStream(), cr.getType());
     }
-    
+
+    /**
+     * Returns unparsed named graph from the origin.
+     * 
+     * @param uri named graph URI
+     * @param mediaType preferred media type
+     * @return origin response body
+     */
     @Override
-    public void putModel(Model model)
+    public RDFInput getModelInput(String uri, javax.ws.rs.core.MediaType mediaType)
     {
-	if (log.isDebugEnabled()) log.debug("PUT Model to Graph Store {} default graph", getOrigin().getWebResource().getURI());
-	ClientResponse cr = getClient().putModel(MediaType.TEXT_NTRIPLES_TYPE, model);
+	if (log.isDebugEnabled()) log.debug("Relaying Model from Graph Store {} with named graph URI: {}", getOrigin().getWebResource().getURI(), uri);
+	ClientResponse cr = getClient().get(MediaTypes.prefer(mediaType, getReadableMediaTypes()), uri);
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
+        
+        return new RDFInput(cr.getEntityInputStream(), cr.getType(), uri);
+    }
+
+    /**
+     * Releases the response of an origin request whose body is not read, e.g. a write.
+     * The connection is returned to the pool even if the request was not successful.
+     * 
+     * @param cr origin response
+     * @throws ClientException if the request was not successful
+     */
+    public void release(ClientResponse cr)
+    {
+        if (cr == null) throw new IllegalArgumentException("ClientResponse cannot be null");
+
+        try
+        {
+            if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+            {
+                if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+                throw new ClientException(cr);
+            }
+        }
+        finally
+        {
+            cr.close();
+        }
+    }
+    
+    @Override
+    public boolean containsModel(String uri)
+    {
+	if (log.isDebugEnabled()) log.debug("Checking if Graph Store {} contains GRAPH with URI {}", getOrigin().getWebResource().getURI(), uri);
+	ClientResponse cr = getClient().headNamed(uri);
+        release(cr);
+
+        return true;
+    }
+    
+    @Override
+    public void putModel(Model model)
+    {
+	if (log.isDebugEnabled()) log.debug("PUT Model to Graph Store {} default graph", getOrigin().getWebResource().getURI());
+	ClientResponse cr = getClient().putModel(getOriginMediaType(), model);
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
     }
 
     @Override
     public void putModel(String uri, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("PUT Model to Graph Store {} with named graph URI {}", getOrigin().getWebResource().getURI(), uri);
-	ClientResponse cr = getClient().putModel(MediaType.TEXT_NTRIPLES_TYPE, uri, model);
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
-        {
-            if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }
+	ClientResponse cr = getClient().putModel(getOriginMediaType(), uri, model);
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
     }
 
     @Override
@@ -163,11 +372,9 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
     {
 	if (log.isDebugEnabled()) log.debug("DELETE default graph from Graph Store {}", getOrigin().getWebResource().getURI());
 	ClientResponse cr = getClient().deleteDefault();
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
-        {
-            if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
     }
 
     @Override
@@ -175,35 +382,190 @@ public class GraphStoreProxyBase extends GraphStoreBase implements GraphStorePro
     {
 	if (log.isDebugEnabled()) log.debug("DELETE named graph with URI {} from Graph Store {}", uri, getOrigin().getWebResource().getURI());
 	ClientResponse cr = getClient().deleteModel(uri);
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
-        {
-            if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
     }
 
     @Override
     public void add(Model model)
     {
 	if (log.isDebugEnabled()) log.debug("POST Model to Graph Store {} default graph", getOrigin().getWebResource().getURI());
-	ClientResponse cr = getClient().add(MediaType.TEXT_NTRIPLES_TYPE, model);
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
-        {
-            if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }
+	ClientResponse cr = getClient().add(getOriginMediaType(), model);
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
     }
 
     @Override
     public void add(String uri, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("POST Model to Graph Store {} with named graph URI: {}", getOrigin().getWebResource().getURI(), uri);
-	ClientResponse cr = getClient().add(MediaType.TEXT_NTRIPLES_TYPE, uri, model);
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+	ClientResponse cr = getClient().add(getOriginMediaType(), uri, model);
+        release(cr);
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
+    }
+
+    /**
+     * Streams RDF to the origin, replacing its default graph.
+     * The input is converted to a streamable syntax (N-Triples by default) while it is being sent, so it is never held in memory.
+     * 
+     * @param input unparsed RDF
+     */
+    @Override
+    public void putModel(RDFInput input)
+    {
+	if (log.isDebugEnabled()) log.debug("PUT streamed Model to Graph Store {} default graph", getOrigin().getWebResource().getURI());
+        RDFStreamingOutput output = new RDFStreamingOutput(input, getStreamingLang());
+	ClientResponse cr;
+        try
         {
-            if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
+            cr = getClient().putModel(new MediaType(output.getOutputLang()), output);
+        }
+        catch (ClientHandlerException ex)
+        {
+            // parse errors of the request body surface while the client is writing it
+            if (ex.getCause() instanceof WebApplicationException) throw (WebApplicationException)ex.getCause();
+            throw ex;
+        }
+        release(cr);
+        if (log.isDebugEnabled()) log.debug("Streamed {} bytes as {} triples to Graph Store {}", new Object[]{output.getByteCount(), output.getTripleCount(), getOrigin().getWebResource().getURI()});
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
+    }
+
+    /**
+     * Streams RDF to the origin, replacing a named graph.
+     * The input is converted to a streamable syntax (N-Triples by default) while it is being sent, so it is never held in memory.
+     * 
+     * @param uri named graph URI
+     * @param input unparsed RDF
+     */
+    @Override
+    public void putModel(String uri, RDFInput input)
+    {
+	if (log.isDebugEnabled()) log.debug("PUT streamed Model to Graph Store {} with named graph URI {}", getOrigin().getWebResource().getURI(), uri);
+        RDFStreamingOutput output = new RDFStreamingOutput(input, getStreamingLang());
+	ClientResponse cr;
+        try
+        {
+            cr = getClient().putModel(new MediaType(output.getOutputLang()), uri, output);
+        }
+        catch (ClientHandlerException ex)
+        {
+            // parse errors of the request body surface while the client is writing it
+            if (ex.getCause() instanceof WebApplicationException) throw (WebApplicationException)ex.getCause();
+            throw ex;
         }
+        release(cr);
+        if (log.isDebugEnabled()) log.debug("Streamed {} bytes as {} triples to Graph Store {}", new Object[]{output.getByteCount(), output.getTripleCount(), getOrigin().getWebResource().getURI()});
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
+    }
+
+    /**
+     * Streams RDF to the origin, adding it to the default graph.
+     * The input is converted to a streamable syntax (N-Triples by default) while it is being sent, so it is never held in memory.
+     * 
+     * @param input unparsed RDF
+     */
+    @Override
+    public void add(RDFInput input)
+    {
+	if (log.isDebugEnabled()) log.debug("POST streamed Model to Graph Store {} default graph", getOrigin().getWebResource().getURI());
+        RDFStreamingOutput output = new RDFStreamingOutput(input, getStreamingLang());
+	ClientResponse cr;
+        try
+        {
+            cr = getClient().add(new MediaType(output.getOutputLang()), output);
+        }
+        catch (ClientHandlerException ex)
+        {
+            // parse errors of the request body surface while the client is writing it
+            if (ex.getCause() instanceof WebApplicationException) throw (WebApplicationException)ex.getCause();
+            throw ex;
+        }
+        release(cr);
+        if (log.isDebugEnabled()) log.debug("Streamed {} bytes as {} triples to Graph Store {}", new Object[]{output.getByteCount(), output.getTripleCount(), getOrigin().getWebResource().getURI()});
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
+    }
+
+    /**
+     * Streams RDF to the origin, adding it to a named graph.
+     * The input is converted to a streamable syntax (N-Triples by default) while it is being sent, so it is never held in memory.
+     * 
+     * @param uri named graph URI
+     * @param input unparsed RDF
+     */
+    @Override
+    public void add(String uri, RDFInput input)
+    {
+	if (log.isDebugEnabled()) log.debug("POST streamed Model to Graph Store {} with named graph URI: {}", getOrigin().getWebResource().getURI(), uri);
+        RDFStreamingOutput output = new RDFStreamingOutput(input, getStreamingLang());
+	ClientResponse cr;
+        try
+        {
+            cr = getClient().add(new MediaType(output.getOutputLang()), uri, output);
+        }
+        catch (ClientHandlerException ex)
+        {
+            // parse errors of the request body surface while the client is writing it
+            if (ex.getCause() instanceof WebApplicationException) throw (WebApplicationException)ex.getCause();
+            throw ex;
+        }
+        release(cr);
+        if (log.isDebugEnabled()) log.debug("Streamed {} bytes as {} triples to Graph Store {}", new Object[]{output.getByteCount(), output.getTripleCount(), getOrigin().getWebResource().getURI()});
+        
+        if (getQueryResultCache() != null) getQueryResultCache().clear();
+    }
+
+    /**
+     * Flushes buffered appends to the origin. Does not hold on to the request.
+     */
+    public static class OriginSink implements WriteBehindBuffer.Sink
+    {
+        private final GraphStoreClient client;
+        private final MediaType mediaType;
+        private final QueryResultCache queryResultCache;
+        private final EntityTagCache entityTagCache;
+
+        public OriginSink(GraphStoreClient client, MediaType mediaType, QueryResultCache queryResultCache, EntityTagCache entityTagCache)
+        {
+            if (client == null) throw new IllegalArgumentException("GraphStoreClient cannot be null");
+            if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+
+            this.client = client;
+            this.mediaType = mediaType;
+            this.queryResultCache = queryResultCache;
+            this.entityTagCache = entityTagCache;
+        }
+
+        @Override
+        public void add(String graphUri, Model model)
+        {
+            ClientResponse cr;
+            if (graphUri == null) cr = client.add(mediaType, model);
+            else cr = client.add(mediaType, graphUri, model);
+            try
+            {
+                if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+                {
+                    if (log.isDebugEnabled()) log.debug("Request to graph store: {} unsuccessful. Reason: {}", client.getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+                    throw new ClientException(cr);
+                }
+            }
+            finally
+            {
+                cr.close();
+            }
+            
+            // tags cached between the acknowledgement of the append and this write describe the previous data
+            if (queryResultCache != null) queryResultCache.clear();
+            if (entityTagCache != null) entityTagCache.clear();
+        }
+        
     }
 
 }
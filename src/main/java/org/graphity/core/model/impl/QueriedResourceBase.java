@@ -19,6 +19,7 @@ package org.graphity.core.model.impl;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.sun.jersey.spi.CloseableService;
 import java.net.URI;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.GET;
@@ -27,11 +28,18 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.exception.ModelTooLargeException;
 import org.graphity.core.exception.NotFoundException;
 import org.graphity.core.model.QueriedResource;
 import org.graphity.core.model.SPARQLEndpoint;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.AdmissionController;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.VariantRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +56,11 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
     private static final Logger log = LoggerFactory.getLogger(QueriedResourceBase.class);
     
     private final SPARQLEndpoint endpoint;
+    private final EntityTagCache entityTagCache;
+    private final VariantRegistry variantRegistry;
+    private final AdmissionController admissionController;
+    
+    @Context CloseableService closeableService;
 
     /**
      * JAX-RS-compatible resource constructor with injected initialization objects.
@@ -62,12 +75,34 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
      * @see <a href="http://docs.oracle.com/javaee/7/api/javax/servlet/ServletContext.html">ServletContext</a>
      * @see <a href="https://jersey.java.net/nonav/apidocs/1.16/jersey/com/sun/jersey/api/core/ResourceContext.html">Jersey ResourceContext</a>
      */
+    public QueriedResourceBase(UriInfo uriInfo, Request request, ServletConfig servletConfig, MediaTypes mediaTypes,
+            SPARQLEndpoint endpoint)
+    {
+        this(uriInfo, request, servletConfig, mediaTypes, endpoint, null);
+    }
+
+    /**
+     * JAX-RS-compatible resource constructor with injected initialization objects and providers.
+     * Conditional requests are validated against entity tag cache before the description is queried, if the
+     * cache is provided. Description queries are subject to admission control, if it is enabled.
+     * 
+     * @param uriInfo URI information of the request
+     * @param request current request object
+     * @param servletConfig webapp context
+     * @param mediaTypes supported media types
+     * @param endpoint SPARQL endpoint backing this resource
+     * @param providers JAX-RS providers (can be null)
+     * @see org.graphity.core.util.EntityTagCache
+     */
     public QueriedResourceBase(@Context UriInfo uriInfo, @Context Request request, @Context ServletConfig servletConfig, @Context MediaTypes mediaTypes,
-            @Context SPARQLEndpoint endpoint)
+            @Context SPARQLEndpoint endpoint, @Context Providers providers)
     {
 	super(uriInfo, request, servletConfig, mediaTypes);
 	if (endpoint == null) throw new IllegalArgumentException("SPARQLEndpoint cannot be null");
 	this.endpoint = endpoint;
+        this.entityTagCache = SingletonContextProvider.getContext(providers, EntityTagCache.class);
+        this.variantRegistry = SingletonContextProvider.getContext(providers, VariantRegistry.class);
+        this.admissionController = SingletonContextProvider.getContext(providers, AdmissionController.class);
     }
     
     /**
@@ -86,6 +121,7 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
     
     /**
      * Handles GET request and returns response with RDF description of this resource.
+     * Descriptions exceeding the memory budget are streamed from disk, if they have been spilled.
      * 
      * @return response with RDF description
      */
@@ -93,16 +129,52 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
     @Override
     public Response get()
     {
-	Model description = describe();
-        
-	if (description.isEmpty())
-	{
-	    if (log.isDebugEnabled()) log.debug("Query result Model is empty; returning 404 Not Found");
-	    throw new NotFoundException("Query result Model is empty");
-	}
+        ResponseBuilder notModified = getResponse().evaluatePreconditions(getEntityTagCache(), getVariants(getWritableMediaTypes()));
+        if (notModified != null) return notModified.cacheControl(getCacheControl()).build();
         
-	if (log.isDebugEnabled()) log.debug("Returning @GET Response with {} statements in Model", description.size());
-	return getResponse(description);
+        AdmissionController.Permit permit = null;
+        if (getAdmissionController() != null && !isAvailable(getQuery())) permit = getAdmissionController().admit(getQuery());
+        Response response = null;
+        try
+        {
+            Model description;
+            try
+            {
+                description = describe();
+            }
+            catch (ModelTooLargeException ex)
+            {
+                response = getResponse().getResponseBuilder(ex, getVariants(getWritableMediaTypes())).
+                        cacheControl(getCacheControl()).build();
+                return response;
+            }
+
+            if (description.isEmpty())
+            {
+                if (log.isDebugEnabled()) log.debug("Query result Model is empty; returning 404 Not Found");
+                throw new NotFoundException("Query result Model is empty");
+            }
+
+            if (log.isDebugEnabled()) log.debug("Returning @GET Response with {} statements in Model", description.size());
+            response = getResponse(description);
+            return response;
+        }
+        finally
+        {
+            if (permit != null) permit.release(response, getCloseableService()); // spilled descriptions hold the slot until written
+        }
+    }
+
+    /**
+     * Returns true if the description can be returned without executing the query, e.g. if it is cached.
+     * 
+     * @param query SPARQL query
+     * @return true if the query will not be executed
+     * @see org.graphity.core.model.impl.SPARQLEndpointBase#isAvailable(com.hp.hpl.jena.query.Query)
+     */
+    public boolean isAvailable(Query query)
+    {
+        return getSPARQLEndpoint() instanceof SPARQLEndpointBase && ((SPARQLEndpointBase)getSPARQLEndpoint()).isAvailable(query);
     }
 
     /**
@@ -167,6 +239,16 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
 	return QueryFactory.create("DESCRIBE <" + uri.toString() + ">");
     }
 
+    /**
+     * Returns service that closes resources after the response has been written.
+     * 
+     * @return closeable service or null
+     */
+    public CloseableService getCloseableService()
+    {
+        return closeableService;
+    }
+
     /**
      * Returns SPARQL endpoint of this resource.
      * Query is executed on this endpoint to retrieve RDF representation of this resource.
@@ -179,4 +261,20 @@ public class QueriedResourceBase extends ResourceBase implements QueriedResource
 	return endpoint;
     }
 
+    public EntityTagCache getEntityTagCache()
+    {
+        return entityTagCache;
+    }
+
+    @Override
+    public VariantRegistry getVariantRegistry()
+    {
+        return variantRegistry;
+    }
+
+    public AdmissionController getAdmissionController()
+    {
+        return admissionController;
+    }
+
 }
\ No newline at end of file
@@ -33,6 +33,8 @@ import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Variant;
 import org.graphity.core.MediaTypes;
 import org.graphity.core.model.Resource;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.VariantRegistry;
 import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,7 +78,8 @@ public abstract class ResourceBase implements Resource
         this.request = request;
         this.servletConfig = servletConfig;
         this.mediaTypes = mediaTypes;
-        this.response = org.graphity.core.model.impl.Response.fromRequest(request);
+        this.response = org.graphity.core.model.impl.Response.fromRequest(request,
+                !Boolean.parseBoolean(servletConfig.getInitParameter(G.weakEntityTags.getURI())));
         if (log.isDebugEnabled()) log.debug("Request URI: {}", uriInfo.getRequestUri());        
     }
 
@@ -108,7 +111,7 @@ public abstract class ResourceBase implements Resource
      */
     public ResponseBuilder getResponseBuilder(Model model)
     {
-        return org.graphity.core.model.impl.Response.fromRequest(getRequest()).
+        return getResponse().
                 getResponseBuilder(model, getVariants(getWritableMediaTypes())).
                 cacheControl(getCacheControl());
     }
@@ -121,8 +124,21 @@ public abstract class ResourceBase implements Resource
      */
     public List<Variant> getVariants(List<MediaType> mediaTypes)
     {
+        if (getVariantRegistry() != null) return getVariantRegistry().getVariants(mediaTypes, getLanguages(), getEncodings());
+        
         return getResponse().getVariantListBuilder(mediaTypes, getLanguages(), getEncodings()).add().build();
     }
+
+    /**
+     * Returns registry of precomputed response variants.
+     * This implementation returns null, i.e. variants are built and selected on every request.
+     * 
+     * @return variant registry or null
+     */
+    public VariantRegistry getVariantRegistry()
+    {
+        return null;
+    }
         
     public MediaTypes getMediaTypes()
     {
@@ -139,9 +155,16 @@ public abstract class ResourceBase implements Resource
         return new ArrayList<>();
     }
 
+    /**
+     * Returns supported HTTP content codings, configured using <code>g:contentEncodings</code> parameter value from web.xml.
+     * They are taken from the variant registry, if it is provided.
+     * 
+     * @return list of encodings
+     */
     public List<String> getEncodings()
     {
-        return new ArrayList<>();
+        if (getVariantRegistry() != null) return getVariantRegistry().getEncodings(); // parsed once by the application
+        return ContentCoding.getEncodings(getServletConfig());
     }
 
     /**
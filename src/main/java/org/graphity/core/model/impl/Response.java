@@ -20,16 +20,27 @@ package org.graphity.core.model.impl;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.sun.jersey.api.core.HttpRequestContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Variant;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.graphity.core.util.EntityTagCache;
 import org.graphity.core.util.ModelUtils;
+import org.graphity.core.util.RDFStreamingOutput;
 import org.graphity.core.util.ResultSetUtils;
+import org.graphity.core.util.VariantRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +56,7 @@ public class Response // extends ResponseBuilder
     private static final Logger log = LoggerFactory.getLogger(Response.class);
 
     private final Request request;
+    private final boolean entityTags;
     
     /**
      * Builds model response from request.
@@ -52,9 +64,24 @@ public class Response // extends ResponseBuilder
      * @param request current request
      */
     protected Response(Request request)
+    {
+        this(request, true);
+    }
+
+    /**
+     * Builds model response from request.
+     * If entity tags are disabled, responses are built without hashing the entity first, and can be validated
+     * using weak tags computed while the response is written.
+     * 
+     * @param request current request
+     * @param entityTags if true, strong entity tags are calculated for responses
+     * @see org.graphity.core.filter.EntityTagFilter
+     */
+    protected Response(Request request, boolean entityTags)
     {
 	if (request == null) throw new IllegalArgumentException("Request cannot be null");
         this.request = request;
+        this.entityTags = entityTags;
     }
 
     public Request getRequest()
@@ -62,11 +89,21 @@ public class Response // extends ResponseBuilder
         return request;
     }
     
+    public boolean hasEntityTags()
+    {
+        return entityTags;
+    }
+    
     public static Response fromRequest(Request request)
     {
 	return new Response(request);
     }
 
+    public static Response fromRequest(Request request, boolean entityTags)
+    {
+	return new Response(request, entityTags);
+    }
+
     public static MediaType[] mediaTypeListToArray(List<MediaType> list)
     {
         if (list == null) throw new IllegalArgumentException("List cannot be null");
@@ -110,6 +147,53 @@ public class Response // extends ResponseBuilder
                 encodings(stringListToArray(encodings));
     }
     
+    /**
+     * Selects response variant according to the request.
+     * Selection is cached for variant lists precomputed by the variant registry.
+     * 
+     * @param variants supported response variants
+     * @return selected variant or null, if none is acceptable
+     * @see org.graphity.core.util.VariantRegistry
+     */
+    public Variant selectVariant(List<Variant> variants)
+    {
+        return VariantRegistry.selectVariant(getRequest(), variants);
+    }
+
+    /**
+     * Evaluates <code>GET</code> request preconditions against an entity tag cached for the request URI and the
+     * selected variant, before the response entity is loaded.
+     * Returns <code>304 Not Modified</code> response builder if the cached tag matches, which allows resources
+     * to skip origin requests altogether.
+     * 
+     * @param cache entity tag cache (can be null)
+     * @param variants supported response variants
+     * @return response builder or null, if the entity has to be loaded
+     * @see org.graphity.core.filter.EntityTagFilter
+     */
+    public ResponseBuilder evaluatePreconditions(EntityTagCache cache, List<Variant> variants)
+    {
+	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+
+        if (cache == null || !getRequest().getMethod().equals(HttpMethod.GET) ||
+                !(getRequest() instanceof HttpRequestContext)) return null;
+
+        Variant variant = selectVariant(variants);
+        if (variant == null) return null;
+
+        EntityTag entityTag = cache.get(((HttpRequestContext)getRequest()).getRequestUri(), variant.getMediaType(), variant.getEncoding());
+        if (entityTag == null) return null;
+
+        ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
+        if (rb != null)
+        {
+            if (log.isTraceEnabled()) log.trace("Cached EntityTag {} matches request preconditions, skipping Response generation", entityTag);
+            return rb.variant(variant);
+        }
+
+        return null;
+    }
+
     /**
      * Returns response builder for RDF model.
      * 
@@ -121,13 +205,14 @@ public class Response // extends ResponseBuilder
     {
 	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
 
-        Variant variant = getRequest().selectVariant(variants);
+        Variant variant = selectVariant(variants);
         if (variant == null)
         {
             if (log.isTraceEnabled()) log.trace("Requested Variant {} is not on the list of acceptable Response Variants: {}", variant, variants);
             throw new WebApplicationException(javax.ws.rs.core.Response.status(javax.ws.rs.core.Response.Status.NOT_ACCEPTABLE).build());
         }
 
+        if (!hasEntityTags()) return getResponseBuilder(model, variant);
         return getResponseBuilder(model, getEntityTag(model, variant), variant);
     }
 
@@ -143,19 +228,107 @@ public class Response // extends ResponseBuilder
 	if (resultSet == null) throw new IllegalArgumentException("ResultSetRewindable cannot be null");        
 	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
         
-        Variant variant = getRequest().selectVariant(variants);
+        Variant variant = selectVariant(variants);
         if (variant == null)
         {
             if (log.isTraceEnabled()) log.trace("Requested Variant {} is not on the list of acceptable Response Variants: {}", variant, variants);
             return javax.ws.rs.core.Response.notAcceptable(variants);
         }
 
+        if (!hasEntityTags()) return getResponseBuilder(resultSet, variant);
+        
         resultSet.reset();
         EntityTag entityTag = getEntityTag(resultSet, variant);        
 	resultSet.reset(); // ResultSet needs to be rewinded back to the beginning
         return getResponseBuilder(resultSet, entityTag, variant);
     }
 
+    /**
+     * Returns response builder for forward-only SPARQL result set.
+     * Results are not hashed, because that would require consuming them before the response is written,
+     * therefore the response has no <code>ETag</code>.
+     * If no variant is acceptable, the result set is closed (if it is closeable).
+     * 
+     * @param resultSet result set
+     * @param variants supported response variants
+     * @return response builder
+     */    
+    public ResponseBuilder getResponseBuilder(ResultSet resultSet, List<Variant> variants)
+    {
+	if (resultSet == null) throw new IllegalArgumentException("ResultSet cannot be null");        
+	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+        
+        Variant variant = selectVariant(variants);
+        if (variant == null)
+        {
+            if (log.isTraceEnabled()) log.trace("Requested Variant {} is not on the list of acceptable Response Variants: {}", variant, variants);
+            if (resultSet instanceof Closeable)
+                try
+                {
+                    ((Closeable)resultSet).close();
+                }
+                catch (IOException ex)
+                {
+                    if (log.isWarnEnabled()) log.warn("Could not close ResultSet", ex);
+                }
+            return javax.ws.rs.core.Response.notAcceptable(variants);
+        }
+
+        return getResponseBuilder(resultSet, variant);
+    }
+
+    /**
+     * Returns response builder for RDF that exceeds the memory budget and has been spilled to disk.
+     * Only variants that can be written in a streaming fashion are acceptable, since spilled RDF cannot be loaded
+     * into a model.
+     * 
+     * @param ex exception carrying spilled RDF
+     * @param variants supported response variants
+     * @return response builder
+     * @throws ModelTooLargeException if RDF has not been spilled or no streaming variant is acceptable
+     * @see org.graphity.core.util.ModelBudget
+     */
+    public ResponseBuilder getResponseBuilder(ModelTooLargeException ex, List<Variant> variants)
+    {
+	if (ex == null) throw new IllegalArgumentException("ModelTooLargeException cannot be null");
+	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+        if (ex.getSpill() == null) throw ex;
+
+        List<Variant> streamable = new ArrayList<>();
+        for (Variant variant : variants)
+        {
+            Lang lang = RDFLanguages.contentTypeToLang(variant.getMediaType().getType() + "/" + variant.getMediaType().getSubtype());
+            if (lang != null && RDFStreamingOutput.isStreamable(lang)) streamable.add(variant);
+        }
+        
+        Variant variant = null;
+        if (!streamable.isEmpty()) variant = getRequest().selectVariant(streamable);
+        if (variant == null)
+        {
+            if (log.isDebugEnabled()) log.debug("Spilled RDF cannot be written using any of the acceptable Variants: {}", variants);
+            throw ex;
+        }
+
+        if (log.isDebugEnabled()) log.debug("Streaming {} spilled triples with Variant: {}", ex.getTripleCount(), variant);
+        return getResponseBuilder(ex.getSpill(), variant);
+    }
+
+    /**
+     * Returns generic response builder without entity tag.
+     * 
+     * @param entity response entity
+     * @param variant response variant
+     * @return response builder
+     */        
+    public ResponseBuilder getResponseBuilder(Object entity, Variant variant)
+    {
+	if (entity == null) throw new IllegalArgumentException("Object cannot be null");
+	if (variant == null) throw new IllegalArgumentException("Variant cannot be null");
+
+        if (log.isTraceEnabled()) log.trace("Generating untagged Response with Variant: {}", variant);
+        return javax.ws.rs.core.Response.ok(entity, variant);
+    }
+
     /**
      * Returns generic response builder.
      * 
@@ -186,6 +359,8 @@ public class Response // extends ResponseBuilder
         
     /**
      * Calculates hash for an RDF model and a given response variant.
+     * Variant hash covers media type, language, and content coding, therefore compressed representations
+     * have different tags than uncompressed ones.
      * 
      * @param model RDF model
      * @param variant response variant
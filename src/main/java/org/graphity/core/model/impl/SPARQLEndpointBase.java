@@ -23,7 +23,11 @@ import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.update.UpdateFactory;
 import com.hp.hpl.jena.update.UpdateRequest;
+import com.sun.jersey.spi.CloseableService;
+import com.sun.jersey.spi.container.ContainerRequest;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -33,7 +37,16 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.*;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.graphity.core.filter.MetricsFilter;
 import org.graphity.core.model.SPARQLEndpoint;
+import org.graphity.core.util.AdmissionController;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.Link;
+import org.graphity.core.util.QueryCache;
+import org.graphity.core.util.RDFInput;
+import org.graphity.core.util.VariantRegistry;
 import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +67,8 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
     private final MediaTypes mediaTypes;
     private final org.graphity.core.model.impl.Response response;
     
+    @Context CloseableService closeableService;
+    
     /**
      * Constructs SPARQL endpoint from request metadata.
      * 
@@ -70,7 +85,8 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
 	this.request = request;
 	this.servletConfig = servletConfig;
         this.mediaTypes = mediaTypes;
-        this.response = org.graphity.core.model.impl.Response.fromRequest(request);
+        this.response = org.graphity.core.model.impl.Response.fromRequest(request,
+                !Boolean.parseBoolean(servletConfig.getInitParameter(G.weakEntityTags.getURI())));
 	if (log.isDebugEnabled()) log.debug("Constructing SPARQLEndpointBase");        
     }
     
@@ -89,7 +105,25 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
     public Response get(@QueryParam("query") Query query,
 	@QueryParam("default-graph-uri") URI defaultGraphUri, @QueryParam("named-graph-uri") URI graphUri)
     {
-	return getResponseBuilder(query).build();
+	if (query == null) throw new WebApplicationException(Response.Status.BAD_REQUEST);
+
+        Query page = getLimitedQuery(query); // query cost is estimated with the result limit
+        ResponseBuilder notModified = evaluatePreconditions(query);
+        if (notModified != null) return notModified.build(); // costs the origin nothing, so it is not admitted
+        
+        AdmissionController.Permit permit = null;
+        if (getAdmissionController() != null && !isAvailable(page)) permit = getAdmissionController().admit(page);
+        
+        Response response = null;
+        try
+        {
+            response = getResponseBuilder(query, page).build();
+            return response;
+        }
+        finally
+        {
+            if (permit != null) permit.release(response, getCloseableService()); // streamed results hold the slot until written
+        }
     }
     
     /**
@@ -127,7 +161,7 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
 	@FormParam("using-graph-uri") URI defaultGraphUri,
 	@FormParam("using-named-graph-uri") URI graphUri)
     {
-        if (queryString != null) return get(QueryFactory.create(queryString), defaultGraphUri, graphUri);
+        if (queryString != null) return get(getQuery(queryString), defaultGraphUri, graphUri);
         if (updateString != null) return post(UpdateFactory.create(updateString), defaultGraphUri, graphUri);
 
         throw new WebApplicationException(Response.Status.BAD_REQUEST);
@@ -148,6 +182,7 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
     public Response post(UpdateRequest update, @QueryParam("using-graph-uri") URI defaultGraphUri,
 	@QueryParam("using-named-graph-uri") URI graphUri)
     {
+        MetricsFilter.setOperation(getRequest(), "sparql.update");
 	update(update);
 
         return Response.ok().build();
@@ -156,34 +191,189 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
     /**
      * Returns response builder for a SPARQL query.
      * Contains the main SPARQL endpoint JAX-RS implementation logic.
-     * Uses <code>gs:resultLimit</code> parameter value from web.xml as <code>LIMIT</code> value on <code>SELECT</code> queries, if present.
+     * Uses <code>g:resultLimit</code> parameter value from web.xml as <code>LIMIT</code> value on all queries with
+     * a pattern, unless they have a lower limit already. If the limit cuts the query short, the response has a
+     * <code>Link</code> header with the next page of results.
+     * If <code>g:streamResults</code> is enabled, <code>SELECT</code> results are streamed to the response instead of
+     * being buffered in a rewindable result set.
+     * Conditional <code>GET</code> requests matching a cached entity tag are answered before the query is executed.
+     * If <code>g:passThrough</code> is enabled, <code>CONSTRUCT</code>/<code>DESCRIBE</code> results are relayed
+     * without being parsed into a model. Results exceeding the memory budget are streamed from disk, if they have been spilled.
      * 
      * @param query SPARQL query
      * @return response builder
+     * @see #getLimitedQuery(com.hp.hpl.jena.query.Query)
      */
     public ResponseBuilder getResponseBuilder(Query query)
     {
 	if (query == null) throw new WebApplicationException(Response.Status.BAD_REQUEST);
 
+        return getResponseBuilder(query, getLimitedQuery(query));
+    }
+    
+    /**
+     * Returns response builder for a SPARQL query, executing its limited page.
+     * 
+     * @param query SPARQL query
+     * @param page query with the result limit applied
+     * @return response builder
+     * @see #getResponseBuilder(com.hp.hpl.jena.query.Query)
+     */
+    public ResponseBuilder getResponseBuilder(Query query, Query page)
+    {
+	if (query == null) throw new WebApplicationException(Response.Status.BAD_REQUEST);
+	if (page == null) throw new IllegalArgumentException("Page query cannot be null");
+
         if (query.isSelectType())
         {
-            if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing SELECT query: {}", query);
-            if (getServletConfig().getInitParameter(G.resultLimit.getURI()) != null)
-                query.setLimit(Long.parseLong(getServletConfig().getInitParameter(G.resultLimit.getURI()).toString()));
+            if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing SELECT query: {}", page);
+            MetricsFilter.setOperation(getRequest(), "sparql.select");
+
+            ResponseBuilder notModified = evaluatePreconditions(query);
+            if (notModified != null) return notModified;
 
-            return getResponseBuilder(select(query));
+            if (isStreamResults()) return getResponseBuilder(getResponseBuilder(selectStreaming(page)), query, page);
+            
+            ResultSetRewindable resultSet = select(page);
+            if (page.hasLimit() && resultSet.size() < page.getLimit()) return getResponseBuilder(resultSet); // last page
+            return getResponseBuilder(getResponseBuilder(resultSet), query, page);
         }
 
         if (query.isConstructType() || query.isDescribeType())
         {
-            if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing CONSTRUCT/DESCRIBE query: {}", query);
-            return getResponseBuilder(loadModel(query));
+            if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing CONSTRUCT/DESCRIBE query: {}", page);
+            MetricsFilter.setOperation(getRequest(), query.isConstructType() ? "sparql.construct" : "sparql.describe");
+            ResponseBuilder notModified = evaluatePreconditions(query);
+            if (notModified != null) return notModified;
+
+            if (isPassThrough())
+            {
+                List<Variant> variants = getVariants(getMediaTypes().getWritable(Model.class));
+                Variant variant = getResponse().selectVariant(variants);
+                if (variant == null) return Response.notAcceptable(variants);
+                
+                RDFInput input = loadModelInput(page, variant.getMediaType());
+                if (input != null) return getResponseBuilder(getResponse().getResponseBuilder(input, variant), query, page);
+            }
+            
+            try
+            {
+                return getResponseBuilder(getResponseBuilder(loadModel(page)), query, page);
+            }
+            catch (ModelTooLargeException ex)
+            {
+                return getResponseBuilder(getResponse().getResponseBuilder(ex, getVariants(getMediaTypes().getWritable(Model.class))), query, page);
+            }
         }
         
 	if (log.isWarnEnabled()) log.warn("SPARQL endpoint received unknown type of query: {}", query);
 	throw new WebApplicationException(Response.Status.BAD_REQUEST);
     }
 
+    /**
+     * Evaluates conditional request against the cached entity tag of the query result, before the query is executed.
+     * 
+     * @param query SPARQL query
+     * @return <code>304 Not Modified</code> response builder, or null if the result has to be loaded
+     */
+    public ResponseBuilder evaluatePreconditions(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query cannot be null");
+
+        if (query.isSelectType())
+            return getResponse().evaluatePreconditions(getEntityTagCache(), getVariants(getMediaTypes().getWritable(ResultSet.class)));
+        if (query.isConstructType() || query.isDescribeType())
+            return getResponse().evaluatePreconditions(getEntityTagCache(), getVariants(getMediaTypes().getWritable(Model.class)));
+        
+        return null;
+    }
+
+    /**
+     * Returns true if the result of the query can be returned without executing it, e.g. if it is cached.
+     * Such queries are not subject to admission control.
+     * This implementation returns false.
+     * 
+     * @param query SPARQL query
+     * @return true if the query will not be executed
+     */
+    public boolean isAvailable(Query query)
+    {
+        return false;
+    }
+
+    /**
+     * Returns query with the result limit applied.
+     * Uses <code>g:resultLimit</code> parameter value from web.xml. The limit is not applied to queries without
+     * a pattern (e.g. <code>DESCRIBE &lt;uri&gt;</code>) or with a lower limit. Otherwise a limited copy of the
+     * query is returned, because parsed queries can be shared.
+     * 
+     * @param query SPARQL query
+     * @return the query itself or its limited copy
+     */
+    public Query getLimitedQuery(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (getServletConfig().getInitParameter(G.resultLimit.getURI()) == null || query.getQueryPattern() == null) return query;
+        
+        long limit = Long.parseLong(getServletConfig().getInitParameter(G.resultLimit.getURI()).toString());
+        if (query.hasLimit() && query.getLimit() <= limit) return query;
+        
+        Query page = QueryCache.copy(query);
+        page.setLimit(limit);
+        return page;
+    }
+
+    /**
+     * Returns query for the page of results that follows the given page.
+     * The page query is the original query continued at the next <code>OFFSET</code>, with the original
+     * <code>LIMIT</code> (if any) reduced by the size of the page, so that cursors are stateless.
+     * 
+     * @param query original query
+     * @param page limited query of the current page
+     * @return query of the next page, or null if there is none
+     */
+    public Query getNextPageQuery(Query query, Query page)
+    {
+	if (query == null) throw new IllegalArgumentException("Query cannot be null");
+	if (page == null) throw new IllegalArgumentException("Page query cannot be null");
+        if (page == query || !page.hasLimit()) return null; // limit has not been applied
+        if (query.hasLimit() && query.getLimit() <= page.getLimit()) return null;
+        
+        Query next = QueryCache.copy(query);
+        next.setOffset((page.hasOffset() ? page.getOffset() : 0) + page.getLimit());
+        if (query.hasLimit()) next.setLimit(query.getLimit() - page.getLimit());
+        return next;
+    }
+
+    /**
+     * Adds <code>Link</code> header with the next page of results to the response, if the result limit has been
+     * applied to the query. The next page is a <code>GET</code> request of this endpoint.
+     * 
+     * @param rb response builder
+     * @param query original query
+     * @param page limited query of the current page
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(ResponseBuilder rb, Query query, Query page)
+    {
+	if (rb == null) throw new IllegalArgumentException("ResponseBuilder cannot be null");
+
+        Query next = getNextPageQuery(query, page);
+        if (next == null || !(getRequest() instanceof ContainerRequest)) return rb;
+        
+        try
+        {
+            URI nextUri = ((ContainerRequest)getRequest()).getRequestUriBuilder().
+                    replaceQueryParam("query", URLEncoder.encode(next.toString(), "UTF-8").replace("+", "%20")).
+                    build();
+            return rb.header("Link", new Link(nextUri, "next", null));
+        }
+        catch (UnsupportedEncodingException ex)
+        {
+            throw new WebApplicationException(ex);
+        }
+    }
+
     /**
      * Returns response for the given RDF model.
      * 
@@ -203,7 +393,7 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
      */
     public ResponseBuilder getResponseBuilder(Model model)
     {
-        return org.graphity.core.model.impl.Response.fromRequest(getRequest()).
+        return getResponse().
                 getResponseBuilder(model, getVariants(getMediaTypes().getWritable(Model.class)));
     }
         
@@ -215,10 +405,130 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
      */
     public ResponseBuilder getResponseBuilder(ResultSetRewindable resultSet)
     {
-	return org.graphity.core.model.impl.Response.fromRequest(getRequest()).
+	return getResponse().
                 getResponseBuilder(resultSet, getVariants(getMediaTypes().getWritable(ResultSet.class)));
     }
     
+    /**
+     * Returns response builder for the given forward-only SPARQL result set.
+     * 
+     * @param resultSet result set
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(ResultSet resultSet)
+    {
+	return getResponse().
+                getResponseBuilder(resultSet, getVariants(getMediaTypes().getWritable(ResultSet.class)));
+    }
+
+    /**
+     * Returns forward-only result of a <code>SELECT</code> query, which can be written to the response while it is
+     * still being read.
+     * This implementation simply returns the rewindable result of <code>select()</code>, subclasses should
+     * override it if they can provide a truly streaming result set.
+     * 
+     * @param query <code>SELECT</code> query
+     * @return result set
+     */
+    public ResultSet selectStreaming(Query query)
+    {
+        return select(query);
+    }
+
+    /**
+     * Returns unparsed result of <code>CONSTRUCT</code> or <code>DESCRIBE</code> query, which can be relayed to
+     * the response.
+     * This implementation returns null, i.e. the result is loaded using <code>loadModel()</code>.
+     * 
+     * @param query <code>CONSTRUCT</code> or <code>DESCRIBE</code> query
+     * @param mediaType preferred media type of the result
+     * @return RDF input or null
+     */
+    public RDFInput loadModelInput(Query query, MediaType mediaType)
+    {
+        return null;
+    }
+
+    /**
+     * Returns true if RDF results should be relayed without parsing.
+     * Uses <code>g:passThrough</code> parameter value from web.xml.
+     * 
+     * @return true if pass-through is enabled
+     */
+    public boolean isPassThrough()
+    {
+        Object passThrough = getServletConfig().getInitParameter(G.passThrough.getURI());
+        return passThrough != null && Boolean.parseBoolean(passThrough.toString());
+    }
+
+    /**
+     * Returns true if <code>SELECT</code> results should be streamed to the response.
+     * Uses <code>g:streamResults</code> parameter value from web.xml.
+     * 
+     * @return true if streaming is enabled
+     */
+    public boolean isStreamResults()
+    {
+        Object streamResults = getServletConfig().getInitParameter(G.streamResults.getURI());
+        return streamResults != null && Boolean.parseBoolean(streamResults.toString());
+    }
+    
+    /**
+     * Returns cache of entity tags that is used to evaluate conditional requests before queries are executed.
+     * This implementation returns null, i.e. preconditions are only evaluated after the result is loaded.
+     * 
+     * @return entity tag cache or null
+     */
+    public EntityTagCache getEntityTagCache()
+    {
+        return null;
+    }
+
+    /**
+     * Returns cache of parsed queries.
+     * This implementation returns null, i.e. queries are always parsed.
+     * 
+     * @return query cache or null
+     */
+    public QueryCache getQueryCache()
+    {
+        return null;
+    }
+
+    /**
+     * Returns service that closes resources after the response has been written, e.g. admission permits of
+     * streamed results. It is null if this endpoint has not been injected by Jersey.
+     * 
+     * @return closeable service or null
+     */
+    public CloseableService getCloseableService()
+    {
+        return closeableService;
+    }
+
+    /**
+     * Returns admission controller of queries.
+     * This implementation returns null, i.e. all queries are admitted.
+     * 
+     * @return admission controller or null
+     */
+    public AdmissionController getAdmissionController()
+    {
+        return null;
+    }
+
+    /**
+     * Parses query string, reusing cached query if possible.
+     * 
+     * @param queryString SPARQL query string
+     * @return query object
+     */
+    public Query getQuery(String queryString)
+    {
+        if (getQueryCache() != null) return getQueryCache().create(queryString);
+        return QueryFactory.create(queryString);
+    }
+
     /**
      * Builds a list of acceptable response variants
      * 
@@ -227,8 +537,21 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
      */
     public List<Variant> getVariants(List<MediaType> mediaTypes)
     {
+        if (getVariantRegistry() != null) return getVariantRegistry().getVariants(mediaTypes, getLanguages(), getEncodings());
+        
         return getResponse().getVariantListBuilder(mediaTypes, getLanguages(), getEncodings()).add().build();
     }
+
+    /**
+     * Returns registry of precomputed response variants.
+     * This implementation returns null, i.e. variants are built and selected on every request.
+     * 
+     * @return variant registry or null
+     */
+    public VariantRegistry getVariantRegistry()
+    {
+        return null;
+    }
         
     /**
      * Returns supported languages.
@@ -243,12 +566,15 @@ public abstract class SPARQLEndpointBase implements SPARQLEndpoint
     /**
      * Returns supported HTTP encodings.
      * Note: this is different from content encodings such as UTF-8.
+     * Content codings are configured using <code>g:contentEncodings</code> parameter value from web.xml, and
+     * taken from the variant registry, if it is provided.
      * 
      * @return list of encodings
      */
     public List<String> getEncodings()
     {
-        return new ArrayList<>();
+        if (getVariantRegistry() != null) return getVariantRegistry().getEncodings(); // parsed once by the application
+        return ContentCoding.getEncodings(getServletConfig());
     }
 
     /**
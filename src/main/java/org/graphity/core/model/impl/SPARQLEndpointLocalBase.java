@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.model.impl;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.update.UpdateRequest;
+import javax.servlet.ServletConfig;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.MediaTypes;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.AdmissionController;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.LocalDataset;
+import org.graphity.core.util.QueryCache;
+import org.graphity.core.util.VariantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local implementation of SPARQL endpoint.
+ * This class executes queries and updates in-process on a local dataset (e.g. TDB), instead of forwarding them
+ * to a remote origin.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.LocalDataset
+ */
+@Path("/sparql")
+public class SPARQLEndpointLocalBase extends SPARQLEndpointBase
+{
+    private static final Logger log = LoggerFactory.getLogger(SPARQLEndpointLocalBase.class);
+
+    private final LocalDataset dataset;
+    private final EntityTagCache entityTagCache;
+    private final QueryCache queryCache;
+    private final AdmissionController admissionController;
+    private final VariantRegistry variantRegistry;
+
+    /**
+     * Constructs local SPARQL endpoint from request metadata, dataset, and providers.
+     * Conditional requests are validated against entity tag cache, if it is provided.
+     * 
+     * @param request request
+     * @param servletConfig servlet config
+     * @param mediaTypes supported media types
+     * @param dataset local dataset
+     * @param providers JAX-RS providers (can be null)
+     */
+    public SPARQLEndpointLocalBase(@Context Request request, @Context ServletConfig servletConfig, @Context MediaTypes mediaTypes,
+            @Context LocalDataset dataset, @Context Providers providers)
+    {
+        super(request, servletConfig, mediaTypes);
+        if (dataset == null) throw new IllegalArgumentException("LocalDataset cannot be null");
+        this.dataset = dataset;
+        this.entityTagCache = SingletonContextProvider.getContext(providers, EntityTagCache.class);
+        this.queryCache = SingletonContextProvider.getContext(providers, QueryCache.class);
+        this.variantRegistry = SingletonContextProvider.getContext(providers, VariantRegistry.class);
+        this.admissionController = SingletonContextProvider.getContext(providers, AdmissionController.class);
+    }
+
+    public LocalDataset getDataset()
+    {
+        return dataset;
+    }
+
+    @Override
+    public EntityTagCache getEntityTagCache()
+    {
+        return entityTagCache;
+    }
+
+    @Override
+    public QueryCache getQueryCache()
+    {
+        return queryCache;
+    }
+
+    @Override
+    public AdmissionController getAdmissionController()
+    {
+        return admissionController;
+    }
+
+    @Override
+    public VariantRegistry getVariantRegistry()
+    {
+        return variantRegistry;
+    }
+
+    @Override
+    public Model loadModel(Query query)
+    {
+	if (log.isDebugEnabled()) log.debug("Loading Model from local Dataset using Query: {}", query);
+        return getDataset().loadModel(query);
+    }
+
+    @Override
+    public ResultSetRewindable select(Query query)
+    {
+	if (log.isDebugEnabled()) log.debug("Loading ResultSet from local Dataset using Query: {}", query);
+        return getDataset().select(query);
+    }
+
+    @Override
+    public boolean ask(Query query)
+    {
+        return getDataset().ask(query);
+    }
+
+    @Override
+    public void update(UpdateRequest updateRequest)
+    {
+	if (log.isDebugEnabled()) log.debug("Executing update on local Dataset using UpdateRequest with {} operations", updateRequest.getOperations().size());
+        getDataset().update(updateRequest);
+    }
+
+}
@@ -20,6 +20,7 @@ package org.graphity.core.model.impl;
 import com.hp.hpl.jena.ontology.DatatypeProperty;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
 import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.sparql.resultset.JSONInput;
@@ -28,17 +29,32 @@ import com.hp.hpl.jena.update.UpdateRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response.Status.Family;
+import javax.ws.rs.ext.Providers;
 import org.graphity.core.MediaType;
 import org.graphity.core.MediaTypes;
+import org.graphity.core.client.AbortableRequestFilter;
 import org.graphity.core.client.SPARQLClient;
 import org.graphity.core.exception.ClientException;
 import org.graphity.core.model.SPARQLEndpointOrigin;
 import org.graphity.core.model.SPARQLEndpointProxy;
+import org.graphity.core.provider.SingletonContextProvider;
+import org.graphity.core.util.AdmissionController;
+import org.graphity.core.util.Deadline;
+import org.graphity.core.util.EntityTagCache;
+import org.graphity.core.util.LimitedResultSet;
+import org.graphity.core.util.ModelBudget;
+import org.graphity.core.util.QueryCache;
+import org.graphity.core.util.QueryCoalescer;
+import org.graphity.core.util.QueryResultCache;
+import org.graphity.core.util.RDFInput;
+import org.graphity.core.util.UpdateBatcher;
+import org.graphity.core.util.VariantRegistry;
 import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +73,15 @@ public class SPARQLEndpointProxyBase extends SPARQLEndpointBase implements SPARQ
     private final SPARQLEndpointOrigin origin;
     private final SPARQLClient client;
     private final javax.ws.rs.core.MediaType[] readableModelMediaTypes, readableResultSetMediaTypes;
+    private final QueryResultCache queryResultCache;
+    private final EntityTagCache entityTagCache;
+    private final QueryCache queryCache;
+    private final AdmissionController admissionController;
+    private final QueryCoalescer queryCoalescer;
+    private final VariantRegistry variantRegistry;
+    private final ModelBudget modelBudget;
+    private final boolean directUpdate;
+    private final UpdateBatcher updateBatcher;
 
     /**
      * Constructs SPARQL endpoint proxy from request metadata and origin.
@@ -66,21 +91,56 @@ public class SPARQLEndpointProxyBase extends SPARQLEndpointBase implements SPARQ
      * @param origin
      * @param mediaTypes 
      */
+    public SPARQLEndpointProxyBase(Request request, ServletConfig servletConfig, MediaTypes mediaTypes,
+            SPARQLEndpointOrigin origin)
+    {
+        this(request, servletConfig, mediaTypes, origin, null);
+    }
+
+    /**
+     * Constructs SPARQL endpoint proxy from request metadata, origin, and providers.
+     * Query results are cached if query result cache is provided, and conditional requests are validated
+     * against entity tag cache, if it is provided. Concurrent identical queries are coalesced if query coalescer is provided.
+     * Result models are read within the memory budget, if it is provided.
+     * 
+     * @param request
+     * @param servletConfig
+     * @param mediaTypes 
+     * @param origin
+     * @param providers JAX-RS providers (can be null)
+     * @see org.graphity.core.util.QueryResultCache
+     */
     public SPARQLEndpointProxyBase(@Context Request request, @Context ServletConfig servletConfig, @Context MediaTypes mediaTypes,
-            @Context SPARQLEndpointOrigin origin)
+            @Context SPARQLEndpointOrigin origin, @Context Providers providers)
     {
         super(request, servletConfig, mediaTypes);
         if (origin == null) throw new IllegalArgumentException("SPARQLEndpointOrigin cannot be null");
         this.origin = origin;
+        this.queryResultCache = SingletonContextProvider.getContext(providers, QueryResultCache.class);
+        this.entityTagCache = SingletonContextProvider.getContext(providers, EntityTagCache.class);
+        this.queryCache = SingletonContextProvider.getContext(providers, QueryCache.class);
+        this.queryCoalescer = SingletonContextProvider.getContext(providers, QueryCoalescer.class);
+        this.variantRegistry = SingletonContextProvider.getContext(providers, VariantRegistry.class);
+        this.modelBudget = SingletonContextProvider.getContext(providers, ModelBudget.class);
+        this.admissionController = SingletonContextProvider.getContext(providers, AdmissionController.class);
         
         List<javax.ws.rs.core.MediaType> modelTypeList = mediaTypes.getReadable(Model.class);
-        readableModelMediaTypes = modelTypeList.toArray(new javax.ws.rs.core.MediaType[modelTypeList.size()]);
+        javax.ws.rs.core.MediaType[] modelTypes = modelTypeList.toArray(new javax.ws.rs.core.MediaType[modelTypeList.size()]);
+        if (servletConfig.getInitParameter(G.originMediaType.getURI()) != null) // e.g. compact RDF/Binary
+            readableModelMediaTypes = MediaTypes.prefer(javax.ws.rs.core.MediaType.valueOf(servletConfig.getInitParameter(G.originMediaType.getURI())), modelTypes);
+        else readableModelMediaTypes = modelTypes;
         List<javax.ws.rs.core.MediaType> resultSetTypeList = mediaTypes.getReadable(ResultSet.class);        
         readableResultSetMediaTypes = resultSetTypeList.toArray(new javax.ws.rs.core.MediaType[resultSetTypeList.size()]);
 
         Integer maxGetRequestSize = getMaxGetRequestSize(servletConfig, G.maxGetRequestSize);
         if (maxGetRequestSize != null) client = SPARQLClient.create(origin.getWebResource(), maxGetRequestSize);
         else client = SPARQLClient.create(origin.getWebResource());
+        
+        directUpdate = Boolean.parseBoolean(servletConfig.getInitParameter(G.directUpdate.getURI()));
+        if (servletConfig.getInitParameter(G.updateBatchSize.getURI()) != null &&
+                Integer.parseInt(servletConfig.getInitParameter(G.updateBatchSize.getURI())) > 0)
+            updateBatcher = new UpdateBatcher(Integer.parseInt(servletConfig.getInitParameter(G.updateBatchSize.getURI())));
+        else updateBatcher = null;
     }
     
     @Override
@@ -107,37 +167,257 @@ public class SPARQLEndpointProxyBase extends SPARQLEndpointBase implements SPARQ
         return readableResultSetMediaTypes;
     }
     
+    public QueryResultCache getQueryResultCache()
+    {
+        return queryResultCache;
+    }
+
+    @Override
+    public EntityTagCache getEntityTagCache()
+    {
+        return entityTagCache;
+    }
+
+    @Override
+    public QueryCache getQueryCache()
+    {
+        return queryCache;
+    }
+
+    @Override
+    public AdmissionController getAdmissionController()
+    {
+        return admissionController;
+    }
+
+    public QueryCoalescer getQueryCoalescer()
+    {
+        return queryCoalescer;
+    }
+
+    @Override
+    public VariantRegistry getVariantRegistry()
+    {
+        return variantRegistry;
+    }
+
+    public ModelBudget getModelBudget()
+    {
+        return modelBudget;
+    }
+
+    /**
+     * Returns true if the result of the query is in the query result cache, or an identical query is in flight
+     * to the origin. Pass-through and streamed results do not use the cache.
+     * 
+     * @param query SPARQL query
+     * @return true if the query will not be sent to the origin
+     */
     @Override
-    public Model loadModel(Query query)
+    public boolean isAvailable(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query cannot be null");
+
+        String origin = getOrigin().getWebResource().getURI().toString();
+        if (query.isSelectType())
+            return (getQueryResultCache() != null && getQueryResultCache().contains(origin, query, getReadableResultSetMediaTypes())) ||
+                (!isStreamResults() && getQueryCoalescer() != null && getQueryCoalescer().isInFlight(origin, query, getReadableResultSetMediaTypes()));
+        if ((query.isConstructType() || query.isDescribeType()) && !isPassThrough())
+            return (getQueryResultCache() != null && getQueryResultCache().contains(origin, query, getReadableModelMediaTypes())) ||
+                (getQueryCoalescer() != null && getQueryCoalescer().isInFlight(origin, query, getReadableModelMediaTypes()));
+        if (query.isAskType())
+            return getQueryCoalescer() != null && getQueryCoalescer().isInFlight(origin, query, getReadableResultSetMediaTypes());
+        
+        return false;
+    }
+
+    /**
+     * Returns the result of a <code>CONSTRUCT</code> or <code>DESCRIBE</code> query.
+     * The result is served from query result cache, if it is enabled and contains it.
+     * Otherwise it is loaded from the origin, sharing the request with concurrent identical queries if coalescing is enabled.
+     * If query result cache is enabled, the returned model is read-only.
+     * 
+     * @param query query object
+     * @return result model
+     */
+    @Override
+    public Model loadModel(final Query query)
+    {
+        if (getQueryResultCache() != null)
+        {
+            Model cached = getQueryResultCache().getModel(getOrigin().getWebResource().getURI().toString(), query, getReadableModelMediaTypes());
+            if (cached != null) return cached;
+        }
+        
+        if (getQueryCoalescer() != null)
+            return getQueryCoalescer().loadModel(getOrigin().getWebResource().getURI().toString(), query, getReadableModelMediaTypes(),
+                new Callable<Model>()
+                {
+                    @Override
+                    public Model call()
+                    {
+                        return loadModelFromOrigin(query, false); // shared result cannot be a one-off spill stream
+                    }
+                });
+        
+        return loadModelFromOrigin(query);
+    }
+
+    /**
+     * Loads the result of a <code>CONSTRUCT</code> or <code>DESCRIBE</code> query from the origin, and caches it
+     * if query result cache is enabled.
+     * 
+     * @param query query object
+     * @return result model
+     */
+    public Model loadModelFromOrigin(Query query)
+    {
+        return loadModelFromOrigin(query, true);
+    }
+
+    /**
+     * Loads the result of a <code>CONSTRUCT</code> or <code>DESCRIBE</code> query from the origin, and caches it
+     * if query result cache is enabled, in which case the read-only cached model is returned.
+     * If memory budget is provided, the result is read within it.
+     * 
+     * @param query query object
+     * @param spill if true, results exceeding the budget may be spilled to disk
+     * @return result model
+     * @throws org.graphity.core.exception.ModelTooLargeException if the result exceeds memory budget
+     */
+    public Model loadModelFromOrigin(Query query, boolean spill)
     {
 	if (log.isDebugEnabled()) log.debug("Loading Model from SPARQL endpoint: {} using Query: {}", getOrigin().getWebResource().getURI(), query);
 	ClientResponse cr = getClient().query(query, getReadableModelMediaTypes());
+        Deadline.Abortable abortable = AbortableRequestFilter.getAbortable(cr);
+        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+        {
+            if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
+            throw new ClientException(cr);
+        }
+
+        Model model;
+        if (getModelBudget() != null) model = getModelBudget().read(new RDFInput(cr.getEntityInputStream(), cr.getType(), null, abortable), spill);
+        else model = cr.getEntity(Model.class);
+        if (getQueryResultCache() != null) // caller gets the cached read-only view, so it cannot modify cached state
+            return getQueryResultCache().putModel(getOrigin().getWebResource().getURI().toString(), query, getReadableModelMediaTypes(), model);
+        return model;
+    }
+
+    /**
+     * Returns unparsed result of a <code>CONSTRUCT</code> or <code>DESCRIBE</code> query from the origin.
+     * The preferred media type is requested first, so that the result can usually be relayed without transcoding.
+     * Results are not cached.
+     * 
+     * @param query query object
+     * @param mediaType preferred media type
+     * @return origin response body
+     */
+    @Override
+    public RDFInput loadModelInput(Query query, javax.ws.rs.core.MediaType mediaType)
+    {
+	if (log.isDebugEnabled()) log.debug("Relaying Model from SPARQL endpoint: {} using Query: {}", getOrigin().getWebResource().getURI(), query);
+	ClientResponse cr = getClient().query(query, MediaTypes.prefer(mediaType, getReadableModelMediaTypes()));
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
 
-        return cr.getEntity(Model.class);
+        return new RDFInput(cr.getEntityInputStream(), cr.getType());
     }
 
     @Override
-    public ResultSetRewindable select(Query query)
+    public ResultSetRewindable select(final Query query)
     {
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
         if (!query.isSelectType()) throw new IllegalArgumentException("Query must be SELECT");
         
+        if (getQueryResultCache() != null)
+        {
+            ResultSetRewindable cached = getQueryResultCache().getResultSet(getOrigin().getWebResource().getURI().toString(), query, getReadableResultSetMediaTypes());
+            if (cached != null) return cached;
+        }
+
+        if (getQueryCoalescer() != null)
+            return getQueryCoalescer().select(getOrigin().getWebResource().getURI().toString(), query, getReadableResultSetMediaTypes(),
+                new Callable<ResultSetRewindable>()
+                {
+                    @Override
+                    public ResultSetRewindable call()
+                    {
+                        return selectFromOrigin(query);
+                    }
+                });
+        
+        return selectFromOrigin(query);
+    }
+
+    /**
+     * Loads the result of a <code>SELECT</code> query from the origin, and caches it if query result cache is enabled.
+     * If the query has <code>LIMIT</code>, reading stops after that many results even if the origin returns more.
+     * 
+     * @param query <code>SELECT</code> query
+     * @return result set
+     */
+    public ResultSetRewindable selectFromOrigin(Query query)
+    {
 	if (log.isDebugEnabled()) log.debug("Loading ResultSet from SPARQL endpoint: {} using Query: {}", getOrigin().getWebResource().getURI(), query);
 	ClientResponse cr = getClient().query(query, getReadableResultSetMediaTypes());
+        Deadline.Abortable abortable = AbortableRequestFilter.getAbortable(cr);
         if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
         {
             if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
             throw new ClientException(cr);
         }
         
-        return cr.getEntity(ResultSetRewindable.class);
+        ResultSetRewindable resultSet;
+        if (query.hasLimit()) resultSet = ResultSetFactory.makeRewindable(new LimitedResultSet(cr.getEntity(ResultSet.class), query.getLimit(), abortable));
+        else resultSet = cr.getEntity(ResultSetRewindable.class);
+        if (getQueryResultCache() != null)
+            getQueryResultCache().putResultSet(getOrigin().getWebResource().getURI().toString(), query, getReadableResultSetMediaTypes(), resultSet);
+        return resultSet;
     }
 
+    /**
+     * Returns forward-only result set that is parsed lazily from the origin response stream.
+     * Only XML results are requested, because JSON results cannot be parsed incrementally.
+     * The origin connection stays open until the result set is consumed or closed.
+     * Cached results of <code>select()</code> are reused, but streamed results are not cached.
+     * If the query has <code>LIMIT</code>, reading stops after that many results even if the origin returns more.
+     * 
+     * @param query <code>SELECT</code> query
+     * @return streaming result set
+     */
+    @Override
+    public ResultSet selectStreaming(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+        if (!query.isSelectType()) throw new IllegalArgumentException("Query must be SELECT");
+        
+        if (getQueryResultCache() != null)
+        {
+            ResultSetRewindable cached = getQueryResultCache().getResultSet(getOrigin().getWebResource().getURI().toString(), query, getReadableResultSetMediaTypes());
+            if (cached != null) return cached;
+        }
+
+	if (log.isDebugEnabled()) log.debug("Streaming ResultSet from SPARQL endpoint: {} using Query: {}", getOrigin().getWebResource().getURI(), query);
+	ClientResponse cr = getClient().query(query, new javax.ws.rs.core.MediaType[]{ MediaType.APPLICATION_SPARQL_RESULTS_XML_TYPE });
+        Deadline.Abortable abortable = AbortableRequestFilter.getAbortable(cr);
+        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+        {
+            if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+            cr.close();
+            throw new ClientException(cr);
+        }
+        
+        if (query.hasLimit()) return new LimitedResultSet(cr.getEntity(ResultSet.class), query.getLimit(), abortable);
+        return cr.getEntity(ResultSet.class);
+    }
+    
     /**
      * Returns boolean result from a remote SPARQL endpoint using a query and optional request parameters.
      * Only <code>ASK</code> queries can be used with this method.
@@ -147,36 +427,114 @@ public class SPARQLEndpointProxyBase extends SPARQLEndpointBase implements SPARQ
      * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#ask">ASK</a>
      */    
     @Override
-    public boolean ask(Query query)
+    public boolean ask(final Query query)
     {
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
         if (!query.isAskType()) throw new IllegalArgumentException("Query must be ASK");
         
+        if (getQueryCoalescer() != null)
+            return getQueryCoalescer().ask(getOrigin().getWebResource().getURI().toString(), query, getReadableResultSetMediaTypes(),
+                new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                    {
+                        return askOrigin(query);
+                    }
+                });
+
+        return askOrigin(query);
+    }
+
+    /**
+     * Sends <code>ASK</code> query to the origin.
+     * 
+     * @param query <code>ASK</code> query
+     * @return boolean result
+     */
+    public boolean askOrigin(Query query)
+    {
         ClientResponse cr = getClient().query(query, getReadableResultSetMediaTypes());
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+        try
         {
-            if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }
+            if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+            {
+                if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+                throw new ClientException(cr);
+            }
 
-        if (cr.getType().isCompatible(MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
-            return JSONInput.booleanFromJSON(cr.getEntity(InputStream.class));
-        if (cr.getType().isCompatible(MediaType.APPLICATION_SPARQL_RESULTS_XML_TYPE))        
-            return XMLInput.booleanFromXML(cr.getEntity(InputStream.class));
-        
-        throw new ClientException(cr); // TO-DO: refactor
+            if (cr.getType().isCompatible(MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
+                return JSONInput.booleanFromJSON(cr.getEntity(InputStream.class));
+            if (cr.getType().isCompatible(MediaType.APPLICATION_SPARQL_RESULTS_XML_TYPE))        
+                return XMLInput.booleanFromXML(cr.getEntity(InputStream.class));
+
+            throw new ClientException(cr); // TO-DO: refactor
+        }
+        finally
+        {
+            cr.close(); // release connection
+        }
     }
     
+    /**
+     * Executes update on the origin.
+     * If <code>g:updateBatchSize</code> is set, large <code>INSERT DATA</code>/<code>DELETE DATA</code> operations are
+     * split into batches which are submitted one after another over the same persistent connection. Submission stops
+     * at the first failed batch; batches that preceded it are not rolled back.
+     * 
+     * @param updateRequest update request
+     * @see org.graphity.core.util.UpdateBatcher
+     */
     @Override
     public void update(UpdateRequest updateRequest)
     {
-	if (log.isDebugEnabled()) log.debug("Executing update on SPARQL endpoint: {} using UpdateRequest: {}", getOrigin().getWebResource().getURI(), updateRequest);
-	ClientResponse cr = getClient().update(updateRequest, null);
-        if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+	if (log.isDebugEnabled()) log.debug("Executing update on SPARQL endpoint: {} using UpdateRequest with {} operations", getOrigin().getWebResource().getURI(), updateRequest.getOperations().size());
+        try
         {
-            if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
-            throw new ClientException(cr);
-        }        
+            if (getUpdateBatcher() != null)
+                for (UpdateRequest batch : getUpdateBatcher().split(updateRequest))
+                    updateOrigin(batch);
+            else updateOrigin(updateRequest);
+        }
+        finally
+        {
+            if (getQueryResultCache() != null) getQueryResultCache().clear(); // even partially applied updates invalidate results
+        }
+    }
+
+    /**
+     * Submits update request to the origin, either as URL-encoded form or as direct <code>POST</code> if
+     * <code>g:directUpdate</code> is enabled.
+     * 
+     * @param updateRequest update request
+     */
+    public void updateOrigin(UpdateRequest updateRequest)
+    {
+        ClientResponse cr;
+        if (isDirectUpdate()) cr = getClient().updateDirect(updateRequest, null);
+        else cr = getClient().update(updateRequest, null);
+        try
+        {
+            if (!cr.getStatusInfo().getFamily().equals(Family.SUCCESSFUL))
+            {
+                if (log.isDebugEnabled()) log.debug("Query request to endpoint: {} unsuccessful. Reason: {}", getOrigin().getWebResource().getURI(), cr.getStatusInfo().getReasonPhrase());
+                throw new ClientException(cr);
+            }
+        }
+        finally
+        {
+            cr.close(); // release connection for the next batch
+        }
+    }
+
+    public boolean isDirectUpdate()
+    {
+        return directUpdate;
+    }
+
+    public UpdateBatcher getUpdateBatcher()
+    {
+        return updateBatcher;
     }
     
     public final Integer getMaxGetRequestSize(ServletConfig servletConfig, DatatypeProperty property)
@@ -16,6 +16,7 @@
 
 package org.graphity.core.provider;
 
+import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.sparql.engine.http.Service;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.config.ClientConfig;
@@ -23,25 +24,66 @@ import com.sun.jersey.api.client.config.DefaultClientConfig;
 import com.sun.jersey.api.client.filter.ClientFilter;
 import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
 import com.sun.jersey.api.client.filter.LoggingFilter;
-import com.sun.jersey.client.urlconnection.URLConnectionClientHandler;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.graphity.core.client.AbortableRequestFilter;
+import org.graphity.core.client.AbortableRequestInterceptor;
+import org.graphity.core.client.DeadlineInterceptor;
+import org.graphity.core.client.OriginConcurrencyFilter;
+import org.graphity.core.client.OriginMetricsFilter;
+import org.graphity.core.metrics.MetricRegistry;
+import org.graphity.core.vocabulary.G;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * JAX-RS provider of the HTTP client used to access origins (remote SPARQL endpoints and graph stores).
+ * The client is created once per application and shared by all requests. It is backed by a pooled
+ * connection manager, so that connections to origins are kept alive and reused.
+ * Pool size, keep-alive and timeouts are configured using <code>g:maxConnections</code>,
+ * <code>g:maxConnectionsPerOrigin</code>, <code>g:keepAlive</code>, <code>g:connectTimeout</code>,
+ * <code>g:readTimeout</code> and <code>g:connectionRequestTimeout</code> parameters in web.xml.
+ * Origin requests that cannot get a pooled connection in time fail instead of waiting indefinitely.
+ * Concurrent requests per origin can be limited using <code>g:maxConcurrentOriginRequests</code> and <code>g:originWaitTimeout</code>.
+ * If metrics are enabled, origin round-trip times and response sizes are recorded.
+ * Origin requests are bounded by the deadline of the request they are made for, if there is one.
+ * Needs to be registered in the application.
+ * 
  * @author Martynas Jusevičius <martynas@graphity.org>
  */
 public class ClientProvider extends PerRequestTypeInjectableProvider<Context, Client> implements ContextResolver<Client>
 {
-    private static final Logger log = LoggerFactory.getLogger(DataManagerProvider.class);
+    private static final Logger log = LoggerFactory.getLogger(ClientProvider.class);
 
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ORIGIN = 20;
+    public static final int DEFAULT_ORIGIN_WAIT_TIMEOUT = 5000;
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 10000;
+    
     @Context ServletConfig servletConfig;
+    @Context Providers providers;
+    
+    private volatile Client client;
+    private PoolingClientConnectionManager connectionManager;
     
     public ClientProvider()
     {
@@ -52,6 +94,11 @@ public class ClientProvider extends PerRequestTypeInjectableProvider<Context, Cl
     {
         return servletConfig;
     }
+
+    public Providers getProviders()
+    {
+        return providers;
+    }
     
     @Override
     public Injectable<Client> getInjectable(ComponentContext ic, Context a)
@@ -72,21 +119,41 @@ public class ClientProvider extends PerRequestTypeInjectableProvider<Context, Cl
         return getClient();
     }
 
+    /**
+     * Returns the shared client instance. It is created on first use.
+     * 
+     * @return HTTP client
+     */
     public Client getClient()
     {
-        return getClient(addProviders(new DefaultClientConfig()), getHTTPAuthFilter(getServletConfig()));
+        Client result = client;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = client;
+                if (result == null)
+                {
+                    result = client = getClient(addProviders(new DefaultClientConfig()), getHTTPAuthFilter(getServletConfig()));
+                    if (log.isDebugEnabled()) log.debug("Created shared HTTP Client: {}", result);
+                }
+            }
+        }
+        
+        return result;
     }
     
     public ClientConfig addProviders(ClientConfig clientConfig)
     {
         if (clientConfig == null) throw new IllegalArgumentException("ClientConfig cannot be null");
         
-        clientConfig.getProperties().put(URLConnectionClientHandler.PROPERTY_HTTP_URL_CONNECTION_SET_METHOD_WORKAROUND, true);
         clientConfig.getSingletons().add(new ModelProvider());
         clientConfig.getSingletons().add(new DatasetProvider());
         clientConfig.getSingletons().add(new ResultSetProvider());
         clientConfig.getSingletons().add(new QueryWriter());
         clientConfig.getSingletons().add(new UpdateRequestReader()); // TO-DO: UpdateRequestProvider
+        clientConfig.getSingletons().add(new UpdateRequestWriter()); // direct update POST
+        if (getMetricRegistry() != null) clientConfig.getSingletons().add(new MetricRegistryProvider(getMetricRegistry())); // parse/serialize timing
 
         return clientConfig;
     }
@@ -106,11 +173,98 @@ public class ClientProvider extends PerRequestTypeInjectableProvider<Context, Cl
     {
         if (clientConfig == null) throw new IllegalArgumentException("ClientConfig cannot be null");
         
-        Client client = Client.create(clientConfig);
+        Client client = new ApacheHttpClient4(new ApacheHttpClient4Handler(getHttpClient(getServletConfig()), null, false), clientConfig);
         if (clientFilter != null) client.addFilter(clientFilter);
+        
+        int maxConcurrentRequests = getIntParam(getServletConfig(), G.maxConcurrentOriginRequests, 0);
+        if (maxConcurrentRequests > 0)
+            client.addFilter(new OriginConcurrencyFilter(maxConcurrentRequests, getIntParam(getServletConfig(), G.originWaitTimeout, DEFAULT_ORIGIN_WAIT_TIMEOUT)));
+        if (getMetricRegistry() != null) client.addFilter(new OriginMetricsFilter(getMetricRegistry()));
+        client.addFilter(new AbortableRequestFilter()); // hands origin requests recorded by the interceptor over to responses
         if (log.isDebugEnabled()) client.addFilter(new LoggingFilter(System.out));
         
         return client;
     }
+
+    /**
+     * Returns application metric registry, if metrics are enabled.
+     * 
+     * @return metric registry or null
+     */
+    public MetricRegistry getMetricRegistry()
+    {
+        return SingletonContextProvider.getContext(getProviders(), MetricRegistry.class);
+    }
+    
+    /**
+     * Creates pooled Apache HTTP client from servlet configuration.
+     * 
+     * @param servletConfig servlet config
+     * @return HTTP client
+     */
+    public DefaultHttpClient getHttpClient(ServletConfig servletConfig)
+    {
+        if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+
+        connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+        connectionManager.setMaxTotal(getIntParam(servletConfig, G.maxConnections, DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute(getIntParam(servletConfig, G.maxConnectionsPerOrigin, DEFAULT_MAX_CONNECTIONS_PER_ORIGIN));
+        
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, getIntParam(servletConfig, G.connectTimeout, 0));
+        HttpConnectionParams.setSoTimeout(params, getIntParam(servletConfig, G.readTimeout, 0));
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, getIntParam(servletConfig, G.connectionRequestTimeout, DEFAULT_CONNECTION_REQUEST_TIMEOUT));
+        params.setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.IGNORE_COOKIES); // client is shared, origin cookies must not leak between requests
+        
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, params);
+        httpClient.addRequestInterceptor(new DeadlineInterceptor()); // request deadline, if any, applies to origin requests
+        httpClient.addRequestInterceptor(new AbortableRequestInterceptor()); // allows reading of origin responses to be stopped early
+        
+        if (servletConfig.getInitParameter(G.keepAlive.getURI()) != null)
+        {
+            final long keepAlive = Long.parseLong(servletConfig.getInitParameter(G.keepAlive.getURI()).toString());
+            if (keepAlive > 0)
+                httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy()
+                {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+                    {
+                        return keepAlive;
+                    }
+                });
+            else
+                httpClient.setReuseStrategy(new NoConnectionReuseStrategy());
+        }
+        
+        return httpClient;
+    }
+    
+    public int getIntParam(ServletConfig servletConfig, Property property, int defaultValue)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (servletConfig.getInitParameter(property.getURI()) != null)
+            return Integer.parseInt(servletConfig.getInitParameter(property.getURI()).toString());
+        return defaultValue;
+    }
+    
+    public PoolingClientConnectionManager getConnectionManager()
+    {
+        return connectionManager;
+    }
+    
+    /**
+     * Closes pooled connections when the application is shut down.
+     * Called by the application after pending write-behind appends have been flushed.
+     * 
+     * @see org.graphity.core.Application#destroy()
+     */
+    public void destroy()
+    {
+        if (client != null) client.destroy();
+        if (connectionManager != null) connectionManager.shutdown();
+    }
     
-}
\ No newline at end of file
+}
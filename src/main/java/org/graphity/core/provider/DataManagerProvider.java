@@ -20,6 +20,7 @@ package org.graphity.core.provider;
 import com.hp.hpl.jena.query.ARQ;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.util.LocationMapper;
+import com.sun.jersey.api.client.Client;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
@@ -27,6 +28,7 @@ import javax.servlet.ServletConfig;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
 import org.graphity.core.MediaTypes;
 import org.graphity.core.util.jena.DataManager;
 import org.graphity.core.vocabulary.G;
@@ -35,6 +37,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * JAX-RS provider for data manager class.
+ * The data manager is created once, on first use, and shared by all requests (including its model cache).
+ * Model caching and preemptive authentication are either supplied by the application from the configuration
+ * read at startup, or read from the servlet config.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -47,15 +52,39 @@ public class DataManagerProvider extends PerRequestTypeInjectableProvider<Contex
     private static final Logger log = LoggerFactory.getLogger(DataManagerProvider.class);
 
     @Context ServletConfig servletConfig;
+    @Context Providers providers;
+
+    private final Boolean cacheModelLoads, preemptiveAuth;
+    private volatile DataManager dataManager;
 
     public ServletConfig getServletConfig()
     {
 	return servletConfig;
     }
 
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
     public DataManagerProvider()
     {
         super(DataManager.class);
+        this.cacheModelLoads = null;
+        this.preemptiveAuth = null;
+    }
+
+    /**
+     * Constructs provider with configuration values supplied by the application.
+     * 
+     * @param cacheModelLoads true if loaded models should be cached
+     * @param preemptiveAuth true if HTTP Basic auth credentials should be sent preemptively
+     */
+    public DataManagerProvider(boolean cacheModelLoads, boolean preemptiveAuth)
+    {
+        super(DataManager.class);
+        this.cacheModelLoads = cacheModelLoads;
+        this.preemptiveAuth = preemptiveAuth;
     }
 
     @Override
@@ -72,17 +101,34 @@ public class DataManagerProvider extends PerRequestTypeInjectableProvider<Contex
     }
 
     /**
-     * Returns default data manager instance.
+     * Returns the shared data manager instance. It is created on first use.
      * @return data manager instance
      */
     public DataManager getDataManager()
     {
-        return getDataManager(getServletConfig());
+        DataManager result = dataManager;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = dataManager;
+                if (result == null)
+                {
+                    if (cacheModelLoads != null && preemptiveAuth != null)
+                        result = getDataManager(LocationMapper.get(), getMediaTypes(), cacheModelLoads, preemptiveAuth);
+                    else result = getDataManager(getServletConfig());
+                    dataManager = result;
+                    if (log.isDebugEnabled()) log.debug("Created shared DataManager: {}", result);
+                }
+            }
+        }
+        
+        return result;
     }
 
     public DataManager getDataManager(ServletConfig servletConfig)
     {
-        return getDataManager(LocationMapper.get(), new MediaTypes(), ARQ.getContext(), servletConfig);
+        return getDataManager(LocationMapper.get(), getMediaTypes(), ARQ.getContext(), servletConfig);
     }
     
     public boolean getBooleanParam(ServletConfig servletConfig, Property property)
@@ -108,7 +154,30 @@ public class DataManagerProvider extends PerRequestTypeInjectableProvider<Contex
     public DataManager getDataManager(LocationMapper mapper, MediaTypes mediaTypes,
             boolean cacheModelLoads, boolean preemptiveAuth)
     {
-        return new DataManager(mapper, mediaTypes, cacheModelLoads, preemptiveAuth);
+        return new DataManager(mapper, mediaTypes, getClient(), cacheModelLoads, preemptiveAuth);
+    }
+
+    /**
+     * Returns shared HTTP client, if one is provided.
+     * 
+     * @return client or null
+     */
+    public Client getClient()
+    {
+        return SingletonContextProvider.getContext(getProviders(), Client.class);
+    }
+
+    /**
+     * Returns shared media types, if they are provided.
+     * 
+     * @return media types
+     */
+    public MediaTypes getMediaTypes()
+    {
+        MediaTypes mediaTypes = SingletonContextProvider.getContext(getProviders(), MediaTypes.class);
+        if (mediaTypes == null) return new MediaTypes();
+        
+        return mediaTypes;
     }
 
     @Override
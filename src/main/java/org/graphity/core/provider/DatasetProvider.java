@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
@@ -34,11 +35,17 @@ import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.graphity.core.riot.writer.BufferedNTriplesWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * JAX-RS provider for reading RDF dataset from request and writing it to response.
+ * N-Quads are written using a buffered writer that iterates the dataset directly. Datasets larger than the configured
+ * limit (<code>g:maxPrettyWriteSize</code>) are written as streaming TriG "blocks" instead of pretty TriG.
+ * Needs to be registered in the application.
  *
  * @author Martynas Jusevičius <martynas@graphity.org>
  */
@@ -48,6 +55,26 @@ public class DatasetProvider implements MessageBodyReader<Dataset>, MessageBodyW
  
     private static final Logger log = LoggerFactory.getLogger(DatasetProvider.class);
 
+    private final int bufferSize;
+    private final long maxPrettyWriteSize;
+
+    public DatasetProvider()
+    {
+        this(BufferedNTriplesWriter.DEFAULT_BUFFER_SIZE, 0);
+    }
+    
+    /**
+     * Constructs provider.
+     * 
+     * @param bufferSize output buffer size of the N-Quads writer in bytes
+     * @param maxPrettyWriteSize maximum number of quads written in pretty syntaxes (zero means no limit)
+     */
+    public DatasetProvider(int bufferSize, long maxPrettyWriteSize)
+    {
+        this.bufferSize = bufferSize;
+        this.maxPrettyWriteSize = maxPrettyWriteSize;
+    }
+    
     public boolean isQuadsMediaType(MediaType mediaType)
     {
         MediaType formatType = new MediaType(mediaType.getType(), mediaType.getSubtype()); // discard charset param
@@ -119,7 +146,37 @@ public class DatasetProvider implements MessageBodyReader<Dataset>, MessageBodyW
 	if (log.isDebugEnabled()) log.debug("Syntax used to write Dataset: {}", syntax);
 
 	//dataset.write(entityStream, syntax);
-        RDFDataMgr.write(entityStream, dataset, lang);
+        if (lang.equals(Lang.NQUADS)) new BufferedNTriplesWriter(entityStream, getBufferSize()).write(dataset.asDatasetGraph());
+        else if (lang.equals(Lang.TRIG) && getMaxPrettyWriteSize() > 0 && size(dataset) > getMaxPrettyWriteSize())
+        {
+            if (log.isDebugEnabled()) log.debug("Dataset size exceeds {} quads, writing it as {}", getMaxPrettyWriteSize(), RDFFormat.TRIG_BLOCKS);
+            RDFDataMgr.write(entityStream, dataset, RDFFormat.TRIG_BLOCKS);
+        }
+        else RDFDataMgr.write(entityStream, dataset, lang);
+    }
+
+    /**
+     * Returns number of quads in the dataset.
+     * 
+     * @param dataset dataset
+     * @return quad count
+     */
+    public long size(Dataset dataset)
+    {
+        long size = dataset.getDefaultModel().size();
+        Iterator<String> it = dataset.listNames();
+        while (it.hasNext()) size += dataset.getNamedModel(it.next()).size();
+        return size;
+    }
+    
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public long getMaxPrettyWriteSize()
+    {
+        return maxPrettyWriteSize;
     }
 
 }
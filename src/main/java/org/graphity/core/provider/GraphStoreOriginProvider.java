@@ -22,6 +22,7 @@ import com.sun.jersey.api.client.Client;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import java.net.URI;
 import javax.naming.ConfigurationException;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.WebApplicationException;
@@ -38,6 +39,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * JAX-RS provider for graph store origin.
+ * The origin is created once, on first use, and shared by all requests. Its URI is either supplied by the
+ * application from the configuration read at startup, or read from the servlet config.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -52,9 +55,23 @@ public class GraphStoreOriginProvider extends PerRequestTypeInjectableProvider<C
     @Context ServletConfig servletConfig;
     @Context Providers providers;
 
+    private final URI graphStoreURI;
+    private volatile GraphStoreOrigin origin;
+
     public GraphStoreOriginProvider()
+    {
+	this(null);
+    }
+
+    /**
+     * Constructs provider for the given origin URI.
+     * 
+     * @param graphStoreURI origin URI (if null, it is read from the servlet config)
+     */
+    public GraphStoreOriginProvider(URI graphStoreURI)
     {
 	super(GraphStoreOrigin.class);
+        this.graphStoreURI = graphStoreURI;
     }
 
     public ServletConfig getServletConfig()
@@ -87,13 +104,39 @@ public class GraphStoreOriginProvider extends PerRequestTypeInjectableProvider<C
     }
 
     /**
-     * Returns configured Graph Store origin.
-     * Uses <code>gs:graphStore</code> context parameter value from web.xml as graph store URI.
+     * Returns the shared Graph Store origin. It is created on first use.
      * 
      * @return graph store origin
      */
     public GraphStoreOrigin getGraphStoreOrigin()
     {
+        GraphStoreOrigin result = origin;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = origin;
+                if (result == null)
+                {
+                    result = origin = createGraphStoreOrigin();
+                    if (log.isDebugEnabled()) log.debug("Created shared GraphStoreOrigin: {}", result);
+                }
+            }
+        }
+        
+        return result;
+    }
+
+    /**
+     * Creates Graph Store origin from the URI supplied by the application or, if there is none, from
+     * <code>gs:graphStore</code> context parameter value in web.xml.
+     * 
+     * @return new origin
+     */
+    public GraphStoreOrigin createGraphStoreOrigin()
+    {
+        if (getGraphStoreURI() != null) return getGraphStoreOrigin(getGraphStoreURI());
+        
         GraphStoreOrigin origin = getGraphStoreOrigin(G.graphStore);
         
         if (origin == null)
@@ -131,10 +174,32 @@ public class GraphStoreOriginProvider extends PerRequestTypeInjectableProvider<C
         return null;
     }
 
+    /**
+     * Returns origin for the given URI.
+     * 
+     * @param uri origin URI
+     * @return origin
+     */
+    public GraphStoreOrigin getGraphStoreOrigin(URI uri)
+    {
+        if (uri == null) throw new IllegalArgumentException("URI cannot be null");
+
+        return new GraphStoreOriginBase(getClient().resource(uri));
+    }
+
+    /**
+     * Returns origin URI supplied by the application.
+     * 
+     * @return URI or null
+     */
+    public URI getGraphStoreURI()
+    {
+        return graphStoreURI;
+    }
+
     public Client getClient()
     {
-	ContextResolver<Client> cr = getProviders().getContextResolver(Client.class, null);
-	return cr.getContext(Client.class);
+        return SingletonContextProvider.getContext(getProviders(), Client.class);
     }
     
 }
\ No newline at end of file
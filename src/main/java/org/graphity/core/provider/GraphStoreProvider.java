@@ -30,6 +30,7 @@ import org.graphity.core.MediaTypes;
 import org.graphity.core.model.GraphStore;
 import org.graphity.core.model.GraphStoreFactory;
 import org.graphity.core.model.GraphStoreOrigin;
+import org.graphity.core.util.LocalDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,14 +72,22 @@ public class GraphStoreProvider extends PerRequestTypeInjectableProvider<Context
 
     public GraphStoreOrigin getOrigin()
     {
-	ContextResolver<GraphStoreOrigin> cr = getProviders().getContextResolver(GraphStoreOrigin.class, null);
-	return cr.getContext(GraphStoreOrigin.class);
+        return SingletonContextProvider.getContext(getProviders(), GraphStoreOrigin.class);
     }
     
+    /**
+     * Returns local dataset, if it is provided.
+     * 
+     * @return dataset or null, if requests are forwarded to the origin
+     */
+    public LocalDataset getLocalDataset()
+    {
+        return SingletonContextProvider.getContext(getProviders(), LocalDataset.class);
+    }
+
     public MediaTypes getMediaTypes()
     {
-	ContextResolver<MediaTypes> cr = getProviders().getContextResolver(MediaTypes.class, null);
-	return cr.getContext(MediaTypes.class);
+        return SingletonContextProvider.getContext(getProviders(), MediaTypes.class);
     }
 
     @Override
@@ -96,12 +105,15 @@ public class GraphStoreProvider extends PerRequestTypeInjectableProvider<Context
 
     public GraphStore getGraphStore()
     {
-        return GraphStoreFactory.createProxy(getRequest(), getServletConfig(), getMediaTypes(), getOrigin());
+        if (getLocalDataset() != null)
+            return GraphStoreFactory.createLocal(getRequest(), getServletConfig(), getMediaTypes(), getLocalDataset(), getProviders());
+        
+        return getGraphStore(getRequest(), getServletConfig(), getMediaTypes(), getOrigin());
     }
 
     public GraphStore getGraphStore(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, GraphStoreOrigin origin)
     {
-        return GraphStoreFactory.createProxy(request, servletConfig, mediaTypes, origin);
+        return GraphStoreFactory.createProxy(request, servletConfig, mediaTypes, origin, getProviders());
     }
     
     @Override
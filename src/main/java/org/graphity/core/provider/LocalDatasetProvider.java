@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.provider;
+
+import javax.ws.rs.ext.Provider;
+import org.graphity.core.util.LocalDataset;
+
+/**
+ * JAX-RS provider of the application-wide local dataset, queried in-process instead of a remote origin.
+ * Closes the dataset when the application is destroyed.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.LocalDataset
+ */
+@Provider
+public class LocalDatasetProvider extends SingletonContextProvider<LocalDataset>
+{
+
+    public LocalDatasetProvider(LocalDataset localDataset)
+    {
+        super(LocalDataset.class, localDataset);
+    }
+
+    /**
+     * Closes the dataset. Called by the application when it is destroyed.
+     * 
+     * @see org.graphity.core.Application#destroy()
+     */
+    public void destroy()
+    {
+        getValue().close();
+    }
+    
+}
@@ -16,53 +16,34 @@
 
 package org.graphity.core.provider;
 
-import com.sun.jersey.core.spi.component.ComponentContext;
-import com.sun.jersey.spi.inject.Injectable;
-import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
-import javax.ws.rs.core.Context;
-import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
 import org.graphity.core.MediaTypes;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- *
+ * JAX-RS provider of supported media types.
+ * A single, immutable instance is shared by the whole application, so that media types (and variants built from
+ * them) are not recomputed on every injection.
+ * 
  * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.VariantRegistry
  */
 @Provider
-public class MediaTypesProvider extends PerRequestTypeInjectableProvider<Context, MediaTypes> implements ContextResolver<MediaTypes>
+public class MediaTypesProvider extends SingletonContextProvider<MediaTypes>
 {
 
-    private static final Logger log = LoggerFactory.getLogger(MediaTypesProvider.class);
-    
     public MediaTypesProvider()
     {
-        super(MediaTypes.class);
-    }
-
-    @Override
-    public Injectable<MediaTypes> getInjectable(ComponentContext ic, Context context)
-    {
-	return new Injectable<MediaTypes>()
-	{
-	    @Override
-	    public MediaTypes getValue()
-	    {
-		return getMediaTypes();
-	    }
-	};
+        this(new MediaTypes());
     }
 
-    @Override
-    public MediaTypes getContext(Class<?> type)
+    public MediaTypesProvider(MediaTypes mediaTypes)
     {
-        return getMediaTypes();
+        super(MediaTypes.class, mediaTypes);
     }
     
     public MediaTypes getMediaTypes()
     {
-        return new MediaTypes();
+        return getValue();
     }
 
 }
@@ -26,19 +26,33 @@ import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.graphity.core.metrics.MetricRegistry;
+import org.graphity.core.riot.writer.BufferedNTriplesWriter;
+import org.graphity.core.util.ModelBudget;
+import org.graphity.core.util.RDFInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * JAX-RS provider for reading RDF model from request and writing it to response.
+ * N-Triples are written using a buffered writer that iterates the graph directly. Models larger than the configured
+ * limit (<code>g:maxPrettyWriteSize</code>) are written in streaming "blocks" variants instead of pretty Turtle/N3,
+ * so that serialization stays linear.
+ * Parsing and serialization times are recorded as <code>model.parse</code> and <code>model.serialize</code> if metrics are enabled.
+ * If a memory budget is provided, request bodies exceeding it are rejected with <code>413 Request Entity Too Large</code>.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -51,6 +65,28 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
 {    
     private static final Logger log = LoggerFactory.getLogger(ModelProvider.class);
 
+    @Context Providers providers;
+    
+    private final int bufferSize;
+    private final long maxPrettyWriteSize;
+
+    public ModelProvider()
+    {
+        this(BufferedNTriplesWriter.DEFAULT_BUFFER_SIZE, 0);
+    }
+    
+    /**
+     * Constructs provider.
+     * 
+     * @param bufferSize output buffer size of the N-Triples writer in bytes
+     * @param maxPrettyWriteSize maximum number of triples written in pretty syntaxes (zero means no limit)
+     */
+    public ModelProvider(int bufferSize, long maxPrettyWriteSize)
+    {
+        this.bufferSize = bufferSize;
+        this.maxPrettyWriteSize = maxPrettyWriteSize;
+    }
+    
     public boolean isRDFMediaType(MediaType mediaType)
     {
         MediaType formatType = new MediaType(mediaType.getType(), mediaType.getSubtype()); // discard charset param
@@ -85,7 +121,20 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
 
 	// extract base URI from httpHeaders? extract charset from MediaType
         //mediaType.getParameters().containsKey("charset")
-	return model.read(entityStream, null, syntax);
+        long start = System.nanoTime();
+        if (getModelBudget() != null)
+            try
+            {
+                model = getModelBudget().read(new RDFInput(entityStream, mediaType), false);
+            }
+            catch (ModelTooLargeException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Request body exceeds memory budget after {} triples", ex.getTripleCount());
+                throw new WebApplicationException(ex, 413); // Request Entity Too Large, not in JAX-RS 1.1 Status
+            }
+        else model.read(entityStream, null, syntax);
+        if (getMetricRegistry() != null) getMetricRegistry().recordSince("model.parse", start);
+        return model;
     }
     
     // WRITER
@@ -118,7 +167,67 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
 	String syntax = lang.getName();
 	if (log.isDebugEnabled()) log.debug("Syntax used to write Model: {}", syntax);
 
-	model.write(entityStream, syntax);
+        long start = System.nanoTime();
+        if (lang.equals(Lang.NTRIPLES)) new BufferedNTriplesWriter(entityStream, getBufferSize()).write(model.getGraph());
+        else
+        {
+            RDFFormat blocksFormat = getBlocksFormat(lang);
+            if (blocksFormat != null && getMaxPrettyWriteSize() > 0 && model.size() > getMaxPrettyWriteSize())
+            {
+                if (log.isDebugEnabled()) log.debug("Model size exceeds {} triples, writing it as {}", getMaxPrettyWriteSize(), blocksFormat);
+                RDFDataMgr.write(entityStream, model, blocksFormat);
+            }
+            else model.write(entityStream, syntax);
+        }
+        if (getMetricRegistry() != null) getMetricRegistry().recordSince("model.serialize", start);
+    }
+
+    /**
+     * Returns streaming variant of a pretty syntax.
+     * 
+     * @param lang RDF syntax
+     * @return "blocks" format or null, if the syntax has none
+     */
+    public RDFFormat getBlocksFormat(Lang lang)
+    {
+        if (lang.equals(Lang.TURTLE) || lang.equals(Lang.N3)) return RDFFormat.TURTLE_BLOCKS;
+        
+        return null;
+    }
+    
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public long getMaxPrettyWriteSize()
+    {
+        return maxPrettyWriteSize;
+    }
+    
+    /**
+     * Returns application metric registry, if metrics are enabled.
+     * 
+     * @return metric registry or null
+     */
+    public MetricRegistry getMetricRegistry()
+    {
+        return SingletonContextProvider.getContext(getProviders(), MetricRegistry.class);
+    }
+
+    /**
+     * Returns memory budget of request bodies, if one is provided.
+     * 
+     * @return budget or null
+     */
+    public ModelBudget getModelBudget()
+    {
+        return SingletonContextProvider.getContext(getProviders(), ModelBudget.class);
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
     }
     
 }
@@ -25,11 +25,14 @@ import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.util.QueryCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Provides HTTP query parameter with SPARQL string as injectable ARQ query.
+ * Parsed queries are reused from the query cache, if it is provided.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -43,6 +46,7 @@ public class QueryParamProvider extends PerRequestTypeInjectableProvider<QueryPa
     private static final Logger log = LoggerFactory.getLogger(QueryParamProvider.class);
     
     @Context HttpContext httpContext;
+    @Context Providers providers;
 
     public QueryParamProvider()
     {
@@ -64,6 +68,8 @@ public class QueryParamProvider extends PerRequestTypeInjectableProvider<QueryPa
 		if (log.isTraceEnabled()) log.trace("Providing Injectable<Query> with @QueryParam({}) and value: {}", paramName, value);
 		try
 		{
+		    QueryCache queryCache = getQueryCache();
+		    if (queryCache != null) return queryCache.create(value);
 		    return QueryFactory.create(value);
 		}
 		catch (Exception ex)
@@ -81,4 +87,19 @@ public class QueryParamProvider extends PerRequestTypeInjectableProvider<QueryPa
 	return httpContext;
     }
 
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
+    /**
+     * Returns parsed query cache, if one is provided.
+     * 
+     * @return cache or null
+     */
+    public QueryCache getQueryCache()
+    {
+        return SingletonContextProvider.getContext(getProviders(), QueryCache.class);
+    }
+
 } 
\ No newline at end of file
@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.provider;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.NoWriterForLangException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.graphity.core.util.RDFInput;
+import org.graphity.core.util.RDFStreamingOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JAX-RS provider for reading unparsed RDF documents from request and writing them to response.
+ * If the document is already in the response media type, its bytes are copied as they are.
+ * Otherwise it is transcoded: parsed and written triple by triple for streaming syntaxes (N-Triples, N-Quads,
+ * Turtle, RDF/Binary), or via an in-memory model for the rest (e.g. RDF/XML).
+ * When reading, the request body is not parsed, but wrapped as it is.
+ * Needs to be registered in the application.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.RDFInput
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyReader.html">JAX-RS MessageBodyReader</a>
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
+ */
+@Provider
+public class RDFInputProvider implements MessageBodyReader<RDFInput>, MessageBodyWriter<RDFInput>
+{
+    private static final Logger log = LoggerFactory.getLogger(RDFInputProvider.class);
+
+    public static final int BUFFER_SIZE = 8192;
+
+    public Lang getLang(MediaType mediaType)
+    {
+        MediaType formatType = new MediaType(mediaType.getType(), mediaType.getSubtype()); // discard charset param
+        return RDFLanguages.contentTypeToLang(formatType.toString());
+    }
+
+    // READER
+    
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return type == RDFInput.class && getLang(mediaType) != null;
+    }
+
+    @Override
+    public RDFInput readFrom(Class<RDFInput> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException
+    {
+	if (log.isTraceEnabled()) log.trace("Reading RDFInput with HTTP headers: {} MediaType: {}", httpHeaders, mediaType);
+        return new RDFInput(entityStream, mediaType);
+    }
+    
+    // WRITER
+    
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return RDFInput.class.isAssignableFrom(type) && getLang(mediaType) != null;
+    }
+
+    @Override
+    public long getSize(RDFInput input, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+	return -1;
+    }
+
+    @Override
+    public void writeTo(RDFInput input, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
+    {
+        try
+        {
+            Lang inLang = getLang(input.getMediaType());
+            Lang outLang = getLang(mediaType);
+            if (inLang == null || outLang == null)
+            {
+                Throwable ex = new NoWriterForLangException("Media type not supported");
+                if (log.isErrorEnabled()) log.error("Cannot transcode RDF from MediaType {} to {}", input.getMediaType(), mediaType);
+                throw new WebApplicationException(ex, Response.Status.INTERNAL_SERVER_ERROR);
+            }
+
+            if (inLang.equals(outLang))
+            {
+                if (log.isTraceEnabled()) log.trace("Copying RDF stream with MediaType: {}", mediaType);
+                copy(input.getInputStream(), entityStream);
+                return;
+            }
+
+            StreamRDF stream = getStreamRDF(entityStream, outLang);
+            if (stream != null)
+            {
+                if (log.isDebugEnabled()) log.debug("Transcoding RDF stream from {} to {}", inLang, outLang);
+                RDFDataMgr.parse(stream, input.getInputStream(), input.getBase(), inLang);
+                return;
+            }
+
+            if (log.isDebugEnabled()) log.debug("Transcoding RDF from {} to {} via Model", inLang, outLang);
+            Model model = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(model, input.getInputStream(), input.getBase(), inLang);
+            model.write(entityStream, outLang.getName());
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns streaming RDF writer for the given syntax.
+     * 
+     * @param out output stream
+     * @param lang RDF syntax
+     * @return stream or null, if the syntax cannot be written in a streaming fashion
+     */
+    public StreamRDF getStreamRDF(OutputStream out, Lang lang)
+    {
+        return RDFStreamingOutput.getStreamRDF(out, lang);
+    }
+
+    public static void copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+    }
+
+}
@@ -20,22 +20,31 @@ import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.query.ResultSetFactory;
 import com.hp.hpl.jena.query.ResultSetFormatter;
 import com.hp.hpl.jena.query.ResultSetRewindable;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+import org.graphity.core.metrics.MetricRegistry;
+import org.graphity.core.util.StreamingResultSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * JAX-RS provider for writing SPARQL result set to the response.
+ * JAX-RS provider for reading SPARQL result set from the origin and writing it to the response.
+ * Reads rewindable (in-memory) result sets when <code>ResultSetRewindable</code> is requested, and forward-only
+ * streaming result sets when plain <code>ResultSet</code> is requested.
+ * Parsing of rewindable result sets and serialization times are recorded as <code>resultset.parse</code> and
+ * <code>resultset.serialize</code> if metrics are enabled (streaming result sets are parsed while they are serialized).
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -44,27 +53,41 @@ import org.slf4j.LoggerFactory;
  * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
  */
 @Provider
-public class ResultSetProvider implements MessageBodyReader<ResultSetRewindable>, MessageBodyWriter<ResultSet>
+public class ResultSetProvider implements MessageBodyReader<ResultSet>, MessageBodyWriter<ResultSet>
 {
     private static final Logger log = LoggerFactory.getLogger(ResultSetProvider.class);
+
+    @Context Providers providers;
     
     @Override
     public boolean isReadable(Class<?> type, Type type1, Annotation[] antns, javax.ws.rs.core.MediaType mediaType)
     {
-        return type == ResultSetRewindable.class &&
+        return (type == ResultSetRewindable.class || type == ResultSet.class) &&
                 (mediaType.isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_RESULTS_XML_TYPE) ||
                 mediaType.isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE));        
     }
 
     @Override
-    public ResultSetRewindable readFrom(Class<ResultSetRewindable> type, Type type1, Annotation[] antns, javax.ws.rs.core.MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream in) throws IOException, WebApplicationException
+    public ResultSet readFrom(Class<ResultSet> type, Type type1, Annotation[] antns, javax.ws.rs.core.MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream in) throws IOException, WebApplicationException
     {
         if (log.isTraceEnabled()) log.trace("Reading ResultSet with HTTP headers: {} MediaType: {}", httpHeaders, mediaType);
-        // result set needs to be rewindable because results might be processed multiple times, e.g. to calculate hash and write response
+        long start = System.nanoTime();
+        ResultSet resultSet;
 	if (mediaType.isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
-	    return ResultSetFactory.makeRewindable(ResultSetFactory.fromJSON(in));
+	    resultSet = ResultSetFactory.fromJSON(in);
 	else
-	    return ResultSetFactory.makeRewindable(ResultSetFactory.fromXML(in));        
+	    resultSet = ResultSetFactory.fromXML(in); // XML results are parsed lazily (StAX)
+
+        // result set needs to be rewindable if results might be processed multiple times, e.g. to calculate hash and write response
+        if (ResultSetRewindable.class.isAssignableFrom(type))
+        {
+            ResultSetRewindable rewindable = ResultSetFactory.makeRewindable(resultSet);
+            if (getMetricRegistry() != null) getMetricRegistry().recordSince("resultset.parse", start);
+            return rewindable;
+        }
+
+        // otherwise the stream stays open until the results are consumed (e.g. written to the response)
+        return new StreamingResultSet(resultSet, in);
     }
     
     @Override
@@ -84,10 +107,34 @@ public class ResultSetProvider implements MessageBodyReader<ResultSetRewindable>
     @Override
     public void writeTo(ResultSet results, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
     {
-	if (mediaType.isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
-	    ResultSetFormatter.outputAsJSON(entityStream, results);
-	else
-	    ResultSetFormatter.outputAsXML(entityStream, results);
+        long start = System.nanoTime();
+        try
+        {
+            if (mediaType.isCompatible(org.graphity.core.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
+                ResultSetFormatter.outputAsJSON(entityStream, results);
+            else
+                ResultSetFormatter.outputAsXML(entityStream, results);
+            if (getMetricRegistry() != null) getMetricRegistry().recordSince("resultset.serialize", start);
+        }
+        finally
+        {
+            if (results instanceof Closeable) ((Closeable)results).close(); // release the origin stream
+        }
+    }
+
+    /**
+     * Returns application metric registry, if metrics are enabled.
+     * 
+     * @return metric registry or null
+     */
+    public MetricRegistry getMetricRegistry()
+    {
+        return SingletonContextProvider.getContext(getProviders(), MetricRegistry.class);
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
     }
     
 }
@@ -22,6 +22,7 @@ import com.sun.jersey.api.client.Client;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import java.net.URI;
 import javax.naming.ConfigurationException;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.WebApplicationException;
@@ -38,6 +39,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * JAX-RS provider for SPARQL endpoint origin.
+ * The origin is created once, on first use, and shared by all requests. Its URI is either supplied by the
+ * application from the configuration read at startup, or read from the servlet config.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -52,9 +55,23 @@ public class SPARQLEndpointOriginProvider extends PerRequestTypeInjectableProvid
     @Context ServletConfig servletConfig;
     @Context Providers providers;
 
+    private final URI endpointURI;
+    private volatile SPARQLEndpointOrigin origin;
+
     public SPARQLEndpointOriginProvider()
+    {
+	this(null);
+    }
+
+    /**
+     * Constructs provider for the given origin URI.
+     * 
+     * @param endpointURI origin URI (if null, it is read from the servlet config)
+     */
+    public SPARQLEndpointOriginProvider(URI endpointURI)
     {
 	super(SPARQLEndpointOrigin.class);
+        this.endpointURI = endpointURI;
     }
 
     public ServletConfig getServletConfig()
@@ -67,10 +84,32 @@ public class SPARQLEndpointOriginProvider extends PerRequestTypeInjectableProvid
         return providers;
     }
 
+    /**
+     * Returns origin for the given URI.
+     * 
+     * @param uri origin URI
+     * @return origin
+     */
+    public SPARQLEndpointOrigin getSPARQLEndpointOrigin(URI uri)
+    {
+        if (uri == null) throw new IllegalArgumentException("URI cannot be null");
+
+        return new SPARQLEndpointOriginBase(getClient().resource(uri));
+    }
+
+    /**
+     * Returns origin URI supplied by the application.
+     * 
+     * @return URI or null
+     */
+    public URI getEndpointURI()
+    {
+        return endpointURI;
+    }
+
     public Client getClient()
     {
-	ContextResolver<Client> cr = getProviders().getContextResolver(Client.class, null);
-	return cr.getContext(Client.class);
+        return SingletonContextProvider.getContext(getProviders(), Client.class);
     }
     
     @Override
@@ -93,13 +132,39 @@ public class SPARQLEndpointOriginProvider extends PerRequestTypeInjectableProvid
     }
 
     /**
-     * Returns configured SPARQL endpoint origin.
-     * Uses <code>sd:endpoint</code> context parameter value as endpoint URI.
+     * Returns the shared SPARQL endpoint origin. It is created on first use.
      * 
      * @return configured origin
      */
     public SPARQLEndpointOrigin getSPARQLEndpointOrigin()
     {
+        SPARQLEndpointOrigin result = origin;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = origin;
+                if (result == null)
+                {
+                    result = origin = createSPARQLEndpointOrigin();
+                    if (log.isDebugEnabled()) log.debug("Created shared SPARQLEndpointOrigin: {}", result);
+                }
+            }
+        }
+        
+        return result;
+    }
+
+    /**
+     * Creates SPARQL endpoint origin from the URI supplied by the application or, if there is none, from
+     * <code>sd:endpoint</code> context parameter value in web.xml.
+     * 
+     * @return new origin
+     */
+    public SPARQLEndpointOrigin createSPARQLEndpointOrigin()
+    {
+        if (getEndpointURI() != null) return getSPARQLEndpointOrigin(getEndpointURI());
+        
         SPARQLEndpointOrigin origin = getSPARQLEndpointOrigin(SD.endpoint);
         
         if (origin == null)
@@ -30,11 +30,15 @@ import org.graphity.core.MediaTypes;
 import org.graphity.core.model.SPARQLEndpoint;
 import org.graphity.core.model.SPARQLEndpointFactory;
 import org.graphity.core.model.SPARQLEndpointOrigin;
+import org.graphity.core.util.LocalDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * JAX-RS provider for SPARQL endpoint.
+ * The endpoint is created per request, since it wraps the current request. The origin and media types it is
+ * constructed from are application-scoped and shared.
+ * If local dataset is provided, the endpoint executes queries on it instead of the origin.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
@@ -71,14 +75,22 @@ public class SPARQLEndpointProvider extends PerRequestTypeInjectableProvider<Con
 
     public SPARQLEndpointOrigin getOrigin()
     {
-	ContextResolver<SPARQLEndpointOrigin> cr = getProviders().getContextResolver(SPARQLEndpointOrigin.class, null);
-	return cr.getContext(SPARQLEndpointOrigin.class);
+        return SingletonContextProvider.getContext(getProviders(), SPARQLEndpointOrigin.class);
+    }
+
+    /**
+     * Returns local dataset, if it is provided.
+     * 
+     * @return dataset or null, if requests are forwarded to the origin
+     */
+    public LocalDataset getLocalDataset()
+    {
+        return SingletonContextProvider.getContext(getProviders(), LocalDataset.class);
     }
 
     public MediaTypes getMediaTypes()
     {
-	ContextResolver<MediaTypes> cr = getProviders().getContextResolver(MediaTypes.class, null);
-	return cr.getContext(MediaTypes.class);
+        return SingletonContextProvider.getContext(getProviders(), MediaTypes.class);
     }
 
     @Override
@@ -96,12 +108,15 @@ public class SPARQLEndpointProvider extends PerRequestTypeInjectableProvider<Con
 
     public SPARQLEndpoint getSPARQLEndpoint()
     {
+        if (getLocalDataset() != null)
+            return SPARQLEndpointFactory.createLocal(getRequest(), getServletConfig(), getMediaTypes(), getLocalDataset(), getProviders());
+        
         return getSPARQLEndpoint(getRequest(), getServletConfig(), getMediaTypes(), getOrigin());
     }
 
     public SPARQLEndpoint getSPARQLEndpoint(Request request, ServletConfig servletConfig, MediaTypes mediaTypes, SPARQLEndpointOrigin origin)
     {
-        return SPARQLEndpointFactory.createProxy(request, servletConfig, mediaTypes, origin);
+        return SPARQLEndpointFactory.createProxy(request, servletConfig, mediaTypes, origin, getProviders());
     }
     
     @Override
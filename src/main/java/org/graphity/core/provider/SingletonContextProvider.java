@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.provider;
+
+import com.sun.jersey.spi.inject.SingletonTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
+
+/**
+ * Base class of JAX-RS providers of application-scoped objects, e.g. caches.
+ * The object is created once by the application, and can be both injected using <code>@Context</code> and resolved
+ * from <code>Providers</code>. Subclasses have to bind the type parameter, so that Jersey can match the resolver.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @param <T> type of the provided object
+ * @see org.graphity.core.Application
+ */
+public abstract class SingletonContextProvider<T> extends SingletonTypeInjectableProvider<Context, T> implements ContextResolver<T>
+{
+
+    public SingletonContextProvider(Class<T> type, T instance)
+    {
+        super(type, instance);
+    }
+
+    @Override
+    public T getContext(Class<?> type)
+    {
+        return getValue();
+    }
+
+    /**
+     * Resolves application-scoped object from providers.
+     * 
+     * @param <T> type of the object
+     * @param providers JAX-RS providers (can be null)
+     * @param type class of the object
+     * @return provided object, or null if it is not provided
+     */
+    public static <T> T getContext(Providers providers, Class<T> type)
+    {
+	if (type == null) throw new IllegalArgumentException("Class cannot be null");
+        if (providers == null) return null;
+
+        ContextResolver<T> cr = providers.getContextResolver(type, null);
+        if (cr == null) return null;
+
+        return cr.getContext(type);
+    }
+
+}
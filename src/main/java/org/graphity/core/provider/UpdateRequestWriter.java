@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.provider;
+
+import com.hp.hpl.jena.sparql.modify.request.UpdateWriter;
+import com.hp.hpl.jena.update.UpdateRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.graphity.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JAX-RS provider for writing SPARQL Update into request body.
+ * Operations are serialized directly to the entity stream, so that large <code>INSERT DATA</code>/<code>DELETE DATA</code>
+ * payloads are not converted to a string first. Size is unknown in advance, therefore the body is sent chunked.
+ * Needs to be registered in the client config.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.client.SPARQLClient
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
+ */
+@Provider
+@Produces(MediaType.APPLICATION_SPARQL_UPDATE)
+public class UpdateRequestWriter implements MessageBodyWriter<UpdateRequest>
+{
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateRequestWriter.class);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, javax.ws.rs.core.MediaType mediaType)
+    {
+        return UpdateRequest.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(UpdateRequest updateRequest, Class<?> type, Type genericType, Annotation[] annotations, javax.ws.rs.core.MediaType mediaType)
+    {
+	return -1;
+    }
+
+    @Override
+    public void writeTo(UpdateRequest updateRequest, Class<?> type, Type genericType, Annotation[] annotations, javax.ws.rs.core.MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
+    {
+	if (log.isTraceEnabled()) log.trace("Writing UpdateRequest with {} operations and HTTP headers: {}", updateRequest.getOperations().size(), httpHeaders);
+
+        IndentedWriter out = new IndentedWriter(entityStream); // UTF-8
+        UpdateWriter.output(updateRequest, out);
+        out.flush();
+    }
+
+}
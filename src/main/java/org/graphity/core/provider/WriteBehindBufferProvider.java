@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.provider;
+
+import javax.ws.rs.ext.Provider;
+import org.graphity.core.util.WriteBehindBuffer;
+
+/**
+ * JAX-RS provider of the application-wide write-behind buffer of Graph Store appends.
+ * Flushes pending appends when the application is destroyed.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.WriteBehindBuffer
+ */
+@Provider
+public class WriteBehindBufferProvider extends SingletonContextProvider<WriteBehindBuffer>
+{
+
+    public WriteBehindBufferProvider(WriteBehindBuffer writeBehindBuffer)
+    {
+        super(WriteBehindBuffer.class, writeBehindBuffer);
+    }
+
+    /**
+     * Flushes pending appends. Called by the application before the HTTP client is shut down.
+     * 
+     * @see org.graphity.core.Application#destroy()
+     */
+    public void destroy()
+    {
+        getValue().close();
+    }
+    
+}
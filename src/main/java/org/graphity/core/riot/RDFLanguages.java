@@ -34,6 +34,13 @@ public class RDFLanguages extends org.apache.jena.riot.RDFLanguages
             addFileExtensions("rpo").
             build();
 
+    public static final String strLangRDFBINARY    = "RDF/Binary" ;
+    
+    public static final Lang RDFBINARY = LangBuilder.create(strLangRDFBINARY, MediaType.APPLICATION_RDF_BINARY).
+            addAltNames("RDFBINARY").
+            addFileExtensions("rdfb").
+            build();
+
     // JSON-LD support is built-in in later Jena versions
     
     public static final String strLangJSONLD    = "JSON-LD" ;
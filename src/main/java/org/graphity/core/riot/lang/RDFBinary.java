@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.lang;
+
+/**
+ * Constants of the RDF/Binary syntax: a compact, dictionary-encoded serialization of triples and quads
+ * used for RDF traffic between Graphity instances and origins that support it.
+ * 
+ * A document starts with the magic bytes <code>GRB</code>, a version byte and the maximum dictionary size
+ * (as unsigned varint), followed by records. Every record starts with a tag byte:
+ * <ul>
+ * <li><code>T</code> triple: subject, predicate and object terms</li>
+ * <li><code>Q</code> quad: graph, subject, predicate and object terms</li>
+ * <li><code>P</code> prefix: prefix and namespace strings</li>
+ * <li><code>B</code> base: base URI string</li>
+ * </ul>
+ * A term is an unsigned varint. A non-zero value <i>n</i> refers to the term with dictionary ID <i>n - 1</i>.
+ * Zero is followed by an inline term (kind byte and strings), which is assigned the next dictionary ID unless
+ * the dictionary is full. Datatypes of typed literals are terms themselves, and are numbered before the literal.
+ * Strings are encoded as varint byte length followed by UTF-8 bytes.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.StreamRDFBinary
+ * @see org.graphity.core.riot.lang.RDFBinaryReader
+ */
+public class RDFBinary
+{
+
+    public static final byte[] MAGIC = { 'G', 'R', 'B' };
+    public static final byte VERSION = 1;
+
+    public static final int DEFAULT_DICTIONARY_SIZE = 1 << 16;
+    
+    public static final byte TRIPLE = 'T';
+    public static final byte QUAD = 'Q';
+    public static final byte PREFIX = 'P';
+    public static final byte BASE = 'B';
+    
+    public static final byte IRI = 1;
+    public static final byte BLANK_NODE = 2;
+    public static final byte PLAIN_LITERAL = 3;
+    public static final byte LANG_LITERAL = 4;
+    public static final byte TYPED_LITERAL = 5;
+    
+}
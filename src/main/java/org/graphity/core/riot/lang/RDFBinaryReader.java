@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.util.Context;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.riot.ReaderRIOT;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.SyntaxLabels;
+
+/**
+ * RDF/Binary parser. Reads the input through an internal buffer and emits triples and quads to the destination stream.
+ * Blank node labels are scoped to the document.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.RDFBinary
+ */
+public class RDFBinaryReader implements ReaderRIOT
+{
+
+    public static final int BUFFER_SIZE = 8192;
+    
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0, limit = 0;
+    private InputStream in;
+    private List<Node> dictionary;
+    private int dictionarySize;
+    private LabelToNode labels;
+    
+    @Override
+    public void read(InputStream in, String baseURI, ContentType ct, StreamRDF output, Context context)
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream cannot be null");
+	if (output == null) throw new IllegalArgumentException("StreamRDF cannot be null");
+
+        this.in = in;
+        position = limit = 0;
+        labels = SyntaxLabels.createLabelToNode();
+        
+        byte[] magic = new byte[RDFBinary.MAGIC.length];
+        for (int i = 0; i < magic.length; i++) magic[i] = readByte();
+        if (!Arrays.equals(magic, RDFBinary.MAGIC)) throw new RiotException("Not an RDF/Binary document");
+        byte version = readByte();
+        if (version != RDFBinary.VERSION) throw new RiotException("Unsupported RDF/Binary version: " + version);
+        dictionarySize = readVarInt();
+        dictionary = new ArrayList<>(Math.min(dictionarySize, 1024));
+
+        output.start();
+        while (fill())
+        {
+            byte tag = readByte();
+            switch (tag)
+            {
+                case RDFBinary.TRIPLE:
+                    output.triple(new Triple(readTerm(), readTerm(), readTerm()));
+                    break;
+                case RDFBinary.QUAD:
+                    output.quad(new Quad(readTerm(), readTerm(), readTerm(), readTerm()));
+                    break;
+                case RDFBinary.PREFIX:
+                    output.prefix(readString(), readString());
+                    break;
+                case RDFBinary.BASE:
+                    output.base(readString());
+                    break;
+                default:
+                    throw new RiotException("Unknown RDF/Binary record: " + tag);
+            }
+        }
+        output.finish();
+    }
+
+    protected Node readTerm()
+    {
+        int ref = readVarInt();
+        if (ref > 0)
+        {
+            if (ref > dictionary.size()) throw new RiotException("Undefined RDF/Binary term: " + (ref - 1));
+            return dictionary.get(ref - 1);
+        }
+        
+        Node node;
+        byte kind = readByte();
+        switch (kind)
+        {
+            case RDFBinary.IRI:
+                node = NodeFactory.createURI(readString());
+                break;
+            case RDFBinary.BLANK_NODE:
+                node = labels.get(null, readString());
+                break;
+            case RDFBinary.PLAIN_LITERAL:
+                node = NodeFactory.createLiteral(readString());
+                break;
+            case RDFBinary.LANG_LITERAL:
+                node = NodeFactory.createLiteral(readString(), readString(), false);
+                break;
+            case RDFBinary.TYPED_LITERAL:
+                String lex = readString();
+                node = NodeFactory.createLiteral(lex, TypeMapper.getInstance().getSafeTypeByName(readTerm().getURI()));
+                break;
+            default:
+                throw new RiotException("Unknown RDF/Binary term kind: " + kind);
+        }
+        
+        if (dictionary.size() < dictionarySize) dictionary.add(node);
+        return node;
+    }
+    
+    protected String readString()
+    {
+        int length = readVarInt();
+        if (length <= limit - position)
+        {
+            String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return string;
+        }
+        
+        byte[] bytes = new byte[length];
+        int offset = limit - position;
+        System.arraycopy(buffer, position, bytes, 0, offset);
+        position = limit;
+        try
+        {
+            while (offset < length)
+            {
+                int read = in.read(bytes, offset, length - offset);
+                if (read < 0) throw new RiotException("Unexpected end of RDF/Binary input");
+                offset += read;
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new RiotException(ex);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    protected int readVarInt()
+    {
+        int value = 0, shift = 0;
+        byte b;
+        do
+        {
+            if (shift > 28) throw new RiotException("Malformed RDF/Binary varint");
+            b = readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    protected byte readByte()
+    {
+        if (!fill()) throw new RiotException("Unexpected end of RDF/Binary input");
+        return buffer[position++];
+    }
+
+    /**
+     * Makes sure the buffer has unread bytes, unless the input is exhausted.
+     * 
+     * @return false at the end of input
+     */
+    protected boolean fill()
+    {
+        if (position < limit) return true;
+        
+        try
+        {
+            int read;
+            do read = in.read(buffer, 0, buffer.length);
+            while (read == 0);
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+        catch (IOException ex)
+        {
+            throw new RiotException(ex);
+        }
+    }
+    
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.WriterDatasetRIOT;
+import org.apache.jena.riot.WriterDatasetRIOTFactory;
+import org.apache.jena.riot.WriterGraphRIOT;
+import org.apache.jena.riot.WriterGraphRIOTFactory;
+import org.apache.jena.riot.system.PrefixMap;
+import org.graphity.core.riot.RDFLanguages;
+
+/**
+ * RIOT writer of graphs and datasets as RDF/Binary.
+ * Since the syntax is binary, writing to character streams is not supported.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.StreamRDFBinary
+ */
+public class RDFBinaryWriter implements WriterGraphRIOT, WriterDatasetRIOT
+{
+
+    public static final RDFFormat FORMAT = new RDFFormat(RDFLanguages.RDFBINARY);
+    
+    /**
+     * Factory of RDF/Binary writers, to be registered with <code>RDFWriterRegistry</code>.
+     */
+    public static class Factory implements WriterGraphRIOTFactory, WriterDatasetRIOTFactory
+    {
+
+        @Override
+        public RDFBinaryWriter create(RDFFormat syntaxForm)
+        {
+            return new RDFBinaryWriter();
+        }
+
+    }
+    
+    @Override
+    public void write(OutputStream out, Graph graph, PrefixMap prefixMap, String baseURI, Context context)
+    {
+        StreamRDFBinary stream = new StreamRDFBinary(out);
+        stream.start();
+        prefixes(stream, prefixMap);
+        ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (it.hasNext()) stream.triple(it.next());
+        }
+        finally
+        {
+            it.close();
+        }
+        stream.finish();
+    }
+
+    @Override
+    public void write(OutputStream out, DatasetGraph datasetGraph, PrefixMap prefixMap, String baseURI, Context context)
+    {
+        StreamRDFBinary stream = new StreamRDFBinary(out);
+        stream.start();
+        prefixes(stream, prefixMap);
+        Iterator<Quad> it = datasetGraph.find(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        while (it.hasNext()) stream.quad(it.next());
+        stream.finish();
+    }
+
+    @Override
+    public void write(Writer out, Graph graph, PrefixMap prefixMap, String baseURI, Context context)
+    {
+        throw new UnsupportedOperationException("RDF/Binary cannot be written to a character stream");
+    }
+
+    @Override
+    public void write(Writer out, DatasetGraph datasetGraph, PrefixMap prefixMap, String baseURI, Context context)
+    {
+        throw new UnsupportedOperationException("RDF/Binary cannot be written to a character stream");
+    }
+
+    protected void prefixes(StreamRDFBinary stream, PrefixMap prefixMap)
+    {
+        if (prefixMap == null) return;
+        
+        for (Map.Entry<String, String> entry : prefixMap.getMappingCopyStr().entrySet())
+            stream.prefix(entry.getKey(), entry.getValue());
+    }
+    
+    @Override
+    public Lang getLang()
+    {
+        return RDFLanguages.RDFBINARY;
+    }
+
+}
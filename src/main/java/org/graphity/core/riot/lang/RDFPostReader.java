@@ -28,11 +28,9 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.sparql.util.Context;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
 import java.util.List;
 import org.apache.jena.atlas.AtlasException;
 import org.apache.jena.atlas.io.PeekReader;
@@ -44,6 +42,7 @@ import org.apache.jena.riot.system.ErrorHandler;
 import org.apache.jena.riot.system.ParserProfile;
 import org.apache.jena.riot.system.RiotLib;
 import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.riot.tokens.Token;
 import org.apache.jena.riot.tokens.TokenType;
 import static org.apache.jena.riot.tokens.TokenType.*;
@@ -66,37 +65,35 @@ public class RDFPostReader extends ReaderRIOTBase // implements StreamRDF // imp
 {    
     private static final Logger log = LoggerFactory.getLogger(RDFPostReader.class);
     
+    /**
+     * Parses RDF/POST body into a model.
+     * The body is scanned in a single pass, without splitting it into lists of keys and values.
+     * 
+     * @param body URL-encoded RDF/POST body
+     * @param charsetName name of the body charset
+     * @return parsed model
+     * @throws URISyntaxException never thrown anymore, as URIs are not validated using <code>java.net.URI</code>
+     * @see org.graphity.core.riot.lang.RDFPostScanner
+     */
     public Model parse(String body, String charsetName) throws URISyntaxException
     {
-        List<String> keys = new ArrayList<>(), values = new ArrayList<>();
-
-	String[] params = body.split("&");
-
-	for (String param : params)
-	{
-	    if (log.isTraceEnabled()) log.trace("Parameter: {}", param);
-	    
-	    String[] array = param.split("=");
-	    String key = null;
-	    String value = null;
-
-	    try
-	    {
-		key = URLDecoder.decode(array[0], charsetName);
-		if (array.length > 1) value = URLDecoder.decode(array[1], charsetName);
-	    } catch (UnsupportedEncodingException ex)
-	    {
-		if (log.isWarnEnabled()) log.warn("Unsupported encoding", ex);
-	    }
-
-            if (value != null) // && key != null
-            {
-                keys.add(key);
-                values.add(value);
-            }
-	}
+        Model model = ModelFactory.createDefaultModel();
+        parse(body, charsetName, StreamRDFLib.graph(model.getGraph()));
+        return model;
+    }
+
+    /**
+     * Parses RDF/POST body and emits its triples to a stream.
+     * 
+     * @param body URL-encoded RDF/POST body
+     * @param charsetName name of the body charset
+     * @param output triple destination
+     */
+    public void parse(String body, String charsetName, StreamRDF output)
+    {
+	if (charsetName == null) throw new IllegalArgumentException("Charset name cannot be null");
 
-        return parse(keys, values);
+        new RDFPostScanner(Charset.forName(charsetName)).parse(body, output);
     }
 
     public Model parse(List<String> k, List<String> v) throws URISyntaxException
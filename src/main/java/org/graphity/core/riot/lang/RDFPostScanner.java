@@ -0,0 +1,404 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.datatypes.BaseDatatype;
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.jena.riot.system.StreamRDF;
+import static org.graphity.core.riot.lang.TokenizerRDFPost.*;
+
+/**
+ * Single-pass RDF/POST scanner.
+ * Reads key/value pairs directly from the URL-encoded body, decodes percent-escapes into reusable buffers,
+ * and emits triples to a <code>StreamRDF</code>. Keys are matched in place, and no intermediate lists,
+ * split arrays or <code>java.net.URI</code> objects are created.
+ * The semantics are those of <code>RDFPostReader.parse(List, List)</code>: key pairs such as <code>ol</code>/<code>ll</code>
+ * are resolved by looking one key ahead.
+ * 
+ * Instances are not thread-safe, but can be reused for consecutive bodies.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.RDFPostReader#parse(java.lang.String, java.lang.String)
+ */
+public class RDFPostScanner
+{
+    
+    private static final String[] KEYS = { RDF, DEF_NS_DECL, NS_DECL,
+        BLANK_SUBJ, URI_SUBJ, DEF_NS_SUBJ, NS_SUBJ,
+        URI_PRED, DEF_NS_PRED, NS_PRED,
+        BLANK_OBJ, URI_OBJ, DEF_NS_OBJ, NS_OBJ, LITERAL_OBJ,
+        TYPE, LANG };
+    
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final StringBuilder chars = new StringBuilder(256);
+    private byte[] bytes = new byte[64];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+    private final CharBuffer charBuffer = CharBuffer.allocate(64);
+    
+    private final Map<String, String> namespaces = new HashMap<>();
+    private final Map<String, RDFDatatype> datatypes = new HashMap<>();
+    private StreamRDF dest;
+    private Node subject, predicate;
+    private String pendingKey, pendingValue;
+
+    /**
+     * Constructs scanner for bodies encoded using the given charset.
+     * 
+     * @param charset body charset
+     */
+    public RDFPostScanner(Charset charset)
+    {
+	if (charset == null) throw new IllegalArgumentException("Charset cannot be null");
+        this.charset = charset;
+        this.decoder = charset.newDecoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Parses RDF/POST body and emits its triples and namespace declarations.
+     * 
+     * @param body URL-encoded RDF/POST body
+     * @param dest triple destination
+     */
+    public void parse(String body, StreamRDF dest)
+    {
+	if (body == null) throw new IllegalArgumentException("Body String cannot be null");
+	if (dest == null) throw new IllegalArgumentException("StreamRDF cannot be null");
+
+        this.dest = dest;
+        namespaces.clear();
+        subject = null;
+        predicate = null;
+        pendingKey = null;
+        pendingValue = null;
+        
+        dest.start();
+        try
+        {
+            int length = body.length();
+            int start = 0;
+            while (start <= length)
+            {
+                int end = body.indexOf(CH_AMPERSAND, start);
+                if (end < 0) end = length;
+
+                int equals = body.indexOf(CH_EQUALS, start);
+                if (equals >= 0 && equals < end - 1) // pairs without value are skipped
+                {
+                    String key = key(body, start, equals);
+                    if (key != null) pair(key, decode(body, equals + 1, end));
+                }
+
+                start = end + 1;
+            }
+            if (pendingKey != null) resolvePending();
+        }
+        finally
+        {
+            dest.finish();
+            this.dest = null;
+        }
+    }
+
+    /**
+     * Handles decoded key/value pair, taking the previous pending key into account.
+     * 
+     * @param key RDF/POST key
+     * @param value decoded value
+     */
+    protected void pair(String key, String value)
+    {
+        if (pendingKey != null)
+        {
+            if (resolvePending(key, value)) return;
+            resolvePending();
+        }
+        
+        switch (key)
+        {
+            case NS_DECL:
+            case NS_SUBJ:
+            case NS_PRED:
+            case NS_OBJ:
+            case LITERAL_OBJ:
+            case TYPE:
+            case LANG:
+                // meaning depends on the following key
+                pendingKey = key;
+                pendingValue = value;
+                break;
+                
+            case DEF_NS_DECL:
+                namespace("", value);
+                break;
+                
+            case BLANK_SUBJ:
+                subject(NodeFactory.createAnon(new AnonId(value)));
+                break;
+            case URI_SUBJ:
+                subject(NodeFactory.createURI(value));
+                break;
+            case DEF_NS_SUBJ:
+                subject(NodeFactory.createURI(namespaces.get("") + value));
+                break;
+                
+            case URI_PRED:
+                predicate = NodeFactory.createURI(value);
+                break;
+            case DEF_NS_PRED:
+                predicate = NodeFactory.createURI(namespaces.get("") + value);
+                break;
+                
+            case BLANK_OBJ:
+                object(NodeFactory.createAnon(new AnonId(value)));
+                break;
+            case URI_OBJ:
+                object(NodeFactory.createURI(value));
+                break;
+            case DEF_NS_OBJ:
+                object(NodeFactory.createURI(namespaces.get("") + value));
+                break;
+        }
+    }
+
+    /**
+     * Resolves pending key using the following pair.
+     * 
+     * @param key following key
+     * @param value following value
+     * @return true if the following pair has been consumed
+     */
+    protected boolean resolvePending(String key, String value)
+    {
+        String pending = pendingKey;
+        switch (pending)
+        {
+            case NS_DECL:
+                if (!key.equals(DEF_NS_DECL)) return false;
+                namespace(pendingValue, value);
+                break;
+            case NS_SUBJ:
+                if (!key.equals(DEF_NS_SUBJ)) return false;
+                subject(NodeFactory.createURI(namespaces.get(pendingValue) + value));
+                break;
+            case NS_PRED:
+                if (!key.equals(DEF_NS_PRED)) return false;
+                predicate = NodeFactory.createURI(namespaces.get(pendingValue) + value);
+                break;
+            case NS_OBJ:
+                if (!key.equals(DEF_NS_OBJ)) return false;
+                object(NodeFactory.createURI(namespaces.get(pendingValue) + value));
+                break;
+            case LITERAL_OBJ:
+                if (key.equals(TYPE)) object(NodeFactory.createLiteral(pendingValue, datatype(value)));
+                else if (key.equals(LANG)) object(NodeFactory.createLiteral(pendingValue, value, null));
+                else return false;
+                break;
+            case TYPE:
+                if (!key.equals(LITERAL_OBJ)) return false;
+                object(NodeFactory.createLiteral(value, datatype(pendingValue)));
+                break;
+            case LANG:
+                if (!key.equals(LITERAL_OBJ)) return false;
+                object(NodeFactory.createLiteral(value, pendingValue, null));
+                break;
+            default:
+                return false;
+        }
+        
+        pendingKey = null;
+        pendingValue = null;
+        return true;
+    }
+
+    /**
+     * Resolves pending key that is not followed by its counterpart.
+     * Only a literal is meaningful on its own (as a plain literal).
+     */
+    protected void resolvePending()
+    {
+        if (pendingKey.equals(LITERAL_OBJ)) object(NodeFactory.createLiteral(pendingValue));
+        
+        pendingKey = null;
+        pendingValue = null;
+    }
+    
+    protected void namespace(String prefix, String uri)
+    {
+        namespaces.put(prefix, uri);
+        dest.prefix(prefix, uri);
+    }
+    
+    protected void subject(Node subject)
+    {
+        this.subject = subject;
+        predicate = null;
+    }
+
+    protected void object(Node object)
+    {
+        if (subject != null && predicate != null) dest.triple(Triple.create(subject, predicate, object));
+    }
+
+    protected RDFDatatype datatype(String uri)
+    {
+        RDFDatatype datatype = datatypes.get(uri);
+        if (datatype == null)
+        {
+            datatype = new BaseDatatype(uri);
+            datatypes.put(uri, datatype);
+        }
+        return datatype;
+    }
+
+    /**
+     * Matches key in the body against known RDF/POST keys, without creating a string.
+     * 
+     * @param body RDF/POST body
+     * @param start key start index
+     * @param end key end index (exclusive)
+     * @return interned RDF/POST key or null if the key is unknown
+     */
+    protected String key(String body, int start, int end)
+    {
+        int length = end - start;
+        for (String key : KEYS)
+            if (key.length() == length && body.regionMatches(start, key, 0, length)) return key;
+
+        // escaped key: compare the decoded form
+        for (int i = start; i < end; i++)
+            if (body.charAt(i) == '%' || body.charAt(i) == '+')
+            {
+                String decoded = decode(body, start, end);
+                for (String key : KEYS)
+                    if (key.equals(decoded)) return key;
+                break;
+            }
+        
+        return null;
+    }
+    
+    /**
+     * Decodes <code>application/x-www-form-urlencoded</code> value.
+     * Values without escapes are returned as substrings; escaped bytes are decoded into reusable buffers.
+     * 
+     * @param body RDF/POST body
+     * @param start value start index
+     * @param end value end index (exclusive)
+     * @return decoded value
+     */
+    protected String decode(String body, int start, int end)
+    {
+        int i = start;
+        while (i < end)
+        {
+            char c = body.charAt(i);
+            if (c == '%' || c == '+') break;
+            i++;
+        }
+        if (i == end) return body.substring(start, end);
+        
+        chars.setLength(0);
+        chars.append(body, start, i);
+        while (i < end)
+        {
+            char c = body.charAt(i);
+            if (c == '+')
+            {
+                chars.append(' ');
+                i++;
+            }
+            else if (c == '%')
+            {
+                int count = 0;
+                while (i < end && body.charAt(i) == '%')
+                {
+                    if (i + 2 >= end) throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+                    if (count == bytes.length)
+                    {
+                        byte[] grown = new byte[bytes.length * 2];
+                        System.arraycopy(bytes, 0, grown, 0, count);
+                        bytes = grown;
+                        byteBuffer = ByteBuffer.wrap(bytes);
+                    }
+                    bytes[count++] = (byte)((hex(body.charAt(i + 1)) << 4) | hex(body.charAt(i + 2)));
+                    i += 3;
+                }
+                appendDecoded(count);
+            }
+            else
+            {
+                chars.append(c);
+                i++;
+            }
+        }
+        
+        return chars.toString();
+    }
+
+    protected void appendDecoded(int count)
+    {
+        byteBuffer.clear();
+        byteBuffer.limit(count);
+        decoder.reset();
+        
+        CoderResult result;
+        do
+        {
+            charBuffer.clear();
+            result = decoder.decode(byteBuffer, charBuffer, true);
+            if (result.isOverflow() || result.isUnderflow())
+            {
+                charBuffer.flip();
+                chars.append(charBuffer);
+            }
+        }
+        while (result.isOverflow());
+
+        charBuffer.clear();
+        decoder.flush(charBuffer);
+        charBuffer.flip();
+        chars.append(charBuffer);
+    }
+    
+    protected static int hex(char c)
+    {
+        int digit = Character.digit(c, 16);
+        if (digit < 0) throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern: " + c);
+        return digit;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+    
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.jena.atlas.lib.Tuple;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * Streaming RDF/Binary writer. Terms are written once and referenced by dictionary ID afterwards.
+ * Output is buffered internally and flushed (but not closed) when the stream is finished.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.riot.lang.RDFBinary
+ */
+public class StreamRDFBinary implements StreamRDF
+{
+
+    public static final int BUFFER_SIZE = 8192;
+    
+    private final OutputStream out;
+    private final int dictionarySize;
+    private final Map<Node, Integer> dictionary = new HashMap<>();
+    private final byte[] buffer;
+    private int position = 0;
+
+    public StreamRDFBinary(OutputStream out)
+    {
+        this(out, RDFBinary.DEFAULT_DICTIONARY_SIZE, BUFFER_SIZE);
+    }
+    
+    /**
+     * Constructs writer.
+     * 
+     * @param out output stream
+     * @param dictionarySize maximum number of terms kept in the dictionary
+     * @param bufferSize output buffer size in bytes
+     */
+    public StreamRDFBinary(OutputStream out, int dictionarySize, int bufferSize)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
+        if (dictionarySize < 0) throw new IllegalArgumentException("Dictionary size cannot be negative");
+        this.out = out;
+        this.dictionarySize = dictionarySize;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+    
+    @Override
+    public void start()
+    {
+        for (byte b : RDFBinary.MAGIC) writeByte(b);
+        writeByte(RDFBinary.VERSION);
+        writeVarInt(dictionarySize);
+    }
+
+    @Override
+    public void triple(Triple triple)
+    {
+        writeByte(RDFBinary.TRIPLE);
+        writeTerm(triple.getSubject());
+        writeTerm(triple.getPredicate());
+        writeTerm(triple.getObject());
+    }
+
+    @Override
+    public void quad(Quad quad)
+    {
+        if (quad.isTriple() || quad.isDefaultGraph())
+        {
+            triple(quad.asTriple());
+            return;
+        }
+        
+        writeByte(RDFBinary.QUAD);
+        writeTerm(quad.getGraph());
+        writeTerm(quad.getSubject());
+        writeTerm(quad.getPredicate());
+        writeTerm(quad.getObject());
+    }
+
+    @Override
+    public void tuple(Tuple<Node> tuple)
+    {
+        throw new RiotException("Tuples cannot be written as RDF/Binary");
+    }
+
+    @Override
+    public void base(String base)
+    {
+        if (base == null) return;
+        
+        writeByte(RDFBinary.BASE);
+        writeString(base);
+    }
+
+    @Override
+    public void prefix(String prefix, String iri)
+    {
+        writeByte(RDFBinary.PREFIX);
+        writeString(prefix);
+        writeString(iri);
+    }
+
+    @Override
+    public void finish()
+    {
+        flushBuffer();
+        try
+        {
+            out.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new RiotException(ex);
+        }
+    }
+
+    protected void writeTerm(Node node)
+    {
+        Integer id = dictionary.get(node);
+        if (id != null)
+        {
+            writeVarInt(id + 1);
+            return;
+        }
+        
+        writeVarInt(0);
+        if (node.isURI())
+        {
+            writeByte(RDFBinary.IRI);
+            writeString(node.getURI());
+        }
+        else if (node.isBlank())
+        {
+            writeByte(RDFBinary.BLANK_NODE);
+            writeString(node.getBlankNodeLabel());
+        }
+        else if (node.isLiteral())
+        {
+            String lang = node.getLiteralLanguage();
+            String datatypeURI = node.getLiteralDatatypeURI();
+            if (lang != null && !lang.isEmpty())
+            {
+                writeByte(RDFBinary.LANG_LITERAL);
+                writeString(node.getLiteralLexicalForm());
+                writeString(lang);
+            }
+            else if (datatypeURI != null)
+            {
+                writeByte(RDFBinary.TYPED_LITERAL);
+                writeString(node.getLiteralLexicalForm());
+                writeTerm(NodeFactory.createURI(datatypeURI));
+            }
+            else
+            {
+                writeByte(RDFBinary.PLAIN_LITERAL);
+                writeString(node.getLiteralLexicalForm());
+            }
+        }
+        else throw new RiotException("Node cannot be written as RDF/Binary: " + node);
+        
+        if (dictionary.size() < dictionarySize) dictionary.put(node, dictionary.size());
+    }
+    
+    protected void writeString(String string)
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        if (bytes.length > buffer.length - position) flushBuffer();
+        if (bytes.length > buffer.length) write(bytes, 0, bytes.length);
+        else
+        {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+    
+    protected void writeVarInt(int value)
+    {
+        if (buffer.length - position < 5) flushBuffer();
+        while ((value & ~0x7F) != 0)
+        {
+            buffer[position++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte)value;
+    }
+    
+    protected void writeByte(byte b)
+    {
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = b;
+    }
+    
+    protected void flushBuffer()
+    {
+        if (position > 0)
+        {
+            write(buffer, 0, position);
+            position = 0;
+        }
+    }
+    
+    protected void write(byte[] bytes, int offset, int length)
+    {
+        try
+        {
+            out.write(bytes, offset, length);
+        }
+        catch (IOException ex)
+        {
+            throw new RiotException(ex);
+        }
+    }
+
+    public int getDictionarySize()
+    {
+        return dictionarySize;
+    }
+    
+}
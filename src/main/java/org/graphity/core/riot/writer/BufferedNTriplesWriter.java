@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.riot.writer;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import org.apache.jena.riot.out.NodeToLabel;
+import org.apache.jena.riot.system.SyntaxLabels;
+
+/**
+ * Low-overhead N-Triples and N-Quads writer. Iterates the graph (or dataset) directly and encodes terms as UTF-8
+ * into a single reused byte buffer, bypassing Jena's writer lookup and per-node formatter objects.
+ * The output is the same as that of Jena's UTF-8 N-Triples/N-Quads writers, except for blank node labels.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.provider.ModelProvider
+ */
+public class BufferedNTriplesWriter
+{
+
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+    
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final NodeToLabel labels = SyntaxLabels.createNodeToLabel();
+    private int position = 0;
+
+    public BufferedNTriplesWriter(OutputStream out)
+    {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Constructs writer.
+     * 
+     * @param out output stream
+     * @param bufferSize size of the output buffer in bytes
+     */
+    public BufferedNTriplesWriter(OutputStream out, int bufferSize)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+    }
+    
+    /**
+     * Writes all triples of the graph as N-Triples and flushes the output.
+     * 
+     * @param graph graph
+     * @throws IOException 
+     */
+    public void write(Graph graph) throws IOException
+    {
+	if (graph == null) throw new IllegalArgumentException("Graph cannot be null");
+
+        ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (it.hasNext()) write(it.next());
+        }
+        finally
+        {
+            it.close();
+        }
+        flush();
+    }
+
+    /**
+     * Writes all quads of the dataset as N-Quads and flushes the output.
+     * 
+     * @param datasetGraph dataset
+     * @throws IOException 
+     */
+    public void write(DatasetGraph datasetGraph) throws IOException
+    {
+	if (datasetGraph == null) throw new IllegalArgumentException("DatasetGraph cannot be null");
+
+        Iterator<Quad> it = datasetGraph.find(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        while (it.hasNext()) write(it.next());
+        flush();
+    }
+    
+    public void write(Triple triple) throws IOException
+    {
+        node(triple.getSubject());
+        writeByte(' ');
+        node(triple.getPredicate());
+        writeByte(' ');
+        node(triple.getObject());
+        writeByte(' ');
+        writeByte('.');
+        writeByte('\n');
+    }
+
+    public void write(Quad quad) throws IOException
+    {
+        node(quad.getSubject());
+        writeByte(' ');
+        node(quad.getPredicate());
+        writeByte(' ');
+        node(quad.getObject());
+        writeByte(' ');
+        if (!quad.isTriple() && !quad.isDefaultGraph())
+        {
+            node(quad.getGraph());
+            writeByte(' ');
+        }
+        writeByte('.');
+        writeByte('\n');
+    }
+    
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+    
+    protected void node(Node node) throws IOException
+    {
+        if (node.isURI())
+        {
+            writeByte('<');
+            writeString(node.getURI(), false);
+            writeByte('>');
+        }
+        else if (node.isBlank())
+            writeString(labels.get(null, node), false);
+        else if (node.isLiteral())
+        {
+            writeByte('"');
+            writeString(node.getLiteralLexicalForm(), true);
+            writeByte('"');
+
+            String lang = node.getLiteralLanguage();
+            if (lang != null && !lang.isEmpty())
+            {
+                writeByte('@');
+                writeString(lang, false);
+            }
+            else if (node.getLiteralDatatypeURI() != null)
+            {
+                writeByte('^');
+                writeByte('^');
+                writeByte('<');
+                writeString(node.getLiteralDatatypeURI(), false);
+                writeByte('>');
+            }
+        }
+        else throw new IllegalArgumentException("Node cannot be written as N-Triples: " + node);
+    }
+
+    /**
+     * Encodes string as UTF-8 into the buffer, escaping literal characters if required.
+     * 
+     * @param string string
+     * @param escape true if string is a literal lexical form
+     * @throws IOException 
+     */
+    protected void writeString(String string, boolean escape) throws IOException
+    {
+        int length = string.length();
+        if (buffer.length - position < length * 6) flushBuffer();
+        boolean check = buffer.length - position < length * 6; // only strings that do not fit need capacity checks per char
+        
+        for (int i = 0; i < length; i++)
+        {
+            if (check && buffer.length - position < 6) flushBuffer();
+
+            char c = string.charAt(i);
+            if (c < 0x80)
+            {
+                if (escape)
+                    switch (c)
+                    {
+                        case '"': buffer[position++] = '\\'; buffer[position++] = '"'; continue;
+                        case '\\': buffer[position++] = '\\'; buffer[position++] = '\\'; continue;
+                        case '\n': buffer[position++] = '\\'; buffer[position++] = 'n'; continue;
+                        case '\r': buffer[position++] = '\\'; buffer[position++] = 'r'; continue;
+                        case '\t': buffer[position++] = '\\'; buffer[position++] = 't'; continue;
+                    }
+                if (escape && c < 0x20)
+                {
+                    writeEscaped(c);
+                    continue;
+                }
+                buffer[position++] = (byte)c;
+            }
+            else if (c < 0x800)
+            {
+                buffer[position++] = (byte)(0xC0 | (c >> 6));
+                buffer[position++] = (byte)(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer[position++] = (byte)(0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte)(0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+                buffer[position++] = '?'; // unpaired surrogate, as the JDK encoder does
+            else
+            {
+                buffer[position++] = (byte)(0xE0 | (c >> 12));
+                buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    protected void writeEscaped(char c)
+    {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xF];
+        buffer[position++] = HEX[(c >> 8) & 0xF];
+        buffer[position++] = HEX[(c >> 4) & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+    }
+    
+    protected void writeByte(char c) throws IOException
+    {
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = (byte)c;
+    }
+    
+    protected void flushBuffer() throws IOException
+    {
+        if (position > 0)
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    public int getBufferSize()
+    {
+        return buffer.length;
+    }
+    
+}
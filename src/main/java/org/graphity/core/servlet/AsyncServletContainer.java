@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Martynas Jusevičius <martynas@graphity.org>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.graphity.core.servlet;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.sun.jersey.spi.container.servlet.ServletContainer;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.graphity.core.filter.DeadlineFilter;
+import org.graphity.core.util.Deadline;
+import org.graphity.core.vocabulary.G;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jersey servlet container that handles requests asynchronously using Servlet 3 async support.
+ * The container (e.g. Tomcat) request thread is released as soon as the request is accepted, and the request is
+ * processed by a separate, fixed-size worker pool with a bounded queue. Slow origin round trips therefore occupy worker
+ * threads, which are sized independently of the container thread pool, and cannot exhaust the container. Requests that
+ * do not fit into the queue (<code>g:asyncQueueSize</code>) are answered with <code>503 Service Unavailable</code>.
+ * JAX-RS resources are not changed: they still use the synchronous client API on the worker thread.
+ * 
+ * Enabled by <code>g:asyncThreads</code> parameter in web.xml (the servlet has to be declared with
+ * <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>). <code>g:asyncTimeout</code> limits the time
+ * a request can spend queued and being processed. Requests that time out in the queue are answered with
+ * <code>503 Service Unavailable</code>; requests that time out while being processed have their origin requests
+ * aborted, and are answered by the worker. Either the worker or the timeout handles a request, never both.
+ * Without <code>g:asyncThreads</code>, requests are handled synchronously as by <code>ServletContainer</code>.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.client.OriginConcurrencyFilter
+ */
+public class AsyncServletContainer extends ServletContainer
+{
+    private static final Logger log = LoggerFactory.getLogger(AsyncServletContainer.class);
+    
+    public static final long DEFAULT_ASYNC_TIMEOUT = 60000;
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+    public static final String CLAIMED = AsyncServletContainer.class.getName() + ".claimed";
+    
+    private ExecutorService executor;
+    private long asyncTimeout;
+
+    @Override
+    public void init() throws ServletException
+    {
+        super.init();
+        
+        int asyncThreads = getIntParam(G.asyncThreads, 0);
+        asyncTimeout = getLongParam(G.asyncTimeout, DEFAULT_ASYNC_TIMEOUT);
+        if (asyncThreads > 0)
+        {
+            int asyncQueueSize = getIntParam(G.asyncQueueSize, DEFAULT_ASYNC_QUEUE_SIZE);
+            executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(asyncQueueSize), new WorkerThreadFactory(getServletName()));
+            if (log.isDebugEnabled()) log.debug("Handling requests asynchronously using {} worker threads and a queue of {} requests", asyncThreads, asyncQueueSize);
+        }
+    }
+    
+    @Override
+    public void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException
+    {
+        if (request.getAttribute(CLAIMED) != null)
+        {
+            if (log.isDebugEnabled()) log.debug("Timed out request has been dispatched again, leaving it to its worker");
+            return;
+        }
+        if (getExecutor() == null || !request.isAsyncSupported() || request.isAsyncStarted())
+        {
+            super.service(request, response);
+            return;
+        }
+        
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AtomicBoolean claimed = new AtomicBoolean(); // set by whichever side handles the request
+        request.setAttribute(CLAIMED, claimed);
+        asyncContext.setTimeout(getAsyncTimeout());
+        asyncContext.addListener(new TimeoutListener(claimed));
+        
+        try
+        {
+            getExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (!claimed.compareAndSet(false, true)) return; // timed out in the queue, already answered
+                    
+                    handle(asyncContext);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Request rejected by worker pool, queue is full");
+            if (claimed.compareAndSet(false, true))
+            {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * Processes request on a worker thread and completes the async context.
+     * 
+     * @param asyncContext async context of the request
+     */
+    public void handle(AsyncContext asyncContext)
+    {
+        try
+        {
+            super.service((HttpServletRequest)asyncContext.getRequest(), (HttpServletResponse)asyncContext.getResponse());
+        }
+        catch (IOException | ServletException | RuntimeException ex)
+        {
+            if (log.isErrorEnabled()) log.error("Asynchronous request processing failed", ex);
+            try
+            {
+                HttpServletResponse response = (HttpServletResponse)asyncContext.getResponse();
+                if (!response.isCommitted()) response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            catch (IOException | IllegalStateException ex1)
+            {
+                if (log.isDebugEnabled()) log.debug("Could not send error response", ex1);
+            }
+        }
+        finally
+        {
+            try
+            {
+                asyncContext.complete();
+            }
+            catch (IllegalStateException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Async request already completed (timed out?)", ex);
+            }
+        }
+    }
+    
+    @Override
+    public void destroy()
+    {
+        if (getExecutor() != null) getExecutor().shutdownNow();
+        
+        super.destroy();
+    }
+
+    public int getIntParam(Property property, int defaultValue)
+    {
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (getServletConfig().getInitParameter(property.getURI()) != null)
+            return Integer.parseInt(getServletConfig().getInitParameter(property.getURI()));
+        return defaultValue;
+    }
+    
+    public long getLongParam(Property property, long defaultValue)
+    {
+	if (property == null) throw new IllegalArgumentException("Property cannot be null");
+
+        if (getServletConfig().getInitParameter(property.getURI()) != null)
+            return Long.parseLong(getServletConfig().getInitParameter(property.getURI()));
+        return defaultValue;
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    public long getAsyncTimeout()
+    {
+        return asyncTimeout;
+    }
+    
+    /**
+     * Answers requests that have timed out in the queue with <code>503 Service Unavailable</code>.
+     * Requests that have timed out while being processed are left to the worker: their origin requests are aborted,
+     * and the listener returns immediately, so that the container thread is not blocked. The worker then answers
+     * and completes the request.
+     */
+    public static class TimeoutListener implements AsyncListener
+    {
+        private final AtomicBoolean claimed;
+
+        /**
+         * Constructs timeout listener of a request.
+         * 
+         * @param claimed set by whichever side (worker or timeout) handles the request
+         */
+        public TimeoutListener(AtomicBoolean claimed)
+        {
+            this.claimed = claimed;
+        }
+        
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException
+        {
+            abort(event);
+            
+            if (claimed.compareAndSet(false, true))
+            {
+                if (log.isWarnEnabled()) log.warn("Asynchronous request timed out waiting for a worker");
+                HttpServletResponse response = (HttpServletResponse)event.getAsyncContext().getResponse();
+                if (!response.isCommitted()) response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                event.getAsyncContext().complete();
+                return;
+            }
+
+            if (log.isWarnEnabled()) log.warn("Asynchronous request timed out while being processed, leaving it to the worker");
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException
+        {
+            abort(event);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException
+        {
+        }
+
+        /**
+         * Aborts origin requests of the abandoned request, if it has a deadline.
+         * 
+         * @param event async event
+         */
+        public void abort(AsyncEvent event)
+        {
+            Object deadline = event.getAsyncContext().getRequest().getAttribute(DeadlineFilter.DEADLINE);
+            if (deadline instanceof Deadline) ((Deadline)deadline).abort();
+        }
+        
+    }
+
+    /**
+     * Creates named daemon worker threads.
+     */
+    public static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public WorkerThreadFactory(String name)
+        {
+            this.name = name;
+        }
+        
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, name + "-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,258 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.sun.jersey.spi.CloseableService;
+import java.io.Closeable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.graphity.core.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cost-based admission control of SPARQL queries.
+ * Queries are routed by their estimated cost into one of two lanes, each with its own concurrency limit and
+ * queue timeout:
+ * <ul>
+ * <li>interactive - cheap queries, e.g. <code>DESCRIBE</code> of a resource or bounded lookups</li>
+ * <li>analytic - queries whose cost reaches the analytic threshold, e.g. unbounded property paths or deeply nested
+ * <code>OPTIONAL</code>s</li>
+ * </ul>
+ * so that expensive queries can only occupy their own lane and cannot starve interactive ones. A query waits in
+ * its lane for a free slot until the lane's queue timeout; if none frees up, it is rejected with
+ * <code>503 Service Unavailable</code> and <code>Retry-After</code>. Queries exceeding the maximum cost (if set) are
+ * rejected the same way without waiting.
+ * The slot is held while the query is executed. Results that are streamed (<code>g:streamResults</code>,
+ * <code>g:passThrough</code>, spilled models) are read while the response is written, so their slot is held until
+ * the end of the response. Queries whose results are available without executing them (e.g. cached results or
+ * <code>304 Not Modified</code> responses) are not admitted at all.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.QueryCost
+ */
+public class AdmissionController
+{
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final Lane interactive, analytic;
+    private final long analyticCost, maxCost;
+    private final MetricRegistry metricRegistry;
+
+    /**
+     * Constructs admission controller.
+     * 
+     * @param interactiveConcurrency maximum number of concurrent interactive queries
+     * @param interactiveQueueTimeout maximum time an interactive query waits for a slot, in milliseconds
+     * @param analyticConcurrency maximum number of concurrent analytic queries
+     * @param analyticQueueTimeout maximum time an analytic query waits for a slot, in milliseconds
+     * @param analyticCost cost from which queries are analytic
+     * @param maxCost cost above which queries are rejected (zero or negative means no limit)
+     * @param metricRegistry metric registry (can be null)
+     */
+    public AdmissionController(int interactiveConcurrency, long interactiveQueueTimeout, int analyticConcurrency, long analyticQueueTimeout,
+            long analyticCost, long maxCost, MetricRegistry metricRegistry)
+    {
+        this.interactive = new Lane("interactive", interactiveConcurrency, interactiveQueueTimeout);
+        this.analytic = new Lane("analytic", analyticConcurrency, analyticQueueTimeout);
+        this.analyticCost = analyticCost;
+        this.maxCost = maxCost;
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Admits query into its lane, waiting for a free slot if necessary.
+     * The returned permit has to be released when the query has been executed.
+     * 
+     * @param query SPARQL query
+     * @return permit
+     * @throws WebApplicationException with <code>503 Service Unavailable</code> status if the query is not admitted
+     */
+    public Permit admit(Query query)
+    {
+        QueryCost cost = QueryCost.estimate(query);
+        Lane lane = getLane(cost);
+        if (log.isTraceEnabled()) log.trace("Query routed to {} lane with {}", lane.getName(), cost);
+
+        if (getMaxCost() > 0 && cost.getCost() > getMaxCost())
+        {
+            if (log.isWarnEnabled()) log.warn("Query rejected, cost exceeds maximum of {}: {}", getMaxCost(), cost);
+            throw reject(lane);
+        }
+        
+        try
+        {
+            if (!lane.getSemaphore().tryAcquire(lane.getQueueTimeout(), TimeUnit.MILLISECONDS))
+            {
+                if (log.isWarnEnabled()) log.warn("Query rejected, {} lane is saturated ({} concurrent queries)", lane.getName(), lane.getConcurrency());
+                throw reject(lane);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(ex, Response.Status.SERVICE_UNAVAILABLE);
+        }
+        
+        if (getMetricRegistry() != null) getMetricRegistry().counter("admission." + lane.getName() + ".admitted").increment();
+        return new Permit(lane.getSemaphore());
+    }
+
+    /**
+     * Returns lane of the query with given cost.
+     * 
+     * @param cost query cost
+     * @return lane
+     */
+    public Lane getLane(QueryCost cost)
+    {
+        if (cost.getCost() >= getAnalyticCost()) return getAnalytic();
+        return getInteractive();
+    }
+
+    public WebApplicationException reject(Lane lane)
+    {
+        if (getMetricRegistry() != null) getMetricRegistry().counter("admission." + lane.getName() + ".rejected").increment();
+        
+        return new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE).
+                header("Retry-After", Math.max(1, lane.getQueueTimeout() / 1000)).
+                build());
+    }
+    
+    public Lane getInteractive()
+    {
+        return interactive;
+    }
+
+    public Lane getAnalytic()
+    {
+        return analytic;
+    }
+
+    public long getAnalyticCost()
+    {
+        return analyticCost;
+    }
+
+    public long getMaxCost()
+    {
+        return maxCost;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+
+    /**
+     * Lane of queries with its own concurrency limit and queue timeout.
+     */
+    public static class Lane
+    {
+        private final String name;
+        private final int concurrency;
+        private final long queueTimeout;
+        private final Semaphore semaphore;
+
+        public Lane(String name, int concurrency, long queueTimeout)
+        {
+            if (concurrency <= 0) throw new IllegalArgumentException("Lane concurrency must be positive");
+            this.name = name;
+            this.concurrency = concurrency;
+            this.queueTimeout = queueTimeout;
+            this.semaphore = new Semaphore(concurrency, true);
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getConcurrency()
+        {
+            return concurrency;
+        }
+
+        public long getQueueTimeout()
+        {
+            return queueTimeout;
+        }
+
+        public Semaphore getSemaphore()
+        {
+            return semaphore;
+        }
+        
+        /**
+         * Returns the number of queries currently executing in this lane.
+         * 
+         * @return number of active queries
+         */
+        public int getActiveCount()
+        {
+            return getConcurrency() - getSemaphore().availablePermits();
+        }
+
+    }
+    
+    /**
+     * Lane slot that is released exactly once.
+     */
+    public static class Permit implements Closeable
+    {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public Permit(Semaphore semaphore)
+        {
+            this.semaphore = semaphore;
+        }
+        
+        public void release()
+        {
+            if (released.compareAndSet(false, true)) semaphore.release();
+        }
+
+        /**
+         * Releases the slot once the response has been written, if its entity is streamed (i.e. closeable), or
+         * immediately otherwise.
+         * 
+         * @param response response, or null if the query failed
+         * @param closeableService service that closes resources at the end of the request (can be null)
+         */
+        public void release(Response response, CloseableService closeableService)
+        {
+            if (response != null && response.getEntity() instanceof Closeable && closeableService != null)
+                closeableService.add(this);
+            else release();
+        }
+
+        @Override
+        public void close()
+        {
+            release();
+        }
+        
+    }
+
+}
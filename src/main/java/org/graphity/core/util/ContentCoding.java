@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletConfig;
+import org.graphity.core.vocabulary.G;
+
+/**
+ * HTTP content codings used to compress responses.
+ * Supported codings are <code>gzip</code> and <code>deflate</code> (zlib format). They are negotiated as response
+ * variant encodings along with <code>identity</code>, which is preferred if the request has no
+ * <code>Accept-Encoding</code> header.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.filter.CompressionFilter
+ * @see <a href="http://tools.ietf.org/html/rfc7231#section-3.1.2.1">Content Codings</a>
+ */
+public class ContentCoding
+{
+
+    public static final String IDENTITY = "identity";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    public static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * Returns supported encodings configured using <code>g:contentEncodings</code> parameter value from web.xml.
+     * 
+     * @param servletConfig servlet config
+     * @return encodings, starting with identity, or empty list if compression is not configured
+     */
+    public static List<String> getEncodings(ServletConfig servletConfig)
+    {
+	if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+
+        if (servletConfig.getInitParameter(G.contentEncodings.getURI()) == null) return Collections.emptyList();
+        return getEncodings(servletConfig.getInitParameter(G.contentEncodings.getURI()).toString());
+    }
+
+    /**
+     * Parses comma-separated list of content codings.
+     * 
+     * @param codings content codings, e.g. <code>gzip,deflate</code>
+     * @return encodings, starting with identity, or empty list if there are no codings
+     * @throws IllegalArgumentException if a coding is not supported
+     */
+    public static List<String> getEncodings(String codings)
+    {
+	if (codings == null) throw new IllegalArgumentException("Content codings cannot be null");
+        
+        List<String> encodings = new ArrayList<>();
+        for (String coding : codings.split(","))
+        {
+            coding = coding.trim().toLowerCase();
+            if (coding.isEmpty() || coding.equals(IDENTITY) || encodings.contains(coding)) continue;
+            if (!isSupported(coding)) throw new IllegalArgumentException("Content coding '" + coding + "' is not supported");
+            encodings.add(coding);
+        }
+        if (encodings.isEmpty()) return Collections.emptyList();
+        
+        encodings.add(0, IDENTITY); // first variant is selected if any coding is acceptable
+        return Collections.unmodifiableList(encodings);
+    }
+    
+    public static boolean isSupported(String coding)
+    {
+        return GZIP.equals(coding) || DEFLATE.equals(coding);
+    }
+    
+    public static boolean isIdentity(String coding)
+    {
+        return coding == null || coding.equals(IDENTITY);
+    }
+    
+    /**
+     * Returns stream that compresses bytes written to it using the given coding.
+     * <code>finish()</code> has to be called when all bytes have been written. It does not close the underlying
+     * stream, but releases the compressor.
+     * 
+     * @param coding content coding
+     * @param out underlying stream
+     * @return compressing stream
+     * @throws IOException 
+     */
+    public static DeflaterOutputStream compress(String coding, OutputStream out) throws IOException
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
+
+        if (GZIP.equals(coding))
+            return new GZIPOutputStream(out, BUFFER_SIZE)
+            {
+                private boolean finished = false;
+                
+                @Override
+                public void finish() throws IOException
+                {
+                    if (finished) return;
+                    finished = true;
+                    try
+                    {
+                        super.finish();
+                    }
+                    finally
+                    {
+                        def.end();
+                    }
+                }
+            };
+        
+        if (DEFLATE.equals(coding))
+            return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE)
+            {
+                private boolean finished = false;
+                
+                @Override
+                public void finish() throws IOException
+                {
+                    if (finished) return;
+                    finished = true;
+                    try
+                    {
+                        super.finish();
+                    }
+                    finally
+                    {
+                        def.end();
+                    }
+                }
+            };
+        
+        throw new IllegalArgumentException("Content coding '" + coding + "' is not supported");
+    }
+    
+}
@@ -0,0 +1,207 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deadline of a single request.
+ * Work done on behalf of the request (origin requests, local query executions) registers itself with the deadline,
+ * and is aborted when the deadline expires, or earlier if the request is abandoned (e.g. the client disconnects).
+ * The deadline of the current request is bound to the thread that processes it, so that it can be reached from
+ * the HTTP client without changing method signatures.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.filter.DeadlineFilter
+ * @see org.graphity.core.client.DeadlineInterceptor
+ */
+public class Deadline
+{
+    private static final Logger log = LoggerFactory.getLogger(Deadline.class);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "graphity-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    static
+    {
+        TIMER.setRemoveOnCancelPolicy(true); // most deadlines are closed long before they expire
+    }
+
+    /**
+     * Work that can be aborted from another thread, e.g. HTTP request or query execution.
+     */
+    public interface Abortable
+    {
+        
+        void abort();
+        
+    }
+    
+    private final long timeout, expires;
+    private final List<Abortable> abortables = new ArrayList<>();
+    private final ScheduledFuture<?> timer;
+    private boolean aborted = false, closed = false;
+
+    /**
+     * Constructs deadline and starts its timer.
+     * 
+     * @param timeout time until the deadline in milliseconds
+     */
+    public Deadline(long timeout)
+    {
+        if (timeout <= 0) throw new IllegalArgumentException("Timeout must be positive");
+        this.timeout = timeout;
+        this.expires = System.currentTimeMillis() + timeout;
+        this.timer = TIMER.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (log.isDebugEnabled()) log.debug("Deadline of {} ms expired", getTimeout());
+                abort();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns deadline of the request processed by the current thread.
+     * 
+     * @return deadline or null, if there is none
+     */
+    public static Deadline get()
+    {
+        return CURRENT.get();
+    }
+
+    public static void set(Deadline deadline)
+    {
+        CURRENT.set(deadline);
+    }
+
+    public static void remove()
+    {
+        CURRENT.remove();
+    }
+
+    /**
+     * Registers work to be aborted when the deadline expires. If it already has, the work is aborted immediately.
+     * 
+     * @param abortable abortable work
+     */
+    public void register(Abortable abortable)
+    {
+        if (abortable == null) throw new IllegalArgumentException("Abortable cannot be null");
+
+        synchronized (this)
+        {
+            if (closed) return;
+            if (!aborted)
+            {
+                abortables.add(abortable);
+                return;
+            }
+        }
+        
+        abort(abortable);
+    }
+
+    /**
+     * Aborts all registered work, e.g. when the deadline expires or the client has disconnected.
+     */
+    public void abort()
+    {
+        List<Abortable> aborting;
+        synchronized (this)
+        {
+            if (closed || aborted) return;
+            aborted = true;
+            aborting = new ArrayList<>(abortables);
+            abortables.clear();
+        }
+        
+        for (Abortable abortable : aborting) abort(abortable);
+    }
+
+    public void abort(Abortable abortable)
+    {
+        try
+        {
+            abortable.abort();
+        }
+        catch (RuntimeException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Could not abort work after deadline", ex);
+        }
+    }
+    
+    /**
+     * Stops the timer and releases registered work. Has to be called when the request is finished.
+     */
+    public void close()
+    {
+        timer.cancel(false);
+        synchronized (this)
+        {
+            closed = true;
+            abortables.clear();
+        }
+    }
+
+    /**
+     * Returns time remaining until the deadline.
+     * 
+     * @return remaining time in milliseconds, zero if the deadline has passed
+     */
+    public long getRemaining()
+    {
+        return Math.max(0, expires - System.currentTimeMillis());
+    }
+
+    /**
+     * Returns true if the deadline has passed or the work has been aborted.
+     * 
+     * @return true if expired
+     */
+    public synchronized boolean isExpired()
+    {
+        return aborted || getRemaining() == 0;
+    }
+    
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+}
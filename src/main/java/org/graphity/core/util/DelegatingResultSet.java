@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward-only SPARQL result set that delegates to an underlying result set and releases it once.
+ * The result set is closed as soon as the results are exhausted, or when it is closed explicitly.
+ * Subclasses define what is released on close, and can end the results early.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see StreamingResultSet
+ * @see LimitedResultSet
+ */
+public abstract class DelegatingResultSet implements ResultSet, Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(DelegatingResultSet.class);
+
+    private final ResultSet resultSet;
+    private boolean closed = false;
+
+    public DelegatingResultSet(ResultSet resultSet)
+    {
+	if (resultSet == null) throw new IllegalArgumentException("ResultSet cannot be null");
+        this.resultSet = resultSet;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (closed) return false;
+
+        boolean hasNext = getResultSet().hasNext();
+        if (!hasNext) closeQuietly();
+        return hasNext;
+    }
+
+    @Override
+    public QuerySolution next()
+    {
+        return getResultSet().next();
+    }
+
+    @Override
+    public QuerySolution nextSolution()
+    {
+        return getResultSet().nextSolution();
+    }
+
+    @Override
+    public Binding nextBinding()
+    {
+        return getResultSet().nextBinding();
+    }
+
+    @Override
+    public int getRowNumber()
+    {
+        return getResultSet().getRowNumber();
+    }
+
+    @Override
+    public List<String> getResultVars()
+    {
+        return getResultSet().getResultVars();
+    }
+
+    @Override
+    public Model getResourceModel()
+    {
+        return getResultSet().getResourceModel();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is read-only");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            release();
+        }
+    }
+
+    /**
+     * Releases resources the results are read from. Called once, when the result set is closed.
+     * 
+     * @throws IOException release error
+     */
+    protected abstract void release() throws IOException;
+    
+    public ResultSet getResultSet()
+    {
+        return resultSet;
+    }
+    
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    protected void closeQuietly()
+    {
+        try
+        {
+            close();
+        }
+        catch (IOException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Could not close ResultSet", ex);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import java.net.URI;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Side cache of weak entity tags, keyed by request URI, response media type, and content coding.
+ * Tags are computed while response bodies are written and used to validate subsequent conditional requests.
+ * Entries expire after a configured time-to-live, and the whole cache is cleared on write operations.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.filter.EntityTagFilter
+ */
+public class EntityTagCache
+{
+    private static final Logger log = LoggerFactory.getLogger(EntityTagCache.class);
+
+    public static final int DEFAULT_MAX_ENTITY_SIZE = 1048576;
+    
+    private final ExpiringCache<String, EntityTag> cache;
+    private final int maxEntitySize;
+
+    /**
+     * Constructs entity tag cache.
+     *
+     * @param maxSize maximum number of cached tags
+     * @param timeToLive tag lifetime in milliseconds
+     */
+    public EntityTagCache(int maxSize, long timeToLive)
+    {
+        this(maxSize, timeToLive, DEFAULT_MAX_ENTITY_SIZE);
+    }
+
+    /**
+     * Constructs entity tag cache.
+     *
+     * @param maxSize maximum number of cached tags
+     * @param timeToLive tag lifetime in milliseconds
+     * @param maxEntitySize maximum size of a response body that is buffered to compute its tag, in bytes
+     */
+    public EntityTagCache(int maxSize, long timeToLive, int maxEntitySize)
+    {
+        if (maxEntitySize < 0) throw new IllegalArgumentException("Entity size cannot be negative");
+        
+        cache = new ExpiringCache<>(maxSize, timeToLive);
+        this.maxEntitySize = maxEntitySize;
+    }
+
+    public EntityTag get(URI requestUri, MediaType mediaType)
+    {
+        return get(requestUri, mediaType, null);
+    }
+
+    public EntityTag get(URI requestUri, MediaType mediaType, String coding)
+    {
+        return cache.get(getKey(requestUri, mediaType, coding));
+    }
+
+    public void put(URI requestUri, MediaType mediaType, EntityTag entityTag)
+    {
+        put(requestUri, mediaType, null, entityTag);
+    }
+    
+    public void put(URI requestUri, MediaType mediaType, String coding, EntityTag entityTag)
+    {
+        if (entityTag == null) throw new IllegalArgumentException("EntityTag cannot be null");
+
+        if (log.isTraceEnabled()) log.trace("Caching EntityTag {} for request URI: {} and MediaType: {}", new Object[]{entityTag, requestUri, mediaType});
+        cache.put(getKey(requestUri, mediaType, coding), entityTag);
+    }
+
+    /**
+     * Removes all cached tags. Has to be called after the underlying data has been modified.
+     */
+    public void clear()
+    {
+        if (log.isDebugEnabled()) log.debug("Clearing EntityTag cache");
+        cache.clear();
+    }
+
+    public ExpiringCache<String, EntityTag> getCache()
+    {
+        return cache;
+    }
+
+    public int getMaxEntitySize()
+    {
+        return maxEntitySize;
+    }
+
+    /**
+     * Builds cache key from request URI, media type, and content coding.
+     * Media type parameters (e.g. charset) are part of the key. Missing coding means <code>identity</code>.
+     *
+     * @param requestUri request URI (including query string)
+     * @param mediaType response media type
+     * @param coding content coding or null
+     * @return cache key
+     */
+    public String getKey(URI requestUri, MediaType mediaType, String coding)
+    {
+        if (requestUri == null) throw new IllegalArgumentException("Request URI cannot be null");
+        if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (coding == null) coding = ContentCoding.IDENTITY;
+
+        return mediaType.toString() + " " + coding + " " + requestUri.toString();
+    }
+
+}
@@ -0,0 +1,235 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded cache with time-to-live based expiration.
+ * Entries can be given weights (e.g. number of triples), in which case the total weight is bounded as well.
+ * When either bound is reached, least recently used entries are evicted.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringCache<K, V>
+{
+
+    private final int maxSize;
+    private final long maxWeight;
+    private final long timeToLive;
+    private final Map<K, Entry<V>> entries;
+    private long weight = 0, hitCount = 0, missCount = 0;
+
+    /**
+     * Constructs cache with the given bounds.
+     *
+     * @param maxSize maximum number of entries
+     * @param timeToLive entry lifetime in milliseconds (zero or negative means no expiration)
+     */
+    public ExpiringCache(int maxSize, long timeToLive)
+    {
+        this(maxSize, Long.MAX_VALUE, timeToLive);
+    }
+
+    /**
+     * Constructs cache with the given bounds.
+     *
+     * @param maxSize maximum number of entries
+     * @param maxWeight maximum total weight of entries
+     * @param timeToLive entry lifetime in milliseconds (zero or negative means no expiration)
+     */
+    public ExpiringCache(int maxSize, long maxWeight, long timeToLive)
+    {
+        if (maxSize <= 0) throw new IllegalArgumentException("Cache size must be positive");
+        if (maxWeight <= 0) throw new IllegalArgumentException("Cache weight must be positive");
+
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns cached value, or null if there is none or it has expired.
+     *
+     * @param key cache key
+     * @return cached value or null
+     */
+    public synchronized V get(K key)
+    {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.isExpired())
+        {
+            entries.remove(key);
+            weight -= entry.getWeight();
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.getValue();
+    }
+
+    /**
+     * Returns true if there is a cached value that has not expired. Unlike <code>get()</code>, does not count as
+     * a hit or a miss.
+     *
+     * @param key cache key
+     * @return true if the value is cached
+     */
+    public synchronized boolean containsKey(K key)
+    {
+        Entry<V> entry = entries.get(key);
+        return entry != null && !entry.isExpired();
+    }
+
+    public synchronized void put(K key, V value)
+    {
+        put(key, value, 1);
+    }
+
+    /**
+     * Caches value with the given weight, evicting least recently used entries if the cache bounds are exceeded.
+     * Values heavier than the maximum weight are not cached.
+     *
+     * @param key cache key
+     * @param value cached value
+     * @param weight value weight
+     */
+    public synchronized void put(K key, V value, long weight)
+    {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        if (value == null) throw new IllegalArgumentException("Value cannot be null");
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+
+        if (weight > maxWeight)
+        {
+            remove(key);
+            return;
+        }
+
+        long expires = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight, expires));
+        if (previous != null) this.weight -= previous.getWeight();
+        this.weight += weight;
+
+        Iterator<Entry<V>> it = entries.values().iterator(); // least recently used first
+        while ((entries.size() > maxSize || this.weight > maxWeight) && it.hasNext())
+        {
+            this.weight -= it.next().getWeight();
+            it.remove();
+        }
+    }
+
+    public synchronized V remove(K key)
+    {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null)
+        {
+            weight -= entry.getWeight();
+            return entry.getValue();
+        }
+
+        return null;
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns total weight of cached entries.
+     *
+     * @return total weight
+     */
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    private static class Entry<V>
+    {
+        private final V value;
+        private final long weight;
+        private final long expires;
+
+        Entry(V value, long weight, long expires)
+        {
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+
+        V getValue()
+        {
+            return value;
+        }
+
+        long getWeight()
+        {
+            return weight;
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import java.io.Closeable;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward-only SPARQL result set that ends after a maximum number of rows, even if the underlying result set
+ * has more of them (e.g. the origin has ignored <code>LIMIT</code>).
+ * Once the limit is reached, no further row is read: the request the results are read from is aborted, so that
+ * the rest of them (if any) is not read either.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.client.AbortableRequestFilter
+ */
+public class LimitedResultSet extends DelegatingResultSet
+{
+    private static final Logger log = LoggerFactory.getLogger(LimitedResultSet.class);
+
+    private final long limit;
+    private final Deadline.Abortable abortable;
+    private long rowCount = 0;
+
+    /**
+     * Constructs limited result set.
+     * 
+     * @param resultSet underlying result set
+     * @param limit maximum number of rows
+     * @param abortable request the results are read from (can be null)
+     */
+    public LimitedResultSet(ResultSet resultSet, long limit, Deadline.Abortable abortable)
+    {
+        super(resultSet);
+        if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative");
+        this.limit = limit;
+        this.abortable = abortable;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (isClosed()) return false;
+        if (rowCount < limit) return super.hasNext();
+
+        if (log.isDebugEnabled()) log.debug("ResultSet has reached limit of {} rows, aborting", limit);
+        if (abortable != null) abortable.abort();
+        closeQuietly();
+        return false;
+    }
+
+    @Override
+    public QuerySolution next()
+    {
+        rowCount++;
+        return super.next();
+    }
+
+    @Override
+    public QuerySolution nextSolution()
+    {
+        rowCount++;
+        return super.nextSolution();
+    }
+
+    @Override
+    public Binding nextBinding()
+    {
+        rowCount++;
+        return super.nextBinding();
+    }
+
+    @Override
+    protected void release() throws IOException
+    {
+        if (getResultSet() instanceof Closeable) ((Closeable)getResultSet()).close();
+    }
+
+    public long getLimit()
+    {
+        return limit;
+    }
+
+}
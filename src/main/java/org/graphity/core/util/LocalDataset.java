@@ -0,0 +1,393 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetAccessor;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.Lock;
+import com.hp.hpl.jena.update.UpdateAction;
+import com.hp.hpl.jena.update.UpdateRequest;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process RDF dataset that is queried and updated directly using ARQ, without a remote origin.
+ * Every operation runs in its own transaction if the dataset supports them (e.g. TDB), so that concurrent
+ * queries read consistent snapshots while a single writer updates the dataset. Other datasets are guarded by
+ * their multiple-reader/single-writer lock.
+ * Query results are copied out of the transaction, as they have to outlive it.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.SPARQLEndpointLocalBase
+ * @see org.graphity.core.model.impl.GraphStoreLocalBase
+ */
+public class LocalDataset implements DatasetAccessor
+{
+    private static final Logger log = LoggerFactory.getLogger(LocalDataset.class);
+
+    private final Dataset dataset;
+    private final long queryTimeout;
+
+    /**
+     * Constructs local dataset.
+     * 
+     * @param dataset RDF dataset
+     * @param queryTimeout query execution timeout in milliseconds (zero or negative means no timeout)
+     */
+    public LocalDataset(Dataset dataset, long queryTimeout)
+    {
+        if (dataset == null) throw new IllegalArgumentException("Dataset cannot be null");
+        this.dataset = dataset;
+        this.queryTimeout = queryTimeout;
+    }
+
+    /**
+     * Returns the result of a <code>CONSTRUCT</code> or <code>DESCRIBE</code> query.
+     * 
+     * @param query query object
+     * @return result model
+     */
+    public Model loadModel(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+        if (!(query.isConstructType() || query.isDescribeType())) throw new IllegalArgumentException("Query must be CONSTRUCT or DESCRIBE");
+        
+        begin(ReadWrite.READ);
+        QueryExecution qex = createQueryExecution(query);
+        try
+        {
+            if (query.isConstructType()) return qex.execConstruct();
+            return qex.execDescribe();
+        }
+        catch (QueryCancelledException ex)
+        {
+            throw timeout(query, ex);
+        }
+        finally
+        {
+            qex.close();
+            end();
+        }
+    }
+
+    /**
+     * Returns the result of a <code>SELECT</code> query.
+     * 
+     * @param query query object
+     * @return rewindable copy of the result set
+     */
+    public ResultSetRewindable select(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+        if (!query.isSelectType()) throw new IllegalArgumentException("Query must be SELECT");
+        
+        begin(ReadWrite.READ);
+        QueryExecution qex = createQueryExecution(query);
+        try
+        {
+            return ResultSetFactory.copyResults(qex.execSelect());
+        }
+        catch (QueryCancelledException ex)
+        {
+            throw timeout(query, ex);
+        }
+        finally
+        {
+            qex.close();
+            end();
+        }
+    }
+
+    /**
+     * Returns the result of an <code>ASK</code> query.
+     * 
+     * @param query query object
+     * @return boolean result
+     */
+    public boolean ask(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+        if (!query.isAskType()) throw new IllegalArgumentException("Query must be ASK");
+        
+        begin(ReadWrite.READ);
+        QueryExecution qex = createQueryExecution(query);
+        try
+        {
+            return qex.execAsk();
+        }
+        catch (QueryCancelledException ex)
+        {
+            throw timeout(query, ex);
+        }
+        finally
+        {
+            qex.close();
+            end();
+        }
+    }
+
+    /**
+     * Executes update request in a single write transaction. If one of the operations fails, none are applied
+     * (if the dataset supports transactions).
+     * 
+     * @param updateRequest update request
+     */
+    public void update(UpdateRequest updateRequest)
+    {
+	if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+
+        begin(ReadWrite.WRITE);
+        try
+        {
+            UpdateAction.execute(updateRequest, getDataset());
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+    
+    @Override
+    public Model getModel()
+    {
+        begin(ReadWrite.READ);
+        try
+        {
+            return ModelFactory.createDefaultModel().add(getDataset().getDefaultModel());
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public Model getModel(String graphUri)
+    {
+        begin(ReadWrite.READ);
+        try
+        {
+            if (!getDataset().containsNamedModel(graphUri)) return null;
+            return ModelFactory.createDefaultModel().add(getDataset().getNamedModel(graphUri));
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public boolean containsModel(String graphUri)
+    {
+        begin(ReadWrite.READ);
+        try
+        {
+            return getDataset().containsNamedModel(graphUri);
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void putModel(Model model)
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().getDefaultModel().removeAll().add(model);
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void putModel(String graphUri, Model model)
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().getNamedModel(graphUri).removeAll().add(model);
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void deleteDefault()
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().getDefaultModel().removeAll();
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void deleteModel(String graphUri)
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().removeNamedModel(graphUri);
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void add(Model model)
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().getDefaultModel().add(model);
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    @Override
+    public void add(String graphUri, Model model)
+    {
+        begin(ReadWrite.WRITE);
+        try
+        {
+            getDataset().getNamedModel(graphUri).add(model);
+            commit();
+        }
+        finally
+        {
+            end();
+        }
+    }
+
+    /**
+     * Creates query execution over the dataset, with the configured timeout on both the first result and the whole execution.
+     * If the current request has a deadline, the timeout is lowered to the remaining time, and the execution is
+     * aborted if the request is abandoned.
+     * 
+     * @param query query object
+     * @return query execution
+     */
+    public QueryExecution createQueryExecution(Query query)
+    {
+        final QueryExecution qex = QueryExecutionFactory.create(query, getDataset());
+        long timeout = getQueryTimeout();
+        
+        Deadline deadline = Deadline.get();
+        if (deadline != null)
+        {
+            if (timeout <= 0 || deadline.getRemaining() < timeout) timeout = Math.max(1, deadline.getRemaining());
+            deadline.register(new Deadline.Abortable()
+            {
+                @Override
+                public void abort()
+                {
+                    qex.abort();
+                }
+            });
+        }
+        
+        if (timeout > 0) qex.setTimeout(timeout, timeout); // the single-argument timeout does not bound the whole execution
+        return qex;
+    }
+
+    /**
+     * Starts transaction, or enters critical section if the dataset does not support transactions.
+     * Has to be followed by <code>end()</code>.
+     * 
+     * @param readWrite transaction mode
+     */
+    public void begin(ReadWrite readWrite)
+    {
+        if (getDataset().supportsTransactions()) getDataset().begin(readWrite);
+        else getDataset().getLock().enterCriticalSection(readWrite.equals(ReadWrite.READ) ? Lock.READ : Lock.WRITE);
+    }
+
+    public void commit()
+    {
+        if (getDataset().supportsTransactions()) getDataset().commit();
+    }
+
+    /**
+     * Ends transaction (aborting it, if it has not been committed), or leaves critical section.
+     */
+    public void end()
+    {
+        if (getDataset().supportsTransactions()) getDataset().end();
+        else getDataset().getLock().leaveCriticalSection();
+    }
+
+    public WebApplicationException timeout(Query query, QueryCancelledException ex)
+    {
+        if (log.isDebugEnabled()) log.debug("Query execution exceeded timeout of {} ms: {}", getQueryTimeout(), query);
+        return new WebApplicationException(ex, Response.Status.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Closes the dataset, e.g. flushes TDB files to disk.
+     */
+    public void close()
+    {
+        if (log.isDebugEnabled()) log.debug("Closing local Dataset");
+        getDataset().close();
+    }
+
+    public Dataset getDataset()
+    {
+        return dataset;
+    }
+
+    public long getQueryTimeout()
+    {
+        return queryTimeout;
+    }
+
+}
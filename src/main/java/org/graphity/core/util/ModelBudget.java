@@ -0,0 +1,326 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.Quad;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.jena.atlas.lib.Tuple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.graphity.core.exception.ModelTooLargeException;
+import org.graphity.core.riot.writer.BufferedNTriplesWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-request memory budget for RDF models, e.g. results of <code>CONSTRUCT</code>/<code>DESCRIBE</code> queries.
+ * RDF is parsed into a model while it stays within the triple and byte limits. When a limit is exceeded, the triples
+ * read so far and the rest of the input are written to a temporary N-Triples file (if spilling is enabled), or
+ * parsing is stopped right away without reading the rest of the input.
+ * In both cases <code>ModelTooLargeException</code> is thrown, carrying the spilled RDF, if any.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.exception.ModelTooLargeException
+ */
+public class ModelBudget
+{
+    private static final Logger log = LoggerFactory.getLogger(ModelBudget.class);
+
+    public static final String SPILL_PREFIX = "graphity-spill-";
+    public static final String SPILL_SUFFIX = ".nt";
+    
+    private final long maxTriples, maxBytes;
+    private final boolean spill;
+    private final File spillDirectory;
+    
+    /**
+     * Constructs budget.
+     * 
+     * @param maxTriples maximum number of triples held in memory (zero means no limit)
+     * @param maxBytes maximum number of input bytes parsed into memory (zero means no limit)
+     * @param spill if true, RDF exceeding the budget is written to a temporary file
+     * @param spillDirectory directory of temporary files (if null, system default is used)
+     */
+    public ModelBudget(long maxTriples, long maxBytes, boolean spill, File spillDirectory)
+    {
+        if (maxTriples < 0) throw new IllegalArgumentException("Triple limit cannot be negative");
+        if (maxBytes < 0) throw new IllegalArgumentException("Byte limit cannot be negative");
+        
+        this.maxTriples = maxTriples;
+        this.maxBytes = maxBytes;
+        this.spill = spill;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Reads RDF into a model, spilling it if spilling is enabled.
+     * 
+     * @param input unparsed RDF, which is closed afterwards
+     * @return model within the budget
+     * @throws ModelTooLargeException if the budget is exceeded
+     */
+    public Model read(RDFInput input)
+    {
+        return read(input, isSpill());
+    }
+
+    /**
+     * Reads RDF into a model.
+     * 
+     * @param input unparsed RDF, which is closed afterwards
+     * @param spill if true and spilling is enabled, RDF exceeding the budget is spilled
+     * @return model within the budget
+     * @throws ModelTooLargeException if the budget is exceeded
+     */
+    public Model read(RDFInput input, boolean spill)
+    {
+	if (input == null) throw new IllegalArgumentException("RDFInput cannot be null");
+
+        MediaType formatType = new MediaType(input.getMediaType().getType(), input.getMediaType().getSubtype()); // discard charset param
+        Lang lang = RDFLanguages.contentTypeToLang(formatType.toString());
+        if (lang == null) throw new WebApplicationException(Response.Status.UNSUPPORTED_MEDIA_TYPE);
+
+        RDFStreamingOutput.CountingInputStream in = new RDFStreamingOutput.CountingInputStream(input.getInputStream());
+        BudgetStreamRDF stream = new BudgetStreamRDF(in, spill && isSpill());
+        boolean parsed = false;
+        try
+        {
+            RDFDataMgr.parse(stream, new FilterInputStream(in)
+            {
+                @Override
+                public void close()
+                {
+                    // the parser closes its input, which would consume the rest of the origin response
+                }
+            }, input.getBase(), lang);
+            parsed = true;
+        }
+        catch (RuntimeException ex)
+        {
+            stream.discard();
+            throw ex;
+        }
+        finally
+        {
+            try
+            {
+                if (parsed) input.close();
+                else input.abort(); // stops reading the origin, instead of consuming the rest of the response
+            }
+            catch (IOException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not close RDF input", ex);
+            }
+        }
+
+        try
+        {
+            return stream.getModel();
+        }
+        catch (IOException ex)
+        {
+            stream.discard();
+            throw new WebApplicationException(ex);
+        }
+    }
+
+    public boolean isExceeded(long tripleCount, long byteCount)
+    {
+        return (getMaxTriples() > 0 && tripleCount > getMaxTriples()) ||
+                (getMaxBytes() > 0 && byteCount > getMaxBytes());
+    }
+    
+    public long getMaxTriples()
+    {
+        return maxTriples;
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public boolean isSpill()
+    {
+        return spill;
+    }
+
+    public File getSpillDirectory()
+    {
+        return spillDirectory;
+    }
+
+    /**
+     * Stream that collects triples into a model until the budget is exceeded, and then writes them to a spill file.
+     * Quads are added to the model as triples.
+     */
+    public class BudgetStreamRDF implements StreamRDF
+    {
+        private final RDFStreamingOutput.CountingInputStream in;
+        private final boolean spill;
+        private Model model = ModelFactory.createDefaultModel();
+        private File file;
+        private OutputStream out;
+        private BufferedNTriplesWriter writer;
+        private long tripleCount = 0;
+
+        public BudgetStreamRDF(RDFStreamingOutput.CountingInputStream in, boolean spill)
+        {
+            this.in = in;
+            this.spill = spill;
+        }
+
+        @Override
+        public void start()
+        {
+        }
+
+        @Override
+        public void triple(Triple triple)
+        {
+            tripleCount++;
+            try
+            {
+                if (writer != null)
+                {
+                    writer.write(triple);
+                    return;
+                }
+                
+                getGraph().add(triple);
+                if (isExceeded(tripleCount, in.getCount()))
+                {
+                    if (!spill)
+                    {
+                        if (log.isDebugEnabled()) log.debug("RDF exceeds memory budget after {} triples and {} bytes, aborting", tripleCount, in.getCount());
+                        throw new ModelTooLargeException("RDF exceeds memory budget", tripleCount, in.getCount());
+                    }
+                    
+                    spill();
+                }
+            }
+            catch (IOException ex)
+            {
+                throw new WebApplicationException(ex);
+            }
+        }
+
+        @Override
+        public void quad(Quad quad)
+        {
+            triple(quad.asTriple());
+        }
+
+        @Override
+        public void tuple(Tuple<Node> tuple)
+        {
+            throw new RiotException("Tuples cannot be read into a Model");
+        }
+
+        @Override
+        public void base(String base)
+        {
+        }
+
+        @Override
+        public void prefix(String prefix, String iri)
+        {
+            if (model != null) model.setNsPrefix(prefix, iri);
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        /**
+         * Moves triples held in memory to a temporary file. Subsequent triples are written to the file as well.
+         * 
+         * @throws IOException 
+         */
+        public void spill() throws IOException
+        {
+            file = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX, getSpillDirectory());
+            if (log.isDebugEnabled()) log.debug("RDF exceeds memory budget after {} triples and {} bytes, spilling it to {}", new Object[]{tripleCount, in.getCount(), file});
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            writer = new BufferedNTriplesWriter(out);
+            writer.write(getGraph());
+            model = null; // release memory
+        }
+
+        public Graph getGraph()
+        {
+            return model.getGraph();
+        }
+
+        /**
+         * Returns the model, if it is within the budget.
+         * 
+         * @return model
+         * @throws IOException
+         * @throws ModelTooLargeException if RDF has been spilled
+         */
+        public Model getModel() throws IOException
+        {
+            if (writer == null) return model;
+            
+            writer.flush();
+            out.close();
+            if (log.isDebugEnabled()) log.debug("Spilled {} triples ({} bytes of input) to {}", new Object[]{tripleCount, in.getCount(), file});
+            throw new ModelTooLargeException("RDF exceeds memory budget", tripleCount, in.getCount(),
+                    new TemporaryRDFInput(file, org.graphity.core.MediaType.TEXT_NTRIPLES_TYPE));
+        }
+
+        /**
+         * Deletes the spill file, e.g. if parsing has failed.
+         */
+        public void discard()
+        {
+            if (file == null) return;
+            
+            try
+            {
+                out.close();
+            }
+            catch (IOException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not close spill file", ex);
+            }
+            if (!file.delete() && log.isWarnEnabled()) log.warn("Could not delete spill file: {}", file);
+        }
+
+    }
+    
+}
@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import org.graphity.core.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded cache of parsed SPARQL queries, keyed by query string.
+ * Cached queries are never handed out directly: each call returns a copy, because queries are modified while
+ * being executed (e.g. <code>LIMIT</code> is set on them).
+ * Copies share syntax elements with the cached query, but have their own modifiers. This is much cheaper than
+ * <code>Query.cloneQuery()</code>, which serializes and parses the query again.
+ * Strings that cannot be parsed are not cached. Hits and misses are counted as <code>querycache.hits</code> and
+ * <code>querycache.misses</code> if metrics are enabled.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.provider.QueryParamProvider
+ */
+public class QueryCache
+{
+    private static final Logger log = LoggerFactory.getLogger(QueryCache.class);
+
+    private final ExpiringCache<String, Query> cache;
+    private final MetricRegistry metricRegistry;
+
+    /**
+     * Constructs query cache.
+     * 
+     * @param maxSize maximum number of cached queries
+     */
+    public QueryCache(int maxSize)
+    {
+        this(maxSize, null);
+    }
+
+    /**
+     * Constructs query cache with metrics.
+     * 
+     * @param maxSize maximum number of cached queries
+     * @param metricRegistry metric registry (can be null)
+     */
+    public QueryCache(int maxSize, MetricRegistry metricRegistry)
+    {
+        cache = new ExpiringCache<>(maxSize, 0);
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Returns parsed query for the given string, parsing and caching it if it is not cached yet.
+     * 
+     * @param queryString SPARQL query string
+     * @return copy of parsed query
+     * @throws com.hp.hpl.jena.query.QueryException if the string cannot be parsed
+     */
+    public Query create(String queryString)
+    {
+        if (queryString == null) throw new IllegalArgumentException("Query string cannot be null");
+
+        Query query = cache.get(queryString);
+        if (query == null)
+        {
+            if (log.isTraceEnabled()) log.trace("Query cache miss, parsing Query: {}", queryString);
+            if (getMetricRegistry() != null) getMetricRegistry().counter("querycache.misses").increment();
+            query = QueryFactory.create(queryString);
+            cache.put(queryString, query);
+        }
+        else if (getMetricRegistry() != null) getMetricRegistry().counter("querycache.hits").increment();
+
+        return copy(query);
+    }
+
+    /**
+     * Returns shallow copy of a query.
+     * Query pattern, templates and expressions are shared, while solution modifiers, projection, dataset
+     * description etc. can be modified independently.
+     * 
+     * @param query query to be copied
+     * @return query copy
+     */
+    public static Query copy(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+
+        Query copy = new Query();
+        copy.setPrefixMapping(query.getPrefixMapping());
+        if (query.explicitlySetBaseURI()) copy.setBaseURI(query.getResolver());
+        else copy.setResolver(query.getResolver());
+        copy.setSyntax(query.getSyntax());
+        copy.setStrict(query.isStrict());
+
+        if (query.isSelectType()) copy.setQuerySelectType();
+        if (query.isConstructType()) copy.setQueryConstructType();
+        if (query.isDescribeType()) copy.setQueryDescribeType();
+        if (query.isAskType()) copy.setQueryAskType();
+
+        for (String graphURI : query.getGraphURIs()) copy.addGraphURI(graphURI);
+        for (String namedGraphURI : query.getNamedGraphURIs()) copy.addNamedGraphURI(namedGraphURI);
+
+        copy.setQueryPattern(query.getQueryPattern());
+        if (query.getConstructTemplate() != null) copy.setConstructTemplate(query.getConstructTemplate());
+
+        copy.setQueryResultStar(query.isQueryResultStar());
+        copy.setDistinct(query.isDistinct());
+        copy.setReduced(query.isReduced());
+        for (Var var : query.getProject().getVars())
+        {
+            Expr expr = query.getProject().getExpr(var);
+            if (expr == null) copy.addResultVar(var);
+            else copy.addResultVar(var, expr);
+        }
+        for (Node node : query.getResultURIs()) copy.addDescribeNode(node);
+
+        for (Var var : query.getGroupBy().getVars())
+        {
+            Expr expr = query.getGroupBy().getExpr(var);
+            if (expr == null) copy.addGroupBy(var);
+            else copy.addGroupBy(var, expr);
+        }
+        copy.getAggregators().addAll(query.getAggregators());
+        for (Expr expr : query.getHavingExprs()) copy.addHavingCondition(expr);
+        if (query.hasOrderBy())
+            for (SortCondition condition : query.getOrderBy()) copy.addOrderBy(condition);
+        if (query.hasValues()) copy.setValuesDataBlock(query.getValuesVariables(), query.getValuesData());
+
+        copy.setLimit(query.getLimit());
+        copy.setOffset(query.getOffset());
+        
+        return copy;
+    }
+
+    public long getHitCount()
+    {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount()
+    {
+        return cache.getMissCount();
+    }
+
+    public int size()
+    {
+        return cache.size();
+    }
+
+    public ExpiringCache<String, Query> getCache()
+    {
+        return cache;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+
+}
@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single-flight deduplication of concurrent identical origin queries.
+ * The first request for a given origin, query and set of accepted media types executes the query; requests
+ * for the same key that arrive while it is in flight wait for it and receive its result instead of querying the
+ * origin themselves. Errors are shared as well, except for those caused by the deadline of the executing request:
+ * its waiters then retry the query as a new flight. Waiters wait at most until their own deadline.
+ * Every waiter gets its own copy of a model (or its own cursor over result set rows), so the result can be
+ * modified safely. The executing request keeps the original if nobody has joined it.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.SPARQLEndpointProxyBase
+ */
+public class QueryCoalescer
+{
+    private static final Logger log = LoggerFactory.getLogger(QueryCoalescer.class);
+
+    private final ConcurrentMap<QueryResultCache.Key, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong executedCount = new AtomicLong(), coalescedCount = new AtomicLong();
+
+    /**
+     * Returns <code>CONSTRUCT</code>/<code>DESCRIBE</code> result, loading it from the origin unless an identical
+     * query is already in flight.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @param loader loads result from the origin
+     * @return result model
+     */
+    public Model loadModel(String origin, Query query, MediaType[] mediaTypes, Callable<Model> loader)
+    {
+        QueryResultCache.Key key = QueryResultCache.createKey(origin, query, mediaTypes);
+        while (true)
+        {
+            Flight flight = new Flight(loader);
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null)
+            {
+                Model model = (Model)execute(key, flight);
+                if (flight.land() == 0) return model; // nobody else has seen it
+                return ModelFactory.createDefaultModel().add(model);
+            }
+
+            if (existing.join())
+            {
+                if (log.isTraceEnabled()) log.trace("Joining in-flight Query: {}", query);
+                if (existing.await()) return ModelFactory.createDefaultModel().add((Model)existing.getResult());
+                flights.remove(key, existing); // aborted flight, unless its executing request has removed it already
+            }
+        }
+    }
+
+    /**
+     * Returns <code>SELECT</code> result, loading it from the origin unless an identical query is already in flight.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @param loader loads result from the origin
+     * @return result set
+     */
+    public ResultSetRewindable select(String origin, Query query, MediaType[] mediaTypes, final Callable<ResultSetRewindable> loader)
+    {
+        QueryResultCache.Key key = QueryResultCache.createKey(origin, query, mediaTypes);
+        Callable<Object> memLoader = new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                ResultSetRewindable resultSet = loader.call();
+                if (resultSet instanceof ResultSetMem) return resultSet;
+                return new ResultSetMem(resultSet);
+            }
+        };
+        
+        while (true)
+        {
+            Flight flight = new Flight(memLoader);
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null)
+            {
+                ResultSetMem resultSet = (ResultSetMem)execute(key, flight);
+                return new ResultSetMem(resultSet, false); // shares rows, has its own position
+            }
+
+            existing.join(); // rows are never modified, so the flight does not need to land
+            if (log.isTraceEnabled()) log.trace("Joining in-flight Query: {}", query);
+            if (existing.await()) return new ResultSetMem((ResultSetMem)existing.getResult(), false);
+            flights.remove(key, existing); // aborted flight, unless its executing request has removed it already
+        }
+    }
+
+    /**
+     * Returns <code>ASK</code> result, loading it from the origin unless an identical query is already in flight.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @param loader loads result from the origin
+     * @return boolean result
+     */
+    public boolean ask(String origin, Query query, MediaType[] mediaTypes, Callable<Boolean> loader)
+    {
+        QueryResultCache.Key key = QueryResultCache.createKey(origin, query, mediaTypes);
+        while (true)
+        {
+            Flight flight = new Flight(loader);
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) return (Boolean)execute(key, flight);
+
+            existing.join();
+            if (existing.await()) return (Boolean)existing.getResult();
+            flights.remove(key, existing); // aborted flight, unless its executing request has removed it already
+        }
+    }
+    
+    /**
+     * Returns true if an identical query is in flight, i.e. its result will not require another origin request.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return true if in flight
+     */
+    public boolean isInFlight(String origin, Query query, MediaType[] mediaTypes)
+    {
+        return flights.containsKey(QueryResultCache.createKey(origin, query, mediaTypes));
+    }
+
+    protected Object execute(QueryResultCache.Key key, Flight flight)
+    {
+        executedCount.incrementAndGet();
+        try
+        {
+            flight.run();
+        }
+        finally
+        {
+            flights.remove(key, flight);
+        }
+        
+        return flight.getResult();
+    }
+
+    /**
+     * Returns number of queries that have been sent to origins.
+     * 
+     * @return executed query count
+     */
+    public long getExecutedCount()
+    {
+        return executedCount.get();
+    }
+
+    /**
+     * Returns number of queries that have been answered by joining an in-flight query.
+     * 
+     * @return coalesced query count
+     */
+    public long getCoalescedCount()
+    {
+        return coalescedCount.get();
+    }
+
+    public int getInFlightCount()
+    {
+        return flights.size();
+    }
+    
+    /**
+     * In-flight query that can be joined by waiters until it lands.
+     * It is executed by the request that has created it, under the deadline of that request.
+     */
+    protected class Flight extends FutureTask<Object>
+    {
+        private final Deadline deadline = Deadline.get();
+        private int waiters = 0;
+        private boolean landed = false;
+
+        @SuppressWarnings("unchecked")
+        public Flight(Callable<?> loader)
+        {
+            super((Callable<Object>)loader);
+        }
+
+        /**
+         * Registers a waiter, unless the executing request has already taken the result for itself.
+         * 
+         * @return true if joined
+         */
+        public synchronized boolean join()
+        {
+            if (landed) return false;
+            
+            waiters++;
+            coalescedCount.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Closes the flight to new waiters.
+         * 
+         * @return number of waiters that have joined
+         */
+        public synchronized int land()
+        {
+            landed = true;
+            return waiters;
+        }
+        
+        /**
+         * Waits for the flight to complete, at most until the deadline of the current (waiting) request.
+         * 
+         * @return true if the result is available, false if the flight has failed because its executing request
+         * has run out of time, and the query should be retried
+         */
+        public boolean await()
+        {
+            Deadline waiterDeadline = Deadline.get();
+            try
+            {
+                if (waiterDeadline == null) get();
+                else get(waiterDeadline.getRemaining(), TimeUnit.MILLISECONDS);
+                return true;
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new WebApplicationException(ex, Status.SERVICE_UNAVAILABLE);
+            }
+            catch (TimeoutException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Deadline expired while waiting for in-flight query");
+                throw new WebApplicationException(ex, Status.SERVICE_UNAVAILABLE);
+            }
+            catch (ExecutionException ex)
+            {
+                if (deadline != null && deadline.isExpired())
+                {
+                    if (log.isDebugEnabled()) log.debug("In-flight query has been aborted by the deadline of its executing request, retrying");
+                    return false;
+                }
+                return true; // the failure is shared by getResult()
+            }
+        }
+
+        /**
+         * Waits for the result and rethrows the failure of the executing request, if any.
+         * 
+         * @return query result
+         */
+        public Object getResult()
+        {
+            try
+            {
+                return get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new WebApplicationException(ex, Status.SERVICE_UNAVAILABLE);
+            }
+            catch (ExecutionException ex)
+            {
+                if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+                if (ex.getCause() instanceof Error) throw (Error)ex.getCause();
+                throw new WebApplicationException(ex.getCause());
+            }
+        }
+        
+    }
+    
+}
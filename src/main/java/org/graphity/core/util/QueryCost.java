@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.Op2;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpN;
+import com.hp.hpl.jena.sparql.algebra.op.OpPath;
+import com.hp.hpl.jena.sparql.algebra.op.OpService;
+import com.hp.hpl.jena.sparql.algebra.op.OpTriple;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+import com.hp.hpl.jena.sparql.path.P_Mod;
+import com.hp.hpl.jena.sparql.path.P_OneOrMore1;
+import com.hp.hpl.jena.sparql.path.P_OneOrMoreN;
+import com.hp.hpl.jena.sparql.path.P_Path1;
+import com.hp.hpl.jena.sparql.path.P_Path2;
+import com.hp.hpl.jena.sparql.path.P_ZeroOrMore1;
+import com.hp.hpl.jena.sparql.path.P_ZeroOrMoreN;
+import com.hp.hpl.jena.sparql.path.Path;
+
+/**
+ * Static cost estimate of a SPARQL query, computed from its ARQ algebra without executing it.
+ * The estimate does not use data statistics, it only ranks query shapes:
+ * <pre>
+ * cost = (triple patterns + 10 * paths + 50 * unbounded paths + 50 * SERVICE calls) * (1 + OPTIONAL/UNION nesting depth)
+ * </pre>
+ * and the cost is doubled if the query has no <code>LIMIT</code>. Unbounded paths are those with <code>*</code>,
+ * <code>+</code> or open-ended <code>{n,}</code> modifiers. A plain <code>DESCRIBE &lt;uri&gt;</code> costs 1.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.AdmissionController
+ */
+public class QueryCost
+{
+
+    private int triplePatterns = 0, paths = 0, unboundedPaths = 0, services = 0, maxDepth = 0;
+    private final boolean limited;
+
+    protected QueryCost(Query query)
+    {
+        limited = query.hasLimit() || query.getQueryPattern() == null; // DESCRIBE <uri> is bounded by the resource
+    }
+
+    /**
+     * Estimates cost of the query.
+     * 
+     * @param query SPARQL query
+     * @return cost estimate
+     */
+    public static QueryCost estimate(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query cannot be null");
+
+        QueryCost cost = new QueryCost(query);
+        if (query.getQueryPattern() != null) cost.visit(Algebra.compile(query), 0);
+        return cost;
+    }
+
+    /**
+     * Accumulates counts of the algebra expression and its sub-expressions.
+     * 
+     * @param op algebra expression
+     * @param depth OPTIONAL/UNION nesting depth of the expression
+     */
+    protected void visit(Op op, int depth)
+    {
+        if (op == null) return;
+        
+        if (op instanceof OpBGP) triplePatterns += ((OpBGP)op).getPattern().size();
+        if (op instanceof OpTriple) triplePatterns++;
+        if (op instanceof OpPath)
+        {
+            paths++;
+            if (isUnbounded(((OpPath)op).getTriplePath().getPath())) unboundedPaths++;
+        }
+        if (op instanceof OpService) services++;
+
+        if (op instanceof OpLeftJoin || op instanceof OpUnion)
+        {
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        
+        if (op instanceof Op1) visit(((Op1)op).getSubOp(), depth);
+        if (op instanceof Op2)
+        {
+            visit(((Op2)op).getLeft(), depth);
+            visit(((Op2)op).getRight(), depth);
+        }
+        if (op instanceof OpN)
+            for (Op element : ((OpN)op).getElements()) visit(element, depth);
+    }
+
+    /**
+     * Returns true if the property path can match paths of any length.
+     * 
+     * @param path property path
+     * @return true if unbounded
+     */
+    public static boolean isUnbounded(Path path)
+    {
+        if (path instanceof P_ZeroOrMore1 || path instanceof P_ZeroOrMoreN ||
+                path instanceof P_OneOrMore1 || path instanceof P_OneOrMoreN)
+            return true;
+        if (path instanceof P_Mod && ((P_Mod)path).getMax() < 0) return true; // {n,}
+        if (path instanceof P_Path1) return isUnbounded(((P_Path1)path).getSubPath());
+        if (path instanceof P_Path2) return isUnbounded(((P_Path2)path).getLeft()) || isUnbounded(((P_Path2)path).getRight());
+        
+        return false;
+    }
+
+    /**
+     * Returns the cost estimate.
+     * 
+     * @return cost, at least 1
+     */
+    public long getCost()
+    {
+        long cost = Math.max(1, getTriplePatterns() + 10L * getPaths() + 50L * getUnboundedPaths() + 50L * getServices());
+        cost *= 1 + getMaxDepth();
+        if (!isLimited()) cost *= 2;
+        return cost;
+    }
+
+    public int getTriplePatterns()
+    {
+        return triplePatterns;
+    }
+
+    public int getPaths()
+    {
+        return paths;
+    }
+
+    public int getUnboundedPaths()
+    {
+        return unboundedPaths;
+    }
+
+    public int getServices()
+    {
+        return services;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    public boolean isLimited()
+    {
+        return limited;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryCost[cost=" + getCost() + ", triplePatterns=" + getTriplePatterns() + ", paths=" + getPaths() +
+                ", unboundedPaths=" + getUnboundedPaths() + ", services=" + getServices() + ", maxDepth=" + getMaxDepth() +
+                ", limited=" + isLimited() + "]";
+    }
+
+}
@@ -0,0 +1,269 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.graph.GraphReadOnly;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import java.util.Arrays;
+import java.util.List;
+import javax.ws.rs.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application-wide cache of SPARQL query results loaded from origins.
+ * Results are keyed by origin URI, requested media types and the parsed query, which is compared structurally
+ * (including the <code>FROM</code>/<code>FROM NAMED</code> dataset description) so that formatting differences
+ * do not matter. Every request works on its own copy of the query (see {@link QueryCache}), so the structural hash
+ * code of the query is computed for every lookup; {@link Key} computes it once and keeps it along with the hash codes
+ * of the origin and media types. Queries must not be modified after they have been used in a key.
+ * Cached results are shared rather than copied: models are stored and returned as read-only views, and each
+ * result set hit gets a new iterator over the same rows.
+ * The cache is bounded by the number of results and by their total number of triples (result set bindings
+ * are counted as triples). Entries expire after a configured time-to-live, and the whole cache is cleared on
+ * write operations.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.SPARQLEndpointProxyBase
+ */
+public class QueryResultCache
+{
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private final ExpiringCache<Key, Object> cache;
+
+    /**
+     * Constructs query result cache.
+     * 
+     * @param maxSize maximum number of cached results
+     * @param timeToLive result lifetime in milliseconds
+     */
+    public QueryResultCache(int maxSize, long timeToLive)
+    {
+        this(maxSize, Long.MAX_VALUE, timeToLive);
+    }
+
+    /**
+     * Constructs query result cache.
+     * 
+     * @param maxSize maximum number of cached results
+     * @param maxTriples maximum total number of triples in cached results
+     * @param timeToLive result lifetime in milliseconds
+     */
+    public QueryResultCache(int maxSize, long maxTriples, long timeToLive)
+    {
+        cache = new ExpiringCache<>(maxSize, maxTriples, timeToLive);
+    }
+
+    /**
+     * Returns cached <code>CONSTRUCT</code>/<code>DESCRIBE</code> result, or null if there is none.
+     * The model is read-only and shared with other requests.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return read-only model or null
+     */
+    public Model getModel(String origin, Query query, MediaType[] mediaTypes)
+    {
+        Object result = cache.get(getKey(origin, query, mediaTypes));
+        if (!(result instanceof Model)) return null;
+
+        if (log.isTraceEnabled()) log.trace("Query result cache hit for Query: {}", query);
+        return (Model)result;
+    }
+
+    /**
+     * Caches <code>CONSTRUCT</code>/<code>DESCRIBE</code> result.
+     * The model is not copied, so the caller has to use the returned read-only view instead of modifying it.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @param model result model
+     * @return read-only view of the model
+     */
+    public Model putModel(String origin, Query query, MediaType[] mediaTypes, Model model)
+    {
+        if (model == null) throw new IllegalArgumentException("Model cannot be null");
+
+        Model readOnly = model;
+        if (!(model.getGraph() instanceof GraphReadOnly))
+            readOnly = ModelFactory.createModelForGraph(new GraphReadOnly(model.getGraph()));
+        cache.put(getKey(origin, query, mediaTypes), readOnly, readOnly.size());
+        return readOnly;
+    }
+
+    /**
+     * Returns rewindable view of cached <code>SELECT</code> result, or null if there is none.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return result set or null
+     */
+    public ResultSetRewindable getResultSet(String origin, Query query, MediaType[] mediaTypes)
+    {
+        Object result = cache.get(getKey(origin, query, mediaTypes));
+        if (!(result instanceof ResultSetMem)) return null;
+
+        if (log.isTraceEnabled()) log.trace("Query result cache hit for Query: {}", query);
+        return new ResultSetMem((ResultSetMem)result, false); // shares rows, has its own position
+    }
+
+    /**
+     * Caches <code>SELECT</code> result. The result set is rewound after it has been copied.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @param resultSet result set
+     */
+    public void putResultSet(String origin, Query query, MediaType[] mediaTypes, ResultSetRewindable resultSet)
+    {
+        if (resultSet == null) throw new IllegalArgumentException("ResultSet cannot be null");
+
+        ResultSetMem copy;
+        if (resultSet instanceof ResultSetMem) copy = new ResultSetMem((ResultSetMem)resultSet, false); // rows are never modified
+        else copy = new ResultSetMem(resultSet);
+        resultSet.reset();
+
+        cache.put(getKey(origin, query, mediaTypes), copy, (long)copy.size() * Math.max(copy.getResultVars().size(), 1));
+    }
+
+    /**
+     * Returns true if result of the query is cached.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return true if cached
+     */
+    public boolean contains(String origin, Query query, MediaType[] mediaTypes)
+    {
+        return cache.containsKey(getKey(origin, query, mediaTypes));
+    }
+
+    /**
+     * Removes all cached results. Has to be called after the underlying data has been modified.
+     */
+    public void clear()
+    {
+        if (log.isDebugEnabled()) log.debug("Clearing query result cache");
+        cache.clear();
+    }
+
+    public ExpiringCache<Key, Object> getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Builds cache key from origin URI, media types and query.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return cache key
+     */
+    public Key getKey(String origin, Query query, MediaType[] mediaTypes)
+    {
+        return createKey(origin, query, mediaTypes);
+    }
+
+    /**
+     * Builds key that identifies query request to an origin.
+     * 
+     * @param origin origin URI
+     * @param query SPARQL query
+     * @param mediaTypes requested media types
+     * @return key
+     * @see #getKey(java.lang.String, com.hp.hpl.jena.query.Query, javax.ws.rs.core.MediaType[])
+     */
+    public static Key createKey(String origin, Query query, MediaType[] mediaTypes)
+    {
+        return new Key(origin, query, mediaTypes);
+    }
+
+    /**
+     * Query request to an origin. Queries are compared using their (cached) hash codes and structural equality,
+     * so the query must not be modified once the key is in use.
+     */
+    public static final class Key
+    {
+        private final String origin;
+        private final Query query;
+        private final List<MediaType> mediaTypes;
+        private final int hashCode;
+
+        public Key(String origin, Query query, MediaType[] mediaTypes)
+        {
+            if (origin == null) throw new IllegalArgumentException("Origin URI cannot be null");
+            if (query == null) throw new IllegalArgumentException("Query cannot be null");
+            if (mediaTypes == null) throw new IllegalArgumentException("MediaTypes cannot be null");
+
+            this.origin = origin;
+            this.query = query;
+            this.mediaTypes = Arrays.asList(mediaTypes.clone());
+            this.hashCode = (origin.hashCode() * 31 + this.mediaTypes.hashCode()) * 31 + query.hashCode();
+        }
+
+        public String getOrigin()
+        {
+            return origin;
+        }
+
+        public Query getQuery()
+        {
+            return query;
+        }
+
+        public List<MediaType> getMediaTypes()
+        {
+            return mediaTypes;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+
+            Key key = (Key)obj;
+            return hashCode == key.hashCode && origin.equals(key.origin) && mediaTypes.equals(key.mediaTypes) &&
+                query.equals(key.query);
+        }
+
+        @Override
+        public String toString()
+        {
+            return origin + " " + mediaTypes + " " + query;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Unparsed RDF document, e.g. origin response body that is relayed to the client.
+ * It is written to the response as it is if the response media type matches, or transcoded otherwise.
+ * Has to be closed if it is not written.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.provider.RDFInputProvider
+ */
+public class RDFInput implements Closeable
+{
+
+    private final InputStream inputStream;
+    private final MediaType mediaType;
+    private final String base;
+    private final Deadline.Abortable abortable;
+
+    /**
+     * Constructs RDF input from stream, which can be aborted.
+     * 
+     * @param inputStream RDF document stream
+     * @param mediaType RDF media type of the document
+     * @param base base URI (can be null)
+     * @param abortable request the stream is read from (can be null)
+     * @see org.graphity.core.client.AbortableRequestInterceptor
+     */
+    public RDFInput(InputStream inputStream, MediaType mediaType, String base, Deadline.Abortable abortable)
+    {
+	if (inputStream == null) throw new IllegalArgumentException("InputStream cannot be null");
+	if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+
+        this.inputStream = inputStream;
+        this.mediaType = mediaType;
+        this.base = base;
+        this.abortable = abortable;
+    }
+
+    /**
+     * Constructs RDF input from stream.
+     * 
+     * @param inputStream RDF document stream
+     * @param mediaType RDF media type of the document
+     * @param base base URI (can be null)
+     */
+    public RDFInput(InputStream inputStream, MediaType mediaType, String base)
+    {
+        this(inputStream, mediaType, base, null);
+    }
+
+    public RDFInput(InputStream inputStream, MediaType mediaType)
+    {
+        this(inputStream, mediaType, null);
+    }
+
+    public InputStream getInputStream()
+    {
+        return inputStream;
+    }
+
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    public String getBase()
+    {
+        return base;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        inputStream.close();
+    }
+
+    /**
+     * Stops reading the input without consuming the rest of it, e.g. after parsing has been aborted.
+     * Aborts the request the stream is read from, if any, and closes the input.
+     * 
+     * @throws IOException 
+     */
+    public void abort() throws IOException
+    {
+        if (abortable != null) abortable.abort();
+        close();
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.writer.WriterStreamRDFBlocks;
+import org.graphity.core.riot.lang.StreamRDFBinary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming request entity that converts RDF input to N-Triples (or another streamable syntax, e.g. RDF/Binary)
+ * while it is being written.
+ * The input is parsed incrementally, so memory use does not depend on its size.
+ * Counts bytes read from the input and triples written to the output.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.GraphStoreProxyBase
+ */
+public class RDFStreamingOutput implements StreamingOutput
+{
+    private static final Logger log = LoggerFactory.getLogger(RDFStreamingOutput.class);
+
+    private final RDFInput input;
+    private final Lang outputLang;
+    private long byteCount = 0, tripleCount = 0;
+
+    public RDFStreamingOutput(RDFInput input)
+    {
+        this(input, Lang.NTRIPLES);
+    }
+    
+    /**
+     * Constructs streaming output.
+     * 
+     * @param input unparsed RDF
+     * @param outputLang output syntax, which has to be streamable
+     * @see #isStreamable(org.apache.jena.riot.Lang)
+     */
+    public RDFStreamingOutput(RDFInput input, Lang outputLang)
+    {
+	if (input == null) throw new IllegalArgumentException("RDFInput cannot be null");
+	if (outputLang == null) throw new IllegalArgumentException("Lang cannot be null");
+	if (!isStreamable(outputLang)) throw new IllegalArgumentException("Lang " + outputLang + " cannot be written in a streaming fashion");
+        this.input = input;
+        this.outputLang = outputLang;
+    }
+
+    /**
+     * Returns streaming RDF writer for the given syntax.
+     * 
+     * @param out output stream
+     * @param lang RDF syntax
+     * @return stream or null, if the syntax cannot be written in a streaming fashion
+     */
+    public static StreamRDF getStreamRDF(OutputStream out, Lang lang)
+    {
+        if (lang.equals(Lang.NTRIPLES) || lang.equals(Lang.NQUADS)) return StreamRDFLib.writer(out);
+        if (lang.equals(Lang.TURTLE)) return new WriterStreamRDFBlocks(out);
+        if (lang.equals(org.graphity.core.riot.RDFLanguages.RDFBINARY)) return new StreamRDFBinary(out);
+        
+        return null;
+    }
+    
+    public static boolean isStreamable(Lang lang)
+    {
+        return lang.equals(Lang.NTRIPLES) || lang.equals(Lang.NQUADS) || lang.equals(Lang.TURTLE) ||
+                lang.equals(org.graphity.core.riot.RDFLanguages.RDFBINARY);
+    }
+    
+    /**
+     * Parses input and writes it in the output syntax. Syntax errors in the input result in
+     * <code>400 Bad Request</code>.
+     * 
+     * @param output output stream
+     * @throws IOException
+     * @throws WebApplicationException 
+     */
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        MediaType formatType = new MediaType(input.getMediaType().getType(), input.getMediaType().getSubtype()); // discard charset param
+        Lang lang = RDFLanguages.contentTypeToLang(formatType.toString());
+        if (lang == null) throw new WebApplicationException(Response.Status.UNSUPPORTED_MEDIA_TYPE);
+
+        CountingInputStream in = new CountingInputStream(input.getInputStream());
+        StreamRDFCounting stream = StreamRDFLib.count(getStreamRDF(output, getOutputLang()));
+        try
+        {
+            RDFDataMgr.parse(stream, in, input.getBase(), lang);
+        }
+        catch (RiotException ex)
+        {
+            if (log.isDebugEnabled()) log.debug("Could not parse streamed RDF input", ex);
+            throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
+        }
+        finally
+        {
+            byteCount = in.getCount();
+            tripleCount = stream.countTriples();
+            input.close();
+        }
+
+        if (log.isDebugEnabled()) log.debug("Streamed {} bytes of RDF input as {} triples", byteCount, tripleCount);
+    }
+
+    public RDFInput getInput()
+    {
+        return input;
+    }
+
+    public Lang getOutputLang()
+    {
+        return outputLang;
+    }
+
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    public long getTripleCount()
+    {
+        return tripleCount;
+    }
+
+    /**
+     * Input stream that counts bytes read through it.
+     */
+    public static class CountingInputStream extends FilterInputStream
+    {
+        private long count = 0;
+
+        public CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = in.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+    }
+
+}
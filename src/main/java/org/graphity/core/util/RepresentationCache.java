@@ -0,0 +1,144 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import java.net.URI;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of compressed response representations, keyed by request URI, media type, and content coding.
+ * Each representation is stored with the strong entity tag of its response, and is only reused for a response
+ * with the same tag, i.e. the same content. Repeated requests for hot resources therefore skip both
+ * serialization and compression. Least recently used representations are evicted first.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.filter.CompressionFilter
+ */
+public class RepresentationCache
+{
+    private static final Logger log = LoggerFactory.getLogger(RepresentationCache.class);
+
+    private final ExpiringCache<String, Representation> cache;
+    private final int maxEntrySize;
+    
+    /**
+     * Constructs representation cache.
+     * 
+     * @param maxSize maximum number of cached representations
+     * @param maxEntrySize maximum size of a cached representation in bytes
+     */
+    public RepresentationCache(int maxSize, int maxEntrySize)
+    {
+        if (maxEntrySize <= 0) throw new IllegalArgumentException("Representation size must be positive");
+        
+        this.cache = new ExpiringCache<>(maxSize, 0);
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Returns cached representation bytes, if the cached entity tag matches.
+     * 
+     * @param requestUri request URI
+     * @param mediaType response media type
+     * @param coding content coding
+     * @param entityTag strong entity tag of the response
+     * @return compressed bytes or null
+     */
+    public byte[] get(URI requestUri, MediaType mediaType, String coding, EntityTag entityTag)
+    {
+	if (entityTag == null) throw new IllegalArgumentException("EntityTag cannot be null");
+
+        Representation representation = cache.get(getKey(requestUri, mediaType, coding));
+        if (representation == null || !representation.getEntityTag().equals(entityTag)) return null;
+        
+        return representation.getBytes();
+    }
+    
+    public void put(URI requestUri, MediaType mediaType, String coding, EntityTag entityTag, byte[] bytes)
+    {
+	if (entityTag == null) throw new IllegalArgumentException("EntityTag cannot be null");
+	if (bytes == null) throw new IllegalArgumentException("byte[] cannot be null");
+        if (bytes.length > getMaxEntrySize()) return;
+        
+        if (log.isTraceEnabled()) log.trace("Caching {} bytes of {} representation with EntityTag {} for request URI: {}", new Object[]{bytes.length, coding, entityTag, requestUri});
+        cache.put(getKey(requestUri, mediaType, coding), new Representation(entityTag, bytes));
+    }
+
+    public void clear()
+    {
+        cache.clear();
+    }
+    
+    public ExpiringCache<String, Representation> getCache()
+    {
+        return cache;
+    }
+
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    /**
+     * Builds cache key from request URI, media type, and content coding.
+     * 
+     * @param requestUri request URI (including query string)
+     * @param mediaType response media type
+     * @param coding content coding
+     * @return cache key
+     */
+    public String getKey(URI requestUri, MediaType mediaType, String coding)
+    {
+        if (requestUri == null) throw new IllegalArgumentException("Request URI cannot be null");
+        if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+        if (coding == null) throw new IllegalArgumentException("Content coding cannot be null");
+
+        return mediaType.toString() + " " + coding + " " + requestUri.toString();
+    }
+    
+    /**
+     * Compressed representation with its entity tag.
+     */
+    public static class Representation
+    {
+        private final EntityTag entityTag;
+        private final byte[] bytes;
+
+        public Representation(EntityTag entityTag, byte[] bytes)
+        {
+            this.entityTag = entityTag;
+            this.bytes = bytes;
+        }
+
+        public EntityTag getEntityTag()
+        {
+            return entityTag;
+        }
+
+        public byte[] getBytes()
+        {
+            return bytes;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.ResultSet;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Forward-only SPARQL result set that is read lazily from an underlying stream.
+ * The stream is closed as soon as the results are exhausted, or when the result set is closed explicitly.
+ * Implementing <code>Closeable</code> also stops Jersey client from closing the stream right after
+ * <code>ClientResponse.getEntity()</code> returns.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see com.sun.jersey.api.client.ClientResponse#getEntity(java.lang.Class)
+ */
+public class StreamingResultSet extends DelegatingResultSet
+{
+
+    private final InputStream in;
+
+    /**
+     * Constructs result set from a parsed (but not yet consumed) result set and the stream it is parsed from.
+     *
+     * @param resultSet lazily parsed result set
+     * @param in underlying input stream
+     */
+    public StreamingResultSet(ResultSet resultSet, InputStream in)
+    {
+        super(resultSet);
+	if (in == null) throw new IllegalArgumentException("InputStream cannot be null");
+        this.in = in;
+    }
+
+    @Override
+    protected void release() throws IOException
+    {
+        in.close();
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import javax.ws.rs.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unparsed RDF document stored in a temporary file, e.g. query result spilled to disk.
+ * The file is deleted when the input is closed.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.util.ModelBudget
+ */
+public class TemporaryRDFInput extends RDFInput
+{
+    private static final Logger log = LoggerFactory.getLogger(TemporaryRDFInput.class);
+
+    private final File file;
+
+    public TemporaryRDFInput(File file, MediaType mediaType) throws IOException
+    {
+        super(new BufferedInputStream(new FileInputStream(file)), mediaType);
+        this.file = file;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (!file.delete() && file.exists())
+                if (log.isWarnEnabled()) log.warn("Could not delete temporary RDF file: {}", file);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.modify.request.QuadDataAcc;
+import com.hp.hpl.jena.sparql.modify.request.UpdateData;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataDelete;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataInsert;
+import com.hp.hpl.jena.update.Update;
+import com.hp.hpl.jena.update.UpdateRequest;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits SPARQL update requests into batches of bounded size, so that they can be submitted to the origin
+ * one after another instead of as a single huge request.
+ * <code>INSERT DATA</code> and <code>DELETE DATA</code> operations larger than the batch size are split into several
+ * operations of the same kind. Other operations are kept intact, and so are data operations that contain blank nodes:
+ * a blank node label is scoped to the request it appears in, so quads sharing it must be sent together.
+ * The order of operations is preserved, and every batch uses the prologue (prefixes and base URI) of the original request.
+ * Note that the batches are not executed atomically as a whole.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.SPARQLEndpointProxyBase
+ */
+public class UpdateBatcher
+{
+    private static final Logger log = LoggerFactory.getLogger(UpdateBatcher.class);
+
+    private final int batchSize;
+
+    /**
+     * Constructs batcher.
+     * 
+     * @param batchSize maximum number of data quads per batch
+     */
+    public UpdateBatcher(int batchSize)
+    {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive");
+        
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Splits update request into batches.
+     * A request that does not exceed the batch size is returned as the only batch.
+     * 
+     * @param updateRequest update request
+     * @return list of batches
+     */
+    public List<UpdateRequest> split(UpdateRequest updateRequest)
+    {
+	if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+
+        if (getQuadCount(updateRequest) <= getBatchSize())
+        {
+            List<UpdateRequest> batches = new ArrayList<>(1);
+            batches.add(updateRequest);
+            return batches;
+        }
+        
+        List<UpdateRequest> batches = new ArrayList<>();
+        UpdateRequest batch = createBatch(updateRequest);
+        int batchQuads = 0;
+        for (Update update : updateRequest.getOperations())
+        {
+            if (!(update instanceof UpdateData))
+            {
+                batch.add(update);
+                continue;
+            }
+
+            List<Quad> quads = ((UpdateData)update).getQuads();
+            if (hasBlankNodes(quads))
+            {
+                if (batchQuads >= getBatchSize())
+                {
+                    batches.add(batch);
+                    batch = createBatch(updateRequest);
+                    batchQuads = 0;
+                }
+
+                batch.add(update);
+                batchQuads += quads.size();
+                continue;
+            }
+
+            int offset = 0;
+            while (offset < quads.size())
+            {
+                if (batchQuads >= getBatchSize())
+                {
+                    batches.add(batch);
+                    batch = createBatch(updateRequest);
+                    batchQuads = 0;
+                }
+
+                int end = Math.min(quads.size(), offset + getBatchSize() - batchQuads);
+                batch.add(createData(update, quads.subList(offset, end)));
+                batchQuads += end - offset;
+                offset = end;
+            }
+        }
+        if (!batch.getOperations().isEmpty()) batches.add(batch);
+        
+        if (log.isDebugEnabled()) log.debug("Split UpdateRequest with {} operations into {} batches", updateRequest.getOperations().size(), batches.size());
+        return batches;
+    }
+
+    /**
+     * Returns the number of quads in data operations of the update request.
+     * 
+     * @param updateRequest update request
+     * @return quad count
+     */
+    public long getQuadCount(UpdateRequest updateRequest)
+    {
+	if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+
+        long count = 0;
+        for (Update update : updateRequest.getOperations())
+            if (update instanceof UpdateData) count += ((UpdateData)update).getQuads().size();
+        return count;
+    }
+    
+    /**
+     * Returns true if any of the quads contains a blank node.
+     * 
+     * @param quads list of quads
+     * @return true if blank nodes are present
+     */
+    public boolean hasBlankNodes(List<Quad> quads)
+    {
+	if (quads == null) throw new IllegalArgumentException("Quad List cannot be null");
+
+        for (Quad quad : quads)
+            if (quad.getGraph().isBlank() || quad.getSubject().isBlank() ||
+                    quad.getPredicate().isBlank() || quad.getObject().isBlank())
+                return true;
+        
+        return false;
+    }
+
+    public UpdateRequest createBatch(UpdateRequest updateRequest)
+    {
+        UpdateRequest batch = new UpdateRequest();
+        batch.setPrefixMapping(updateRequest.getPrefixMapping());
+        if (updateRequest.explicitlySetBaseURI()) batch.setBaseURI(updateRequest.getBaseURI());
+        return batch;
+    }
+    
+    public Update createData(Update update, List<Quad> quads)
+    {
+        QuadDataAcc quadData = new QuadDataAcc(new ArrayList<>(quads));
+        if (update instanceof UpdateDataDelete) return new UpdateDataDelete(quadData);
+        return new UpdateDataInsert(quadData);
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+}
@@ -0,0 +1,365 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Variant;
+import org.graphity.core.MediaTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, application-scoped registry of response variants.
+ * Variant lists are built once from the writable media types (e.g. for <code>Model</code> and <code>ResultSet</code>)
+ * instead of on every request. Each list also caches the results of content negotiation, keyed by the
+ * <code>Accept*</code> request headers, so that repeated requests with the same headers skip variant selection.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.MediaTypes
+ * @see org.graphity.core.model.impl.Response#selectVariant(java.util.List)
+ */
+public class VariantRegistry
+{
+    private static final Logger log = LoggerFactory.getLogger(VariantRegistry.class);
+
+    private final MediaTypes mediaTypes;
+    private final List<Locale> languages;
+    private final List<String> encodings;
+    private final Map<List<MediaType>, VariantList> variants;
+
+    /**
+     * Constructs registry without languages or encodings.
+     *
+     * @param mediaTypes supported media types
+     * @param cacheSize maximum number of cached selections per variant list (zero disables caching)
+     */
+    public VariantRegistry(MediaTypes mediaTypes, int cacheSize)
+    {
+        this(mediaTypes, Collections.<Locale>emptyList(), Collections.<String>emptyList(), cacheSize);
+    }
+
+    /**
+     * Constructs registry and precomputes variant lists for all writable classes.
+     *
+     * @param mediaTypes supported media types
+     * @param languages supported languages
+     * @param encodings supported HTTP encodings
+     * @param cacheSize maximum number of cached selections per variant list (zero disables caching)
+     */
+    public VariantRegistry(MediaTypes mediaTypes, List<Locale> languages, List<String> encodings, int cacheSize)
+    {
+	if (mediaTypes == null) throw new IllegalArgumentException("MediaTypes cannot be null");
+	if (languages == null) throw new IllegalArgumentException("List<Locale> cannot be null");
+	if (encodings == null) throw new IllegalArgumentException("List<String> cannot be null");
+	if (cacheSize < 0) throw new IllegalArgumentException("Cache size cannot be negative");
+
+        this.mediaTypes = mediaTypes;
+        this.languages = Collections.unmodifiableList(new ArrayList<>(languages));
+        this.encodings = Collections.unmodifiableList(new ArrayList<>(encodings));
+
+        // writable lists in MediaTypes are immutable, so they can be looked up by identity
+        Map<List<MediaType>, VariantList> map = new IdentityHashMap<>();
+        for (Map.Entry<Class, List<MediaType>> entry : mediaTypes.getWritable().entrySet())
+        {
+            VariantList list = new VariantList(buildVariants(entry.getValue(), this.languages, this.encodings), cacheSize);
+            if (log.isDebugEnabled()) log.debug("Registering {} Variants for {}", list.size(), entry.getKey());
+            map.put(entry.getValue(), list);
+        }
+        this.variants = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Builds a new list of variants from media types, languages, and encodings.
+     *
+     * @param mediaTypes media types
+     * @param languages languages
+     * @param encodings HTTP encodings
+     * @return variant list
+     */
+    public static List<Variant> buildVariants(List<MediaType> mediaTypes, List<Locale> languages, List<String> encodings)
+    {
+	if (mediaTypes == null) throw new IllegalArgumentException("List<MediaType> cannot be null");
+	if (languages == null) throw new IllegalArgumentException("List<Locale> cannot be null");
+	if (encodings == null) throw new IllegalArgumentException("List<String> cannot be null");
+
+        return Variant.VariantListBuilder.newInstance().
+                mediaTypes(mediaTypes.toArray(new MediaType[mediaTypes.size()])).
+                languages(languages.toArray(new Locale[languages.size()])).
+                encodings(encodings.toArray(new String[encodings.size()])).
+                add().build();
+    }
+
+    /**
+     * Returns precomputed variants for a class, e.g. <code>Model</code>.
+     *
+     * @param clazz writable class
+     * @return variant list or null, if the class is not writable
+     */
+    public List<Variant> getVariants(Class clazz)
+    {
+        List<MediaType> writable = getMediaTypes().getWritable(clazz);
+        if (writable == null) return null;
+
+        return variants.get(writable);
+    }
+
+    /**
+     * Returns variants for the given media types, languages, and encodings.
+     * The precomputed list is returned if the media type list is one of the writable lists of this registry and
+     * languages and encodings match. Otherwise a new (uncached) list is built.
+     *
+     * @param mediaTypes media types
+     * @param languages languages
+     * @param encodings HTTP encodings
+     * @return variant list
+     */
+    public List<Variant> getVariants(List<MediaType> mediaTypes, List<Locale> languages, List<String> encodings)
+    {
+	if (mediaTypes == null) throw new IllegalArgumentException("List<MediaType> cannot be null");
+	if (languages == null) throw new IllegalArgumentException("List<Locale> cannot be null");
+	if (encodings == null) throw new IllegalArgumentException("List<String> cannot be null");
+
+        VariantList list = variants.get(mediaTypes);
+        if (list != null && languages.equals(getLanguages()) && encodings.equals(getEncodings())) return list;
+
+        return buildVariants(mediaTypes, languages, encodings);
+    }
+
+    /**
+     * Selects variant from the list according to request headers.
+     * Selection is cached if the list is precomputed by a registry. If none of the content codings is acceptable,
+     * <code>identity</code> variant is selected instead.
+     *
+     * @param request current request
+     * @param variants variant list
+     * @return selected variant or null, if none is acceptable
+     */
+    public static Variant selectVariant(Request request, List<Variant> variants)
+    {
+	if (request == null) throw new IllegalArgumentException("Request cannot be null");
+	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+
+        if (variants instanceof VariantList) return ((VariantList)variants).select(request);
+        
+        Variant variant = request.selectVariant(variants);
+        if (variant == null) variant = selectIdentityVariant(request, variants);
+        return variant;
+    }
+
+    /**
+     * Selects variant without content coding, ignoring <code>Accept-Encoding</code> request header.
+     * A response without content coding should be sent if none of the codings is acceptable (RFC 7231).
+     *
+     * @param request current request
+     * @param variants variant list
+     * @return selected <code>identity</code> variant or null, if none is acceptable
+     */
+    public static Variant selectIdentityVariant(Request request, List<Variant> variants)
+    {
+	if (request == null) throw new IllegalArgumentException("Request cannot be null");
+	if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+
+        List<Variant> identity = new ArrayList<>(), uncoded = new ArrayList<>();
+        for (Variant variant : variants)
+            if (ContentCoding.IDENTITY.equals(variant.getEncoding()))
+            {
+                identity.add(variant);
+                uncoded.add(new Variant(variant.getMediaType(), variant.getLanguage(), null)); // null encoding is always acceptable
+            }
+        if (uncoded.isEmpty()) return null;
+        
+        Variant variant = request.selectVariant(uncoded);
+        if (variant == null) return null;
+        
+        if (request instanceof ContainerRequest) // response still varies on encoding
+        {
+            Object vary = ((ContainerRequest)request).getProperties().get(ContainerRequest.VARY_HEADER);
+            ((ContainerRequest)request).getProperties().put(ContainerRequest.VARY_HEADER,
+                    vary != null ? vary + "," + HttpHeaders.ACCEPT_ENCODING : HttpHeaders.ACCEPT_ENCODING);
+        }
+        return identity.get(uncoded.indexOf(variant));
+    }
+
+    public MediaTypes getMediaTypes()
+    {
+        return mediaTypes;
+    }
+
+    public List<Locale> getLanguages()
+    {
+        return languages;
+    }
+
+    public List<String> getEncodings()
+    {
+        return encodings;
+    }
+
+    /**
+     * Immutable variant list that caches content negotiation results.
+     * Along with the selected variant, the <code>Vary</code> header value computed by Jersey is cached and restored
+     * on the request, so that responses carry the same headers as with uncached selection.
+     * Selections are kept in a concurrent map, so lookups do not lock; the map is cleared when it is full, since
+     * the number of distinct <code>Accept*</code> header combinations is normally small.
+     */
+    public static class VariantList extends AbstractList<Variant> implements RandomAccess
+    {
+        private static final String[] HEADERS = { HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE,
+            HttpHeaders.ACCEPT_CHARSET, HttpHeaders.ACCEPT_ENCODING };
+
+        private final Variant[] variants;
+        private final int cacheSize;
+        private final ConcurrentMap<String, Selection> selections;
+
+        /**
+         * Constructs variant list.
+         *
+         * @param variants variants
+         * @param cacheSize maximum number of cached selections (zero disables caching)
+         */
+        public VariantList(List<Variant> variants, int cacheSize)
+        {
+            if (variants == null) throw new IllegalArgumentException("List<Variant> cannot be null");
+
+            this.variants = variants.toArray(new Variant[variants.size()]);
+            this.cacheSize = cacheSize;
+            if (cacheSize > 0) selections = new ConcurrentHashMap<>();
+            else selections = null;
+        }
+
+        @Override
+        public Variant get(int index)
+        {
+            return variants[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return variants.length;
+        }
+
+        /**
+         * Selects variant for the request, using cached selection if there is one.
+         * Only Jersey container requests are cached, since selection has to update their properties.
+         *
+         * @param request current request
+         * @return selected variant or null, if none is acceptable
+         */
+        public Variant select(Request request)
+        {
+            if (request == null) throw new IllegalArgumentException("Request cannot be null");
+            if (selections == null || !(request instanceof ContainerRequest))
+            {
+                Variant variant = request.selectVariant(this);
+                if (variant == null) variant = selectIdentityVariant(request, this);
+                return variant;
+            }
+
+            ContainerRequest containerRequest = (ContainerRequest)request;
+            String key = getKey(containerRequest);
+            Selection selection = selections.get(key);
+            if (selection != null)
+            {
+                if (selection.getVary() != null)
+                    containerRequest.getProperties().put(ContainerRequest.VARY_HEADER, selection.getVary());
+                return selection.getVariant();
+            }
+
+            Variant variant = containerRequest.selectVariant(this);
+            if (variant == null) variant = selectIdentityVariant(containerRequest, this);
+            if (variant != null) // do not cache 406 Not Acceptable
+            {
+                if (selections.size() >= cacheSize) selections.clear(); // cheaper than LRU bookkeeping on every hit
+                selections.put(key, new Selection(variant, (String)containerRequest.getProperties().get(ContainerRequest.VARY_HEADER)));
+            }
+            return variant;
+        }
+
+        /**
+         * Builds selection cache key from content negotiation headers.
+         *
+         * @param request current request
+         * @return cache key
+         */
+        public String getKey(ContainerRequest request)
+        {
+            StringBuilder key = new StringBuilder();
+            for (String header : HEADERS)
+            {
+                List<String> values = request.getRequestHeaders().get(header);
+                if (values != null)
+                    for (String value : values) key.append(value).append(',');
+                key.append('\n');
+            }
+            return key.toString();
+        }
+
+        public ConcurrentMap<String, Selection> getSelections()
+        {
+            return selections;
+        }
+
+        public int getCacheSize()
+        {
+            return cacheSize;
+        }
+
+    }
+
+    /**
+     * Cached variant selection.
+     */
+    public static class Selection
+    {
+        private final Variant variant;
+        private final String vary;
+
+        public Selection(Variant variant, String vary)
+        {
+            this.variant = variant;
+            this.vary = vary;
+        }
+
+        public Variant getVariant()
+        {
+            return variant;
+        }
+
+        public String getVary()
+        {
+            return vary;
+        }
+
+    }
+
+}
@@ -0,0 +1,325 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.graphity.core.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer of Graph Store appends (<code>POST</code>).
+ * Appends to the same target graph are merged into a single batch, which is flushed as one origin request when it
+ * reaches the maximum number of triples, or when the maximum delay since its first append has passed, whichever
+ * comes first. Batches are flushed by a single background thread, one at a time.
+ * 
+ * Durability depends on the mode:
+ * <ul>
+ * <li>asynchronous (default) - appends are acknowledged as soon as they are buffered. Buffered triples are lost if
+ * the flush fails or the process crashes before it; failures are logged and counted</li>
+ * <li>synchronous - the caller waits until the batch containing its append has been accepted by the origin, and
+ * receives the flush error if it failed. Concurrent appends still share a single origin request (group commit)</li>
+ * </ul>
+ * Pending batches of a graph have to be flushed before it is replaced or deleted, so that the operations reach the
+ * origin in order. A batch stays pending until its origin request has completed, including batches that are already
+ * being flushed in the background. All pending batches are flushed on shutdown, which has to happen before the
+ * sinks are closed.
+ * 
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.core.model.impl.GraphStoreBase
+ */
+public class WriteBehindBuffer
+{
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * Destination of flushed batches, e.g. Graph Store origin.
+     * Must not depend on request-scoped state, since batches are flushed after requests have completed.
+     */
+    public interface Sink
+    {
+        
+        /**
+         * Appends model to graph.
+         * 
+         * @param graphUri named graph URI, or null for the default graph
+         * @param model batch of triples
+         */
+        void add(String graphUri, Model model);
+        
+    }
+    
+    private final long maxTriples, maxDelay;
+    private final boolean sync;
+    private final MetricRegistry metricRegistry;
+    private final Map<String, Batch> batches = new HashMap<>(); // open batches, accepting appends
+    private final Map<String, Batch> pending = new HashMap<>(); // latest batch per key, until it has been written
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Constructs write-behind buffer.
+     * 
+     * @param maxTriples maximum number of triples per batch
+     * @param maxDelay maximum delay of a batch in milliseconds
+     * @param sync if true, appends wait until they are flushed
+     * @param metricRegistry metrics, or null if metrics are disabled
+     */
+    public WriteBehindBuffer(long maxTriples, long maxDelay, boolean sync, MetricRegistry metricRegistry)
+    {
+        if (maxTriples <= 0) throw new IllegalArgumentException("Maximum number of triples must be positive");
+        if (maxDelay < 0) throw new IllegalArgumentException("Maximum delay cannot be negative");
+        
+        this.maxTriples = maxTriples;
+        this.maxDelay = maxDelay;
+        this.sync = sync;
+        this.metricRegistry = metricRegistry;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "graphity-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true); // timers of written batches do not hold up shutdown
+        this.executor = executor;
+    }
+
+    /**
+     * Buffers append of a model to a graph.
+     * 
+     * @param key target key, unique per origin and graph
+     * @param graphUri named graph URI, or null for the default graph
+     * @param model triples to append
+     * @param sink destination of the batch, used if a new batch is started
+     * @return pending flush of the batch the model was added to
+     */
+    public Future<Long> append(String key, String graphUri, Model model, Sink sink)
+    {
+	if (key == null) throw new IllegalArgumentException("Key cannot be null");
+	if (model == null) throw new IllegalArgumentException("Model cannot be null");
+	if (sink == null) throw new IllegalArgumentException("Sink cannot be null");
+
+        if (getMetricRegistry() != null) getMetricRegistry().counter("gsp.writeBehind.appends").increment();
+        
+        synchronized (batches)
+        {
+            Batch batch = batches.get(key);
+            if (batch == null)
+            {
+                batch = new Batch(key, graphUri, sink);
+                batches.put(key, batch);
+                pending.put(key, batch);
+                batch.setTimer(executor.schedule(batch.getTask(), getMaxDelay(), TimeUnit.MILLISECONDS));
+            }
+            
+            batch.getModel().add(model);
+            if (batch.getModel().size() >= getMaxTriples())
+            {
+                batches.remove(key);
+                executor.execute(batch.getTask());
+            }
+            
+            return batch.getTask();
+        }
+    }
+
+    /**
+     * Flushes pending batches of a graph and waits until they have been written.
+     * The open batch is queued behind batches that are already being flushed, so that the origin receives them in order.
+     * 
+     * @param key target key
+     * @throws RuntimeException flush error of the latest batch
+     */
+    public void flush(String key)
+    {
+	if (key == null) throw new IllegalArgumentException("Key cannot be null");
+
+        Batch latest;
+        synchronized (batches)
+        {
+            Batch batch = batches.remove(key);
+            if (batch != null)
+            {
+                if (executor.isShutdown()) batch.getTask().run(); // no flush thread anymore
+                else executor.execute(batch.getTask());
+            }
+            latest = pending.get(key);
+        }
+        
+        if (latest != null) get(latest.getTask()); // single flush thread: earlier batches have been written as well
+    }
+
+    /**
+     * Flushes all pending batches and stops the flush thread.
+     * Can be called more than once, only the first call has an effect.
+     */
+    public void close()
+    {
+        synchronized (batches)
+        {
+            if (executor.isShutdown()) return;
+            
+            if (log.isDebugEnabled()) log.debug("Flushing {} pending write-behind batches on shutdown", batches.size());
+            for (Batch batch : batches.values()) executor.execute(batch.getTask());
+            batches.clear();
+            executor.shutdown();
+        }
+        
+        try
+        {
+            if (!executor.awaitTermination(getMaxDelay() + 30000, TimeUnit.MILLISECONDS) && log.isWarnEnabled())
+                log.warn("Write-behind batches have not been flushed in time");
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the flush of a batch.
+     * 
+     * @param flush pending flush
+     * @return number of flushed triples
+     * @throws RuntimeException flush error
+     */
+    public long get(Future<Long> flush)
+    {
+	if (flush == null) throw new IllegalArgumentException("Future cannot be null");
+
+        try
+        {
+            return flush.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write-behind flush", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    public long getMaxTriples()
+    {
+        return maxTriples;
+    }
+
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    public boolean isSync()
+    {
+        return sync;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+
+    /**
+     * Pending appends to a single graph.
+     */
+    public class Batch implements Callable<Long>
+    {
+        private final String key, graphUri;
+        private final Sink sink;
+        private final Model model = ModelFactory.createDefaultModel();
+        private final FutureTask<Long> task = new FutureTask<>(this);
+        private final long start = System.nanoTime();
+        private ScheduledFuture<?> timer;
+
+        public Batch(String key, String graphUri, Sink sink)
+        {
+            this.key = key;
+            this.graphUri = graphUri;
+            this.sink = sink;
+        }
+
+        @Override
+        public Long call()
+        {
+            synchronized (batches)
+            {
+                if (batches.get(key) == this) batches.remove(key); // no more appends to this batch
+                if (timer != null) timer.cancel(false);
+            }
+            
+            if (log.isDebugEnabled()) log.debug("Flushing write-behind batch of {} triples to graph: {}", model.size(), graphUri);
+            try
+            {
+                sink.add(graphUri, model);
+            }
+            catch (RuntimeException ex)
+            {
+                if (getMetricRegistry() != null) getMetricRegistry().counter("gsp.writeBehind.failures").increment();
+                if (log.isErrorEnabled()) log.error("Write-behind flush of {} triples to graph: {} failed", new Object[]{model.size(), graphUri, ex});
+                throw ex;
+            }
+            finally
+            {
+                synchronized (batches)
+                {
+                    if (pending.get(key) == this) pending.remove(key); // no later batch is waiting to be written
+                }
+            }
+            
+            if (getMetricRegistry() != null) getMetricRegistry().recordSince("gsp.writeBehind.flush", start);
+            return model.size();
+        }
+
+        public Model getModel()
+        {
+            return model;
+        }
+
+        public FutureTask<Long> getTask()
+        {
+            return task;
+        }
+
+        public void setTimer(ScheduledFuture<?> timer)
+        {
+            this.timer = timer;
+        }
+        
+    }
+    
+}
@@ -58,6 +58,7 @@ public class DataManager extends FileManager
 
     private final boolean preemptiveAuth;
     private final ClientConfig clientConfig = new DefaultClientConfig();
+    private final Client client;
     private final MediaTypes mediaTypes;
     private final javax.ws.rs.core.MediaType[] modelMediaTypes;
     private final javax.ws.rs.core.MediaType[] resultSetMediaTypes;
@@ -71,6 +72,21 @@ public class DataManager extends FileManager
      * @param preemptiveAuth if true, preemptive HTTP authentication will be used
      */
     public DataManager(LocationMapper mapper, MediaTypes mediaTypes, boolean cacheModelLoads, boolean preemptiveAuth)
+    {
+        this(mapper, mediaTypes, null, cacheModelLoads, preemptiveAuth);
+    }
+    
+    /**
+     * Creates data manager that uses the given (shared) HTTP client.
+     * If client is null, data manager creates its own one.
+     * 
+     * @param mapper location mapper
+     * @param mediaTypes supported readable and writable media types
+     * @param client HTTP client
+     * @param cacheModelLoads true if loaded models should be cached
+     * @param preemptiveAuth if true, preemptive HTTP authentication will be used
+     */
+    public DataManager(LocationMapper mapper, MediaTypes mediaTypes, Client client, boolean cacheModelLoads, boolean preemptiveAuth)
     {
 	super(mapper);
 	if (mediaTypes == null) throw new IllegalArgumentException("MediaTypes must be not null");
@@ -88,6 +104,13 @@ public class DataManager extends FileManager
         clientConfig.getSingletons().add(new ResultSetProvider());
         clientConfig.getSingletons().add(new QueryWriter());
         clientConfig.getSingletons().add(new UpdateRequestReader()); // TO-DO: UpdateRequestProvider
+        
+        if (client != null) this.client = client;
+        else
+        {
+            this.client = Client.create(clientConfig);
+            if (log.isDebugEnabled()) this.client.addFilter(new LoggingFilter(System.out));
+        }
     }
     
     public ClientConfig getClientConfig()
@@ -95,6 +118,11 @@ public class DataManager extends FileManager
         return clientConfig;
     }
 
+    public Client getClient()
+    {
+        return client;
+    }
+    
     public MediaTypes getMediaTypes()
     {
         return mediaTypes;
@@ -114,11 +142,10 @@ public class DataManager extends FileManager
     {
 	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
       
-        Client client = Client.create(getClientConfig());
-        if (authFilter != null) client.addFilter(authFilter);
-        if (log.isDebugEnabled()) client.addFilter(new LoggingFilter(System.out));
+        WebResource webResource = getClient().resource(URI.create(endpointURI));
+        if (authFilter != null) webResource.addFilter(authFilter); // filter only this resource, client is shared
         
-        return client.resource(URI.create(endpointURI));
+        return webResource;
     }
     
     public ClientResponse get(String uri, javax.ws.rs.core.MediaType[] acceptedTypes)
@@ -129,6 +156,45 @@ public class DataManager extends FileManager
             get(ClientResponse.class);
     }
     
+    /**
+     * Model cache access is synchronized, because data manager is shared by concurrent requests.
+     */
+    @Override
+    public synchronized Model getFromCache(String filenameOrURI)
+    {
+        return super.getFromCache(filenameOrURI);
+    }
+
+    @Override
+    public synchronized boolean hasCachedModel(String filenameOrURI)
+    {
+        return super.hasCachedModel(filenameOrURI);
+    }
+
+    @Override
+    public synchronized void addCacheModel(String uri, Model m)
+    {
+        super.addCacheModel(uri, m);
+    }
+
+    @Override
+    public synchronized void removeCacheModel(String uri)
+    {
+        super.removeCacheModel(uri);
+    }
+
+    @Override
+    public synchronized void resetCache()
+    {
+        super.resetCache();
+    }
+
+    @Override
+    public synchronized void setModelCaching(boolean state)
+    {
+        super.setModelCaching(state);
+    }
+
     public boolean usePreemptiveAuth(Property property)
     {
         return preemptiveAuth;
@@ -64,5 +64,111 @@ public final class G
     public static final DatatypeProperty httpHeaders = m_model.createDatatypeProperty( NS + "httpHeaders" );
 
     public static final DatatypeProperty maxGetRequestSize = m_model.createDatatypeProperty( NS + "maxGetRequestSize" );
+
+    public static final DatatypeProperty streamResults = m_model.createDatatypeProperty( NS + "streamResults" );
+
+    public static final DatatypeProperty passThrough = m_model.createDatatypeProperty( NS + "passThrough" );
+
+    public static final DatatypeProperty streamUploads = m_model.createDatatypeProperty( NS + "streamUploads" );
+
+    public static final DatatypeProperty weakEntityTags = m_model.createDatatypeProperty( NS + "weakEntityTags" );
+
+    public static final DatatypeProperty cacheEntityTags = m_model.createDatatypeProperty( NS + "cacheEntityTags" );
+
+    public static final DatatypeProperty entityTagCacheSize = m_model.createDatatypeProperty( NS + "entityTagCacheSize" );
+
+    public static final DatatypeProperty entityTagCacheTTL = m_model.createDatatypeProperty( NS + "entityTagCacheTTL" );
+
+    public static final DatatypeProperty maxTaggedEntitySize = m_model.createDatatypeProperty( NS + "maxTaggedEntitySize" );
+
+    public static final DatatypeProperty queryCacheSize = m_model.createDatatypeProperty( NS + "queryCacheSize" );
+
+    public static final DatatypeProperty cacheQueryResults = m_model.createDatatypeProperty( NS + "cacheQueryResults" );
+
+    public static final DatatypeProperty queryResultCacheSize = m_model.createDatatypeProperty( NS + "queryResultCacheSize" );
+
+    public static final DatatypeProperty queryResultCacheTTL = m_model.createDatatypeProperty( NS + "queryResultCacheTTL" );
+
+    public static final DatatypeProperty queryResultCacheTriples = m_model.createDatatypeProperty( NS + "queryResultCacheTriples" );
+
+    public static final DatatypeProperty coalesceQueries = m_model.createDatatypeProperty( NS + "coalesceQueries" );
+
+    public static final DatatypeProperty metrics = m_model.createDatatypeProperty( NS + "metrics" );
+
+    public static final DatatypeProperty originMediaType = m_model.createDatatypeProperty( NS + "originMediaType" );
+
+    public static final DatatypeProperty writeBufferSize = m_model.createDatatypeProperty( NS + "writeBufferSize" );
+
+    public static final DatatypeProperty maxPrettyWriteSize = m_model.createDatatypeProperty( NS + "maxPrettyWriteSize" );
+
+    public static final DatatypeProperty variantCacheSize = m_model.createDatatypeProperty( NS + "variantCacheSize" );
+
+    public static final DatatypeProperty maxModelTriples = m_model.createDatatypeProperty( NS + "maxModelTriples" );
+
+    public static final DatatypeProperty maxModelBytes = m_model.createDatatypeProperty( NS + "maxModelBytes" );
+
+    public static final DatatypeProperty spillResults = m_model.createDatatypeProperty( NS + "spillResults" );
+
+    public static final DatatypeProperty spillDirectory = m_model.createDatatypeProperty( NS + "spillDirectory" );
+
+    public static final DatatypeProperty directUpdate = m_model.createDatatypeProperty( NS + "directUpdate" );
+
+    public static final DatatypeProperty updateBatchSize = m_model.createDatatypeProperty( NS + "updateBatchSize" );
+
+    public static final DatatypeProperty writeBehind = m_model.createDatatypeProperty( NS + "writeBehind" );
+
+    public static final DatatypeProperty writeBehindBatchSize = m_model.createDatatypeProperty( NS + "writeBehindBatchSize" );
+
+    public static final DatatypeProperty writeBehindDelay = m_model.createDatatypeProperty( NS + "writeBehindDelay" );
+
+    public static final DatatypeProperty writeBehindSync = m_model.createDatatypeProperty( NS + "writeBehindSync" );
+
+    public static final DatatypeProperty datasetLocation = m_model.createDatatypeProperty( NS + "datasetLocation" );
+
+    public static final DatatypeProperty datasetFile = m_model.createDatatypeProperty( NS + "datasetFile" );
+
+    public static final DatatypeProperty queryTimeout = m_model.createDatatypeProperty( NS + "queryTimeout" );
+
+    public static final DatatypeProperty admissionControl = m_model.createDatatypeProperty( NS + "admissionControl" );
+
+    public static final DatatypeProperty interactiveConcurrency = m_model.createDatatypeProperty( NS + "interactiveConcurrency" );
+
+    public static final DatatypeProperty interactiveQueueTimeout = m_model.createDatatypeProperty( NS + "interactiveQueueTimeout" );
+
+    public static final DatatypeProperty analyticConcurrency = m_model.createDatatypeProperty( NS + "analyticConcurrency" );
+
+    public static final DatatypeProperty analyticQueueTimeout = m_model.createDatatypeProperty( NS + "analyticQueueTimeout" );
+
+    public static final DatatypeProperty analyticQueryCost = m_model.createDatatypeProperty( NS + "analyticQueryCost" );
+
+    public static final DatatypeProperty maxQueryCost = m_model.createDatatypeProperty( NS + "maxQueryCost" );
+
+    public static final DatatypeProperty contentEncodings = m_model.createDatatypeProperty( NS + "contentEncodings" );
+
+    public static final DatatypeProperty representationCacheSize = m_model.createDatatypeProperty( NS + "representationCacheSize" );
+
+    public static final DatatypeProperty maxRepresentationSize = m_model.createDatatypeProperty( NS + "maxRepresentationSize" );
+
+    public static final DatatypeProperty maxConnections = m_model.createDatatypeProperty( NS + "maxConnections" );
+
+    public static final DatatypeProperty maxConnectionsPerOrigin = m_model.createDatatypeProperty( NS + "maxConnectionsPerOrigin" );
+
+    public static final DatatypeProperty keepAlive = m_model.createDatatypeProperty( NS + "keepAlive" );
+
+    public static final DatatypeProperty connectTimeout = m_model.createDatatypeProperty( NS + "connectTimeout" );
+
+    public static final DatatypeProperty readTimeout = m_model.createDatatypeProperty( NS + "readTimeout" );
+
+    public static final DatatypeProperty connectionRequestTimeout = m_model.createDatatypeProperty( NS + "connectionRequestTimeout" );
+
+    public static final DatatypeProperty maxConcurrentOriginRequests = m_model.createDatatypeProperty( NS + "maxConcurrentOriginRequests" );
+
+    public static final DatatypeProperty originWaitTimeout = m_model.createDatatypeProperty( NS + "originWaitTimeout" );
+
+    public static final DatatypeProperty asyncThreads = m_model.createDatatypeProperty( NS + "asyncThreads" );
+
+    public static final DatatypeProperty asyncTimeout = m_model.createDatatypeProperty( NS + "asyncTimeout" );
+
+    public static final DatatypeProperty asyncQueueSize = m_model.createDatatypeProperty( NS + "asyncQueueSize" );
     
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.filter;
+
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import com.sun.jersey.spi.container.WebApplicationFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import org.graphity.core.filter.EntityTagFilter.EntityTagWriter;
+import org.graphity.core.filter.EntityTagFilter.HashingOutputStream;
+import org.graphity.core.util.EntityTagCache;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class EntityTagFilterTest
+{
+
+    public static final URI REQUEST_URI = URI.create("http://localhost/resource");
+    public static final byte[] BODY = "<http://s> <http://p> <http://o> .\n".getBytes();
+
+    private EntityTagCache cache;
+    private RecordingWriter writer;
+
+    @Before
+    public void setUp()
+    {
+        cache = new EntityTagCache(100, 0, 64);
+        writer = new RecordingWriter();
+    }
+
+    /**
+     * Test that the weak tag of the written body is sent with it and cached.
+     */
+    @Test
+    public void testEntityTag() throws IOException
+    {
+        ContainerResponse response = write(BODY, null);
+        EntityTag entityTag = tag(BODY, null);
+
+        assertArrayEquals(BODY, writer.getBody());
+        assertEquals(BODY.length, writer.getContentLength());
+        assertEquals(entityTag, response.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+        assertTrue(entityTag.isWeak());
+        assertEquals(entityTag, cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, null));
+    }
+
+    /**
+     * Test that a different body gets a different tag, instead of the cached one.
+     */
+    @Test
+    public void testChangedBody() throws IOException
+    {
+        write(BODY, null);
+        writer = new RecordingWriter();
+        byte[] changed = "<http://s> <http://p> <http://x> .\n".getBytes();
+        ContainerResponse response = write(changed, null);
+
+        assertEquals(tag(changed, null), response.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+        assertFalse(tag(BODY, null).equals(response.getHttpHeaders().getFirst(HttpHeaders.ETAG)));
+    }
+
+    /**
+     * Test that tags of coded bodies are distinguished by content coding.
+     */
+    @Test
+    public void testContentCoding() throws IOException
+    {
+        ContainerResponse response = write(BODY, "gzip");
+        EntityTag entityTag = (EntityTag)response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+
+        assertTrue(entityTag.getValue().endsWith("-gzip"));
+        assertFalse(entityTag.equals(tag(BODY, null)));
+        assertEquals(entityTag, cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, "gzip"));
+        assertNull(cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, null));
+    }
+
+    /**
+     * Test that bodies larger than the maximum entity size are streamed without a tag.
+     */
+    @Test
+    public void testLargeBody() throws IOException
+    {
+        byte[] body = new byte[100];
+        Arrays.fill(body, (byte)'x');
+        ContainerResponse response = write(body, null);
+
+        assertArrayEquals(body, writer.getBody());
+        assertEquals(-1, writer.getContentLength());
+        assertFalse(response.getHttpHeaders().containsKey(HttpHeaders.ETAG));
+        assertNull(cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, null));
+    }
+
+    /**
+     * Test that a conditional request matching the cached tag is answered with 304 Not Modified.
+     */
+    @Test
+    public void testNotModified() throws IOException
+    {
+        write(BODY, null);
+        EntityTag cached = cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, null);
+
+        InBoundHeaders headers = new InBoundHeaders();
+        headers.putSingle(HttpHeaders.IF_NONE_MATCH, cached.toString());
+        ContainerRequest request = new ContainerRequest(WebApplicationFactory.createWebApplication(), HttpMethod.GET, URI.create("http://localhost/"), REQUEST_URI,
+            headers, new ByteArrayInputStream(new byte[0]));
+        ResponseBuilder rb = request.evaluatePreconditions(cached);
+
+        assertNotNull(rb);
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), rb.build().getStatus());
+        assertNull(request.evaluatePreconditions(tag("changed".getBytes(), null)));
+    }
+
+    public ContainerResponse write(byte[] body, String coding) throws IOException
+    {
+        ContainerResponse response = new ContainerResponse(null, null, null);
+        EntityTagWriter entityTagWriter = new EntityTagWriter(writer, cache, REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, coding);
+        OutputStream out = entityTagWriter.writeStatusAndHeaders(-1, response);
+        for (int off = 0; off < body.length; off += 10) out.write(body, off, Math.min(10, body.length - off));
+        entityTagWriter.finish();
+        return response;
+    }
+
+    public static EntityTag tag(byte[] body, String coding) throws IOException
+    {
+        HashingOutputStream out = new HashingOutputStream(new ByteArrayOutputStream());
+        out.write(body);
+        return out.getEntityTag(coding);
+    }
+
+    /**
+     * Container writer that records the response body.
+     */
+    public static class RecordingWriter implements ContainerResponseWriter
+    {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private long contentLength;
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response)
+        {
+            this.contentLength = contentLength;
+            return body;
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        public byte[] getBody()
+        {
+            return body.toByteArray();
+        }
+
+        public long getContentLength()
+        {
+            return contentLength;
+        }
+    }
+
+}
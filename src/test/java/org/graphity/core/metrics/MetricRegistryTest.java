@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class MetricRegistryTest
+{
+
+    /**
+     * Test that every sample belongs to the metric family declared before it, using the suffixes allowed for its type.
+     */
+    @Test
+    public void testExposition() throws IOException
+    {
+        MetricRegistry registry = new MetricRegistry();
+        registry.timer("sparql.select").record(1500);
+        registry.timer("sparql.select").record(200);
+        registry.summary("http.response.size").record(4096);
+        registry.counter("querycache.hits").increment();
+        
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        
+        Map<String, String> types = new HashMap<>();
+        String family = null;
+        for (String line : writer.toString().split("\n"))
+        {
+            if (line.startsWith("# TYPE "))
+            {
+                String[] declaration = line.substring("# TYPE ".length()).split(" ");
+                assertNull("Family declared twice: " + declaration[0], types.put(declaration[0], declaration[1]));
+                family = declaration[0];
+                continue;
+            }
+            
+            String sample = line.split("[ {]")[0];
+            assertNotNull("Sample before any family: " + line, family);
+            switch (types.get(family))
+            {
+                case "histogram":
+                    assertTrue(line, sample.equals(family + "_bucket") || sample.equals(family + "_sum") || sample.equals(family + "_count"));
+                    break;
+                default:
+                    assertEquals(line, family, sample);
+            }
+        }
+        
+        assertEquals("histogram", types.get("graphity_sparql_select_us"));
+        assertEquals("gauge", types.get("graphity_sparql_select_us_max"));
+        assertEquals("counter", types.get("graphity_querycache_hits_total"));
+        assertTrue(writer.toString().contains("graphity_sparql_select_us_max 1500\n"));
+        assertTrue(writer.toString().contains("graphity_sparql_select_us_count 2\n"));
+    }
+    
+}
@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.model.impl;
+
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.WebApplicationFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.HashMap;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import org.graphity.core.MediaTypes;
+import org.graphity.core.util.LocalDataset;
+import org.graphity.core.util.LocalDatasetTest;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class GraphStoreLocalBaseTest
+{
+
+    public static final URI GRAPH_URI = URI.create(LocalDatasetTest.GRAPH_URI);
+    public static final URI MISSING_URI = URI.create("http://localhost/missing");
+
+    private LocalDataset mem, tdb;
+
+    @Before
+    public void setUp()
+    {
+        mem = new LocalDataset(DatasetFactory.createMem(), 0);
+        tdb = new LocalDataset(TDBFactory.createDataset(), 0);
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            dataset.add(LocalDatasetTest.createModel("default"));
+            dataset.add(LocalDatasetTest.GRAPH_URI, LocalDatasetTest.createModel("named"));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        mem.close();
+        tdb.close();
+    }
+
+    /**
+     * Test that the default and named graphs are returned, and missing graphs are not found.
+     */
+    @Test
+    public void testGet()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            GraphStoreLocalBase graphStore = createGraphStore(dataset);
+            
+            Response response = graphStore.get(true, null);
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            assertTrue(((Model)response.getEntity()).isIsomorphicWith(LocalDatasetTest.createModel("default")));
+
+            response = graphStore.get(false, GRAPH_URI);
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            assertTrue(((Model)response.getEntity()).isIsomorphicWith(LocalDatasetTest.createModel("named")));
+
+            assertNull(graphStore.getModel(MISSING_URI.toString()));
+            assertEquals(Status.NOT_FOUND.getStatusCode(), graphStore.get(false, MISSING_URI).getStatus());
+        }
+    }
+
+    /**
+     * Test that PUT replaces graphs, POST adds to them, and new named graphs are reported as created.
+     */
+    @Test
+    public void testPutPost()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            GraphStoreLocalBase graphStore = createGraphStore(dataset);
+
+            assertEquals(Status.OK.getStatusCode(), graphStore.put(LocalDatasetTest.createModel("replaced"), false, GRAPH_URI).getStatus());
+            assertTrue(dataset.getModel(GRAPH_URI.toString()).isIsomorphicWith(LocalDatasetTest.createModel("replaced")));
+
+            assertEquals(Status.OK.getStatusCode(), graphStore.post(LocalDatasetTest.createModel("added"), true, null).getStatus());
+            assertEquals(2, dataset.getModel().size());
+
+            assertEquals(Status.CREATED.getStatusCode(), graphStore.post(LocalDatasetTest.createModel("new"), false, MISSING_URI).getStatus());
+            assertTrue(dataset.containsModel(MISSING_URI.toString()));
+        }
+    }
+
+    /**
+     * Test that DELETE removes graphs, and missing graphs are not found.
+     */
+    @Test
+    public void testDelete()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            GraphStoreLocalBase graphStore = createGraphStore(dataset);
+
+            assertEquals(Status.NO_CONTENT.getStatusCode(), graphStore.delete(false, GRAPH_URI).getStatus());
+            assertNull(dataset.getModel(GRAPH_URI.toString()));
+            assertEquals(Status.NOT_FOUND.getStatusCode(), graphStore.delete(false, GRAPH_URI).getStatus());
+
+            assertEquals(Status.NO_CONTENT.getStatusCode(), graphStore.delete(true, null).getStatus());
+            assertTrue(dataset.getModel().isEmpty());
+        }
+    }
+
+    public static GraphStoreLocalBase createGraphStore(LocalDataset dataset)
+    {
+        ContainerRequest request = new ContainerRequest(WebApplicationFactory.createWebApplication(), HttpMethod.GET,
+            URI.create("http://localhost/"), URI.create("http://localhost/service"), new InBoundHeaders(), new ByteArrayInputStream(new byte[0]));
+        return new GraphStoreLocalBase(request, new SPARQLEndpointBaseTest.ServletConfigStub(new HashMap<String, String>()),
+                new MediaTypes(), dataset, null);
+    }
+
+}
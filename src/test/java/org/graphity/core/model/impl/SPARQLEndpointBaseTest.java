@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.model.impl;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.update.UpdateRequest;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.WebApplicationFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
+import org.graphity.core.MediaTypes;
+import org.graphity.core.util.ContentCoding;
+import org.graphity.core.util.Link;
+import org.graphity.core.util.VariantRegistry;
+import org.graphity.core.vocabulary.G;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class SPARQLEndpointBaseTest
+{
+
+    public static final URI REQUEST_URI = URI.create("http://localhost/sparql?query=SELECT");
+
+    private SPARQLEndpointBase endpoint;
+
+    @Before
+    public void setUp()
+    {
+        Map<String, String> params = new HashMap<>();
+        params.put(G.resultLimit.getURI(), "10");
+        ContainerRequest request = new ContainerRequest(WebApplicationFactory.createWebApplication(), HttpMethod.GET,
+            URI.create("http://localhost/"), REQUEST_URI, new InBoundHeaders(), new ByteArrayInputStream(new byte[0]));
+        endpoint = new EndpointStub(request, new ServletConfigStub(params));
+    }
+
+    /**
+     * Test that the result limit is applied to a copy of the query, and only if it lowers the limit.
+     */
+    @Test
+    public void testLimitedQuery()
+    {
+        Query query = QueryFactory.create("SELECT * { ?s ?p ?o }");
+        Query page = endpoint.getLimitedQuery(query);
+
+        assertNotSame(query, page);
+        assertEquals(10, page.getLimit());
+        assertFalse(query.hasLimit());
+
+        Query limited = QueryFactory.create("SELECT * { ?s ?p ?o } LIMIT 5");
+        assertSame(limited, endpoint.getLimitedQuery(limited));
+        Query describe = QueryFactory.create("DESCRIBE <http://localhost/resource>");
+        assertSame(describe, endpoint.getLimitedQuery(describe));
+    }
+
+    /**
+     * Test that next page queries continue the original query until its own limit is exhausted.
+     */
+    @Test
+    public void testNextPageQuery()
+    {
+        Query query = QueryFactory.create("SELECT * { ?s ?p ?o } OFFSET 3 LIMIT 25");
+        Query page = endpoint.getLimitedQuery(query);
+        Query next = endpoint.getNextPageQuery(query, page);
+
+        assertEquals(13, next.getOffset());
+        assertEquals(15, next.getLimit());
+
+        Query nextPage = endpoint.getLimitedQuery(next);
+        Query last = endpoint.getNextPageQuery(next, nextPage);
+        assertEquals(23, last.getOffset());
+        assertEquals(5, last.getLimit());
+
+        assertNull(endpoint.getNextPageQuery(last, endpoint.getLimitedQuery(last)));
+        Query unlimited = QueryFactory.create("SELECT * { ?s ?p ?o }");
+        Query unlimitedNext = endpoint.getNextPageQuery(unlimited, endpoint.getLimitedQuery(unlimited));
+        assertEquals(10, unlimitedNext.getOffset());
+        assertFalse(unlimitedNext.hasLimit());
+    }
+
+    /**
+     * Test that the response links to the next page of results.
+     */
+    @Test
+    public void testLinkHeader() throws Exception
+    {
+        Query query = QueryFactory.create("SELECT * { ?s ?p ?o }");
+        Response response = endpoint.getResponseBuilder(Response.ok(), query, endpoint.getLimitedQuery(query)).build();
+        Link link = Link.valueOf(response.getMetadata().getFirst("Link").toString());
+
+        assertEquals("next", link.getRel());
+        String next = link.getHref().getQuery();
+        assertEquals(10, QueryFactory.create(next.substring(next.indexOf("query=") + "query=".length())).getOffset());
+
+        query = QueryFactory.create("SELECT * { ?s ?p ?o } LIMIT 5");
+        response = endpoint.getResponseBuilder(Response.ok(), query, endpoint.getLimitedQuery(query)).build();
+        assertNull(response.getMetadata().getFirst("Link"));
+    }
+
+    /**
+     * Test that content codings are taken from the variant registry instead of being parsed on every request.
+     */
+    @Test
+    public void testEncodings()
+    {
+        Map<String, String> params = new HashMap<>();
+        params.put(G.contentEncodings.getURI(), "gzip");
+        ContainerRequest request = new ContainerRequest(WebApplicationFactory.createWebApplication(), HttpMethod.GET,
+            URI.create("http://localhost/"), REQUEST_URI, new InBoundHeaders(), new ByteArrayInputStream(new byte[0]));
+        final VariantRegistry registry = new VariantRegistry(new MediaTypes(), Collections.<Locale>emptyList(),
+                ContentCoding.getEncodings("gzip,deflate"), 10);
+        SPARQLEndpointBase registryEndpoint = new EndpointStub(request, new ServletConfigStub(params))
+        {
+            @Override
+            public VariantRegistry getVariantRegistry()
+            {
+                return registry;
+            }
+        };
+        
+        assertSame(registry.getEncodings(), registryEndpoint.getEncodings());
+        assertEquals(ContentCoding.getEncodings("gzip"), new EndpointStub(request, new ServletConfigStub(params)).getEncodings());
+    }
+
+    public static class EndpointStub extends SPARQLEndpointBase
+    {
+
+        public EndpointStub(ContainerRequest request, ServletConfig servletConfig)
+        {
+            super(request, servletConfig, new MediaTypes());
+        }
+
+        @Override
+        public Model loadModel(Query query)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSetRewindable select(Query query)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean ask(Query query)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void update(UpdateRequest updateRequest)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    public static class ServletConfigStub implements ServletConfig
+    {
+        private final Map<String, String> params;
+
+        public ServletConfigStub(Map<String, String> params)
+        {
+            this.params = params;
+        }
+
+        @Override
+        public String getServletName()
+        {
+            return "test";
+        }
+
+        @Override
+        public ServletContext getServletContext()
+        {
+            return null;
+        }
+
+        @Override
+        public String getInitParameter(String name)
+        {
+            return params.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames()
+        {
+            return Collections.enumeration(params.keySet());
+        }
+    }
+
+}
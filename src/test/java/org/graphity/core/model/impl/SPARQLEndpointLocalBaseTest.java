@@ -0,0 +1,170 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.model.impl;
+
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.update.UpdateFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.WebApplicationFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.HashMap;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import org.graphity.core.MediaTypes;
+import org.graphity.core.util.LocalDataset;
+import org.graphity.core.util.LocalDatasetTest;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class SPARQLEndpointLocalBaseTest
+{
+
+    private LocalDataset mem, tdb;
+
+    @Before
+    public void setUp()
+    {
+        mem = new LocalDataset(DatasetFactory.createMem(), 0);
+        tdb = new LocalDataset(TDBFactory.createDataset(), 0);
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            dataset.add(LocalDatasetTest.createModel("default"));
+            dataset.add(LocalDatasetTest.GRAPH_URI, LocalDatasetTest.createModel("named"));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        mem.close();
+        tdb.close();
+    }
+
+    /**
+     * Test that SELECT results are returned from the local dataset.
+     */
+    @Test
+    public void testSelect()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            Response response = createEndpoint(dataset).get(QueryFactory.create("SELECT * WHERE { GRAPH ?g { ?s ?p ?o } }"), null, null);
+            
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            ResultSetRewindable resultSet = (ResultSetRewindable)response.getEntity();
+            assertEquals(1, resultSet.size());
+            assertEquals(LocalDatasetTest.GRAPH_URI, resultSet.next().getResource("g").getURI());
+        }
+    }
+
+    /**
+     * Test that CONSTRUCT results are returned from the local dataset.
+     */
+    @Test
+    public void testConstruct()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            Response response = createEndpoint(dataset).get(QueryFactory.create("CONSTRUCT WHERE { ?s ?p ?o }"), null, null);
+            
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            assertTrue(((Model)response.getEntity()).isIsomorphicWith(LocalDatasetTest.createModel("default")));
+        }
+    }
+
+    /**
+     * Test that ASK queries are answered by the local dataset.
+     */
+    @Test
+    public void testAsk()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            assertTrue(createEndpoint(dataset).ask(QueryFactory.create("ASK { ?s ?p \"default\" }")));
+            assertFalse(createEndpoint(dataset).ask(QueryFactory.create("ASK { ?s ?p \"missing\" }")));
+        }
+    }
+
+    /**
+     * Test that updates are applied to the local dataset.
+     */
+    @Test
+    public void testUpdate()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { mem, tdb })
+        {
+            Response response = createEndpoint(dataset).post(UpdateFactory.create("DELETE WHERE { ?s ?p \"default\" } ; " +
+                    "INSERT DATA { <http://localhost/b> <http://localhost/p> \"b\" }"), null, null);
+            
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            assertEquals(1, dataset.getModel().size());
+            assertTrue(dataset.ask(QueryFactory.create("ASK { <http://localhost/b> ?p \"b\" }")));
+        }
+    }
+
+    /**
+     * Test that a query exceeding the timeout of the local dataset is answered with 503 Service Unavailable.
+     */
+    @Test
+    public void testTimeout()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { new LocalDataset(DatasetFactory.createMem(), 1), new LocalDataset(TDBFactory.createDataset(), 1) })
+        {
+            Model model = ModelFactory.createDefaultModel();
+            for (int i = 0; i < 40; i++) model.add(LocalDatasetTest.RESOURCE, RDFS.label, "label" + i);
+            dataset.add(model);
+            
+            try
+            {
+                createEndpoint(dataset).get(QueryFactory.create("SELECT * WHERE " + LocalDatasetTest.CROSS_PRODUCT), null, null);
+                fail("Query must time out");
+            }
+            catch (WebApplicationException ex)
+            {
+                assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), ex.getResponse().getStatus());
+            }
+            dataset.close();
+        }
+    }
+
+    public static SPARQLEndpointLocalBase createEndpoint(LocalDataset dataset)
+    {
+        ContainerRequest request = new ContainerRequest(WebApplicationFactory.createWebApplication(), HttpMethod.GET,
+            URI.create("http://localhost/"), URI.create("http://localhost/sparql"), new InBoundHeaders(), new ByteArrayInputStream(new byte[0]));
+        return new SPARQLEndpointLocalBase(request, new SPARQLEndpointBaseTest.ServletConfigStub(new HashMap<String, String>()),
+                new MediaTypes(), dataset, null);
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class RDFBinaryTest
+{
+
+    private Model model;
+
+    @Before
+    public void setUp()
+    {
+        model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("ex", "http://example.org/");
+        StringBuilder longValue = new StringBuilder();
+        while (longValue.length() < 3 * RDFBinaryReader.BUFFER_SIZE) longValue.append("ø long literal ");
+
+        Resource subject = model.createResource("http://example.org/subject");
+        Resource blank = model.createResource();
+        subject.addProperty(model.createProperty("http://example.org/plain"), "plain").
+            addProperty(model.createProperty("http://example.org/lang"), "æøå", "da").
+            addLiteral(model.createProperty("http://example.org/typed"), model.createTypedLiteral("42", XSDDatatype.XSDinteger)).
+            addProperty(model.createProperty("http://example.org/long"), longValue.toString()).
+            addProperty(model.createProperty("http://example.org/blank"), blank);
+        blank.addProperty(model.createProperty("http://example.org/plain"), "blank").
+            addProperty(model.createProperty("http://example.org/self"), blank);
+    }
+
+    /**
+     * Test that written RDF/Binary is read back as the same model.
+     */
+    @Test
+    public void testRoundTrip()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RDFBinaryWriter().write(out, model.getGraph(), PrefixMapFactory.create(model.getNsPrefixMap()), null, null);
+        Model parsed = read(out.toByteArray());
+
+        assertTrue(model.isIsomorphicWith(parsed));
+        assertEquals("http://example.org/", parsed.getNsPrefixURI("ex"));
+    }
+
+    /**
+     * Test that terms are written inline once the dictionary is full.
+     */
+    @Test
+    public void testDictionaryFull()
+    {
+        byte[] full = write(model, 2);
+
+        assertTrue(model.isIsomorphicWith(read(full)));
+        assertTrue(full.length > write(model, RDFBinary.DEFAULT_DICTIONARY_SIZE).length);
+    }
+
+    /**
+     * Test that input without RDF/Binary header is rejected.
+     */
+    @Test(expected = RiotException.class)
+    public void testNotRDFBinary()
+    {
+        read("<http://s> <http://p> <http://o> .".getBytes());
+    }
+
+    public static byte[] write(Model model, int dictionarySize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamRDFBinary stream = new StreamRDFBinary(out, dictionarySize, StreamRDFBinary.BUFFER_SIZE);
+        stream.start();
+        for (Map.Entry<String, String> prefix : model.getNsPrefixMap().entrySet())
+            stream.prefix(prefix.getKey(), prefix.getValue());
+        for (Triple triple : model.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toList()) stream.triple(triple);
+        stream.finish();
+        return out.toByteArray();
+    }
+
+    public static Model read(byte[] bytes)
+    {
+        Model parsed = ModelFactory.createDefaultModel();
+        new RDFBinaryReader().read(new ByteArrayInputStream(bytes), null, null, StreamRDFLib.graph(parsed.getGraph()), null);
+        return parsed;
+    }
+
+}
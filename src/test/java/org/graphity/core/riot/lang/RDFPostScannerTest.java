@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.riot.lang;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class RDFPostScannerTest
+{
+
+    private RDFPostScanner scanner;
+
+    @Before
+    public void setUp()
+    {
+        scanner = new RDFPostScanner(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Test that the scanner produces the same triples as the list-based parser.
+     */
+    @Test
+    public void testParse() throws Exception
+    {
+        Model expected = parseLists(RDFPostReaderTest.POST_BODY);
+        assertEquals(10, expected.size());
+        RDFPostReaderTest.assertIsoModels(normalize(expected), normalize(scan(RDFPostReaderTest.POST_BODY)));
+    }
+
+    /**
+     * Test that percent-escaped multi-byte characters and plus signs are decoded.
+     */
+    @Test
+    public void testDecode() throws Exception
+    {
+        String body = "rdf=&su=" + URLEncoder.encode("http://subject/ø", "UTF-8") + "&pu=" + URLEncoder.encode("http://predicate", "UTF-8") +
+            "&ol=" + URLEncoder.encode("æ ø å", "UTF-8") + "&ll=da";
+        Model parsed = scan(body);
+
+        assertEquals(1, parsed.size());
+        assertTrue(parsed.contains(parsed.createResource("http://subject/ø"), parsed.createProperty("http://predicate"),
+            parsed.createLiteral("æ ø å", "da")));
+    }
+
+    /**
+     * Test that the scanner agrees with the list-based parser on keys without values.
+     */
+    @Test
+    public void testEmptyValues() throws Exception
+    {
+        String body = "rdf=&su=" + URLEncoder.encode("http://subject", "UTF-8") + "&pu=" + URLEncoder.encode("http://predicate", "UTF-8") +
+            "&ol=&pu=" + URLEncoder.encode("http://predicate2", "UTF-8") + "&ou=" + URLEncoder.encode("http://object", "UTF-8");
+
+        RDFPostReaderTest.assertIsoModels(parseLists(body), scan(body));
+    }
+
+    /**
+     * Test that the scanner can be reused for consecutive bodies.
+     */
+    @Test
+    public void testReuse() throws Exception
+    {
+        Model first = scan(RDFPostReaderTest.POST_BODY);
+        String body = "rdf=&su=" + URLEncoder.encode("http://subject", "UTF-8") + "&pu=" + URLEncoder.encode("http://predicate", "UTF-8") +
+            "&ol=literal";
+        Model second = scan(body);
+
+        assertEquals(10, first.size());
+        assertEquals(1, second.size());
+    }
+
+    public Model scan(String body)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        scanner.parse(body, StreamRDFLib.graph(model.getGraph()));
+        return model;
+    }
+
+    /**
+     * Re-reads model, so that typed literals share datatype instances (<code>BaseDatatype</code> instances
+     * created by the parsers are not equal to each other).
+     */
+    public static Model normalize(Model model)
+    {
+        StringWriter writer = new StringWriter();
+        model.write(writer, "N-TRIPLES");
+        return ModelFactory.createDefaultModel().read(new StringReader(writer.toString()), null, "N-TRIPLES");
+    }
+
+    public static Model parseLists(String body) throws Exception
+    {
+        List<String> keys = new ArrayList<>(), values = new ArrayList<>();
+        for (String pair : body.split("&"))
+        {
+            String[] parts = pair.split("=", 2);
+            if (parts.length == 2 && !parts[1].isEmpty())
+            {
+                keys.add(URLDecoder.decode(parts[0], "UTF-8"));
+                values.add(URLDecoder.decode(parts[1], "UTF-8"));
+            }
+        }
+
+        return new RDFPostReader().parse(keys, values);
+    }
+
+}
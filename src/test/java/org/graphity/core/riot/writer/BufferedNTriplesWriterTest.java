@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.riot.writer;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.DatasetGraphFactory;
+import com.hp.hpl.jena.sparql.core.Quad;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class BufferedNTriplesWriterTest
+{
+
+    public static final Node SUBJECT = NodeFactory.createURI("http://localhost/a");
+    public static final Node PREDICATE = NodeFactory.createURI("http://localhost/p");
+    public static final String[] LEXICAL_FORMS = {
+        "",
+        "plain",
+        "\"quoted\" and 'single'",
+        "back\\slash \\n \\u0041",
+        "line\nfeed\rreturn\ttab",
+        "\u0000\u0001\u0008\u000B\u000C\u001F\u007F",
+        "Jusevi\u010Dius \u00C6r\u00F8 \u00DF", // 2-byte
+        "\u65E5\u672C\u8A9E \u20AC \uFFFD \uFEFF", // 3-byte
+        "\uD83D\uDE00 \uD834\uDD1E \uDBFF\uDFFF" // astral, 4-byte
+    };
+
+    /**
+     * Test that literals with characters that need escaping or multi-byte encoding, language tags and datatypes,
+     * URIs and blank nodes are parsed back into the same graph.
+     */
+    @Test
+    public void testGraph() throws IOException
+    {
+        Model model = ModelFactory.createDefaultModel();
+        for (String lexicalForm : LEXICAL_FORMS)
+        {
+            Node blank = NodeFactory.createAnon();
+            model.getGraph().add(new Triple(SUBJECT, PREDICATE, blank));
+            model.getGraph().add(new Triple(blank, PREDICATE, NodeFactory.createLiteral(lexicalForm)));
+            model.getGraph().add(new Triple(blank, PREDICATE, NodeFactory.createLiteral(lexicalForm, "lt-LT", false)));
+            model.getGraph().add(new Triple(blank, PREDICATE, NodeFactory.createLiteral(lexicalForm, XSDDatatype.XSDstring)));
+            model.getGraph().add(new Triple(blank, PREDICATE, NodeFactory.createLiteral(lexicalForm, TypeMapper.getInstance().getSafeTypeByName("http://localhost/datatype"))));
+        }
+        model.getGraph().add(new Triple(NodeFactory.createURI("http://localhost/Jusevi\u010Dius/\uD83D\uDE00"), PREDICATE, NodeFactory.createLiteral("1", XSDDatatype.XSDinteger)));
+        
+        assertIsomorphic(model, roundTrip(model, 64));
+        assertIsomorphic(model, roundTrip(model, BufferedNTriplesWriter.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Test that strings longer than the buffer are written completely, including multi-byte characters at buffer boundaries.
+     */
+    @Test
+    public void testLongStrings() throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) builder.append(LEXICAL_FORMS[i % LEXICAL_FORMS.length]);
+        String longString = builder.toString();
+        
+        Model model = ModelFactory.createDefaultModel();
+        model.getGraph().add(new Triple(SUBJECT, PREDICATE, NodeFactory.createLiteral(longString)));
+        model.getGraph().add(new Triple(SUBJECT, PREDICATE, NodeFactory.createLiteral(longString, "en", false)));
+        model.getGraph().add(new Triple(NodeFactory.createURI("http://localhost/" + longString.replaceAll("[^a-zA-Z\\u0080-\\uFFFF]", "")), PREDICATE, SUBJECT));
+        
+        for (int bufferSize : new int[] { 64, 1000, longString.length() })
+        {
+            Model parsed = roundTrip(model, bufferSize);
+            assertIsomorphic(model, parsed);
+            assertTrue(parsed.getGraph().contains(SUBJECT, PREDICATE, NodeFactory.createLiteral(longString)));
+        }
+    }
+
+    /**
+     * Test that output without blank nodes and control characters is the same as that of Jena's N-Triples writer.
+     */
+    @Test
+    public void testJenaOutput() throws IOException
+    {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 2; i < LEXICAL_FORMS.length; i++)
+            if (i != 5)
+            {
+                model.getGraph().add(new Triple(SUBJECT, PREDICATE, NodeFactory.createLiteral(LEXICAL_FORMS[i])));
+                model.getGraph().add(new Triple(SUBJECT, PREDICATE, NodeFactory.createLiteral(LEXICAL_FORMS[i], "en", false)));
+                model.getGraph().add(new Triple(SUBJECT, PREDICATE, NodeFactory.createLiteral(LEXICAL_FORMS[i], XSDDatatype.XSDstring)));
+            }
+        
+        ByteArrayOutputStream jena = new ByteArrayOutputStream();
+        RDFDataMgr.write(jena, model, Lang.NTRIPLES);
+        assertEquals(jena.toString("UTF-8"), write(model, 64).toString("UTF-8"));
+    }
+
+    /**
+     * Test that quads in the default and named graphs, with blank nodes shared between graphs, are parsed back into the same dataset.
+     */
+    @Test
+    public void testDataset() throws IOException
+    {
+        Node graph1 = NodeFactory.createURI("http://localhost/g1"), graph2 = NodeFactory.createURI("http://localhost/g2");
+        Node shared = NodeFactory.createAnon();
+        DatasetGraph datasetGraph = DatasetGraphFactory.createMem();
+        for (String lexicalForm : LEXICAL_FORMS)
+        {
+            datasetGraph.add(new Quad(Quad.defaultGraphIRI, SUBJECT, PREDICATE, NodeFactory.createLiteral(lexicalForm, "en", false)));
+            datasetGraph.add(new Quad(graph1, shared, PREDICATE, NodeFactory.createLiteral(lexicalForm)));
+            datasetGraph.add(new Quad(graph2, SUBJECT, PREDICATE, NodeFactory.createLiteral(lexicalForm, XSDDatatype.XSDstring)));
+        }
+        datasetGraph.add(new Quad(graph2, SUBJECT, PREDICATE, shared));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BufferedNTriplesWriter(out, 64).write(datasetGraph);
+        DatasetGraph parsed = DatasetGraphFactory.createMem();
+        RDFDataMgr.read(parsed, new ByteArrayInputStream(out.toByteArray()), Lang.NQUADS);
+        
+        assertTrue(datasetGraph.getDefaultGraph().isIsomorphicWith(parsed.getDefaultGraph()));
+        assertTrue(datasetGraph.getGraph(graph1).isIsomorphicWith(parsed.getGraph(graph1)));
+        assertTrue(datasetGraph.getGraph(graph2).isIsomorphicWith(parsed.getGraph(graph2)));
+
+        // the blank node is shared between the named graphs
+        Node parsedShared = parsed.getGraph(graph1).find(Node.ANY, Node.ANY, Node.ANY).next().getSubject();
+        assertTrue(parsedShared.isBlank());
+        assertTrue(parsed.getGraph(graph2).contains(SUBJECT, PREDICATE, parsedShared));
+        
+        int count = 0;
+        for (Iterator<Quad> it = parsed.find(); it.hasNext(); it.next()) count++;
+        assertEquals(LEXICAL_FORMS.length * 3 + 1, count);
+    }
+
+    public static ByteArrayOutputStream write(Model model, int bufferSize) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BufferedNTriplesWriter(out, bufferSize).write(model.getGraph());
+        return out;
+    }
+    
+    public static Model roundTrip(Model model, int bufferSize) throws IOException
+    {
+        return parse(write(model, bufferSize).toByteArray());
+    }
+
+    public static Model parse(byte[] bytes)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, new ByteArrayInputStream(bytes), Lang.NTRIPLES);
+        return model;
+    }
+
+    /**
+     * Asserts isomorphism, normalizing the expected model by Jena's own N-Triples round trip, because datatypes
+     * unknown to Jena are not equal unless they are the same instance.
+     */
+    public static void assertIsomorphic(Model expected, Model actual)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, expected, Lang.NTRIPLES);
+        Model normalized = parse(out.toByteArray());
+        assertEquals(normalized.size(), actual.size());
+        assertTrue(normalized.isIsomorphicWith(actual));
+    }
+    
+}
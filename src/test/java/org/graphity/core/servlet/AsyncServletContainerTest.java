@@ -0,0 +1,262 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.servlet;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.graphity.core.filter.DeadlineFilter;
+import org.graphity.core.util.Deadline;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class AsyncServletContainerTest
+{
+
+    private ContainerStub container;
+    private Exchange exchange;
+
+    @Before
+    public void setUp()
+    {
+        container = new ContainerStub();
+        exchange = new Exchange();
+    }
+
+    /**
+     * Test that a request rejected by the worker pool is answered with 503 and completed.
+     */
+    @Test
+    public void testQueueFull() throws Exception
+    {
+        container.executor.reject = true;
+        container.service(exchange.getRequest(), exchange.getResponse());
+        
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exchange.status);
+        assertTrue(exchange.completed);
+        assertEquals(0, container.handled);
+        
+        // the timeout that may still fire does not answer the request again
+        exchange.status = 0;
+        exchange.completed = false;
+        exchange.getListener().onTimeout(new AsyncEvent(exchange.getAsyncContext()));
+        assertEquals(0, exchange.status);
+        assertFalse(exchange.completed);
+    }
+
+    /**
+     * Test that a request timed out in the queue is answered with 503, and the worker does not handle it later.
+     */
+    @Test
+    public void testTimeoutClaim() throws Exception
+    {
+        container.service(exchange.getRequest(), exchange.getResponse());
+        assertEquals(1, container.executor.tasks.size());
+        
+        exchange.getListener().onTimeout(new AsyncEvent(exchange.getAsyncContext()));
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exchange.status);
+        assertTrue(exchange.completed);
+        
+        container.executor.tasks.get(0).run();
+        assertEquals(0, container.handled);
+    }
+
+    /**
+     * Test that a request timed out while being processed is left to the worker: its deadline is aborted, and the
+     * listener returns without answering or completing the request.
+     */
+    @Test
+    public void testWorkerClaim() throws Exception
+    {
+        Deadline deadline = new Deadline(60000);
+        exchange.attributes.put(DeadlineFilter.DEADLINE, deadline);
+        container.service(exchange.getRequest(), exchange.getResponse());
+        container.executor.tasks.get(0).run();
+        assertEquals(1, container.handled);
+        
+        exchange.getListener().onTimeout(new AsyncEvent(exchange.getAsyncContext()));
+        assertTrue(deadline.isExpired());
+        assertEquals(0, exchange.status);
+        assertFalse(exchange.completed);
+        deadline.close();
+    }
+
+    /**
+     * Test that a request dispatched again after a timeout is not processed a second time.
+     */
+    @Test
+    public void testDispatchedAgain() throws Exception
+    {
+        container.service(exchange.getRequest(), exchange.getResponse());
+        exchange.asyncStarted = false;
+        container.service(exchange.getRequest(), exchange.getResponse());
+        
+        assertEquals(1, container.executor.tasks.size());
+    }
+
+    /**
+     * Container that queues tasks without running them, and counts handled requests instead of processing them.
+     */
+    public static class ContainerStub extends AsyncServletContainer
+    {
+        final ExecutorStub executor = new ExecutorStub();
+        int handled = 0;
+        
+        @Override
+        public void handle(AsyncContext asyncContext)
+        {
+            handled++;
+        }
+
+        @Override
+        public ExecutorService getExecutor()
+        {
+            return executor;
+        }
+
+        @Override
+        public long getAsyncTimeout()
+        {
+            return 1000;
+        }
+        
+    }
+    
+    public static class ExecutorStub extends AbstractExecutorService
+    {
+        final List<Runnable> tasks = new ArrayList<>();
+        boolean reject = false;
+        
+        @Override
+        public void execute(Runnable command)
+        {
+            if (reject) throw new RejectedExecutionException();
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+        {
+            return true;
+        }
+        
+    }
+
+    /**
+     * Records the state of a request, its response and async context, which are implemented as proxies.
+     */
+    public static class Exchange implements InvocationHandler
+    {
+        final Map<String, Object> attributes = new HashMap<>();
+        final List<AsyncListener> listeners = new ArrayList<>();
+        boolean asyncStarted = false, completed = false;
+        int status = 0;
+        
+        private final HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class }, this);
+        private final HttpServletResponse response = (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, this);
+        private final AsyncContext asyncContext = (AsyncContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch (method.getName())
+            {
+                case "getAttribute": return attributes.get((String)args[0]);
+                case "setAttribute": attributes.put((String)args[0], args[1]); return null;
+                case "isAsyncSupported": return true;
+                case "isAsyncStarted": return asyncStarted;
+                case "startAsync": asyncStarted = true; return asyncContext;
+                case "getRequest": return request;
+                case "getResponse": return response;
+                case "addListener": listeners.add((AsyncListener)args[0]); return null;
+                case "complete": completed = true; return null;
+                case "sendError": status = (Integer)args[0]; return null;
+                case "isCommitted": return status != 0;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default: return null;
+            }
+        }
+
+        public HttpServletRequest getRequest()
+        {
+            return request;
+        }
+
+        public HttpServletResponse getResponse()
+        {
+            return response;
+        }
+
+        public AsyncContext getAsyncContext()
+        {
+            return asyncContext;
+        }
+
+        public AsyncListener getListener()
+        {
+            assertEquals(1, listeners.size());
+            return listeners.get(0);
+        }
+        
+    }
+    
+}
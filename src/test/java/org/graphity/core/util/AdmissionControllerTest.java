@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.sun.jersey.spi.CloseableService;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.graphity.core.util.AdmissionController.Permit;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class AdmissionControllerTest
+{
+
+    public static final Query DESCRIBE = QueryFactory.create("DESCRIBE <http://localhost/resource>");
+    public static final Query PATH = QueryFactory.create("SELECT * { ?s <http://localhost/p>+ ?o } LIMIT 10");
+
+    private AdmissionController controller;
+
+    @Before
+    public void setUp()
+    {
+        controller = new AdmissionController(2, 10, 1, 10, 50, 1000, null);
+    }
+
+    /**
+     * Test that query costs rank query shapes.
+     */
+    @Test
+    public void testCost()
+    {
+        assertEquals(1, QueryCost.estimate(DESCRIBE).getCost());
+        assertEquals(1, QueryCost.estimate(PATH).getUnboundedPaths());
+        assertEquals(60, QueryCost.estimate(PATH).getCost());
+        assertEquals(2, QueryCost.estimate(QueryFactory.create("SELECT * { ?s ?p ?o }")).getCost()); // no LIMIT
+        assertEquals(1, QueryCost.estimate(QueryFactory.create("SELECT * { ?s ?p ?o } LIMIT 10")).getCost());
+        assertEquals(9, QueryCost.estimate(QueryFactory.create("SELECT * { ?s ?p ?o OPTIONAL { ?o ?p2 ?o2 OPTIONAL { ?o2 ?p3 ?o3 } } } LIMIT 10")).getCost());
+    }
+
+    /**
+     * Test that queries are routed to lanes by cost.
+     */
+    @Test
+    public void testLane()
+    {
+        assertSame(controller.getInteractive(), controller.getLane(QueryCost.estimate(DESCRIBE)));
+        assertSame(controller.getAnalytic(), controller.getLane(QueryCost.estimate(PATH)));
+    }
+
+    /**
+     * Test that a saturated analytic lane rejects analytic queries but does not block interactive ones.
+     */
+    @Test
+    public void testSaturatedLane()
+    {
+        Permit analytic = controller.admit(PATH);
+        try
+        {
+            controller.admit(PATH);
+            fail("Query admitted into saturated lane");
+        }
+        catch (WebApplicationException ex)
+        {
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), ex.getResponse().getStatus());
+            assertNotNull(ex.getResponse().getMetadata().getFirst("Retry-After"));
+        }
+
+        Permit interactive = controller.admit(DESCRIBE);
+        assertEquals(1, controller.getInteractive().getActiveCount());
+        interactive.release();
+        analytic.release();
+
+        controller.admit(PATH).release();
+    }
+
+    /**
+     * Test that queries over the maximum cost are rejected.
+     */
+    @Test(expected = WebApplicationException.class)
+    public void testMaxCost()
+    {
+        controller.admit(QueryFactory.create("SELECT * { ?s <http://localhost/p>* ?o . ?o <http://localhost/p>* ?x . " +
+            "OPTIONAL { ?x <http://localhost/p>* ?y OPTIONAL { ?y <http://localhost/p>* ?z } } }"));
+    }
+
+    /**
+     * Test that a permit releases its slot only once.
+     */
+    @Test
+    public void testRelease()
+    {
+        Permit permit = controller.admit(DESCRIBE);
+        assertEquals(1, controller.getInteractive().getActiveCount());
+        permit.release();
+        permit.release();
+
+        assertEquals(0, controller.getInteractive().getActiveCount());
+    }
+
+    /**
+     * Test that the slot of a streamed response is held until the end of the request.
+     */
+    @Test
+    public void testReleaseStreamed()
+    {
+        final List<Closeable> closeables = new ArrayList<>();
+        CloseableService closeableService = new CloseableService()
+        {
+            @Override
+            public void add(Closeable closeable)
+            {
+                closeables.add(closeable);
+            }
+        };
+
+        controller.admit(DESCRIBE).release(Response.ok("buffered").build(), closeableService);
+        assertEquals(0, controller.getInteractive().getActiveCount());
+        assertTrue(closeables.isEmpty());
+
+        controller.admit(DESCRIBE).release(Response.ok(new ByteArrayInputStream(new byte[0])).build(), closeableService);
+        assertEquals(1, controller.getInteractive().getActiveCount());
+        assertEquals(1, closeables.size());
+
+        controller.admit(DESCRIBE).release(null, closeableService); // failed query
+        assertEquals(1, controller.getInteractive().getActiveCount());
+
+        ((AdmissionController.Permit)closeables.get(0)).close();
+        assertEquals(0, controller.getInteractive().getActiveCount());
+    }
+
+}
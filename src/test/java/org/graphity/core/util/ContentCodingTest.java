@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class ContentCodingTest
+{
+
+    public static final byte[] BODY = "<http://s> <http://p> \"æøå\" .\n".getBytes();
+    public static final URI REQUEST_URI = URI.create("http://localhost/resource");
+
+    /**
+     * Test that configured codings are normalized and preceded by identity.
+     */
+    @Test
+    public void testGetEncodings()
+    {
+        assertEquals(Arrays.asList(ContentCoding.IDENTITY, ContentCoding.GZIP, ContentCoding.DEFLATE),
+            ContentCoding.getEncodings(" GZIP, deflate,gzip,identity"));
+        assertTrue(ContentCoding.getEncodings(" , identity").isEmpty());
+    }
+
+    /**
+     * Test that unsupported codings are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedEncoding()
+    {
+        ContentCoding.getEncodings("gzip,br");
+    }
+
+    /**
+     * Test that compressed bodies decompress to the original bytes.
+     */
+    @Test
+    public void testCompress() throws IOException
+    {
+        assertArrayEquals(BODY, read(new GZIPInputStream(new ByteArrayInputStream(compress(ContentCoding.GZIP)))));
+        assertArrayEquals(BODY, read(new InflaterInputStream(new ByteArrayInputStream(compress(ContentCoding.DEFLATE)))));
+    }
+
+    /**
+     * Test that cached representations are returned only for the same coding and entity tag.
+     */
+    @Test
+    public void testRepresentationCache() throws IOException
+    {
+        RepresentationCache cache = new RepresentationCache(10, 1024);
+        EntityTag entityTag = new EntityTag("1");
+        byte[] gzip = compress(ContentCoding.GZIP);
+        cache.put(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.GZIP, entityTag, gzip);
+
+        assertArrayEquals(gzip, cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.GZIP, entityTag));
+        assertNull(cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.GZIP, new EntityTag("2")));
+        assertNull(cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.DEFLATE, entityTag));
+
+        cache.put(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.DEFLATE, entityTag, new byte[2048]);
+        assertNull(cache.get(REQUEST_URI, MediaType.TEXT_PLAIN_TYPE, ContentCoding.DEFLATE, entityTag));
+    }
+
+    public static byte[] compress(String coding) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream compressed = ContentCoding.compress(coding, out);
+        compressed.write(BODY);
+        compressed.finish();
+        compressed.finish(); // compressor has been released, second call is a no-op
+        return out.toByteArray();
+    }
+
+    public static byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) >= 0) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+}
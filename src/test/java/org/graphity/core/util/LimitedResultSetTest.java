@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class LimitedResultSetTest
+{
+
+    private ResultSetMem resultSet;
+    private AtomicInteger aborted;
+    private Deadline.Abortable abortable;
+
+    @Before
+    public void setUp()
+    {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 5; i++)
+            model.add(model.createResource("http://localhost/" + i), model.createProperty("http://localhost/p"), "" + i);
+        resultSet = new ResultSetMem(QueryExecutionFactory.create("SELECT * { ?s ?p ?o }", model).execSelect());
+
+        aborted = new AtomicInteger();
+        abortable = new Deadline.Abortable()
+        {
+            @Override
+            public void abort()
+            {
+                aborted.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Test that rows after the limit are not returned, and the request is aborted without reading them.
+     */
+    @Test
+    public void testLimit()
+    {
+        ResultSet limited = new LimitedResultSet(resultSet, 3, abortable);
+
+        assertEquals(3, count(limited));
+        assertEquals(3, resultSet.getRowNumber());
+        assertEquals(1, aborted.get());
+        assertFalse(limited.hasNext());
+        assertEquals(1, aborted.get());
+    }
+
+    /**
+     * Test that result sets within the limit are read to the end without aborting.
+     */
+    @Test
+    public void testWithinLimit()
+    {
+        assertEquals(5, count(new LimitedResultSet(resultSet, 10, abortable)));
+        assertEquals(0, aborted.get());
+    }
+
+    public static int count(ResultSet resultSet)
+    {
+        int count = 0;
+        while (resultSet.hasNext())
+        {
+            resultSet.next();
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.update.UpdateFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class LocalDatasetTest
+{
+
+    public static final String GRAPH_URI = "http://localhost/graph";
+    public static final Resource RESOURCE = ResourceFactory.createResource("http://localhost/a");
+    public static final String CROSS_PRODUCT = "{ ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }";
+
+    private LocalDataset mem, tdb;
+
+    @Before
+    public void setUp()
+    {
+        mem = new LocalDataset(DatasetFactory.createMem(), 0);
+        tdb = new LocalDataset(TDBFactory.createDataset(), 0);
+        for (LocalDataset dataset : datasets())
+        {
+            dataset.add(createModel("default"));
+            dataset.add(GRAPH_URI, createModel("named"));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (LocalDataset dataset : datasets()) dataset.close();
+    }
+
+    /**
+     * Test that SELECT, CONSTRUCT, DESCRIBE and ASK queries return results of the default and named graphs.
+     */
+    @Test
+    public void testQueries()
+    {
+        for (LocalDataset dataset : datasets())
+        {
+            ResultSetRewindable resultSet = dataset.select(QueryFactory.create("SELECT ?label WHERE { GRAPH <" + GRAPH_URI + "> { ?s ?p ?label } }"));
+            assertEquals(1, resultSet.size());
+            assertEquals("named", resultSet.next().getLiteral("label").getString());
+
+            Model model = dataset.loadModel(QueryFactory.create("CONSTRUCT WHERE { ?s ?p ?o }"));
+            assertTrue(model.isIsomorphicWith(createModel("default")));
+            assertFalse(dataset.loadModel(QueryFactory.create("DESCRIBE <" + RESOURCE.getURI() + ">")).isEmpty());
+
+            assertTrue(dataset.ask(QueryFactory.create("ASK { GRAPH ?g { ?s ?p \"named\" } }")));
+            assertFalse(dataset.ask(QueryFactory.create("ASK { ?s ?p \"named\" }")));
+        }
+    }
+
+    /**
+     * Test that update requests are applied.
+     */
+    @Test
+    public void testUpdate()
+    {
+        for (LocalDataset dataset : datasets())
+        {
+            dataset.update(UpdateFactory.create("INSERT DATA { GRAPH <http://localhost/new> { <http://localhost/b> <http://localhost/p> \"b\" } } ; " +
+                    "DELETE WHERE { ?s ?p \"default\" }"));
+            
+            assertTrue(dataset.containsModel("http://localhost/new"));
+            assertTrue(dataset.getModel().isEmpty());
+        }
+    }
+
+    /**
+     * Test that a failed update request is rolled back as a whole on transactional datasets.
+     */
+    @Test
+    public void testUpdateRollback()
+    {
+        try
+        {
+            tdb.update(UpdateFactory.create("INSERT DATA { <http://localhost/b> <http://localhost/p> \"b\" } ; " +
+                    "LOAD <file:///nonexistent/graph.ttl>")); // fails, the file does not exist
+            fail("Update must fail");
+        }
+        catch (RuntimeException ex)
+        {
+        }
+
+        assertTrue(tdb.getModel().isIsomorphicWith(createModel("default")));
+        // the transaction has been ended, the dataset is usable
+        tdb.add(createModel("after"));
+        assertEquals(2, tdb.getModel().size());
+    }
+
+    /**
+     * Test that Graph Store methods read, replace and delete graphs, and missing graphs are returned as null.
+     */
+    @Test
+    public void testGraphs()
+    {
+        for (LocalDataset dataset : datasets())
+        {
+            assertTrue(dataset.getModel(GRAPH_URI).isIsomorphicWith(createModel("named")));
+            assertNull(dataset.getModel("http://localhost/missing"));
+            assertFalse(dataset.containsModel("http://localhost/missing"));
+
+            dataset.putModel(GRAPH_URI, createModel("replaced"));
+            assertTrue(dataset.getModel(GRAPH_URI).isIsomorphicWith(createModel("replaced")));
+            dataset.putModel(createModel("replaced"));
+            assertTrue(dataset.getModel().isIsomorphicWith(createModel("replaced")));
+            
+            dataset.deleteModel(GRAPH_URI);
+            assertNull(dataset.getModel(GRAPH_URI));
+            dataset.deleteDefault();
+            assertTrue(dataset.getModel().isEmpty());
+        }
+    }
+
+    /**
+     * Test that returned models are copies that outlive the transaction and do not modify the dataset.
+     */
+    @Test
+    public void testModelCopy()
+    {
+        for (LocalDataset dataset : datasets())
+        {
+            dataset.getModel().add(createModel("copy"));
+            dataset.getModel(GRAPH_URI).removeAll();
+            
+            assertEquals(1, dataset.getModel().size());
+            assertEquals(1, dataset.getModel(GRAPH_URI).size());
+        }
+    }
+
+    /**
+     * Test that query executions exceeding the timeout are answered with 503 Service Unavailable.
+     */
+    @Test
+    public void testTimeout()
+    {
+        for (LocalDataset dataset : new LocalDataset[] { new LocalDataset(DatasetFactory.createMem(), 1), new LocalDataset(TDBFactory.createDataset(), 1) })
+        {
+            Model model = ModelFactory.createDefaultModel();
+            for (int i = 0; i < 40; i++) model.add(RESOURCE, RDFS.label, "label" + i);
+            dataset.add(model);
+            
+            assertStatus(Status.SERVICE_UNAVAILABLE, dataset, "SELECT * WHERE " + CROSS_PRODUCT);
+            assertStatus(Status.SERVICE_UNAVAILABLE, dataset, "CONSTRUCT { ?a ?b ?i } WHERE " + CROSS_PRODUCT);
+            // the read transaction has been ended
+            dataset.add(createModel("after"));
+            dataset.close();
+        }
+    }
+
+    public LocalDataset[] datasets()
+    {
+        return new LocalDataset[] { mem, tdb };
+    }
+
+    public static Model createModel(String label)
+    {
+        return ModelFactory.createDefaultModel().add(RESOURCE, RDFS.label, label);
+    }
+
+    public static void assertStatus(Status status, LocalDataset dataset, String queryString)
+    {
+        try
+        {
+            if (queryString.startsWith("SELECT")) dataset.select(QueryFactory.create(queryString));
+            else dataset.loadModel(QueryFactory.create(queryString));
+            fail("Query must time out: " + queryString);
+        }
+        catch (WebApplicationException ex)
+        {
+            assertEquals(status.getStatusCode(), ex.getResponse().getStatus());
+        }
+    }
+    
+}
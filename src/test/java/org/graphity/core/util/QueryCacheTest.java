@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import org.graphity.core.metrics.Counter;
+import org.graphity.core.metrics.MetricRegistry;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class QueryCacheTest
+{
+
+    public static final String[] QUERIES = {
+        "SELECT * WHERE { ?s ?p ?o }",
+        "SELECT DISTINCT ?s WHERE { ?s ?p ?o } ORDER BY DESC(?s) LIMIT 10 OFFSET 20",
+        "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> SELECT REDUCED ?s (STR(?label) AS ?str) WHERE { ?s rdfs:label ?label } ORDER BY ?str ?s",
+        "SELECT ?s (COUNT(?o) AS ?count) WHERE { ?s ?p ?o } GROUP BY ?s HAVING (COUNT(?o) > 1)",
+        "SELECT (MAX(?o) AS ?max) WHERE { ?s ?p ?o } GROUP BY (STR(?s) AS ?str) ?p",
+        "SELECT * WHERE { ?s ?p ?o } VALUES (?s ?p) { (<http://localhost/a> UNDEF) (UNDEF <http://localhost/p>) }",
+        "SELECT * FROM <http://localhost/g1> FROM NAMED <http://localhost/g2> WHERE { GRAPH ?g { ?s ?p ?o } }",
+        "BASE <http://localhost/> CONSTRUCT { ?s <p> ?o } WHERE { ?s ?p ?o } LIMIT 5",
+        "DESCRIBE <http://localhost/a> ?s WHERE { ?s ?p ?o }",
+        "DESCRIBE *  WHERE { ?s ?p ?o }",
+        "ASK FROM NAMED <http://localhost/g> { GRAPH ?g { ?s ?p ?o } }"
+    };
+
+    /**
+     * Test that copies equal the original queries of all forms.
+     */
+    @Test
+    public void testCopy()
+    {
+        for (String queryString : QUERIES)
+        {
+            Query query = QueryFactory.create(queryString);
+            Query copy = QueryCache.copy(query);
+            
+            assertNotSame(query, copy);
+            assertEquals(queryString, query, copy);
+            assertEquals(queryString, query.hashCode(), copy.hashCode());
+            assertEquals(queryString, query.serialize(), copy.serialize());
+        }
+    }
+
+    /**
+     * Test that modifying a returned query leaves the cached query unchanged.
+     */
+    @Test
+    public void testCopyIsolation()
+    {
+        QueryCache cache = new QueryCache(10);
+        String queryString = "SELECT * WHERE { ?s ?p ?o } ORDER BY ?s";
+        Query first = cache.create(queryString);
+        first.setLimit(10);
+        first.setOffset(100);
+        first.addResultVar("x");
+        
+        Query cached = cache.getCache().get(queryString);
+        assertEquals(Query.NOLIMIT, cached.getLimit());
+        assertEquals(Query.NOLIMIT, cached.getOffset());
+        assertTrue(cached.isQueryResultStar());
+        
+        Query second = cache.create(queryString);
+        assertEquals(Query.NOLIMIT, second.getLimit());
+        assertEquals(QueryFactory.create(queryString), second);
+    }
+
+    /**
+     * Test that cache hits and misses are counted in the metric registry.
+     */
+    @Test
+    public void testMetrics()
+    {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        QueryCache cache = new QueryCache(10, metricRegistry);
+        cache.create(QUERIES[0]);
+        cache.create(QUERIES[0]);
+        cache.create(QUERIES[0]);
+        cache.create(QUERIES[1]);
+        
+        assertEquals(2, ((Counter)metricRegistry.get("querycache.hits")).getCount());
+        assertEquals(2, ((Counter)metricRegistry.get("querycache.misses")).getCount());
+        assertEquals(cache.getHitCount(), ((Counter)metricRegistry.get("querycache.hits")).getCount());
+    }
+    
+}
@@ -0,0 +1,323 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class QueryCoalescerTest
+{
+
+    public static final String ORIGIN = "http://localhost/sparql";
+    public static final MediaType[] MEDIA_TYPES = { MediaType.valueOf("text/turtle") };
+    public static final Query QUERY = QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }");
+    public static final Query SELECT = QueryFactory.create("SELECT * WHERE { ?s ?p ?o }");
+    public static final long WAIT = 5000;
+
+    private QueryCoalescer coalescer;
+    private ExecutorService executor;
+    private CountDownLatch release;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp()
+    {
+        coalescer = new QueryCoalescer();
+        executor = Executors.newCachedThreadPool();
+        release = new CountDownLatch(1);
+        loads = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Test that concurrent identical queries are executed once, and every request gets its own copy of the model.
+     */
+    @Test
+    public void testJoin() throws Exception
+    {
+        Future<Model> leader = submitModel(null);
+        awaitInFlight();
+        Future<Model> waiter = submitModel(null);
+        awaitCoalesced(1);
+        release.countDown();
+        
+        Model leaderModel = leader.get(WAIT, TimeUnit.MILLISECONDS), waiterModel = waiter.get(WAIT, TimeUnit.MILLISECONDS);
+        assertEquals(1, loads.get());
+        assertEquals(1, coalescer.getExecutedCount());
+        assertTrue(leaderModel.isIsomorphicWith(waiterModel));
+        assertNotSame(leaderModel, waiterModel);
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * Test that concurrent identical SELECT queries share rows, but not cursors.
+     */
+    @Test
+    public void testJoinSelect() throws Exception
+    {
+        Future<ResultSetRewindable> leader = submitSelect();
+        awaitInFlight();
+        Future<ResultSetRewindable> waiter = submitSelect();
+        awaitCoalesced(1);
+        release.countDown();
+
+        ResultSetRewindable leaderResults = leader.get(WAIT, TimeUnit.MILLISECONDS), waiterResults = waiter.get(WAIT, TimeUnit.MILLISECONDS);
+        assertEquals(1, loads.get());
+        leaderResults.next();
+        assertEquals(0, waiterResults.getRowNumber());
+        assertEquals(1, waiterResults.size());
+    }
+
+    /**
+     * Test that a request arriving after the flight has landed does not join it, but queries the origin itself.
+     */
+    @Test
+    public void testLateJoin() throws Exception
+    {
+        release.countDown();
+        Model first = submitModel(null).get(WAIT, TimeUnit.MILLISECONDS);
+        Model second = submitModel(null).get(WAIT, TimeUnit.MILLISECONDS);
+        
+        assertEquals(2, loads.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+        assertNotSame(first, second);
+
+        QueryCoalescer.Flight flight = coalescer.new Flight(new ModelLoader(loads));
+        flight.run();
+        assertEquals(0, flight.land());
+        assertFalse(flight.join());
+    }
+
+    /**
+     * Test that the failure of the executing request is propagated to its waiters.
+     */
+    @Test
+    public void testError() throws Exception
+    {
+        final Callable<Model> failing = new Callable<Model>()
+        {
+            @Override
+            public Model call() throws Exception
+            {
+                loads.incrementAndGet();
+                release.await();
+                throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
+            }
+        };
+        Future<Model> leader = submitModel(failing, null);
+        awaitInFlight();
+        Future<Model> waiter = submitModel(failing, null);
+        awaitCoalesced(1);
+        release.countDown();
+        
+        assertStatus(Status.INTERNAL_SERVER_ERROR, leader);
+        assertStatus(Status.INTERNAL_SERVER_ERROR, waiter);
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Test that waiters do not inherit the failure caused by the deadline of the executing request, but retry.
+     */
+    @Test
+    public void testLeaderDeadline() throws Exception
+    {
+        final Deadline leaderDeadline = new Deadline(WAIT);
+        Callable<Model> aborted = new Callable<Model>()
+        {
+            @Override
+            public Model call() throws Exception
+            {
+                loads.incrementAndGet();
+                release.await();
+                throw new IllegalStateException("Aborted");
+            }
+        };
+        Future<Model> leader = submitModel(aborted, leaderDeadline);
+        awaitInFlight();
+        Future<Model> waiter = submitModel(new ModelLoader(loads), null);
+        awaitCoalesced(1);
+        leaderDeadline.abort();
+        release.countDown();
+
+        try
+        {
+            leader.get(WAIT, TimeUnit.MILLISECONDS);
+            fail("Aborted request must fail");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertFalse(waiter.get(WAIT, TimeUnit.MILLISECONDS).isEmpty());
+        assertEquals(2, coalescer.getExecutedCount());
+        leaderDeadline.close();
+    }
+
+    /**
+     * Test that waiters do not wait for the executing request past their own deadline.
+     */
+    @Test
+    public void testWaiterDeadline() throws Exception
+    {
+        Future<Model> leader = submitModel(null);
+        awaitInFlight();
+        Deadline waiterDeadline = new Deadline(100);
+        Future<Model> waiter = submitModel(waiterDeadline);
+        
+        assertStatus(Status.SERVICE_UNAVAILABLE, waiter);
+        assertFalse(leader.isDone());
+        release.countDown();
+        assertFalse(leader.get(WAIT, TimeUnit.MILLISECONDS).isEmpty());
+        waiterDeadline.close();
+    }
+
+    public Future<Model> submitModel(Deadline deadline)
+    {
+        return submitModel(new ModelLoader(loads), deadline);
+    }
+    
+    public Future<Model> submitModel(final Callable<Model> loader, final Deadline deadline)
+    {
+        return executor.submit(new Callable<Model>()
+        {
+            @Override
+            public Model call() throws Exception
+            {
+                if (deadline != null) Deadline.set(deadline);
+                try
+                {
+                    return coalescer.loadModel(ORIGIN, QUERY, MEDIA_TYPES, loader);
+                }
+                finally
+                {
+                    Deadline.remove();
+                }
+            }
+        });
+    }
+
+    public Future<ResultSetRewindable> submitSelect()
+    {
+        return executor.submit(new Callable<ResultSetRewindable>()
+        {
+            @Override
+            public ResultSetRewindable call() throws Exception
+            {
+                return coalescer.select(ORIGIN, SELECT, MEDIA_TYPES, new Callable<ResultSetRewindable>()
+                {
+                    @Override
+                    public ResultSetRewindable call() throws Exception
+                    {
+                        return new ResultSetMem(QueryExecutionFactory.create(SELECT, new ModelLoader(loads).call()).execSelect());
+                    }
+                });
+            }
+        });
+    }
+
+    public void awaitInFlight() throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (coalescer.getInFlightCount() == 0 && System.currentTimeMillis() - start < WAIT) Thread.sleep(5);
+        assertEquals(1, coalescer.getInFlightCount());
+    }
+
+    public void awaitCoalesced(long count) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (coalescer.getCoalescedCount() < count && System.currentTimeMillis() - start < WAIT) Thread.sleep(5);
+        assertEquals(count, coalescer.getCoalescedCount());
+    }
+
+    public static void assertStatus(Status status, Future<?> future) throws Exception
+    {
+        try
+        {
+            future.get(WAIT, TimeUnit.MILLISECONDS);
+            fail("Request must fail with " + status);
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof WebApplicationException);
+            assertEquals(status.getStatusCode(), ((WebApplicationException)ex.getCause()).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Loads a single-statement model once released, and counts the loads.
+     */
+    public class ModelLoader implements Callable<Model>
+    {
+        private final AtomicInteger count;
+
+        public ModelLoader(AtomicInteger count)
+        {
+            this.count = count;
+        }
+        
+        @Override
+        public Model call() throws Exception
+        {
+            if (count != null) count.incrementAndGet();
+            release.await();
+            return create();
+        }
+
+        public Model create()
+        {
+            Model model = ModelFactory.createDefaultModel();
+            model.add(ResourceFactory.createResource("http://localhost/a"), RDFS.label, "a");
+            return model;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.AddDeniedException;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import javax.ws.rs.core.MediaType;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class QueryResultCacheTest
+{
+
+    public static final String ORIGIN = "http://localhost/sparql";
+    public static final MediaType[] MEDIA_TYPES = { MediaType.valueOf("text/turtle") };
+    public static final Query QUERY = QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 10");
+
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp()
+    {
+        cache = new QueryResultCache(10, 5, 0);
+    }
+
+    /**
+     * Test that queries differing only in formatting share the cache entry, and other queries do not.
+     */
+    @Test
+    public void testKey()
+    {
+        Query reformatted = QueryFactory.create("CONSTRUCT {?s ?p ?o}\nWHERE {?s ?p ?o}   LIMIT 10");
+        Query other = QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 20");
+
+        assertEquals(QueryResultCache.createKey(ORIGIN, QUERY, MEDIA_TYPES), QueryResultCache.createKey(ORIGIN, reformatted, MEDIA_TYPES));
+        assertFalse(QueryResultCache.createKey(ORIGIN, QUERY, MEDIA_TYPES).equals(QueryResultCache.createKey(ORIGIN, other, MEDIA_TYPES)));
+        assertFalse(QueryResultCache.createKey(ORIGIN, QUERY, MEDIA_TYPES).equals(QueryResultCache.createKey("http://localhost/other", QUERY, MEDIA_TYPES)));
+    }
+
+    /**
+     * Test that cached models are shared read-only views.
+     */
+    @Test
+    public void testModel()
+    {
+        Model cached = cache.putModel(ORIGIN, QUERY, MEDIA_TYPES, model(3));
+
+        assertSame(cached, cache.getModel(ORIGIN, QUERY, MEDIA_TYPES));
+        assertEquals(3, cached.size());
+        try
+        {
+            cached.add(cached.createResource("http://localhost/x"), cached.createProperty("http://localhost/p"), "x");
+            fail("Cached Model is modifiable");
+        }
+        catch (AddDeniedException ex)
+        {
+        }
+    }
+
+    /**
+     * Test that the cache is bounded by the total number of triples.
+     */
+    @Test
+    public void testTriples()
+    {
+        Query other = QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 20");
+        cache.putModel(ORIGIN, QUERY, MEDIA_TYPES, model(3));
+        cache.putModel(ORIGIN, other, MEDIA_TYPES, model(3));
+
+        assertNull(cache.getModel(ORIGIN, QUERY, MEDIA_TYPES));
+        assertNotNull(cache.getModel(ORIGIN, other, MEDIA_TYPES));
+        assertEquals(3, cache.getCache().getWeight());
+
+        cache.putModel(ORIGIN, QUERY, MEDIA_TYPES, model(6));
+        assertNull(cache.getModel(ORIGIN, QUERY, MEDIA_TYPES));
+        assertEquals(3, cache.getCache().getWeight());
+
+        cache.clear();
+        assertEquals(0, cache.getCache().getWeight());
+    }
+
+    /**
+     * Test that each result set hit has its own position over the cached rows.
+     */
+    @Test
+    public void testResultSet()
+    {
+        Query select = QueryFactory.create("SELECT ?s { ?s ?p ?o }");
+        ResultSetRewindable resultSet = new ResultSetMem(QueryExecutionFactory.create(select, model(2)).execSelect());
+        cache.putResultSet(ORIGIN, select, MEDIA_TYPES, resultSet);
+
+        ResultSetRewindable first = cache.getResultSet(ORIGIN, select, MEDIA_TYPES);
+        first.next();
+        first.next();
+        assertFalse(first.hasNext());
+        assertEquals(2, cache.getResultSet(ORIGIN, select, MEDIA_TYPES).size());
+        assertTrue(cache.getResultSet(ORIGIN, select, MEDIA_TYPES).hasNext());
+        assertEquals(0, resultSet.getRowNumber());
+    }
+
+    public static Model model(int size)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < size; i++)
+            model.add(model.createResource("http://localhost/" + i), model.createProperty("http://localhost/p"), "" + i);
+        return model;
+    }
+
+}
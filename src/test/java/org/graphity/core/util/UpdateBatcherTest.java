@@ -0,0 +1,193 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.modify.request.UpdateClear;
+import com.hp.hpl.jena.sparql.modify.request.UpdateData;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataDelete;
+import com.hp.hpl.jena.sparql.modify.request.UpdateDataInsert;
+import com.hp.hpl.jena.update.Update;
+import com.hp.hpl.jena.update.UpdateFactory;
+import com.hp.hpl.jena.update.UpdateRequest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class UpdateBatcherTest
+{
+
+    private UpdateBatcher batcher;
+
+    @Before
+    public void setUp()
+    {
+        batcher = new UpdateBatcher(2);
+    }
+
+    /**
+     * Test that a request within the batch size is returned as is.
+     */
+    @Test
+    public void testSmallRequest()
+    {
+        UpdateRequest updateRequest = UpdateFactory.create("INSERT DATA { <a> <p> <b> . <a> <p> <c> }");
+        List<UpdateRequest> batches = batcher.split(updateRequest);
+        
+        assertEquals(1, batches.size());
+        assertSame(updateRequest, batches.get(0));
+    }
+
+    /**
+     * Test that data operations are split at the batch size, and consecutive operations fill up the same batch.
+     */
+    @Test
+    public void testBatchBoundaries()
+    {
+        UpdateRequest updateRequest = UpdateFactory.create("INSERT DATA { <a> <p> <b> . <a> <p> <c> . <a> <p> <d> } ; " +
+                "DELETE DATA { <a> <p> <e> . <a> <p> <f> }");
+        List<UpdateRequest> batches = batcher.split(updateRequest);
+        
+        assertEquals(3, batches.size());
+        for (UpdateRequest batch : batches) assertTrue(batcher.getQuadCount(batch) <= batcher.getBatchSize());
+        
+        assertEquals(2, batcher.getQuadCount(batches.get(0)));
+        assertEquals(2, batcher.getQuadCount(batches.get(1)));
+        assertEquals(1, batcher.getQuadCount(batches.get(2)));
+        // the last INSERT DATA quad and the first DELETE DATA quad share the second batch
+        assertTrue(batches.get(1).getOperations().get(0) instanceof UpdateDataInsert);
+        assertTrue(batches.get(1).getOperations().get(1) instanceof UpdateDataDelete);
+
+        assertEquals(getQuads(updateRequest), getQuads(batches));
+    }
+
+    /**
+     * Test that every batch carries the prefixes and base URI of the original request.
+     */
+    @Test
+    public void testPrologue()
+    {
+        UpdateRequest updateRequest = UpdateFactory.create("BASE <http://base/> PREFIX ex: <http://example/> " +
+                "INSERT DATA { ex:a ex:p <b> . ex:a ex:p <c> . ex:a ex:p <d> }");
+        List<UpdateRequest> batches = batcher.split(updateRequest);
+        
+        assertEquals(2, batches.size());
+        for (UpdateRequest batch : batches)
+        {
+            assertEquals("http://example/", batch.getPrefixMapping().getNsPrefixURI("ex"));
+            assertTrue(batch.explicitlySetBaseURI());
+            assertEquals("http://base/", batch.getBaseURI());
+            // serialized batches parse back to the same quads
+            assertEquals(getQuads(batch), getQuads(UpdateFactory.create(batch.toString())));
+        }
+    }
+
+    /**
+     * Test that other operations are kept intact and in their original order relative to data operations.
+     */
+    @Test
+    public void testOperationOrder()
+    {
+        UpdateRequest updateRequest = UpdateFactory.create("INSERT DATA { <a> <p> <b> . <a> <p> <c> . <a> <p> <d> } ; " +
+                "CLEAR GRAPH <g> ; " +
+                "INSERT DATA { <a> <p> <e> }");
+        List<UpdateRequest> batches = batcher.split(updateRequest);
+        
+        List<Update> operations = new ArrayList<>();
+        for (UpdateRequest batch : batches) operations.addAll(batch.getOperations());
+        
+        assertEquals(4, operations.size());
+        assertTrue(operations.get(0) instanceof UpdateDataInsert);
+        assertTrue(operations.get(1) instanceof UpdateDataInsert);
+        assertTrue(operations.get(2) instanceof UpdateClear);
+        assertSame(updateRequest.getOperations().get(1), operations.get(2));
+        assertTrue(operations.get(3) instanceof UpdateDataInsert);
+        assertEquals(getQuads(updateRequest), getQuads(batches));
+    }
+
+    /**
+     * Test that a data operation with blank nodes is not split, so that quads sharing a blank node stay in one request.
+     */
+    @Test
+    public void testBlankNodes()
+    {
+        UpdateRequest updateRequest = UpdateFactory.create("INSERT DATA { <a> <p> <b> } ; " +
+                "INSERT DATA { _:x <p> <b> . _:x <p> <c> . _:x <p> <d> } ; " +
+                "INSERT DATA { <a> <p> <c> . <a> <p> <d> }");
+        List<UpdateRequest> batches = batcher.split(updateRequest);
+        
+        UpdateRequest blankBatch = null;
+        for (UpdateRequest batch : batches)
+            for (Update update : batch.getOperations())
+                if (batcher.hasBlankNodes(((UpdateData)update).getQuads()))
+                {
+                    assertNull("Blank node operation must appear in one batch only", blankBatch);
+                    assertSame(updateRequest.getOperations().get(1), update);
+                    blankBatch = batch;
+                }
+        assertNotNull(blankBatch);
+
+        Node blank = null;
+        for (Quad quad : getQuads(blankBatch))
+            if (quad.getSubject().isBlank())
+            {
+                if (blank == null) blank = quad.getSubject();
+                assertEquals(blank, quad.getSubject());
+            }
+        
+        // the batch with the blank node operation is closed once it exceeds the batch size
+        for (UpdateRequest batch : batches)
+            if (batch != blankBatch) assertTrue(batcher.getQuadCount(batch) <= batcher.getBatchSize());
+        assertEquals(getQuads(updateRequest), getQuads(batches));
+    }
+
+    /**
+     * Test that blank nodes are detected in quads.
+     */
+    @Test
+    public void testHasBlankNodes()
+    {
+        assertTrue(batcher.hasBlankNodes(((UpdateData)UpdateFactory.create("INSERT DATA { <a> <p> [ <q> <b> ] }").getOperations().get(0)).getQuads()));
+        assertFalse(batcher.hasBlankNodes(((UpdateData)UpdateFactory.create("INSERT DATA { <a> <p> \"b\" }").getOperations().get(0)).getQuads()));
+    }
+
+    public static List<Quad> getQuads(UpdateRequest updateRequest)
+    {
+        List<Quad> quads = new ArrayList<>();
+        for (Update update : updateRequest.getOperations())
+            if (update instanceof UpdateData) quads.addAll(((UpdateData)update).getQuads());
+        return quads;
+    }
+
+    public static List<Quad> getQuads(List<UpdateRequest> batches)
+    {
+        List<Quad> quads = new ArrayList<>();
+        for (UpdateRequest batch : batches) quads.addAll(getQuads(batch));
+        return quads;
+    }
+
+}
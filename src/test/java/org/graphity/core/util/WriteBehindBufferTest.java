@@ -0,0 +1,222 @@
+/**
+ *  Copyright 2015 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.core.util;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+@RunWith(JUnit4.class)
+public class WriteBehindBufferTest
+{
+    
+    /**
+     * Sink that records written batch sizes, optionally blocking until released.
+     */
+    public static class RecordingSink implements WriteBehindBuffer.Sink
+    {
+        private final List<Long> writes = Collections.synchronizedList(new ArrayList<Long>());
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        public RecordingSink(boolean blocking)
+        {
+            this.release = new CountDownLatch(blocking ? 1 : 0);
+        }
+        
+        @Override
+        public void add(String graphUri, Model model)
+        {
+            started.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            writes.add(model.size());
+        }
+
+        public List<Long> getWrites()
+        {
+            return writes;
+        }
+
+        public CountDownLatch getStarted()
+        {
+            return started;
+        }
+
+        public CountDownLatch getRelease()
+        {
+            return release;
+        }
+        
+    }
+
+    private WriteBehindBuffer buffer;
+    
+    @After
+    public void tearDown()
+    {
+        if (buffer != null) buffer.close();
+    }
+
+    public static Model createModel(int size)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < size; i++)
+            model.add(ResourceFactory.createResource("http://subject/" + i), ResourceFactory.createProperty("http://predicate"), "literal");
+        return model;
+    }
+    
+    /**
+     * Test that appends to the same graph are merged into one batch.
+     */
+    @Test
+    public void testAppendsAreMerged()
+    {
+        buffer = new WriteBehindBuffer(100, 60000, false, null);
+        RecordingSink sink = new RecordingSink(false);
+        
+        buffer.append("graph", null, createModel(2), sink);
+        buffer.append("graph", null, createModel(3), sink); // same subjects: 3 distinct triples in total
+        buffer.flush("graph");
+        
+        assertEquals(Collections.singletonList(3L), sink.getWrites());
+    }
+
+    /**
+     * Test that a full batch is flushed without waiting for the delay.
+     */
+    @Test
+    public void testFullBatchIsFlushed()
+    {
+        buffer = new WriteBehindBuffer(2, 60000, false, null);
+        RecordingSink sink = new RecordingSink(false);
+        
+        Future<Long> flush = buffer.append("graph", null, createModel(2), sink);
+        
+        assertEquals(2L, buffer.get(flush));
+    }
+    
+    /**
+     * Test that flush waits for a batch that is already being written, so that a following replace or delete
+     * cannot overtake it.
+     */
+    @Test
+    public void testFlushWaitsForBatchInFlight() throws Exception
+    {
+        buffer = new WriteBehindBuffer(1, 60000, false, null);
+        final RecordingSink sink = new RecordingSink(true);
+        
+        buffer.append("graph", null, createModel(1), sink); // full, written in the background
+        assertTrue(sink.getStarted().await(5, TimeUnit.SECONDS));
+        
+        final CountDownLatch flushed = new CountDownLatch(1);
+        Thread flusher = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                buffer.flush("graph");
+                flushed.countDown();
+            }
+        });
+        flusher.start();
+        
+        assertFalse("Flush returned before the batch in flight was written", flushed.await(200, TimeUnit.MILLISECONDS));
+        sink.getRelease().countDown();
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(1L), sink.getWrites());
+    }
+
+    /**
+     * Test that an open batch is written after the batch in flight, not before it.
+     */
+    @Test
+    public void testBatchesAreWrittenInOrder() throws Exception
+    {
+        buffer = new WriteBehindBuffer(2, 60000, false, null);
+        RecordingSink sink = new RecordingSink(true);
+        
+        buffer.append("graph", null, createModel(2), sink); // full, written in the background
+        assertTrue(sink.getStarted().await(5, TimeUnit.SECONDS));
+        buffer.append("graph", null, createModel(1), sink); // opens a new batch
+        
+        sink.getRelease().countDown();
+        buffer.flush("graph");
+        
+        assertEquals(2, sink.getWrites().size());
+        assertEquals(Long.valueOf(2L), sink.getWrites().get(0));
+        assertEquals(Long.valueOf(1L), sink.getWrites().get(1));
+    }
+    
+    /**
+     * Test that flush errors are propagated to the caller.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testFlushError()
+    {
+        buffer = new WriteBehindBuffer(100, 60000, false, null);
+        
+        buffer.append("graph", null, createModel(1), new WriteBehindBuffer.Sink()
+        {
+            @Override
+            public void add(String graphUri, Model model)
+            {
+                throw new IllegalStateException("Origin unavailable");
+            }
+        });
+        buffer.flush("graph");
+    }
+
+    /**
+     * Test that pending batches are written on close, and that close can be called again.
+     */
+    @Test
+    public void testClose()
+    {
+        buffer = new WriteBehindBuffer(100, 60000, false, null);
+        RecordingSink sink = new RecordingSink(false);
+        
+        buffer.append("graph", null, createModel(1), sink);
+        buffer.append("other", "http://graph", createModel(2), sink);
+        buffer.close();
+        buffer.close();
+        
+        assertEquals(2, sink.getWrites().size());
+    }
+    
+}